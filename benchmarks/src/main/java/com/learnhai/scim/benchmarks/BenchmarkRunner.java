@@ -0,0 +1,147 @@
+package com.learnhai.scim.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the suites with the GC profiler and writes JMH's JSON result file, optionally comparing it
+ * with a baseline from an earlier run.
+ * <pre>
+ *   java -jar target/benchmarks.jar [--quick] [--out results/run.json]
+ *        [--baseline baseline/jmh-baseline.json] [--threshold 10] [benchmark regex ...]
+ * </pre>
+ * With {@code --baseline}, every benchmark whose average time or normalized allocation
+ * ({@code gc.alloc.rate.norm}) grew by more than the threshold percentage is reported and the
+ * process exits with status 1. Plain JMH options still work via {@code org.openjdk.jmh.Main}.
+ */
+public final class BenchmarkRunner {
+
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String out = "results/jmh-result.json";
+        String baseline = null;
+        double threshold = 10.0;
+        boolean quick = false;
+        List<String> includes = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--out" -> out = args[++i];
+                case "--baseline" -> baseline = args[++i];
+                case "--threshold" -> threshold = Double.parseDouble(args[++i]);
+                case "--quick" -> quick = true;
+                default -> includes.add(args[i]);
+            }
+        }
+
+        File outFile = new File(out);
+        if (outFile.getParentFile() != null) {
+            Files.createDirectories(outFile.getParentFile().toPath());
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(outFile.getPath());
+        if (includes.isEmpty()) {
+            options.include(BenchmarkRunner.class.getPackageName() + ".*");
+        } else {
+            includes.forEach(options::include);
+        }
+        if (quick) {
+            // Smoke-level numbers, e.g. for CI; use the annotated defaults for baselines
+            options.warmupIterations(2).warmupTime(TimeValue.milliseconds(500))
+                    .measurementIterations(3).measurementTime(TimeValue.milliseconds(500));
+        }
+        new Runner(options.build()).run();
+
+        if (baseline != null && !compare(Path.of(baseline), outFile.toPath(), threshold)) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Prints a per-benchmark comparison and returns false if anything regressed beyond the threshold.
+     */
+    static boolean compare(Path baselineFile, Path currentFile, double thresholdPercent) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, JsonNode> baseline = index(mapper.readTree(baselineFile.toFile()));
+        Map<String, JsonNode> current = index(mapper.readTree(currentFile.toFile()));
+
+        boolean ok = true;
+        System.out.printf("%n%-80s %14s %14s %9s %12s%n", "Benchmark", "baseline", "current", "time", "alloc");
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-80s %14s%n", entry.getKey(), "(new)");
+                continue;
+            }
+            JsonNode after = entry.getValue();
+            double timeDelta = delta(score(before), score(after));
+            double allocDelta = delta(allocation(before), allocation(after));
+            boolean regressed = timeDelta > thresholdPercent || allocDelta > thresholdPercent;
+            ok &= !regressed;
+            System.out.printf("%-80s %14.3f %14.3f %+8.1f%% %+11.1f%%%s%n", entry.getKey(), score(before), score(after),
+                    timeDelta, allocDelta, regressed ? "  REGRESSION" : "");
+        }
+        return ok;
+    }
+
+    // Key: benchmark name plus its parameters, e.g. GroupMapperBenchmark.toScimGroup{members=1000}
+    private static Map<String, JsonNode> index(JsonNode results) {
+        Map<String, JsonNode> indexed = new LinkedHashMap<>();
+        for (JsonNode result : results) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText()
+                    .replace(BenchmarkRunner.class.getPackageName() + ".", ""));
+            JsonNode params = result.get("params");
+            if (params != null) {
+                key.append('{');
+                Iterator<Map.Entry<String, JsonNode>> fields = params.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> param = fields.next();
+                    key.append(param.getKey()).append('=').append(param.getValue().asText());
+                    if (fields.hasNext()) {
+                        key.append(", ");
+                    }
+                }
+                key.append('}');
+            }
+            indexed.put(key.toString(), result);
+        }
+        return indexed;
+    }
+
+    private static double score(JsonNode result) {
+        return result.path("primaryMetric").path("score").asDouble();
+    }
+
+    private static double allocation(JsonNode result) {
+        return result.path("secondaryMetrics").path(ALLOCATION).path("score").asDouble(Double.NaN);
+    }
+
+    // Percentage change; NaN (metric missing) and near-zero baselines never count as regressions
+    private static double delta(double before, double after) {
+        if (Double.isNaN(before) || Double.isNaN(after) || before < 1e-9) {
+            return 0.0;
+        }
+        return (after - before) / before * 100.0;
+    }
+}
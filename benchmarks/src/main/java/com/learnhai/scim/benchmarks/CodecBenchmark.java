@@ -0,0 +1,68 @@
+package com.learnhai.scim.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.learnhai.scim.model.scim.ScimUser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-resource read and write, streaming codecs versus reflective Jackson.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    private ObjectReader codecReader;
+    private ObjectReader reflectiveReader;
+    private ObjectMapper codec;
+    private ObjectMapper reflective;
+    private byte[] userJson;
+    private ScimUser user;
+
+    @Setup
+    public void setup() {
+        codec = Fixtures.codecMapper();
+        reflective = Fixtures.reflectiveMapper();
+        codecReader = codec.readerFor(ScimUser.class);
+        reflectiveReader = reflective.readerFor(ScimUser.class);
+        userJson = Fixtures.createUserJson(1).getBytes(StandardCharsets.UTF_8);
+        user = Fixtures.userMapper().toScimUser(Fixtures.keycloakUser(1));
+    }
+
+    @Benchmark
+    public ScimUser readUserCodec() throws IOException {
+        return codecReader.readValue(userJson);
+    }
+
+    @Benchmark
+    public ScimUser readUserReflective() throws IOException {
+        return reflectiveReader.readValue(userJson);
+    }
+
+    @Benchmark
+    public byte[] writeUserCodec() throws IOException {
+        return codec.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public byte[] writeUserReflective() throws IOException {
+        return reflective.writeValueAsBytes(user);
+    }
+}
@@ -0,0 +1,39 @@
+package com.learnhai.scim.benchmarks;
+
+import com.learnhai.scim.filter.Filter;
+import com.learnhai.scim.filter.FilterParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilterParserBenchmark {
+
+    // The lookups IdPs issue before every create, plus a compound filter and an extension path
+    @Param({
+            "userName eq \"bjensen@example.com\"",
+            "externalId eq \"8f2c5a8e-1d7b-4b6f-9a51-3b0f0e6c2d11\"",
+            "emails[type eq \"work\" and value co \"@example.com\"] or (userType eq \"Employee\" and not (active eq false))",
+            "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:manager.value eq \"26118915-6090-4610-87e4-49d8ca9f808d\""
+    })
+    public String filter;
+
+    @Benchmark
+    public Filter parse() {
+        return FilterParser.parse(filter);
+    }
+}
@@ -0,0 +1,171 @@
+package com.learnhai.scim.benchmarks;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.learnhai.scim.backend.InMemoryIdentityBackend;
+import com.learnhai.scim.config.WebConfig;
+import com.learnhai.scim.mapper.GroupMapper;
+import com.learnhai.scim.mapper.UserMapper;
+import com.learnhai.scim.mapper.UserMappingPlan;
+import com.learnhai.scim.model.scim.ScimUser;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Representative payloads shared by the benchmarks: a fully populated user as Azure AD / Okta
+ * provision it, and its Keycloak counterpart.
+ */
+final class Fixtures {
+
+    static final String BASE_URL = "https://scim.example.com";
+
+    private Fixtures() {
+    }
+
+    static UserMapper userMapper() {
+        return new UserMapper(BASE_URL, new UserMappingPlan(UserMappingPlan.defaultRules()));
+    }
+
+    static GroupMapper groupMapper() {
+        return new GroupMapper(BASE_URL);
+    }
+
+    /** The application's ObjectMapper, with the streaming SCIM codecs. */
+    static ObjectMapper codecMapper() {
+        return new WebConfig(null).objectMapper(); // the audit interceptor plays no part in the mapper
+    }
+
+    /** The same configuration without the codecs, i.e. Jackson's reflective bean serializers. */
+    static ObjectMapper reflectiveMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        return mapper;
+    }
+
+    static String id(int i) {
+        return new UUID(0x5c1a_0000_0000_0000L | i, i).toString();
+    }
+
+    static UserRepresentation keycloakUser(int i) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId(id(i));
+        user.setUsername("user" + i + "@example.com");
+        user.setFirstName("Given" + i);
+        user.setLastName("Family" + i);
+        user.setEmail("user" + i + "@example.com");
+        user.setEmailVerified(true);
+        user.setEnabled(true);
+        user.setCreatedTimestamp(1_700_000_000_000L + i);
+        Map<String, List<String>> attributes = new HashMap<>();
+        attributes.put("externalId", List.of("ext-" + i));
+        attributes.put("displayName", List.of("Given" + i + " Family" + i));
+        attributes.put("title", List.of("Engineer"));
+        attributes.put("userType", List.of("Employee"));
+        attributes.put("locale", List.of("en-US"));
+        attributes.put("timezone", List.of("Europe/Berlin"));
+        attributes.put("employeeNumber", List.of(String.valueOf(100_000 + i)));
+        attributes.put("costCenter", List.of("CC-42"));
+        attributes.put("organization", List.of("Example Corp"));
+        attributes.put("department", List.of("Research"));
+        attributes.put("managerId", List.of(id(i + 1)));
+        attributes.put("managerDisplayName", List.of("Manager " + i));
+        user.setAttributes(attributes);
+        return user;
+    }
+
+    static ScimUser scimUser(int i) {
+        ScimUser user = new ScimUser();
+        user.setUserName("user" + i + "@example.com");
+        user.setExternalId("ext-" + i);
+        user.setDisplayName("Given" + i + " Family" + i);
+        user.setTitle("Engineer");
+        user.setUserType("Employee");
+        user.setPreferredLanguage("en-US");
+        user.setTimezone("Europe/Berlin");
+        user.setActive(true);
+        ScimUser.Name name = new ScimUser.Name();
+        name.setGivenName("Given" + i);
+        name.setFamilyName("Family" + i);
+        name.setFormatted("Given" + i + " Family" + i);
+        user.setName(name);
+        ScimUser.Email email = new ScimUser.Email();
+        email.setValue("user" + i + "@example.com");
+        email.setType("work");
+        email.setPrimary(true);
+        user.setEmails(List.of(email));
+        ScimUser.EnterpriseUserExtension enterprise = new ScimUser.EnterpriseUserExtension();
+        enterprise.setEmployeeNumber(String.valueOf(100_000 + i));
+        enterprise.setCostCenter("CC-42");
+        enterprise.setOrganization("Example Corp");
+        enterprise.setDepartment("Research");
+        ScimUser.EnterpriseUserExtension.Manager manager = new ScimUser.EnterpriseUserExtension.Manager();
+        manager.setValue(id(i + 1));
+        manager.setDisplayName("Manager " + i);
+        enterprise.setManager(manager);
+        user.setEnterpriseUser(enterprise);
+        user.addSchema(ScimUser.SCHEMA_ENTERPRISE_USER);
+        return user;
+    }
+
+    static List<UserRepresentation> keycloakUsers(int count) {
+        List<UserRepresentation> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(keycloakUser(i));
+        }
+        return users;
+    }
+
+    static GroupRepresentation keycloakGroup(int i) {
+        GroupRepresentation group = new GroupRepresentation();
+        group.setId(id(1_000_000 + i));
+        group.setName("group-" + i);
+        group.setAttributes(Map.of("externalId", List.of("gext-" + i)));
+        return group;
+    }
+
+    static String createUserJson(int i) {
+        return """
+                {"schemas":["urn:ietf:params:scim:schemas:core:2.0:User","urn:ietf:params:scim:schemas:extension:enterprise:2.0:User"],
+                 "externalId":"ext-%1$d","userName":"user%1$d@example.com","active":true,
+                 "name":{"formatted":"Given%1$d Family%1$d","familyName":"Family%1$d","givenName":"Given%1$d"},
+                 "displayName":"Given%1$d Family%1$d","title":"Engineer","userType":"Employee","preferredLanguage":"en-US",
+                 "emails":[{"primary":true,"type":"work","value":"user%1$d@example.com"}],
+                 "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User":{"employeeNumber":"%2$d","costCenter":"CC-42",
+                   "organization":"Example Corp","department":"Research","manager":{"value":"mgr-%1$d"}}}
+                """.formatted(i, 100_000 + i);
+    }
+
+    /** Azure AD style PATCH: replace a handful of attributes, with a filtered email path. */
+    static final String USER_PATCH_JSON = """
+            {"schemas":["urn:ietf:params:scim:api:messages:2.0:PatchOp"],"Operations":[
+              {"op":"Replace","path":"active","value":false},
+              {"op":"Replace","path":"userName","value":"renamed@example.com"},
+              {"op":"Replace","path":"emails[type eq \\"work\\"].value","value":"renamed@example.com"},
+              {"op":"Replace","path":"displayName","value":"Renamed User"},
+              {"op":"Add","path":"urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:department","value":"Sales"}]}
+            """;
+
+    /**
+     * In-memory backend holding users 0..users-1 and group 1 with users 0..members-1, so service
+     * benchmarks measure the bridge's own work rather than admin API round trips.
+     */
+    static InMemoryIdentityBackend inMemoryBackend(int users, int members) {
+        InMemoryIdentityBackend backend = new InMemoryIdentityBackend();
+        for (int i = 0; i < users; i++) {
+            backend.createUser(keycloakUser(i));
+        }
+        String groupId = backend.createGroup(keycloakGroup(1));
+        for (int i = 0; i < members; i++) {
+            backend.addUserToGroup(id(i), groupId);
+        }
+        return backend;
+    }
+}
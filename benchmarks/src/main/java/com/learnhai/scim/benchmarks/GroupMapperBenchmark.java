@@ -0,0 +1,48 @@
+package com.learnhai.scim.benchmarks;
+
+import com.learnhai.scim.mapper.GroupMapper;
+import com.learnhai.scim.model.scim.ScimGroup;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GroupMapperBenchmark {
+
+    @Param({"10", "1000", "50000"})
+    public int members;
+
+    private GroupMapper mapper;
+    private GroupRepresentation group;
+    private List<UserRepresentation> memberList;
+
+    @Setup
+    public void setup() {
+        mapper = Fixtures.groupMapper();
+        group = Fixtures.keycloakGroup(1);
+        memberList = Fixtures.keycloakUsers(members);
+    }
+
+    @Benchmark
+    public ScimGroup toScimGroup() {
+        return mapper.toScimGroup(group, memberList);
+    }
+}
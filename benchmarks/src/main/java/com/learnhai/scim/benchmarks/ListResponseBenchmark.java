@@ -0,0 +1,80 @@
+package com.learnhai.scim.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnhai.scim.mapper.GroupMapper;
+import com.learnhai.scim.mapper.UserMapper;
+import com.learnhai.scim.model.scim.ListResponse;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of a list page, comparing the streaming codecs with Jackson's reflective
+ * serializers on the same objects.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ListResponseBenchmark {
+
+    @Param({"200", "1000"})
+    public int items;
+
+    @Param({"Users", "Groups"})
+    public String resources;
+
+    private ObjectMapper codec;
+    private ObjectMapper reflective;
+    private ListResponse<?> page;
+    private final OutputStream sink = OutputStream.nullOutputStream();
+
+    @Setup
+    public void setup() {
+        codec = Fixtures.codecMapper();
+        reflective = Fixtures.reflectiveMapper();
+        if ("Users".equals(resources)) {
+            UserMapper mapper = Fixtures.userMapper();
+            List<Object> users = new ArrayList<>(items);
+            for (UserRepresentation user : Fixtures.keycloakUsers(items)) {
+                users.add(mapper.toScimUser(user));
+            }
+            page = new ListResponse<>(items * 10L, 1, users);
+        } else {
+            GroupMapper mapper = Fixtures.groupMapper();
+            List<UserRepresentation> members = Fixtures.keycloakUsers(10); // list pages preview ten members
+            List<Object> groups = new ArrayList<>(items);
+            for (int i = 0; i < items; i++) {
+                groups.add(mapper.toScimGroup(Fixtures.keycloakGroup(i), members));
+            }
+            page = new ListResponse<>(items * 10L, 1, groups);
+        }
+    }
+
+    @Benchmark
+    public void streamingCodec() throws IOException {
+        codec.writeValue(sink, page);
+    }
+
+    @Benchmark
+    public void reflective() throws IOException {
+        reflective.writeValue(sink, page);
+    }
+}
@@ -0,0 +1,92 @@
+package com.learnhai.scim.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnhai.scim.backend.InMemoryIdentityBackend;
+import com.learnhai.scim.index.UserKeyIndex;
+import com.learnhai.scim.mapper.UserMappingPlan;
+import com.learnhai.scim.model.scim.ScimGroup;
+import com.learnhai.scim.model.scim.ScimUser;
+import com.learnhai.scim.service.GroupHierarchyCache;
+import com.learnhai.scim.service.IdempotencyService;
+import com.learnhai.scim.service.MembershipIndex;
+import com.learnhai.scim.service.ScimGroupService;
+import com.learnhai.scim.service.ScimUserService;
+import com.learnhai.scim.service.UserChangeIndex;
+import com.learnhai.scim.service.WriteOutcomes;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PATCH application through the real services against the in-memory identity backend, so the
+ * numbers cover operation dispatch, mapping and the re-read, but no network. After the first
+ * invocation the patches leave the stored state unchanged, which keeps every iteration identical:
+ * the user PATCH then measures a suppressed write, and the group PATCH (with the membership index
+ * off, so the adds cannot be skipped) a stamp-only one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PatchBenchmark {
+
+    private ScimUserService userService;
+    private ScimGroupService groupService;
+    private Map<String, Object> userPatch;
+    private Map<String, Object> groupPatch;
+
+    @Setup
+    public void setup() throws Exception {
+        // 200 members, plus the ten users the group PATCH adds
+        InMemoryIdentityBackend backend = Fixtures.inMemoryBackend(510, 200);
+        GroupHierarchyCache groupHierarchy = new GroupHierarchyCache(backend, Long.MAX_VALUE);
+        MembershipIndex membershipIndex = new MembershipIndex(backend, groupHierarchy, false, Long.MAX_VALUE); // PATCH cost only
+        UserKeyIndex keyIndex = new UserKeyIndex(backend, new UserMappingPlan(UserMappingPlan.defaultRules()), false, "", 0); // no files
+        WriteOutcomes writeOutcomes = new WriteOutcomes(new SimpleMeterRegistry());
+        IdempotencyService idempotency = new IdempotencyService(false, 0, 0); // creates only
+        userService = new ScimUserService(backend, Fixtures.userMapper(), membershipIndex, new UserChangeIndex(backend, Long.MAX_VALUE),
+                keyIndex, writeOutcomes, idempotency);
+        groupService = new ScimGroupService(backend, Fixtures.groupMapper(), groupHierarchy, membershipIndex, writeOutcomes,
+                idempotency, 1000, 10);
+
+        ObjectMapper mapper = Fixtures.codecMapper();
+        TypeReference<Map<String, Object>> type = new TypeReference<>() { };
+        userPatch = mapper.readValue(Fixtures.USER_PATCH_JSON, type);
+
+        // Okta style membership sync: add ten members, remove one
+        List<Map<String, Object>> added = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            added.add(Map.of("value", Fixtures.id(500 + i), "type", "User"));
+        }
+        groupPatch = Map.of("schemas", List.of("urn:ietf:params:scim:api:messages:2.0:PatchOp"),
+                "Operations", List.of(
+                        Map.of("op", "add", "path", "members", "value", added),
+                        Map.of("op", "remove", "path", "members[value eq \"" + Fixtures.id(3) + "\"]")));
+    }
+
+    @Benchmark
+    public ScimUser patchUser() {
+        return userService.patchUser(Fixtures.id(1), userPatch);
+    }
+
+    @Benchmark
+    public ScimGroup patchGroupMembers() {
+        return groupService.patchGroup(Fixtures.id(1_000_001), groupPatch);
+    }
+}
@@ -0,0 +1,65 @@
+package com.learnhai.scim.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnhai.scim.model.scim.ScimUser;
+import com.learnhai.scim.schema.ScimSchemaValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of schema validation per request, on its own and together with binding to the model.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SchemaValidatorBenchmark {
+
+    private ScimSchemaValidator validator;
+    private JsonNode createBody;
+    private JsonNode patchBody;
+
+    @Setup
+    public void setup() throws Exception {
+        ObjectMapper mapper = Fixtures.codecMapper();
+        validator = new ScimSchemaValidator(mapper, true, false, true);
+        createBody = mapper.readTree(Fixtures.createUserJson(1));
+        patchBody = mapper.readTree(Fixtures.USER_PATCH_JSON);
+    }
+
+    @Benchmark
+    public JsonNode validateCreate() {
+        validator.validateResource(ScimSchemaValidator.USER, createBody);
+        return createBody;
+    }
+
+    @Benchmark
+    public JsonNode validatePatch() {
+        validator.validatePatch(ScimSchemaValidator.USER, patchBody);
+        return patchBody;
+    }
+
+    @Benchmark
+    public ScimUser validateAndBindCreate() {
+        return validator.readResource(ScimSchemaValidator.USER, createBody, ScimUser.class);
+    }
+
+    @Benchmark
+    public Map<String, Object> validateAndBindPatch() {
+        return validator.readPatch(ScimSchemaValidator.USER, patchBody);
+    }
+}
@@ -0,0 +1,47 @@
+package com.learnhai.scim.benchmarks;
+
+import com.learnhai.scim.mapper.UserMapper;
+import com.learnhai.scim.model.scim.ScimUser;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserMapperBenchmark {
+
+    private UserMapper mapper;
+    private UserRepresentation keycloakUser;
+    private ScimUser scimUser;
+
+    @Setup
+    public void setup() {
+        mapper = Fixtures.userMapper();
+        keycloakUser = Fixtures.keycloakUser(1);
+        scimUser = Fixtures.scimUser(1);
+    }
+
+    @Benchmark
+    public ScimUser toScimUser() {
+        return mapper.toScimUser(keycloakUser);
+    }
+
+    @Benchmark
+    public UserRepresentation toKeycloakUser() {
+        return mapper.toKeycloakUser(scimUser, null);
+    }
+}
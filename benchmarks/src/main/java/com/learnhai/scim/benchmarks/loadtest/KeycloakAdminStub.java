@@ -0,0 +1,527 @@
+package com.learnhai.scim.benchmarks.loadtest;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.PartialImportRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process stand-in for the parts of the Keycloak admin REST API that {@code KeycloakService}
+ * calls, plus the OpenID endpoints the bridge needs: the client-credentials token endpoint for the
+ * admin client, and discovery/JWKS so the bridge can validate bearer tokens minted by
+ * {@link #issueToken}. Binds to the loopback interface only.
+ * <p>
+ * Admin calls can be slowed down ({@code latencyMillis} plus up to {@code jitterMillis}) and made
+ * to fail with 503 at {@code errorRate}; token and key endpoints are never delayed or failed.
+ * Every admin call is counted per {@link Route}.
+ */
+final class KeycloakAdminStub implements AutoCloseable {
+
+    /** Admin endpoints, as counted by the stub. */
+    enum Route {
+        USER_GET, USER_LOOKUP, USER_ATTRIBUTE_SEARCH, USER_SEARCH, USER_LIST, USER_COUNT, USER_CREATE, USER_UPDATE, USER_DELETE, USER_GROUPS,
+        MEMBERSHIP_ADD, MEMBERSHIP_REMOVE,
+        GROUP_GET, GROUP_LIST, GROUP_COUNT, GROUP_CREATE, GROUP_UPDATE, GROUP_DELETE, GROUP_MEMBERS, GROUP_CHILDREN,
+        PARTIAL_IMPORT,
+        UNSUPPORTED
+    }
+
+    private static final String KEY_ID = "loadtest";
+
+    static {
+        // Without TCP_NODELAY the JDK server's separate header and body writes meet the client's
+        // delayed ACK on kept-alive connections, adding ~40 ms to every call
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final Map<String, SyntheticRealm> realms = new ConcurrentHashMap<>();
+    private final KeyPair signingKey;
+    private final Map<Route, LongAdder> calls = new EnumMap<>(Route.class);
+    private final LongAdder injectedErrors = new LongAdder();
+
+    private volatile long latencyMillis;
+    private volatile long jitterMillis;
+    private volatile double errorRate;
+
+    KeycloakAdminStub(int port, int threads) throws IOException {
+        for (Route route : Route.values()) {
+            calls.put(route, new LongAdder());
+        }
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            signingKey = generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("RSA is not available", e);
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "keycloak-stub");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/realms/", this::handleOpenId);
+        server.createContext("/admin/realms/", this::handleAdmin);
+        server.start();
+    }
+
+    SyntheticRealm addRealm(String name, int users, int groups) {
+        SyntheticRealm realm = new SyntheticRealm(name, users, groups);
+        realms.put(name, realm);
+        return realm;
+    }
+
+    void setLatency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+    }
+
+    void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    String baseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    String issuer(String realm) {
+        return baseUrl() + "/realms/" + realm;
+    }
+
+    long adminCalls() {
+        long total = 0;
+        for (LongAdder adder : calls.values()) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    Map<Route, Long> callsByRoute() {
+        Map<Route, Long> snapshot = new EnumMap<>(Route.class);
+        calls.forEach((route, adder) -> snapshot.put(route, adder.sum()));
+        return snapshot;
+    }
+
+    long injectedErrors() {
+        return injectedErrors.sum();
+    }
+
+    /** An RS256 access token for {@code clientId}, issued by {@code realm}. */
+    String issueToken(String realm, String clientId, long ttlSeconds) {
+        long now = System.currentTimeMillis() / 1000;
+        Map<String, Object> header = Map.of("alg", "RS256", "typ", "JWT", "kid", KEY_ID);
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put("iss", issuer(realm));
+        claims.put("sub", clientId);
+        claims.put("azp", clientId);
+        claims.put("typ", "Bearer");
+        claims.put("iat", now);
+        claims.put("exp", now + ttlSeconds);
+        try {
+            Base64.Encoder b64 = Base64.getUrlEncoder().withoutPadding();
+            String signingInput = b64.encodeToString(mapper.writeValueAsBytes(header)) + "."
+                    + b64.encodeToString(mapper.writeValueAsBytes(claims));
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(signingKey.getPrivate());
+            signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+            return signingInput + "." + b64.encodeToString(signature.sign());
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Could not sign token", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // --- OpenID endpoints: /realms/{realm}/... ---
+
+    private void handleOpenId(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String[] segments = segments(exchange, "/realms/");
+            String realm = segments[0];
+            String rest = String.join("/", Arrays.copyOfRange(segments, 1, segments.length));
+            switch (rest) {
+                case "protocol/openid-connect/token" -> {
+                    Map<String, String> form = parseQuery(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+                    String clientId = form.getOrDefault("client_id", "admin-cli");
+                    Map<String, Object> token = new LinkedHashMap<>();
+                    token.put("access_token", issueToken(realm, clientId, 3600));
+                    token.put("expires_in", 3600);
+                    token.put("refresh_expires_in", 0);
+                    token.put("token_type", "Bearer");
+                    token.put("not-before-policy", 0);
+                    token.put("scope", "profile email");
+                    sendJson(exchange, 200, token);
+                }
+                case ".well-known/openid-configuration" -> {
+                    String issuer = issuer(realm);
+                    Map<String, Object> discovery = new LinkedHashMap<>();
+                    discovery.put("issuer", issuer);
+                    discovery.put("authorization_endpoint", issuer + "/protocol/openid-connect/auth");
+                    discovery.put("token_endpoint", issuer + "/protocol/openid-connect/token");
+                    discovery.put("jwks_uri", issuer + "/protocol/openid-connect/certs");
+                    discovery.put("response_types_supported", List.of("code", "token"));
+                    discovery.put("subject_types_supported", List.of("public"));
+                    discovery.put("id_token_signing_alg_values_supported", List.of("RS256"));
+                    discovery.put("grant_types_supported", List.of("client_credentials"));
+                    sendJson(exchange, 200, discovery);
+                }
+                case "protocol/openid-connect/certs" -> {
+                    RSAPublicKey key = (RSAPublicKey) signingKey.getPublic();
+                    Map<String, Object> jwk = new LinkedHashMap<>();
+                    jwk.put("kid", KEY_ID);
+                    jwk.put("kty", "RSA");
+                    jwk.put("alg", "RS256");
+                    jwk.put("use", "sig");
+                    jwk.put("n", base64Unsigned(key.getModulus()));
+                    jwk.put("e", base64Unsigned(key.getPublicExponent()));
+                    sendJson(exchange, 200, Map.of("keys", List.of(jwk)));
+                }
+                default -> sendError(exchange, 404, "Not found");
+            }
+        }
+    }
+
+    private static String base64Unsigned(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length); // drop the sign byte
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    // --- Admin endpoints: /admin/realms/{realm}/... ---
+
+    private void handleAdmin(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String[] segments = segments(exchange, "/admin/realms/");
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            Route route = route(exchange.getRequestMethod(), segments, query);
+            calls.get(route).increment();
+            // Always drain the body: the JDK server drops the connection if any of it is left unread
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            if (!injectFaults(exchange)) {
+                return;
+            }
+            SyntheticRealm realm = realms.get(segments[0]);
+            if (realm == null) {
+                sendError(exchange, 404, "Realm not found.");
+                return;
+            }
+            try {
+                dispatch(exchange, realm, route, segments, query, body);
+            } catch (RuntimeException e) {
+                sendError(exchange, 500, e.toString());
+            }
+        }
+    }
+
+    private static Route route(String method, String[] s, Map<String, String> query) {
+        int n = s.length;
+        if (n >= 2 && s[1].equals("users")) {
+            if (n == 2) {
+                if (method.equals("POST")) {
+                    return Route.USER_CREATE;
+                }
+                if (query.containsKey("username") || query.containsKey("email")) {
+                    return Route.USER_LOOKUP;
+                }
+                if (query.containsKey("q")) {
+                    return Route.USER_ATTRIBUTE_SEARCH;
+                }
+                return query.containsKey("search") ? Route.USER_SEARCH : Route.USER_LIST;
+            }
+            if (n == 3 && s[2].equals("count")) {
+                return Route.USER_COUNT;
+            }
+            if (n == 3) {
+                return switch (method) {
+                    case "GET" -> Route.USER_GET;
+                    case "PUT" -> Route.USER_UPDATE;
+                    case "DELETE" -> Route.USER_DELETE;
+                    default -> Route.UNSUPPORTED;
+                };
+            }
+            if (n == 4 && s[3].equals("groups")) {
+                return method.equals("GET") ? Route.USER_GROUPS : Route.UNSUPPORTED;
+            }
+            if (n == 5 && s[3].equals("groups")) {
+                return method.equals("PUT") ? Route.MEMBERSHIP_ADD : method.equals("DELETE") ? Route.MEMBERSHIP_REMOVE : Route.UNSUPPORTED;
+            }
+        } else if (n >= 2 && s[1].equals("groups")) {
+            if (n == 2) {
+                return method.equals("POST") ? Route.GROUP_CREATE : Route.GROUP_LIST;
+            }
+            if (n == 3 && s[2].equals("count")) {
+                return Route.GROUP_COUNT;
+            }
+            if (n == 3) {
+                return switch (method) {
+                    case "GET" -> Route.GROUP_GET;
+                    case "PUT" -> Route.GROUP_UPDATE;
+                    case "DELETE" -> Route.GROUP_DELETE;
+                    default -> Route.UNSUPPORTED;
+                };
+            }
+            if (n == 4 && s[3].equals("members")) {
+                return Route.GROUP_MEMBERS;
+            }
+            if (n == 4 && s[3].equals("children") && method.equals("GET")) {
+                return Route.GROUP_CHILDREN;
+            }
+        } else if (n == 2 && s[1].equals("partialImport") && method.equals("POST")) {
+            return Route.PARTIAL_IMPORT;
+        }
+        return Route.UNSUPPORTED;
+    }
+
+    // Returns false if the request was failed on purpose
+    private boolean injectFaults(HttpExchange exchange) throws IOException {
+        long delay = latencyMillis;
+        if (jitterMillis > 0) {
+            delay += ThreadLocalRandom.current().nextLong(jitterMillis + 1);
+        }
+        if (delay > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            injectedErrors.increment();
+            sendError(exchange, 503, "Injected failure");
+            return false;
+        }
+        return true;
+    }
+
+    private void dispatch(HttpExchange exchange, SyntheticRealm realm, Route route, String[] s,
+                          Map<String, String> query, byte[] body) throws IOException {
+        int first = intParam(query, "first", 0);
+        int max = intParam(query, "max", 100);
+        switch (route) {
+            case USER_LOOKUP -> {
+                if (query.containsKey("username")) {
+                    UserRepresentation user = realm.findByUsername(query.get("username"));
+                    sendJson(exchange, 200, user == null ? List.of() : List.of(user));
+                } else {
+                    sendJson(exchange, 200, realm.findByEmail(query.get("email")));
+                }
+            }
+            case USER_ATTRIBUTE_SEARCH -> {
+                // q=name:value, one attribute, as the bridge sends it
+                String q = query.get("q");
+                int colon = q.indexOf(':');
+                sendJson(exchange, 200, colon < 0 ? List.of() : realm.findByAttribute(q.substring(0, colon), q.substring(colon + 1)));
+            }
+            case USER_SEARCH -> sendJson(exchange, 200, realm.search(query.get("search"), first, max));
+            case USER_LIST -> sendJson(exchange, 200, realm.list(first, max));
+            case USER_COUNT -> {
+                String search = query.get("search");
+                sendJson(exchange, 200, search == null || search.isEmpty() ? realm.countUsers() : realm.countSearch(search));
+            }
+            case USER_CREATE -> {
+                String id = realm.createUser(mapper.readValue(body, UserRepresentation.class));
+                if (id == null) {
+                    sendJson(exchange, 409, Map.of("errorMessage", "User exists with same username"));
+                } else {
+                    created(exchange, "users", realm, id);
+                }
+            }
+            case USER_GET -> sendFound(exchange, realm.getUser(s[2]), "User not found");
+            case USER_UPDATE -> sendNoContent(exchange, realm.updateUser(s[2], mapper.readValue(body, UserRepresentation.class)), "User not found");
+            case USER_DELETE -> sendNoContent(exchange, realm.deleteUser(s[2]), "User not found");
+            case USER_GROUPS -> sendFound(exchange, realm.groupsOf(s[2], first, max), "User not found");
+            case MEMBERSHIP_ADD -> sendNoContent(exchange, realm.join(s[2], s[4]), "Not found");
+            case MEMBERSHIP_REMOVE -> sendNoContent(exchange, realm.leave(s[2], s[4]), "Not found");
+            case GROUP_LIST -> sendJson(exchange, 200, realm.listGroups(query.get("search"), first, max));
+            case GROUP_COUNT -> sendJson(exchange, 200, Map.of("count", realm.countGroups(query.get("search"))));
+            case GROUP_CREATE -> {
+                String id = realm.createGroup(mapper.readValue(body, GroupRepresentation.class));
+                if (id == null) {
+                    sendJson(exchange, 409, Map.of("errorMessage", "Top level group named already exists."));
+                } else {
+                    created(exchange, "groups", realm, id);
+                }
+            }
+            case GROUP_GET -> sendFound(exchange, realm.getGroup(s[2]), "Could not find group by id");
+            case GROUP_UPDATE -> sendNoContent(exchange, realm.updateGroup(s[2], mapper.readValue(body, GroupRepresentation.class)), "Could not find group by id");
+            case GROUP_DELETE -> sendNoContent(exchange, realm.deleteGroup(s[2]), "Could not find group by id");
+            case GROUP_MEMBERS -> sendFound(exchange, realm.members(s[2], first, max), "Could not find group by id");
+            case GROUP_CHILDREN -> sendFound(exchange, realm.getGroup(s[2]) == null ? null : List.of(), "Could not find group by id");
+            case PARTIAL_IMPORT -> partialImport(exchange, realm, mapper.readValue(body, PartialImportRepresentation.class));
+            default -> sendError(exchange, 404, "Unsupported endpoint");
+        }
+    }
+
+    /**
+     * Keycloak's partial import of users and top-level groups (subgroups are not modelled), with the
+     * same results body. OVERWRITE is treated as SKIP, and FAIL is checked before anything is created.
+     */
+    private void partialImport(HttpExchange exchange, SyntheticRealm realm, PartialImportRepresentation batch) throws IOException {
+        List<GroupRepresentation> groups = batch.getGroups() != null ? batch.getGroups() : List.of();
+        List<UserRepresentation> users = batch.getUsers() != null ? batch.getUsers() : List.of();
+        if (batch.getPolicy() == null || batch.getPolicy() == PartialImportRepresentation.Policy.FAIL) {
+            for (GroupRepresentation group : groups) {
+                if (realm.findGroupByName(group.getName()) != null) {
+                    sendJson(exchange, 409, Map.of("errorMessage", "Top level group named '" + group.getName() + "' already exists."));
+                    return;
+                }
+            }
+            for (UserRepresentation user : users) {
+                if (realm.findByUsername(user.getUsername()) != null) {
+                    sendJson(exchange, 409, Map.of("errorMessage", "User with username '" + user.getUsername() + "' already exists."));
+                    return;
+                }
+            }
+        }
+        List<Map<String, Object>> results = new ArrayList<>();
+        int added = 0;
+        for (GroupRepresentation group : groups) {
+            group.setSubGroups(null);
+            String id = realm.createGroup(group);
+            if (id != null) {
+                added++;
+            }
+            results.add(importResult(id != null ? "ADDED" : "SKIPPED", "GROUP", group.getName(),
+                    id != null ? id : realm.findGroupByName(group.getName()).getId()));
+        }
+        for (UserRepresentation user : users) {
+            List<String> paths = user.getGroups();
+            user.setGroups(null);
+            String id = realm.createUser(user);
+            if (id == null) {
+                results.add(importResult("SKIPPED", "USER", user.getUsername(), realm.findByUsername(user.getUsername()).getId()));
+                continue;
+            }
+            added++;
+            for (String path : paths != null ? paths : List.<String>of()) {
+                GroupRepresentation group = realm.findGroupByName(path.substring(path.lastIndexOf('/') + 1));
+                if (group != null) {
+                    realm.join(id, group.getId());
+                }
+            }
+            results.add(importResult("ADDED", "USER", user.getUsername(), id));
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("overwritten", 0);
+        response.put("added", added);
+        response.put("skipped", results.size() - added);
+        response.put("results", results);
+        sendJson(exchange, 200, response);
+    }
+
+    private static Map<String, Object> importResult(String action, String resourceType, String name, String id) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("action", action);
+        result.put("resourceType", resourceType);
+        result.put("resourceName", name);
+        result.put("id", id);
+        return result;
+    }
+
+    private void created(HttpExchange exchange, String collection, SyntheticRealm realm, String id) throws IOException {
+        exchange.getResponseHeaders().set("Location", baseUrl() + "/admin/realms/" + realm.name() + "/" + collection + "/" + id);
+        exchange.sendResponseHeaders(201, -1);
+    }
+
+    private void sendFound(HttpExchange exchange, Object body, String notFound) throws IOException {
+        if (body == null) {
+            sendError(exchange, 404, notFound);
+        } else {
+            sendJson(exchange, 200, body);
+        }
+    }
+
+    private void sendNoContent(HttpExchange exchange, boolean found, String notFound) throws IOException {
+        if (found) {
+            exchange.sendResponseHeaders(204, -1);
+        } else {
+            sendError(exchange, 404, notFound);
+        }
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, Map.of("error", message));
+    }
+
+    private void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String[] segments(HttpExchange exchange, String prefix) {
+        String path = exchange.getRequestURI().getPath().substring(prefix.length());
+        return path.split("/");
+    }
+
+    private static Map<String, String> parseQuery(String raw) {
+        Map<String, String> params = new HashMap<>();
+        if (raw == null || raw.isEmpty()) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(key, value);
+        }
+        return params;
+    }
+
+    private static int intParam(Map<String, String> query, String name, int defaultValue) {
+        String value = query.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        long parsed = Long.parseLong(value);
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, parsed));
+    }
+}
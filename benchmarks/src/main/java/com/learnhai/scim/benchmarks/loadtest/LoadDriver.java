@@ -0,0 +1,480 @@
+package com.learnhai.scim.benchmarks.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.learnhai.scim.ScimKeycloakBridgeApplication;
+import com.learnhai.scim.benchmarks.loadtest.TrafficMix.Operation;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end load test on one box: starts {@link KeycloakAdminStub} with a seeded realm, boots the
+ * bridge in-process against it, replays an IdP traffic mix from concurrent clients and reports
+ * throughput, latency percentiles and Keycloak admin calls per SCIM request.
+ * <pre>
+ *   java -cp target/benchmarks.jar com.learnhai.scim.benchmarks.loadtest.LoadDriver
+ *        [--mix azure|okta] [--users 1000000] [--groups 100] [--clients 32]
+ *        [--warmup 10] [--duration 30] [--latency-ms 2] [--jitter-ms 1] [--error-rate 0.0]
+ *        [--report results/loadtest.json] [--bridge-log-level WARN] [--stub-only]
+ * </pre>
+ * Everything listens on the loopback interface. Before the timed run each operation is issued a
+ * few times on its own, so its exact Keycloak call count can be attributed; the timed run reports
+ * the aggregate ratio. {@code --stub-only} just serves the stub, for pointing an external bridge at.
+ */
+public final class LoadDriver {
+
+    private static final String REALM = "loadtest";
+    private static final String CLIENT_ID = "scim-bridge-loadtest";
+    private static final int CALIBRATION_SAMPLES = 5;
+    private static final String PATCH_SCHEMA = "urn:ietf:params:scim:api:messages:2.0:PatchOp";
+
+    private final Settings settings;
+    private final KeycloakAdminStub stub;
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final AtomicLong sequence = new AtomicLong();
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private String scimUrl;
+    private String bearer;
+
+    private LoadDriver(Settings settings, KeycloakAdminStub stub) {
+        this.settings = settings;
+        this.stub = stub;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = Settings.parse(args);
+        try (KeycloakAdminStub stub = new KeycloakAdminStub(settings.stubPort, settings.stubThreads)) {
+            stub.addRealm(REALM, settings.users, settings.groups);
+            System.out.printf("Keycloak stub on %s, realm '%s' with %,d users / %,d groups%n",
+                    stub.baseUrl(), REALM, settings.users, settings.groups);
+            if (settings.stubOnly) {
+                System.out.printf("Issuer: %s%nToken:  %s%n", stub.issuer(REALM), stub.issueToken(REALM, CLIENT_ID, 86_400));
+                Thread.currentThread().join();
+            }
+
+            try (ConfigurableApplicationContext bridge = startBridge(stub, settings)) {
+                LoadDriver driver = new LoadDriver(settings, stub);
+                int port = ((WebServerApplicationContext) bridge).getWebServer().getPort();
+                driver.scimUrl = "http://127.0.0.1:" + port + "/scim/v2";
+                driver.bearer = "Bearer " + stub.issueToken(REALM, CLIENT_ID, 86_400);
+                driver.run();
+            }
+        }
+        System.exit(0);
+    }
+
+    private static ConfigurableApplicationContext startBridge(KeycloakAdminStub stub, Settings settings) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("server.port", 0);
+        properties.put("server.address", "127.0.0.1");
+        properties.put("spring.main.banner-mode", "off");
+        properties.put("logging.level.root", "WARN");
+        properties.put("logging.level.com.learnhai.scim", settings.bridgeLogLevel);
+        properties.put("keycloak.server-url", stub.baseUrl());
+        properties.put("keycloak.realm", "master");
+        properties.put("keycloak.client-id", CLIENT_ID);
+        properties.put("keycloak.client-secret", "loadtest");
+        properties.put("keycloak.target-realm", REALM);
+        properties.put("spring.security.oauth2.resourceserver.jwt.issuer-uri", stub.issuer(REALM));
+        properties.put("scim.base-url", "http://127.0.0.1");
+        // As command-line arguments, so they take precedence over the bridge's application.yml
+        String[] args = properties.entrySet().stream().map(e -> "--" + e.getKey() + "=" + e.getValue()).toArray(String[]::new);
+        return new SpringApplicationBuilder(ScimKeycloakBridgeApplication.class).run(args);
+    }
+
+    private void run() throws Exception {
+        TrafficMix mix = settings.mix;
+        stub.setLatency(settings.latencyMillis, settings.jitterMillis);
+
+        // Per-operation Keycloak calls, measured one request at a time with faults off
+        Map<Operation, Double> callsPerOperation = new EnumMap<>(Operation.class);
+        double savedErrorRate = settings.errorRate;
+        stub.setErrorRate(0);
+        Recorder calibration = new Recorder();
+        for (Operation operation : mix.weights().keySet()) {
+            long before = stub.adminCalls();
+            for (int i = 0; i < CALIBRATION_SAMPLES; i++) {
+                execute(operation, calibration);
+            }
+            callsPerOperation.put(operation, (stub.adminCalls() - before) / (double) CALIBRATION_SAMPLES);
+        }
+        stub.setErrorRate(savedErrorRate);
+
+        if (settings.warmupSeconds > 0) {
+            System.out.printf("Warming up for %d s...%n", settings.warmupSeconds);
+            drive(mix, settings.warmupSeconds);
+        }
+        System.out.printf("Running %s with %d clients for %d s...%n", mix, settings.clients, settings.durationSeconds);
+        Map<KeycloakAdminStub.Route, Long> callsBefore = stub.callsByRoute();
+        long adminBefore = stub.adminCalls();
+        long injectedBefore = stub.injectedErrors();
+        long start = System.nanoTime();
+        Recorder result = drive(mix, settings.durationSeconds);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        long adminCalls = stub.adminCalls() - adminBefore;
+        Map<KeycloakAdminStub.Route, Long> callsByRoute = new EnumMap<>(KeycloakAdminStub.Route.class);
+        stub.callsByRoute().forEach((route, count) -> {
+            long delta = count - callsBefore.getOrDefault(route, 0L);
+            if (delta > 0) {
+                callsByRoute.put(route, delta);
+            }
+        });
+
+        Map<String, Object> report = report(result, callsPerOperation, elapsedSeconds, adminCalls, callsByRoute,
+                stub.injectedErrors() - injectedBefore);
+        if (settings.reportFile != null) {
+            File file = new File(settings.reportFile);
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, report);
+            System.out.println("Report written to " + file.getPath());
+        }
+    }
+
+    private Recorder drive(TrafficMix mix, int seconds) throws Exception {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        ExecutorService clients = Executors.newFixedThreadPool(settings.clients);
+        try {
+            List<Future<Recorder>> futures = new ArrayList<>();
+            for (int c = 0; c < settings.clients; c++) {
+                futures.add(clients.submit(() -> {
+                    Recorder recorder = new Recorder();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        execute(mix.next(random), recorder);
+                    }
+                    return recorder;
+                }));
+            }
+            Recorder total = new Recorder();
+            for (Future<Recorder> future : futures) {
+                total.merge(future.get());
+            }
+            return total;
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private void execute(Operation operation, Recorder recorder) {
+        HttpRequest request = request(operation, ThreadLocalRandom.current());
+        long start = System.nanoTime();
+        int status;
+        try {
+            status = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            status = 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        recorder.record(operation, System.nanoTime() - start, status);
+    }
+
+    // --- Requests ---
+
+    private HttpRequest request(Operation operation, ThreadLocalRandom random) {
+        int users = settings.users;
+        int groups = settings.groups;
+        int user = random.nextInt(users);
+        return switch (operation) {
+            case LOOKUP_USER -> get("/Users?filter=" + encode("userName eq \"" + SyntheticRealm.username(user) + "\""));
+            case LOOKUP_MISSING_USER -> get("/Users?filter=" + encode("userName eq \"" + freshUsername() + "\""));
+            case GET_USER -> get("/Users/" + SyntheticRealm.userId(user));
+            case LIST_USERS -> get("/Users?startIndex=" + (1 + random.nextInt(Math.max(1, users - 100))) + "&count=100");
+            case CREATE_USER -> {
+                String userName = freshUsername();
+                yield send("POST", "/Users", userJson(userName, userName.substring(0, userName.indexOf('@')), true));
+            }
+            case REPLACE_USER -> send("PUT", "/Users/" + SyntheticRealm.userId(user),
+                    userJson(SyntheticRealm.username(user), "ext-" + user, random.nextInt(10) != 0));
+            case PATCH_USER -> send("PATCH", "/Users/" + SyntheticRealm.userId(user), patchUserJson(random));
+            case LOOKUP_GROUP -> get("/Groups?filter=" + encode("displayName eq \"" + SyntheticRealm.groupName(random.nextInt(groups)) + "\""));
+            case GET_GROUP -> get("/Groups/" + SyntheticRealm.groupId(random.nextInt(groups)));
+            // Half the probes ask about the user's seeded group, half about the next one
+            case PROBE_MEMBERSHIP -> get("/Groups?excludedAttributes=members&filter=" + encode("id eq \"" + SyntheticRealm.groupId((user + random.nextInt(2)) % groups)
+                    + "\" and members[value eq \"" + SyntheticRealm.userId(user) + "\"]"));
+            // A user outside its seeded group joins it; a seeded member leaves its own group
+            case ADD_MEMBER -> send("PATCH", "/Groups/" + SyntheticRealm.groupId((user + 1) % groups),
+                    memberPatchJson("Add", "members", SyntheticRealm.userId(user)));
+            case REMOVE_MEMBER -> send("PATCH", "/Groups/" + SyntheticRealm.groupId(user % groups),
+                    memberPatchJson("Remove", "members[value eq \"" + SyntheticRealm.userId(user) + "\"]", null));
+        };
+    }
+
+    private String freshUsername() {
+        return "lt-" + runId + "-" + sequence.incrementAndGet() + SyntheticRealm.EMAIL_DOMAIN;
+    }
+
+    private HttpRequest get(String path) {
+        return builder(path).GET().build();
+    }
+
+    private HttpRequest send(String method, String path, String body) {
+        return builder(path)
+                .header("Content-Type", "application/scim+json")
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private HttpRequest.Builder builder(String path) {
+        return HttpRequest.newBuilder(URI.create(scimUrl + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Authorization", bearer)
+                .header("Accept", "application/scim+json");
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String userJson(String userName, String externalId, boolean active) {
+        String local = userName.substring(0, userName.indexOf('@'));
+        return """
+                {"schemas":["urn:ietf:params:scim:schemas:core:2.0:User","urn:ietf:params:scim:schemas:extension:enterprise:2.0:User"],
+                 "externalId":"%2$s","userName":"%1$s","active":%3$s,
+                 "name":{"givenName":"Given %4$s","familyName":"Family %4$s"},
+                 "displayName":"Given %4$s Family %4$s","title":"Engineer",
+                 "emails":[{"value":"%1$s","type":"work","primary":true}],
+                 "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User":{"department":"Research","costCenter":"CC-42"}}
+                """.formatted(userName, externalId, active, local);
+    }
+
+    private static String patchUserJson(ThreadLocalRandom random) {
+        // Azure AD style: capitalised ops and booleans as strings
+        return """
+                {"schemas":["%s"],"Operations":[
+                 {"op":"Replace","path":"active","value":"%s"},
+                 {"op":"Replace","path":"title","value":"Engineer %d"}]}
+                """.formatted(PATCH_SCHEMA, random.nextInt(10) != 0 ? "True" : "False", random.nextInt(5));
+    }
+
+    private static String memberPatchJson(String op, String path, String userId) {
+        String value = userId == null ? "" : ",\"value\":[{\"value\":\"" + userId + "\",\"type\":\"User\"}]";
+        return "{\"schemas\":[\"" + PATCH_SCHEMA + "\"],\"Operations\":[{\"op\":\"" + op + "\",\"path\":\"" + path.replace("\"", "\\\"") + "\"" + value + "}]}";
+    }
+
+    // --- Reporting ---
+
+    private Map<String, Object> report(Recorder result, Map<Operation, Double> callsPerOperation, double seconds,
+                                       long adminCalls, Map<KeycloakAdminStub.Route, Long> callsByRoute, long injectedErrors) {
+        long requests = result.requests();
+        System.out.printf("%nMix %s, %d clients, %.1f s, %,d users / %,d groups, Keycloak latency %d ms + 0-%d ms, error rate %.2f%%%n",
+                settings.mix, settings.clients, seconds, settings.users, settings.groups,
+                settings.latencyMillis, settings.jitterMillis, settings.errorRate * 100);
+        System.out.printf("%-20s %10s %8s %10s %9s %9s %9s %12s%n",
+                "Operation", "requests", "errors", "req/s", "p50 ms", "p99 ms", "max ms", "KC calls/req");
+
+        Map<String, Object> operations = new LinkedHashMap<>();
+        for (Operation operation : Operation.values()) {
+            long[] samples = result.samples(operation);
+            if (samples.length == 0) {
+                continue;
+            }
+            Map<String, Object> row = row(samples, result.errors(operation), seconds);
+            row.put("keycloakCallsPerRequest", callsPerOperation.get(operation));
+            operations.put(operation.name(), row);
+            print(operation.name(), row);
+        }
+        Map<String, Object> total = row(result.allSamples(), result.totalErrors(), seconds);
+        total.put("keycloakCallsPerRequest", requests == 0 ? 0.0 : adminCalls / (double) requests);
+        print("TOTAL", total);
+
+        System.out.printf("%nKeycloak admin calls: %,d (%.2f per SCIM request), injected failures: %,d%n",
+                adminCalls, total.get("keycloakCallsPerRequest"), injectedErrors);
+        callsByRoute.forEach((route, count) -> System.out.printf("  %-18s %,12d%n", route, count));
+        System.out.println("Status codes: " + result.statuses());
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("mix", settings.mix.name());
+        report.put("clients", settings.clients);
+        report.put("durationSeconds", seconds);
+        report.put("users", settings.users);
+        report.put("groups", settings.groups);
+        report.put("latencyMillis", settings.latencyMillis);
+        report.put("jitterMillis", settings.jitterMillis);
+        report.put("errorRate", settings.errorRate);
+        report.put("total", total);
+        report.put("operations", operations);
+        report.put("keycloakCalls", callsByRoute);
+        report.put("injectedFailures", injectedErrors);
+        report.put("statusCodes", result.statuses());
+        return report;
+    }
+
+    private static Map<String, Object> row(long[] samples, long errors, double seconds) {
+        Arrays.sort(samples);
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("requests", samples.length);
+        row.put("errors", errors);
+        row.put("throughput", samples.length / seconds);
+        row.put("p50Millis", percentile(samples, 0.50));
+        row.put("p90Millis", percentile(samples, 0.90));
+        row.put("p99Millis", percentile(samples, 0.99));
+        row.put("maxMillis", samples.length == 0 ? 0.0 : samples[samples.length - 1] / 1e6);
+        return row;
+    }
+
+    private static void print(String name, Map<String, Object> row) {
+        Object calls = row.get("keycloakCallsPerRequest");
+        System.out.printf("%-20s %,10d %,8d %10.1f %9.2f %9.2f %9.2f %12s%n", name, row.get("requests"), row.get("errors"),
+                row.get("throughput"), row.get("p50Millis"), row.get("p99Millis"), row.get("maxMillis"),
+                calls == null ? "-" : String.format("%.2f", (Double) calls));
+    }
+
+    // Nearest-rank percentile of sorted nanosecond samples, in milliseconds
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    /** Latencies and outcomes seen by one client thread; merged after the run. */
+    private static final class Recorder {
+        private final Map<Operation, long[]> samples = new EnumMap<>(Operation.class);
+        private final Map<Operation, Integer> counts = new EnumMap<>(Operation.class);
+        private final Map<Operation, Long> errors = new EnumMap<>(Operation.class);
+        private final Map<Integer, Long> statuses = new TreeMap<>();
+
+        void record(Operation operation, long nanos, int status) {
+            long[] buffer = samples.computeIfAbsent(operation, k -> new long[1024]);
+            int n = counts.getOrDefault(operation, 0);
+            if (n == buffer.length) {
+                buffer = Arrays.copyOf(buffer, n * 2);
+                samples.put(operation, buffer);
+            }
+            buffer[n] = nanos;
+            counts.put(operation, n + 1);
+            statuses.merge(status, 1L, Long::sum);
+            if (status < 200 || status >= 300) {
+                errors.merge(operation, 1L, Long::sum);
+            }
+        }
+
+        void merge(Recorder other) {
+            for (Operation operation : other.samples.keySet()) {
+                long[] mine = samples(operation);
+                long[] theirs = other.samples(operation);
+                long[] merged = Arrays.copyOf(mine, mine.length + theirs.length);
+                System.arraycopy(theirs, 0, merged, mine.length, theirs.length);
+                samples.put(operation, merged);
+                counts.put(operation, merged.length);
+            }
+            other.statuses.forEach((status, count) -> statuses.merge(status, count, Long::sum));
+            other.errors.forEach((operation, count) -> errors.merge(operation, count, Long::sum));
+        }
+
+        long[] samples(Operation operation) {
+            long[] buffer = samples.get(operation);
+            return buffer == null ? new long[0] : Arrays.copyOf(buffer, counts.get(operation));
+        }
+
+        long[] allSamples() {
+            long[] all = new long[(int) requests()];
+            int offset = 0;
+            for (Operation operation : samples.keySet()) {
+                long[] part = samples(operation);
+                System.arraycopy(part, 0, all, offset, part.length);
+                offset += part.length;
+            }
+            return all;
+        }
+
+        long requests() {
+            long total = 0;
+            for (int count : counts.values()) {
+                total += count;
+            }
+            return total;
+        }
+
+        long errors(Operation operation) {
+            return errors.getOrDefault(operation, 0L);
+        }
+
+        long totalErrors() {
+            long total = 0;
+            for (long count : errors.values()) {
+                total += count;
+            }
+            return total;
+        }
+
+        Map<Integer, Long> statuses() {
+            return statuses;
+        }
+    }
+
+    private static final class Settings {
+        TrafficMix mix = TrafficMix.AZURE_AD;
+        int users = 1_000_000;
+        int groups = 100;
+        int clients = 32;
+        int warmupSeconds = 10;
+        int durationSeconds = 30;
+        long latencyMillis = 2;
+        long jitterMillis = 1;
+        double errorRate = 0.0;
+        int stubPort = 0;
+        int stubThreads = 64;
+        String reportFile;
+        String bridgeLogLevel = "WARN";
+        boolean stubOnly;
+
+        static Settings parse(String[] args) {
+            Settings s = new Settings();
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--mix" -> s.mix = TrafficMix.parse(args[++i]);
+                    case "--users" -> s.users = Integer.parseInt(args[++i]);
+                    case "--groups" -> s.groups = Integer.parseInt(args[++i]);
+                    case "--clients" -> s.clients = Integer.parseInt(args[++i]);
+                    case "--warmup" -> s.warmupSeconds = Integer.parseInt(args[++i]);
+                    case "--duration" -> s.durationSeconds = Integer.parseInt(args[++i]);
+                    case "--latency-ms" -> s.latencyMillis = Long.parseLong(args[++i]);
+                    case "--jitter-ms" -> s.jitterMillis = Long.parseLong(args[++i]);
+                    case "--error-rate" -> s.errorRate = Double.parseDouble(args[++i]);
+                    case "--stub-port" -> s.stubPort = Integer.parseInt(args[++i]);
+                    case "--stub-threads" -> s.stubThreads = Integer.parseInt(args[++i]);
+                    case "--report" -> s.reportFile = args[++i];
+                    case "--bridge-log-level" -> s.bridgeLogLevel = args[++i];
+                    case "--stub-only" -> s.stubOnly = true;
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (s.users < 2 || s.groups < 2 || s.users > 10_000_000) {
+                throw new IllegalArgumentException("--users must be 2..10,000,000 and --groups at least 2");
+            }
+            return s;
+        }
+    }
+}
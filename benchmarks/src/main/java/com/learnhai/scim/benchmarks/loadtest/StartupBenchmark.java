@@ -0,0 +1,180 @@
+package com.learnhai.scim.benchmarks.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from process start to the first 200 on {@code GET /scim/v2/Users}, for the plain executable jar
+ * against the fast-start layout ({@code mvn -Pfast-start package}: Spring AOT plus an application CDS
+ * archive), each started as a fresh JVM against {@link KeycloakAdminStub}. Fails (exit status 1) unless
+ * the fast start's median beats the plain jar's by {@code --min-improvement} percent.
+ * <pre>
+ *   java -cp target/benchmarks.jar com.learnhai.scim.benchmarks.loadtest.StartupBenchmark
+ *        [--jar ../target/scim-keycloak-bridge-1.0.0-exec.jar] [--fast-start ../target/fast-start]
+ *        [--runs 5] [--min-improvement 20] [--report results/startup.json]
+ * </pre>
+ * The CDS archive is trained first, as the Dockerfile does, unless {@code <fast-start>/app.jsa} exists;
+ * it is only valid for the JVM that wrote it, which is the one running this benchmark.
+ */
+public final class StartupBenchmark {
+
+    private static final String REALM = "loadtest";
+    private static final String CLIENT_ID = "scim-bridge-startup";
+    private static final long TIMEOUT_MS = TimeUnit.MINUTES.toMillis(2);
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofMillis(500))
+            .build();
+    private final KeycloakAdminStub stub;
+    private final String java = ProcessHandle.current().info().command().orElse("java");
+
+    private StartupBenchmark(KeycloakAdminStub stub) {
+        this.stub = stub;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String jar = "../target/scim-keycloak-bridge-1.0.0-exec.jar";
+        String fastStart = "../target/fast-start";
+        int runs = 5;
+        double minImprovement = 20;
+        String reportFile = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--jar" -> jar = args[++i];
+                case "--fast-start" -> fastStart = args[++i];
+                case "--runs" -> runs = Integer.parseInt(args[++i]);
+                case "--min-improvement" -> minImprovement = Double.parseDouble(args[++i]);
+                case "--report" -> reportFile = args[++i];
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        Path appJar = Path.of(fastStart, "app.jar").toAbsolutePath();
+        Path archive = Path.of(fastStart, "app.jsa").toAbsolutePath();
+        if (!Files.exists(Path.of(jar)) || !Files.exists(appJar)) {
+            throw new IllegalArgumentException("Build both layouts first: mvn -Pfast-start package in the repository root");
+        }
+
+        boolean passed;
+        try (KeycloakAdminStub stub = new KeycloakAdminStub(0, 16)) {
+            stub.addRealm(REALM, 1000, 10);
+            StartupBenchmark benchmark = new StartupBenchmark(stub);
+            List<String> plain = List.of(benchmark.java, "-jar", Path.of(jar).toAbsolutePath().toString());
+            List<String> fast = List.of(benchmark.java, "-XX:SharedArchiveFile=" + archive, "-Xlog:cds=off",
+                    "-Dspring.aot.enabled=true", "-jar", appJar.toString());
+            if (!Files.exists(archive)) {
+                System.out.println("Training the CDS archive...");
+                benchmark.timeToFirst200(List.of(benchmark.java, "-XX:ArchiveClassesAtExit=" + archive, "-Xlog:cds=off",
+                        "-Dspring.aot.enabled=true", "-jar", appJar.toString()));
+            }
+
+            long[] plainMs = new long[runs];
+            long[] fastMs = new long[runs];
+            for (int i = 0; i < runs; i++) { // interleaved, so drift on the host affects both alike
+                plainMs[i] = benchmark.timeToFirst200(plain);
+                fastMs[i] = benchmark.timeToFirst200(fast);
+                System.out.printf("Run %d: plain %,d ms, fast start %,d ms%n", i + 1, plainMs[i], fastMs[i]);
+            }
+            long plainMedian = median(plainMs);
+            long fastMedian = median(fastMs);
+            double improvement = 100.0 * (plainMedian - fastMedian) / plainMedian;
+            passed = improvement >= minImprovement;
+            System.out.printf("Time to first 200 (median of %d): plain %,d ms, fast start %,d ms, %.1f%% faster (required %.1f%%): %s%n",
+                    runs, plainMedian, fastMedian, improvement, minImprovement, passed ? "OK" : "FAILED");
+
+            if (reportFile != null) {
+                Map<String, Object> report = new LinkedHashMap<>();
+                report.put("runs", runs);
+                report.put("plainMs", plainMs);
+                report.put("fastStartMs", fastMs);
+                report.put("plainMedianMs", plainMedian);
+                report.put("fastStartMedianMs", fastMedian);
+                report.put("improvementPercent", Math.round(improvement * 10) / 10.0);
+                report.put("requiredPercent", minImprovement);
+                File file = new File(reportFile);
+                if (file.getParentFile() != null) {
+                    file.getParentFile().mkdirs();
+                }
+                new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, report);
+            }
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    /** Starts the bridge with {@code command}, waits for its first 200 and stops it (SIGTERM, as pods are). */
+    private long timeToFirst200(List<String> command) throws IOException, InterruptedException {
+        int port = freePort();
+        List<String> full = new ArrayList<>(command);
+        full.addAll(Arrays.asList(
+                "--server.port=" + port,
+                "--server.address=127.0.0.1",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--logging.level.com.learnhai.scim=WARN",
+                "--keycloak.server-url=" + stub.baseUrl(),
+                "--keycloak.realm=master",
+                "--keycloak.client-id=" + CLIENT_ID,
+                "--keycloak.client-secret=startup",
+                "--keycloak.target-realm=" + REALM,
+                "--spring.security.oauth2.resourceserver.jwt.issuer-uri=" + stub.issuer(REALM)));
+        HttpRequest probe = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/scim/v2/Users?count=1"))
+                .header("Authorization", "Bearer " + stub.issueToken(REALM, CLIENT_ID, 3600))
+                .timeout(Duration.ofSeconds(5))
+                .build();
+
+        long started = System.nanoTime();
+        Process process = new ProcessBuilder(full).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        try {
+            while (true) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Bridge exited with status " + process.exitValue() + ": " + String.join(" ", command));
+                }
+                try {
+                    if (http.send(probe, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                    }
+                } catch (IOException e) {
+                    // not listening yet
+                }
+                if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) > TIMEOUT_MS) {
+                    throw new IllegalStateException("No 200 within " + TIMEOUT_MS + " ms: " + String.join(" ", command));
+                }
+                Thread.sleep(20);
+            }
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,586 @@
+package com.learnhai.scim.benchmarks.loadtest;
+
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A Keycloak realm with a large seeded population that costs no memory until it is written to.
+ * <p>
+ * Seeded user {@code i} (0 &le; i &lt; users) has a deterministic id and the username/email
+ * {@code user<i>@example.com}; it is generated on every read. Seeded group {@code g} is named
+ * {@code group-<g>} and contains the seeded users with {@code i % groups == g}. Creates, updates,
+ * deletes and membership changes are kept in overlay maps, so a 1M-user realm starts instantly and
+ * only grows with the load test's own writes.
+ * <p>
+ * Free-text user search resolves the seeded naming pattern directly and scans only the overlay,
+ * rather than scanning a million generated users; exact lookups, paging and counts are exact.
+ */
+final class SyntheticRealm {
+
+    static final String EMAIL_DOMAIN = "@example.com";
+
+    private static final long USER_TAG = 0x5e5e_0000_0000_0001L;
+    private static final long GROUP_TAG = 0x5e5e_0000_0000_0002L;
+    private static final Pattern SEEDED_USERNAME = Pattern.compile("user(\\d{1,9})" + Pattern.quote(EMAIL_DOMAIN));
+    private static final Pattern SEEDED_EXTERNAL_ID = Pattern.compile("ext-(\\d{1,9})");
+    private static final Pattern SEEDED_GROUP_NAME = Pattern.compile("group-(\\d{1,9})");
+
+    private final String name;
+    private final int seededUsers;
+    private final int seededGroups;
+
+    // Overlay: created users and seeded users that were updated, by id
+    private final Map<String, UserRepresentation> users = new ConcurrentHashMap<>();
+    private final Map<String, String> idByUsername = new ConcurrentHashMap<>();
+    private final Set<String> deletedUsers = ConcurrentHashMap.newKeySet();
+    private final List<String> createdUsers = new ArrayList<>(); // guarded by itself, creation order
+
+    private final Map<String, GroupRepresentation> groups = new ConcurrentHashMap<>();
+    private final Set<String> deletedGroups = ConcurrentHashMap.newKeySet();
+    private final List<String> createdGroups = new ArrayList<>(); // guarded by itself
+
+    // Membership changes relative to the seeded i % groups == g rule, by group id
+    private final Map<String, Set<String>> joined = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> left = new ConcurrentHashMap<>();
+
+    SyntheticRealm(String name, int seededUsers, int seededGroups) {
+        this.name = name;
+        this.seededUsers = seededUsers;
+        this.seededGroups = seededGroups;
+    }
+
+    String name() {
+        return name;
+    }
+
+    int seededUsers() {
+        return seededUsers;
+    }
+
+    int seededGroups() {
+        return seededGroups;
+    }
+
+    static String userId(int i) {
+        return new UUID(USER_TAG, i).toString();
+    }
+
+    static String groupId(int g) {
+        return new UUID(GROUP_TAG, g).toString();
+    }
+
+    static String username(int i) {
+        return "user" + i + EMAIL_DOMAIN;
+    }
+
+    static String groupName(int g) {
+        return "group-" + g;
+    }
+
+    // --- Users ---
+
+    UserRepresentation getUser(String id) {
+        if (deletedUsers.contains(id)) {
+            return null;
+        }
+        UserRepresentation user = users.get(id);
+        if (user != null) {
+            return user;
+        }
+        int i = seededIndex(id, USER_TAG, seededUsers);
+        return i < 0 ? null : seededUser(i);
+    }
+
+    UserRepresentation findByUsername(String username) {
+        String key = username.toLowerCase(Locale.ROOT);
+        String id = idByUsername.get(key);
+        if (id != null) {
+            return getUser(id);
+        }
+        Matcher m = SEEDED_USERNAME.matcher(key);
+        if (m.matches()) {
+            int i = Integer.parseInt(m.group(1));
+            if (i < seededUsers) {
+                UserRepresentation user = getUser(userId(i));
+                // A seeded user renamed by an update no longer answers to its seeded name
+                if (user != null && key.equals(user.getUsername())) {
+                    return user;
+                }
+            }
+        }
+        return null;
+    }
+
+    List<UserRepresentation> findByEmail(String email) {
+        String key = email.toLowerCase(Locale.ROOT);
+        List<UserRepresentation> found = new ArrayList<>(1);
+        UserRepresentation seeded = findByUsername(key); // seeded users' email equals their username
+        if (seeded != null && key.equalsIgnoreCase(seeded.getEmail())) {
+            found.add(seeded);
+        }
+        for (UserRepresentation user : users.values()) {
+            if (key.equalsIgnoreCase(user.getEmail()) && !deletedUsers.contains(user.getId()) && !found.contains(user)) {
+                found.add(user);
+            }
+        }
+        return found;
+    }
+
+    /** Keycloak's {@code search}: substring match on username, email, first and last name. */
+    /** Users whose attribute {@code name} holds {@code value}; seeded users are found by their externalId only. */
+    List<UserRepresentation> findByAttribute(String name, String value) {
+        List<UserRepresentation> found = new ArrayList<>(1);
+        Matcher m = SEEDED_EXTERNAL_ID.matcher(value);
+        if (name.equals("externalId") && m.matches() && Integer.parseInt(m.group(1)) < seededUsers) {
+            UserRepresentation seeded = getUser(userId(Integer.parseInt(m.group(1))));
+            if (seeded != null && hasAttribute(seeded, name, value)) {
+                found.add(seeded);
+            }
+        }
+        for (UserRepresentation user : users.values()) {
+            if (hasAttribute(user, name, value) && !deletedUsers.contains(user.getId()) && !found.contains(user)) {
+                found.add(user);
+            }
+        }
+        return found;
+    }
+
+    private static boolean hasAttribute(UserRepresentation user, String name, String value) {
+        List<String> values = user.getAttributes() == null ? null : user.getAttributes().get(name);
+        return values != null && values.contains(value);
+    }
+
+    List<UserRepresentation> search(String term, int first, int max) {
+        List<UserRepresentation> matches = searchAll(term);
+        return page(matches, first, max);
+    }
+
+    int countSearch(String term) {
+        return searchAll(term).size();
+    }
+
+    private List<UserRepresentation> searchAll(String term) {
+        String key = term.toLowerCase(Locale.ROOT).replace("*", "");
+        List<UserRepresentation> matches = new ArrayList<>();
+        UserRepresentation seeded = findByUsername(key);
+        if (seeded != null) {
+            matches.add(seeded);
+        }
+        for (UserRepresentation user : users.values()) {
+            if (!deletedUsers.contains(user.getId()) && !matches.contains(user) && matches(user, key)) {
+                matches.add(user);
+            }
+        }
+        return matches;
+    }
+
+    private static boolean matches(UserRepresentation user, String key) {
+        return contains(user.getUsername(), key) || contains(user.getEmail(), key)
+                || contains(user.getFirstName(), key) || contains(user.getLastName(), key);
+    }
+
+    private static boolean contains(String value, String key) {
+        return value != null && value.toLowerCase(Locale.ROOT).contains(key);
+    }
+
+    /** Seeded users in index order, then created users in creation order. */
+    List<UserRepresentation> list(int first, int max) {
+        List<UserRepresentation> page = new ArrayList<>(Math.min(max, 1000));
+        int skip = first;
+        int i = 0;
+        if (deletedUsers.isEmpty()) {
+            // Nothing has been deleted, so the offset maps straight to a seeded index
+            i = Math.min(first, seededUsers);
+            skip = first - i;
+        }
+        for (; i < seededUsers && page.size() < max; i++) {
+            String id = userId(i);
+            if (deletedUsers.contains(id)) {
+                continue;
+            }
+            if (skip > 0) {
+                skip--;
+            } else {
+                page.add(getUser(id));
+            }
+        }
+        for (String id : createdUsersSnapshot()) {
+            if (page.size() >= max) {
+                break;
+            }
+            UserRepresentation user = getUser(id);
+            if (user != null) {
+                if (skip > 0) {
+                    skip--;
+                } else {
+                    page.add(user);
+                }
+            }
+        }
+        return page;
+    }
+
+    int countUsers() {
+        int deletedSeeded = 0;
+        int created = 0;
+        for (String id : deletedUsers) {
+            if (seededIndex(id, USER_TAG, seededUsers) >= 0) {
+                deletedSeeded++;
+            }
+        }
+        for (String id : createdUsersSnapshot()) {
+            if (!deletedUsers.contains(id)) {
+                created++;
+            }
+        }
+        return seededUsers - deletedSeeded + created;
+    }
+
+    /** Returns the new id, or null when the username is taken. */
+    String createUser(UserRepresentation user) {
+        if (user.getUsername() == null || findByUsername(user.getUsername()) != null) {
+            return null;
+        }
+        String id = UUID.randomUUID().toString();
+        user.setId(id);
+        user.setUsername(user.getUsername().toLowerCase(Locale.ROOT));
+        if (user.getCreatedTimestamp() == null) {
+            user.setCreatedTimestamp(System.currentTimeMillis());
+        }
+        if (user.isEnabled() == null) {
+            user.setEnabled(false);
+        }
+        users.put(id, user);
+        idByUsername.put(user.getUsername(), id);
+        synchronized (createdUsers) {
+            createdUsers.add(id);
+        }
+        return id;
+    }
+
+    /** Applies a partial representation the way Keycloak's PUT does: absent fields are left alone. */
+    boolean updateUser(String id, UserRepresentation update) {
+        UserRepresentation current = getUser(id);
+        if (current == null) {
+            return false;
+        }
+        UserRepresentation next = copy(current);
+        if (update.getUsername() != null) {
+            next.setUsername(update.getUsername().toLowerCase(Locale.ROOT));
+        }
+        if (update.getEmail() != null) {
+            next.setEmail(update.getEmail());
+        }
+        if (update.getFirstName() != null) {
+            next.setFirstName(update.getFirstName());
+        }
+        if (update.getLastName() != null) {
+            next.setLastName(update.getLastName());
+        }
+        if (update.isEnabled() != null) {
+            next.setEnabled(update.isEnabled());
+        }
+        if (update.isEmailVerified() != null) {
+            next.setEmailVerified(update.isEmailVerified());
+        }
+        if (update.getAttributes() != null) {
+            next.setAttributes(update.getAttributes());
+        }
+        users.put(id, next);
+        if (!next.getUsername().equals(current.getUsername())) {
+            idByUsername.remove(current.getUsername(), id);
+        }
+        idByUsername.put(next.getUsername(), id);
+        return true;
+    }
+
+    boolean deleteUser(String id) {
+        UserRepresentation user = getUser(id);
+        if (user == null) {
+            return false;
+        }
+        deletedUsers.add(id);
+        idByUsername.remove(user.getUsername(), id);
+        return true;
+    }
+
+    private UserRepresentation seededUser(int i) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId(userId(i));
+        user.setUsername(username(i));
+        user.setEmail(username(i));
+        user.setEmailVerified(true);
+        user.setFirstName("Given" + i);
+        user.setLastName("Family" + i);
+        user.setEnabled(true);
+        user.setCreatedTimestamp(1_700_000_000_000L + i);
+        Map<String, List<String>> attributes = new HashMap<>();
+        attributes.put("externalId", List.of("ext-" + i));
+        attributes.put("displayName", List.of("Given" + i + " Family" + i));
+        attributes.put("employeeNumber", List.of(String.valueOf(100_000 + i)));
+        attributes.put("department", List.of("Department " + (i % 50)));
+        user.setAttributes(attributes);
+        return user;
+    }
+
+    private static UserRepresentation copy(UserRepresentation source) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId(source.getId());
+        user.setUsername(source.getUsername());
+        user.setEmail(source.getEmail());
+        user.setEmailVerified(source.isEmailVerified());
+        user.setFirstName(source.getFirstName());
+        user.setLastName(source.getLastName());
+        user.setEnabled(source.isEnabled());
+        user.setCreatedTimestamp(source.getCreatedTimestamp());
+        user.setAttributes(source.getAttributes());
+        return user;
+    }
+
+    private List<String> createdUsersSnapshot() {
+        synchronized (createdUsers) {
+            return new ArrayList<>(createdUsers);
+        }
+    }
+
+    // --- Groups ---
+
+    GroupRepresentation getGroup(String id) {
+        if (deletedGroups.contains(id)) {
+            return null;
+        }
+        GroupRepresentation group = groups.get(id);
+        if (group != null) {
+            return group;
+        }
+        int g = seededIndex(id, GROUP_TAG, seededGroups);
+        return g < 0 ? null : seededGroup(g);
+    }
+
+    /** Keycloak's group listing: substring match on the name when a search term is given. */
+    List<GroupRepresentation> listGroups(String search, int first, int max) {
+        return page(allGroups(search), first, max);
+    }
+
+    int countGroups(String search) {
+        return allGroups(search).size();
+    }
+
+    private List<GroupRepresentation> allGroups(String search) {
+        String key = search == null || search.isEmpty() ? null : search.toLowerCase(Locale.ROOT);
+        List<GroupRepresentation> all = new ArrayList<>();
+        if (key != null) {
+            Matcher m = SEEDED_GROUP_NAME.matcher(key);
+            if (m.matches() && Integer.parseInt(m.group(1)) < seededGroups) {
+                // Exact seeded name: the common displayName lookup, answered without a scan
+                GroupRepresentation group = getGroup(groupId(Integer.parseInt(m.group(1))));
+                if (group != null && key.equalsIgnoreCase(group.getName())) {
+                    all.add(group);
+                }
+            }
+        }
+        if (all.isEmpty()) {
+            for (int g = 0; g < seededGroups; g++) {
+                GroupRepresentation group = getGroup(groupId(g));
+                if (group != null && (key == null || contains(group.getName(), key))) {
+                    all.add(group);
+                }
+            }
+        }
+        List<String> created;
+        synchronized (createdGroups) {
+            created = new ArrayList<>(createdGroups);
+        }
+        for (String id : created) {
+            GroupRepresentation group = getGroup(id);
+            if (group != null && (key == null || contains(group.getName(), key))) {
+                all.add(group);
+            }
+        }
+        return all;
+    }
+
+    GroupRepresentation findGroupByName(String name) {
+        return name == null ? null
+                : allGroups(name).stream().filter(g -> g.getName().equalsIgnoreCase(name)).findFirst().orElse(null);
+    }
+
+    /** Returns the new id, or null when the name is taken. */
+    String createGroup(GroupRepresentation group) {
+        if (group.getName() == null
+                || allGroups(group.getName()).stream().anyMatch(g -> g.getName().equalsIgnoreCase(group.getName()))) {
+            return null;
+        }
+        String id = UUID.randomUUID().toString();
+        group.setId(id);
+        group.setPath("/" + group.getName());
+        group.setSubGroupCount(0L);
+        groups.put(id, group);
+        synchronized (createdGroups) {
+            createdGroups.add(id);
+        }
+        return id;
+    }
+
+    boolean updateGroup(String id, GroupRepresentation update) {
+        GroupRepresentation current = getGroup(id);
+        if (current == null) {
+            return false;
+        }
+        GroupRepresentation next = new GroupRepresentation();
+        next.setId(id);
+        next.setName(update.getName() != null ? update.getName() : current.getName());
+        next.setPath("/" + next.getName());
+        next.setSubGroupCount(0L);
+        next.setAttributes(update.getAttributes() != null ? update.getAttributes() : current.getAttributes());
+        groups.put(id, next);
+        return true;
+    }
+
+    boolean deleteGroup(String id) {
+        if (getGroup(id) == null) {
+            return false;
+        }
+        deletedGroups.add(id);
+        return true;
+    }
+
+    private GroupRepresentation seededGroup(int g) {
+        GroupRepresentation group = new GroupRepresentation();
+        group.setId(groupId(g));
+        group.setName(groupName(g));
+        group.setPath("/" + groupName(g));
+        group.setSubGroupCount(0L); // the synthetic realm is flat
+        group.setAttributes(Map.of("externalId", List.of("gext-" + g)));
+        return group;
+    }
+
+    // --- Membership ---
+
+    boolean join(String userId, String groupId) {
+        if (getUser(userId) == null || getGroup(groupId) == null) {
+            return false;
+        }
+        Set<String> removed = left.get(groupId);
+        if (removed != null) {
+            removed.remove(userId);
+        }
+        if (!isSeededMember(userId, groupId)) {
+            joined.computeIfAbsent(groupId, k -> ConcurrentHashMap.newKeySet()).add(userId);
+        }
+        return true;
+    }
+
+    boolean leave(String userId, String groupId) {
+        if (getUser(userId) == null || getGroup(groupId) == null) {
+            return false;
+        }
+        Set<String> added = joined.get(groupId);
+        if (added != null) {
+            added.remove(userId);
+        }
+        if (isSeededMember(userId, groupId)) {
+            left.computeIfAbsent(groupId, k -> ConcurrentHashMap.newKeySet()).add(userId);
+        }
+        return true;
+    }
+
+    /** Seeded members in index order, then joined users; null if the group does not exist. */
+    List<UserRepresentation> members(String groupId, int first, int max) {
+        if (getGroup(groupId) == null) {
+            return null;
+        }
+        Set<String> removed = left.getOrDefault(groupId, Set.of());
+        List<UserRepresentation> page = new ArrayList<>(Math.min(max, 1000));
+        int skip = first;
+        int g = seededIndex(groupId, GROUP_TAG, seededGroups);
+        if (g >= 0) {
+            for (long i = g; i < seededUsers && page.size() < max; i += seededGroups) {
+                String id = userId((int) i);
+                if (removed.contains(id) || deletedUsers.contains(id)) {
+                    continue;
+                }
+                if (skip > 0) {
+                    skip--;
+                } else {
+                    page.add(getUser(id));
+                }
+            }
+        }
+        for (String id : joined.getOrDefault(groupId, Set.of())) {
+            if (page.size() >= max) {
+                break;
+            }
+            UserRepresentation user = getUser(id);
+            if (user != null) {
+                if (skip > 0) {
+                    skip--;
+                } else {
+                    page.add(user);
+                }
+            }
+        }
+        return page;
+    }
+
+    /** Groups the user is a direct member of: its seeded group unless it left, then joined ones; null if no such user. */
+    List<GroupRepresentation> groupsOf(String userId, int first, int max) {
+        if (getUser(userId) == null) {
+            return null;
+        }
+        List<GroupRepresentation> all = new ArrayList<>();
+        int i = seededIndex(userId, USER_TAG, seededUsers);
+        if (i >= 0 && seededGroups > 0) {
+            String groupId = groupId(i % seededGroups);
+            GroupRepresentation group = getGroup(groupId);
+            if (group != null && !left.getOrDefault(groupId, Set.of()).contains(userId)) {
+                all.add(group);
+            }
+        }
+        joined.forEach((groupId, members) -> {
+            GroupRepresentation group = members.contains(userId) ? getGroup(groupId) : null;
+            if (group != null) {
+                all.add(group);
+            }
+        });
+        return page(all, first, max);
+    }
+
+    private boolean isSeededMember(String userId, String groupId) {
+        int i = seededIndex(userId, USER_TAG, seededUsers);
+        int g = seededIndex(groupId, GROUP_TAG, seededGroups);
+        return i >= 0 && g >= 0 && i % seededGroups == g;
+    }
+
+    // Index of a seeded id, or -1 for anything else (including malformed ids)
+    private static int seededIndex(String id, long tag, int limit) {
+        if (id == null || id.length() != 36) {
+            return -1;
+        }
+        try {
+            UUID uuid = UUID.fromString(id);
+            long i = uuid.getLeastSignificantBits();
+            return uuid.getMostSignificantBits() == tag && i >= 0 && i < limit ? (int) i : -1;
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private static <T> List<T> page(List<T> all, int first, int max) {
+        if (first >= all.size()) {
+            return List.of();
+        }
+        return all.subList(first, (int) Math.min(all.size(), (long) first + max));
+    }
+}
@@ -0,0 +1,79 @@
+package com.learnhai.scim.benchmarks.loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Weighted SCIM request mixes modelled on how the big IdPs sync.
+ * <p>
+ * Azure AD provisions with a {@code userName eq} lookup before most writes, updates users through
+ * PATCH (booleans sent as {@code "True"/"False"} strings, capitalised op names) and maintains groups
+ * with single-member PATCH adds and removes, verified with {@code id eq ... and members[value eq ...]}
+ * probes. Okta reads users back by id, pushes profile changes as
+ * full PUT replacements, deactivates through PATCH, and pages through /Users on import.
+ */
+enum TrafficMix {
+
+    AZURE_AD(Map.of(
+            Operation.LOOKUP_USER, 30,
+            Operation.LOOKUP_MISSING_USER, 5,
+            Operation.CREATE_USER, 5,
+            Operation.PATCH_USER, 25,
+            Operation.LOOKUP_GROUP, 5,
+            Operation.PROBE_MEMBERSHIP, 10,
+            Operation.ADD_MEMBER, 10,
+            Operation.REMOVE_MEMBER, 10)),
+
+    OKTA(Map.of(
+            Operation.LOOKUP_USER, 25,
+            Operation.GET_USER, 15,
+            Operation.CREATE_USER, 5,
+            Operation.REPLACE_USER, 25,
+            Operation.PATCH_USER, 10,
+            Operation.LIST_USERS, 5,
+            Operation.GET_GROUP, 5,
+            Operation.ADD_MEMBER, 5,
+            Operation.REMOVE_MEMBER, 5));
+
+    /** One SCIM request type. */
+    enum Operation {
+        LOOKUP_USER, LOOKUP_MISSING_USER, GET_USER, CREATE_USER, REPLACE_USER, PATCH_USER, LIST_USERS,
+        LOOKUP_GROUP, GET_GROUP, PROBE_MEMBERSHIP, ADD_MEMBER, REMOVE_MEMBER
+    }
+
+    private final Map<Operation, Integer> weights;
+    private final Operation[] operations;
+    private final int[] cumulative;
+
+    TrafficMix(Map<Operation, Integer> weights) {
+        this.weights = new EnumMap<>(weights);
+        this.operations = this.weights.keySet().toArray(new Operation[0]);
+        this.cumulative = new int[operations.length];
+        int sum = 0;
+        for (int i = 0; i < operations.length; i++) {
+            sum += this.weights.get(operations[i]);
+            cumulative[i] = sum;
+        }
+    }
+
+    Map<Operation, Integer> weights() {
+        return weights;
+    }
+
+    Operation next(Random random) {
+        int pick = random.nextInt(cumulative[cumulative.length - 1]);
+        for (int i = 0; i < cumulative.length; i++) {
+            if (pick < cumulative[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    /** Accepts {@code azure}, {@code azure-ad}, {@code AZURE_AD} or {@code okta}. */
+    static TrafficMix parse(String name) {
+        String normalized = name.trim().toUpperCase().replace('-', '_');
+        return normalized.equals("AZURE") ? AZURE_AD : valueOf(normalized);
+    }
+}
@@ -2,8 +2,12 @@ package com.learnhai.scim;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
+@EnableScheduling
 public class ScimKeycloakBridgeApplication {
     public static void main(String[] args) {
         SpringApplication.run(ScimKeycloakBridgeApplication.class, args);
@@ -0,0 +1,116 @@
+package com.learnhai.scim.audit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Binary layout of audit segment files. A segment starts with the 8-byte magic {@code SCIMAUD1} and
+ * holds records framed as {@code [int length][int crc32][payload]}; segments are preallocated, so the
+ * first zero length marks the end, and a record with a bad checksum (a torn write) ends reading too.
+ * <p>
+ * Payload: {@code long timestampMillis, long latencyMicros, short status, byte operation}, then tenant,
+ * actor, resourceType, resourceId and operationId as {@code [short length][UTF-8]}, length -1 for null.
+ */
+final class AuditCodec {
+
+    static final byte[] MAGIC = "SCIMAUD1".getBytes(StandardCharsets.US_ASCII);
+    static final int FRAME_BYTES = 8;
+    static final int MAX_STRING_BYTES = 4096;
+    static final int MAX_RECORD_BYTES = FRAME_BYTES + 19 + 5 * (2 + MAX_STRING_BYTES);
+
+    private static final AuditRecord.Operation[] OPERATIONS = AuditRecord.Operation.values();
+
+    private AuditCodec() {
+    }
+
+    /** Writes one framed record at the buffer's position; the caller has checked there is room for {@link #MAX_RECORD_BYTES}. */
+    static void write(ByteBuffer buffer, AuditRecord record, CRC32 crc) {
+        int start = buffer.position();
+        buffer.position(start + FRAME_BYTES);
+        buffer.putLong(record.timestampMillis());
+        buffer.putLong(record.latencyMicros());
+        buffer.putShort((short) record.status());
+        buffer.put((byte) record.operation().ordinal());
+        putString(buffer, record.tenant());
+        putString(buffer, record.actor());
+        putString(buffer, record.resourceType());
+        putString(buffer, record.resourceId());
+        putString(buffer, record.operationId());
+        int end = buffer.position();
+        int length = end - start - FRAME_BYTES;
+        crc.reset();
+        crc.update(buffer.duplicate().position(start + FRAME_BYTES).limit(end));
+        // Length last: a reader racing the writer (or a crash) sees either zero or a whole record
+        buffer.putInt(start + 4, (int) crc.getValue());
+        buffer.putInt(start, length);
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_STRING_BYTES);
+        buffer.putShort((short) length);
+        buffer.put(bytes, 0, length);
+    }
+
+    /** Reads every intact record of a segment file, oldest first. */
+    static void read(Path segment, Consumer<AuditRecord> sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] magic = new byte[MAGIC.length];
+            if (buffer.remaining() < magic.length) {
+                return;
+            }
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(segment + " is not an audit segment");
+            }
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= FRAME_BYTES) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    return;
+                }
+                crc.reset();
+                crc.update(buffer.duplicate().limit(start + FRAME_BYTES + length));
+                if ((int) crc.getValue() != checksum) {
+                    return;
+                }
+                sink.accept(decode(buffer));
+                buffer.position(start + FRAME_BYTES + length);
+            }
+        }
+    }
+
+    private static AuditRecord decode(ByteBuffer buffer) {
+        long timestampMillis = buffer.getLong();
+        long latencyMicros = buffer.getLong();
+        int status = buffer.getShort();
+        AuditRecord.Operation operation = OPERATIONS[buffer.get()];
+        return new AuditRecord(timestampMillis, getString(buffer), getString(buffer), getString(buffer), getString(buffer),
+                operation, status, latencyMicros, getString(buffer));
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,93 @@
+package com.learnhai.scim.audit;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exports audit segments as newline-delimited JSON, oldest record first. Runs without the
+ * application context, from the executable jar:
+ * <pre>
+ *   java -cp scim-keycloak-bridge-1.0.0-exec.jar -Dloader.main=com.learnhai.scim.audit.AuditExport \
+ *        org.springframework.boot.loader.launch.PropertiesLauncher \
+ *        ./data/audit [--since 2024-05-01T00:00:00Z] [--until ...] [--out audit.ndjson]
+ * </pre>
+ * Arguments are segment files or directories of them; {@code --since}/{@code --until} bound the
+ * record timestamps (inclusive/exclusive).
+ */
+public final class AuditExport {
+
+    private AuditExport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        Path out = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--since" -> since = Instant.parse(args[++i]).toEpochMilli();
+                case "--until" -> until = Instant.parse(args[++i]).toEpochMilli();
+                case "--out" -> out = Path.of(args[++i]);
+                default -> {
+                    Path path = Path.of(args[i]);
+                    segments.addAll(Files.isDirectory(path) ? AuditSegmentWriter.segments(path) : List.of(path));
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            System.err.println("Usage: AuditExport <segment file or directory>... [--since <instant>] [--until <instant>] [--out <file>]");
+            System.exit(2);
+        }
+
+        long from = since;
+        long to = until;
+        OutputStream stream = out != null ? Files.newOutputStream(out) : System.out;
+        try (JsonGenerator json = new JsonFactory().createGenerator(stream, JsonEncoding.UTF8)) {
+            json.setPrettyPrinter(new MinimalPrettyPrinter("\n")); // one record per line
+            for (Path segment : segments) {
+                AuditCodec.read(segment, record -> {
+                    if (record.timestampMillis() >= from && record.timestampMillis() < to) {
+                        write(json, record);
+                    }
+                });
+            }
+            json.writeRaw('\n');
+        }
+    }
+
+    private static void write(JsonGenerator json, AuditRecord record) {
+        try {
+            json.writeStartObject();
+            json.writeStringField("timestamp", Instant.ofEpochMilli(record.timestampMillis()).toString());
+            writeOptional(json, "tenant", record.tenant());
+            json.writeStringField("actor", record.actor());
+            json.writeStringField("resourceType", record.resourceType());
+            writeOptional(json, "resourceId", record.resourceId());
+            json.writeStringField("operation", record.operation().name());
+            json.writeNumberField("status", record.status());
+            json.writeNumberField("latencyMicros", record.latencyMicros());
+            writeOptional(json, "operationId", record.operationId());
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeOptional(JsonGenerator json, String name, String value) throws IOException {
+        if (value != null) {
+            json.writeStringField(name, value);
+        }
+    }
+}
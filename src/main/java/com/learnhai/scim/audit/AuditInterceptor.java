@@ -0,0 +1,86 @@
+package com.learnhai.scim.audit;
+
+import com.learnhai.scim.tenant.TenantContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records every User and Group mutation (POST, PUT, PATCH, DELETE) in the {@link AuditLog} once its
+ * response is complete, with the status it ended with, failures included.
+ */
+@Component
+public class AuditInterceptor implements HandlerInterceptor {
+
+    private static final String STARTED = AuditInterceptor.class.getName() + ".started";
+
+    private final AuditLog auditLog;
+
+    @Autowired
+    public AuditInterceptor(AuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (operation(request.getMethod()) != null && resourceType(request) != null) {
+            request.setAttribute(STARTED, System.nanoTime());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (!(request.getAttribute(STARTED) instanceof Long started)) {
+            return;
+        }
+        long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started);
+        int status = ex != null && response.getStatus() < 400 ? 500 : response.getStatus();
+        AuditRecord.Operation operation = operation(request.getMethod());
+        String resourceId = pathId(request);
+        String operationId = null;
+        String location = response.getHeader(HttpHeaders.LOCATION);
+        if (location != null && status == 202) {
+            operationId = lastSegment(location); // queued in async mode
+        } else if (location != null && operation == AuditRecord.Operation.CREATE) {
+            resourceId = lastSegment(location);
+        }
+        auditLog.record(new AuditRecord(System.currentTimeMillis(), TenantContext.tenantId(), AuditLog.currentActor(),
+                resourceType(request), resourceId, operation, status, latencyMicros, operationId));
+    }
+
+    static AuditRecord.Operation operation(String method) {
+        return switch (method) {
+            case "POST" -> AuditRecord.Operation.CREATE;
+            case "PUT" -> AuditRecord.Operation.REPLACE;
+            case "PATCH" -> AuditRecord.Operation.PATCH;
+            case "DELETE" -> AuditRecord.Operation.DELETE;
+            default -> null;
+        };
+    }
+
+    private static String resourceType(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (pattern == null) {
+            return null;
+        }
+        String path = pattern.toString();
+        return path.contains("/Users") ? "User" : path.contains("/Groups") ? "Group" : null;
+    }
+
+    private static String pathId(HttpServletRequest request) {
+        Object variables = request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        return variables instanceof Map<?, ?> map && map.get("id") instanceof String id ? id : null;
+    }
+
+    private static String lastSegment(String location) {
+        return location.substring(location.lastIndexOf('/') + 1);
+    }
+}
@@ -0,0 +1,100 @@
+package com.learnhai.scim.audit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Audit trail of provisioning mutations, kept off the request path: {@link #record} only publishes
+ * into a lock-free ring, and a background writer appends the ring to rotating memory-mapped segment
+ * files under {@code scim.audit.dir}. When the writer falls behind and the ring is full, records are
+ * dropped (counted as {@code scim.audit.dropped}) rather than slowing requests down.
+ * <p>
+ * Export segments to JSON with {@link AuditExport}.
+ */
+@Component
+@Slf4j
+public class AuditLog {
+
+    private final boolean enabled;
+    private final Path directory;
+    private final AuditRing ring;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final long flushIntervalMillis;
+    private final Counter dropped;
+
+    private volatile boolean active;
+    private AuditSegmentWriter writer;
+
+    @Autowired
+    public AuditLog(@Value("${scim.audit.enabled:true}") boolean enabled,
+                    @Value("${scim.audit.dir:./data/audit}") String directory,
+                    @Value("${scim.audit.ring-capacity:65536}") int ringCapacity,
+                    @Value("${scim.audit.segment-size-bytes:67108864}") int segmentBytes,
+                    @Value("${scim.audit.max-segments:32}") int maxSegments,
+                    @Value("${scim.audit.flush-interval-ms:1000}") long flushIntervalMillis,
+                    MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.ring = enabled ? new AuditRing(ringCapacity) : null;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.dropped = meterRegistry.counter("scim.audit.dropped");
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        writer = new AuditSegmentWriter(directory, ring, segmentBytes, maxSegments, flushIntervalMillis);
+        try {
+            writer.open();
+            active = true;
+        } catch (IOException e) {
+            // An unwritable audit directory must not take provisioning down with it
+            log.error("Cannot write audit segments to {}; audit log disabled: {}", directory.toAbsolutePath(), e.getMessage());
+        }
+    }
+
+    public void record(AuditRecord record) {
+        if (active && !ring.offer(record)) {
+            dropped.increment();
+        }
+    }
+
+    /** The calling client of the current request: the token's azp or client_id, else the principal name. */
+    public static String currentActor() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication instanceof JwtAuthenticationToken jwtAuth) {
+            String azp = jwtAuth.getToken().getClaimAsString("azp");
+            if (azp != null) {
+                return azp;
+            }
+            String clientId = jwtAuth.getToken().getClaimAsString("client_id");
+            return clientId != null ? clientId : jwtAuth.getName();
+        }
+        return authentication != null ? authentication.getName() : "anonymous";
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (active) {
+            active = false;
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.learnhai.scim.audit;
+
+/**
+ * One provisioning mutation: who did what to which resource, and how it ended.
+ *
+ * @param timestampMillis when the mutation completed (epoch millis)
+ * @param tenant          tenant id, null for the default tenant
+ * @param actor           calling client (token {@code azp}/{@code client_id}, else the principal name)
+ * @param resourceType    {@code User} or {@code Group}
+ * @param resourceId      the resource written; for creates, the id it was given (null if it failed)
+ * @param operation       what was done
+ * @param status          HTTP status of the outcome; 202 when queued in async mode
+ * @param latencyMicros   time to the outcome; for queued operations, from acceptance to completion
+ * @param operationId     provisioning operation id, for writes accepted or completed in async mode
+ */
+public record AuditRecord(long timestampMillis, String tenant, String actor, String resourceType, String resourceId,
+                          Operation operation, int status, long latencyMicros, String operationId) {
+
+    public enum Operation { CREATE, REPLACE, PATCH, DELETE }
+}
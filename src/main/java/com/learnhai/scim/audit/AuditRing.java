@@ -0,0 +1,53 @@
+package com.learnhai.scim.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring of audit records, many producers (request threads) and one consumer (the
+ * segment writer). A producer claims a slot with a CAS on the head and publishes the record into it;
+ * the consumer takes slots in claim order and waits for a claimed slot until its record is published.
+ * When the ring is full, {@link #offer} fails rather than blocking the request.
+ */
+final class AuditRing {
+
+    private final AtomicReferenceArray<AuditRecord> slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // next slot to claim
+    private volatile long tail;                       // next slot to consume; written by the consumer only
+
+    AuditRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1; // next power of two
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    boolean offer(AuditRecord record) {
+        long claimed;
+        do {
+            claimed = head.get();
+            if (claimed - tail > mask) {
+                return false;
+            }
+        } while (!head.compareAndSet(claimed, claimed + 1));
+        slots.set((int) claimed & mask, record);
+        return true;
+    }
+
+    /** The next record, or null if there is none (or the next one is claimed but not yet published). */
+    AuditRecord poll() {
+        long next = tail;
+        int slot = (int) next & mask;
+        AuditRecord record = slots.get(slot);
+        if (record == null) {
+            return null;
+        }
+        slots.lazySet(slot, null);
+        tail = next + 1; // frees the slot for producers
+        return record;
+    }
+
+    boolean isEmpty() {
+        return head.get() == tail;
+    }
+}
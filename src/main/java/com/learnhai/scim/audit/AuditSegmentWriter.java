@@ -0,0 +1,154 @@
+package com.learnhai.scim.audit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Background writer draining an {@link AuditRing} into memory-mapped segment files
+ * ({@code audit-<sequence>.seg}, layout in {@link AuditCodec}). Records are copied into the mapping,
+ * which the OS writes back on its own; the mapping is also forced to disk every flush interval and
+ * on rotation. A new segment is started on every open and whenever the current one is full, and
+ * only the newest {@code maxSegments} are kept.
+ */
+@Slf4j
+class AuditSegmentWriter implements Closeable {
+
+    private static final String PREFIX = "audit-";
+    private static final String SUFFIX = ".seg";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final Path directory;
+    private final AuditRing ring;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final long flushIntervalNanos;
+    private final CRC32 crc = new CRC32();
+
+    private long sequence;
+    private MappedByteBuffer segment;
+    private boolean dirty;
+    private long flushedAtNanos;
+    private volatile boolean closed;
+    private Thread thread;
+
+    AuditSegmentWriter(Path directory, AuditRing ring, int segmentBytes, int maxSegments, long flushIntervalMillis) {
+        this.directory = directory;
+        this.ring = ring;
+        this.segmentBytes = Math.max(segmentBytes, AuditCodec.MAGIC.length + AuditCodec.MAX_RECORD_BYTES);
+        this.maxSegments = Math.max(1, maxSegments);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+    }
+
+    void open() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> existing = segments(directory);
+        sequence = existing.isEmpty() ? 0 : sequenceOf(existing.get(existing.size() - 1));
+        rotate();
+        thread = new Thread(this::drainLoop, "scim-audit-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void drainLoop() {
+        while (true) {
+            AuditRecord record = ring.poll();
+            if (record != null) {
+                try {
+                    append(record);
+                } catch (IOException | RuntimeException e) {
+                    log.error("Dropping audit record: {}", e.getMessage());
+                }
+                continue;
+            }
+            if (closed && ring.isEmpty()) {
+                break;
+            }
+            if (dirty && System.nanoTime() - flushedAtNanos > flushIntervalNanos) {
+                force();
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS); // producers never signal; a short nap keeps them lock-free
+        }
+        force();
+    }
+
+    private void append(AuditRecord record) throws IOException {
+        if (segment.remaining() < AuditCodec.MAX_RECORD_BYTES) {
+            force();
+            rotate();
+        }
+        AuditCodec.write(segment, record, crc);
+        dirty = true;
+    }
+
+    private void rotate() throws IOException {
+        Path file = directory.resolve(String.format("%s%019d%s", PREFIX, ++sequence, SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes); // stays valid after close
+        }
+        segment.put(AuditCodec.MAGIC);
+        dirty = true;
+        List<Path> all = segments(directory);
+        for (int i = 0; i < all.size() - maxSegments; i++) {
+            Files.deleteIfExists(all.get(i));
+        }
+    }
+
+    private void force() {
+        if (dirty) {
+            segment.force();
+            dirty = false;
+        }
+        flushedAtNanos = System.nanoTime();
+    }
+
+    /** Stops after the ring has been drained, waiting up to {@code timeoutMillis}. */
+    void close(long timeoutMillis) {
+        closed = true;
+        if (thread != null) {
+            try {
+                thread.join(timeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        close(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /** Segment files of {@code directory}, oldest first. */
+    static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> {
+                String name = f.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted().toList();
+        }
+    }
+
+    private static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.learnhai.scim.backend;
+
+import org.keycloak.representations.idm.AdminEventRepresentation;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.PartialImportRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Base class for decorators: forwards every call to the wrapped backend, so a decorator only
+ * overrides what it changes. Decorators stack, e.g. metrics around a cache around Keycloak. When
+ * registering one as a bean next to the backend it wraps, mark the outermost one {@code @Primary}.
+ */
+public abstract class ForwardingIdentityBackend implements IdentityBackend {
+
+    protected final IdentityBackend delegate;
+
+    protected ForwardingIdentityBackend(IdentityBackend delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String createUser(UserRepresentation userRep) {
+        return delegate.createUser(userRep);
+    }
+
+    @Override
+    public Optional<UserRepresentation> getUserById(String id) {
+        return delegate.getUserById(id);
+    }
+
+    @Override
+    public Optional<UserRepresentation> getUserByUsername(String username) {
+        return delegate.getUserByUsername(username);
+    }
+
+    @Override
+    public List<UserRepresentation> findUsersByEmail(String email) {
+        return delegate.findUsersByEmail(email);
+    }
+
+    @Override
+    public List<UserRepresentation> findUsersByAttribute(String name, String value) {
+        return delegate.findUsersByAttribute(name, value);
+    }
+
+    @Override
+    public void updateUser(String id, UserRepresentation userRep) {
+        delegate.updateUser(id, userRep);
+    }
+
+    @Override
+    public void deleteUser(String id) {
+        delegate.deleteUser(id);
+    }
+
+    @Override
+    public List<UserRepresentation> getUsers(Integer firstResult, Integer maxResults, String search) {
+        return delegate.getUsers(firstResult, maxResults, search);
+    }
+
+    @Override
+    public long countUsers(String search) {
+        return delegate.countUsers(search);
+    }
+
+    @Override
+    public String createGroup(GroupRepresentation groupRep) {
+        return delegate.createGroup(groupRep);
+    }
+
+    @Override
+    public Optional<GroupRepresentation> getGroupById(String id) {
+        return delegate.getGroupById(id);
+    }
+
+    @Override
+    public Optional<GroupRepresentation> getGroupByName(String name) {
+        return delegate.getGroupByName(name);
+    }
+
+    @Override
+    public void updateGroup(String id, GroupRepresentation groupRep) {
+        delegate.updateGroup(id, groupRep);
+    }
+
+    @Override
+    public void deleteGroup(String id) {
+        delegate.deleteGroup(id);
+    }
+
+    @Override
+    public List<GroupRepresentation> getGroups(Integer firstResult, Integer maxResults, String filter) {
+        return delegate.getGroups(firstResult, maxResults, filter);
+    }
+
+    @Override
+    public long countGroups(String filter) {
+        return delegate.countGroups(filter);
+    }
+
+    @Override
+    public List<GroupRepresentation> getSubGroups(String groupId, Integer firstResult, Integer maxResults) {
+        return delegate.getSubGroups(groupId, firstResult, maxResults);
+    }
+
+    @Override
+    public void moveGroup(String groupId, String parentId) {
+        delegate.moveGroup(groupId, parentId);
+    }
+
+    @Override
+    public void addUserToGroup(String userId, String groupId) {
+        delegate.addUserToGroup(userId, groupId);
+    }
+
+    @Override
+    public void removeUserFromGroup(String userId, String groupId) {
+        delegate.removeUserFromGroup(userId, groupId);
+    }
+
+    @Override
+    public List<UserRepresentation> getGroupMembers(String groupId, Integer firstResult, Integer maxResults) {
+        return delegate.getGroupMembers(groupId, firstResult, maxResults);
+    }
+
+    @Override
+    public long countGroupMembers(String groupId) {
+        return delegate.countGroupMembers(groupId);
+    }
+
+    @Override
+    public boolean isGroupMember(String userId, String groupId) {
+        return delegate.isGroupMember(userId, groupId);
+    }
+
+    @Override
+    public List<AdminEventRepresentation> getAdminEvents(long fromMillis, Integer firstResult, Integer maxResults) {
+        return delegate.getAdminEvents(fromMillis, firstResult, maxResults);
+    }
+
+    @Override
+    public List<ImportedResource> partialImport(PartialImportRepresentation batch) {
+        return delegate.partialImport(batch);
+    }
+}
@@ -0,0 +1,127 @@
+package com.learnhai.scim.backend;
+
+import org.keycloak.representations.idm.AdminEventRepresentation;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.PartialImportRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The identity store behind the SCIM services. Resources are exchanged as Keycloak representations,
+ * which is what the mappers work with, whatever the store is.
+ * <p>
+ * Contract shared by all implementations (it is what {@code KeycloakService} has always done):
+ * <ul>
+ *   <li>Lookups of missing resources return {@link Optional#empty()} or an empty list; only
+ *       store failures throw.</li>
+ *   <li>Creates return the new id and fail with a 409 {@code ScimException} on a duplicate username
+ *       or group name; updates of a missing resource and membership adds with a missing user or
+ *       group fail with 404.</li>
+ *   <li>Deletes and membership removals of something that does not exist are no-ops. Deleting a
+ *       group deletes its subgroups.</li>
+ *   <li>Returned representations belong to the caller, who may modify them; changes only take
+ *       effect through an update call.</li>
+ * </ul>
+ * Cross-cutting behaviour (caching, metrics, resilience) belongs in decorators built on
+ * {@link ForwardingIdentityBackend}.
+ */
+public interface IdentityBackend {
+
+    // --- Users ---
+
+    String createUser(UserRepresentation userRep);
+
+    Optional<UserRepresentation> getUserById(String id);
+
+    /** Exact, case-insensitive username match. */
+    Optional<UserRepresentation> getUserByUsername(String username);
+
+    /** Exact, case-insensitive email match. */
+    List<UserRepresentation> findUsersByEmail(String email);
+
+    /** Users whose attribute {@code name} has the value {@code value} (exact match). */
+    List<UserRepresentation> findUsersByAttribute(String name, String value);
+
+    void updateUser(String id, UserRepresentation userRep);
+
+    void deleteUser(String id);
+
+    /** A page of users; {@code search} is a substring of username, email, first or last name. */
+    List<UserRepresentation> getUsers(Integer firstResult, Integer maxResults, String search);
+
+    long countUsers(String search);
+
+    // --- Groups ---
+
+    String createGroup(GroupRepresentation groupRep);
+
+    Optional<GroupRepresentation> getGroupById(String id);
+
+    /** Exact group name match. */
+    Optional<GroupRepresentation> getGroupByName(String name);
+
+    void updateGroup(String id, GroupRepresentation groupRep);
+
+    void deleteGroup(String id);
+
+    /**
+     * A page of top-level groups; with a {@code filter}, only those whose name or a descendant's
+     * name contains it. Subgroups are listed with {@link #getSubGroups}.
+     */
+    List<GroupRepresentation> getGroups(Integer firstResult, Integer maxResults, String filter);
+
+    /** Groups at any depth whose name contains {@code filter}, or all groups. */
+    long countGroups(String filter);
+
+    // --- Hierarchy ---
+
+    /**
+     * A page of the direct subgroups of a group, by name; empty if the group does not exist. Returned
+     * representations carry {@code parentId} and, where the store knows it, {@code subGroupCount}.
+     */
+    List<GroupRepresentation> getSubGroups(String groupId, Integer firstResult, Integer maxResults);
+
+    /**
+     * Makes a group a subgroup of {@code parentId}, or top-level when it is null, taking its subtree
+     * along. Groups have at most one parent. Fails with 404 when either group is missing and with
+     * 400 when the parent is the group itself or one of its descendants.
+     */
+    void moveGroup(String groupId, String parentId);
+
+    // --- Membership ---
+
+    void addUserToGroup(String userId, String groupId);
+
+    void removeUserFromGroup(String userId, String groupId);
+
+    List<UserRepresentation> getGroupMembers(String groupId, Integer firstResult, Integer maxResults);
+
+    long countGroupMembers(String groupId);
+
+    /** Whether the user is a direct member of the group; false if either does not exist. */
+    boolean isGroupMember(String userId, String groupId);
+
+    // --- Change feed ---
+
+    /**
+     * A page of the admin events recorded at or after {@code fromMillis} (store time), oldest first;
+     * empty if the store keeps none. Keycloak records them only when admin events are enabled on the realm.
+     */
+    List<AdminEventRepresentation> getAdminEvents(long fromMillis, Integer firstResult, Integer maxResults);
+
+    // --- Bulk load ---
+
+    /**
+     * Imports users and groups in one call, the way Keycloak's realm partial import does: groups
+     * first, with their nested {@code subGroups}, then users, who join groups through the group paths
+     * in {@link UserRepresentation#getGroups()} (e.g. {@code /parent/child}). Ids in the batch are
+     * ignored; the store assigns them. The batch policy decides what happens to a user or top-level
+     * group that already exists: {@code SKIP} keeps the existing one, {@code OVERWRITE} replaces it,
+     * and {@code FAIL} (the default) rejects the whole batch with a 409.
+     *
+     * @return the imported users and top-level groups, with the ids the store gave them
+     */
+    List<ImportedResource> partialImport(PartialImportRepresentation batch);
+}
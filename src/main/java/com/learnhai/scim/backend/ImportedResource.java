@@ -0,0 +1,16 @@
+package com.learnhai.scim.backend;
+
+/**
+ * One resource of a {@link IdentityBackend#partialImport partial import}, as the store reports it.
+ *
+ * @param type   user or group
+ * @param name   username or group name, as imported
+ * @param id     id the store gave it; for skipped resources, the id of the one that already existed
+ * @param action what the import did with it
+ */
+public record ImportedResource(Type type, String name, String id, Action action) {
+
+    public enum Type { USER, GROUP }
+
+    public enum Action { ADDED, OVERWRITTEN, SKIPPED }
+}
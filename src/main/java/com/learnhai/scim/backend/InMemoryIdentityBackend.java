@@ -0,0 +1,691 @@
+package com.learnhai.scim.backend;
+
+import com.learnhai.scim.exception.ScimException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.keycloak.representations.idm.AdminEventRepresentation;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.PartialImportRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.http.HttpStatus;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Identity store held entirely in memory ({@code scim.backend=in-memory}), for benchmarks, tests
+ * and as the storage layer of caching decorators. Nothing is persisted; each tenant gets its own
+ * instance from {@link com.learnhai.scim.config.InMemoryBackendConfig}.
+ * <p>
+ * Reads are lock-free: users and groups live in concurrent maps, with username and group name
+ * indexes kept sorted so pages come back in Keycloak's order. Every user also gets an int slot, and
+ * group membership is a sorted int array of slots rather than a set of id strings, which keeps
+ * large groups compact. User writes are serialized on one lock, group and membership writes on the
+ * group. Representations are copied in and out, as they would be over HTTP.
+ * <p>
+ * Groups nest as in Keycloak (one parent each), but names are unique across the whole store rather
+ * than among siblings.
+ */
+@Slf4j
+public class InMemoryIdentityBackend implements IdentityBackend {
+
+    private static final class UserRecord {
+        final int slot;
+        volatile UserRepresentation user;
+
+        UserRecord(int slot, UserRepresentation user) {
+            this.slot = slot;
+            this.user = user;
+        }
+    }
+
+    private static final class GroupRecord {
+        volatile GroupRepresentation group; // parentId lives here
+        final SortedIntSet members = new SortedIntSet(); // user slots, guarded by this record
+        final Set<String> children = ConcurrentHashMap.newKeySet(); // subgroup ids, written under groupLock
+
+        GroupRecord(GroupRepresentation group) {
+            this.group = group;
+        }
+    }
+
+    private final Map<String, UserRecord> usersById = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<String, UserRecord> usersByUsername = new ConcurrentSkipListMap<>();
+    private final Map<String, UserRecord> usersByEmail = new ConcurrentHashMap<>();
+    private final Object userLock = new Object();
+    private volatile AtomicReferenceArray<UserRecord> slots = new AtomicReferenceArray<>(1024);
+    private int nextSlot; // guarded by userLock
+
+    private static final int MAX_DEPTH = 1000; // bounds path walks over a concurrently moving tree
+
+    private final Map<String, GroupRecord> groupsById = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<String, GroupRecord> groupsByName = new ConcurrentSkipListMap<>();
+    private final Object groupLock = new Object();
+
+    // --- Users ---
+
+    /** Keeps the representation's id if it has one, so fixtures can seed known ids. */
+    @Override
+    public String createUser(UserRepresentation userRep) {
+        if (StringUtils.isBlank(userRep.getUsername())) {
+            throw new ScimException("User name is missing", HttpStatus.BAD_REQUEST);
+        }
+        UserRepresentation user = copy(userRep);
+        user.setId(StringUtils.isNotBlank(userRep.getId()) ? userRep.getId() : UUID.randomUUID().toString());
+        user.setUsername(lower(user.getUsername()));
+        user.setEmail(lower(user.getEmail()));
+        if (user.getCreatedTimestamp() == null) {
+            user.setCreatedTimestamp(System.currentTimeMillis());
+        }
+        if (user.isEnabled() == null) {
+            user.setEnabled(false);
+        }
+        synchronized (userLock) {
+            if (usersById.containsKey(user.getId()) || usersByUsername.containsKey(user.getUsername())) {
+                throw new ScimException("Failed to create user: User exists with same username", HttpStatus.CONFLICT);
+            }
+            if (user.getEmail() != null && usersByEmail.containsKey(user.getEmail())) {
+                throw new ScimException("Failed to create user: User exists with same email", HttpStatus.CONFLICT);
+            }
+            int slot = nextSlot++;
+            if (slot == slots.length()) {
+                AtomicReferenceArray<UserRecord> grown = new AtomicReferenceArray<>(slot * 2);
+                for (int i = 0; i < slot; i++) {
+                    grown.set(i, slots.get(i));
+                }
+                slots = grown;
+            }
+            UserRecord record = new UserRecord(slot, user);
+            slots.set(slot, record);
+            usersById.put(user.getId(), record);
+            usersByUsername.put(user.getUsername(), record);
+            if (user.getEmail() != null) {
+                usersByEmail.put(user.getEmail(), record);
+            }
+        }
+        return user.getId();
+    }
+
+    @Override
+    public Optional<UserRepresentation> getUserById(String id) {
+        UserRecord record = id == null ? null : usersById.get(id);
+        return record == null ? Optional.empty() : Optional.of(copy(record.user));
+    }
+
+    @Override
+    public Optional<UserRepresentation> getUserByUsername(String username) {
+        UserRecord record = username == null ? null : usersByUsername.get(lower(username));
+        return record == null ? Optional.empty() : Optional.of(copy(record.user));
+    }
+
+    @Override
+    public List<UserRepresentation> findUsersByEmail(String email) {
+        UserRecord record = email == null ? null : usersByEmail.get(lower(email));
+        return record == null ? List.of() : List.of(copy(record.user));
+    }
+
+    /** A scan of every user, as the attributes are not indexed here. */
+    @Override
+    public List<UserRepresentation> findUsersByAttribute(String name, String value) {
+        List<UserRepresentation> found = new ArrayList<>();
+        for (UserRecord record : usersByUsername.values()) {
+            UserRepresentation user = record.user;
+            List<String> values = user.getAttributes() == null ? null : user.getAttributes().get(name);
+            if (values != null && values.contains(value)) {
+                found.add(copy(user));
+            }
+        }
+        return found;
+    }
+
+    /** Like Keycloak's PUT: fields left null in {@code userRep} keep their current value. */
+    @Override
+    public void updateUser(String id, UserRepresentation userRep) {
+        synchronized (userLock) {
+            UserRecord record = usersById.get(id);
+            if (record == null) {
+                throw new ScimException("User " + id + " not found in Keycloak for update.", HttpStatus.NOT_FOUND);
+            }
+            UserRepresentation current = record.user;
+            UserRepresentation next = copy(current);
+            if (userRep.getUsername() != null) {
+                next.setUsername(lower(userRep.getUsername()));
+            }
+            if (userRep.getEmail() != null) {
+                next.setEmail(lower(userRep.getEmail()));
+            }
+            if (userRep.getFirstName() != null) {
+                next.setFirstName(userRep.getFirstName());
+            }
+            if (userRep.getLastName() != null) {
+                next.setLastName(userRep.getLastName());
+            }
+            if (userRep.isEnabled() != null) {
+                next.setEnabled(userRep.isEnabled());
+            }
+            if (userRep.isEmailVerified() != null) {
+                next.setEmailVerified(userRep.isEmailVerified());
+            }
+            if (userRep.getAttributes() != null) {
+                next.setAttributes(copyAttributes(userRep.getAttributes()));
+            }
+
+            UserRecord byName = usersByUsername.get(next.getUsername());
+            if (byName != null && byName != record) {
+                throw new ScimException("Failed to update user " + id + ": User exists with same username", HttpStatus.CONFLICT);
+            }
+            UserRecord byEmail = next.getEmail() == null ? null : usersByEmail.get(next.getEmail());
+            if (byEmail != null && byEmail != record) {
+                throw new ScimException("Failed to update user " + id + ": User exists with same email", HttpStatus.CONFLICT);
+            }
+            record.user = next;
+            if (!next.getUsername().equals(current.getUsername())) {
+                usersByUsername.remove(current.getUsername(), record);
+                usersByUsername.put(next.getUsername(), record);
+            }
+            if (current.getEmail() != null && !current.getEmail().equals(next.getEmail())) {
+                usersByEmail.remove(current.getEmail(), record);
+            }
+            if (next.getEmail() != null) {
+                usersByEmail.put(next.getEmail(), record);
+            }
+        }
+    }
+
+    @Override
+    public void deleteUser(String id) {
+        UserRecord record;
+        synchronized (userLock) {
+            record = usersById.remove(id);
+            if (record == null) {
+                log.warn("User {} not found during delete attempt.", id);
+                return;
+            }
+            UserRepresentation user = record.user;
+            usersByUsername.remove(user.getUsername(), record);
+            if (user.getEmail() != null) {
+                usersByEmail.remove(user.getEmail(), record);
+            }
+            slots.set(record.slot, null);
+        }
+        for (GroupRecord group : groupsById.values()) {
+            synchronized (group) {
+                group.members.remove(record.slot);
+            }
+        }
+    }
+
+    @Override
+    public List<UserRepresentation> getUsers(Integer firstResult, Integer maxResults, String search) {
+        int skip = firstResult == null ? 0 : Math.max(0, firstResult);
+        int max = maxResults == null || maxResults < 0 ? Integer.MAX_VALUE : maxResults;
+        String term = StringUtils.isBlank(search) ? null : lower(search.replace("*", ""));
+        List<UserRepresentation> page = new ArrayList<>(Math.min(max, 100));
+        for (UserRecord record : usersByUsername.values()) {
+            if (page.size() >= max) {
+                break;
+            }
+            UserRepresentation user = record.user;
+            if (term != null && !matches(user, term)) {
+                continue;
+            }
+            if (skip > 0) {
+                skip--;
+            } else {
+                page.add(copy(user));
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public long countUsers(String search) {
+        if (StringUtils.isBlank(search)) {
+            return usersById.size();
+        }
+        String term = lower(search.replace("*", ""));
+        long count = 0;
+        for (UserRecord record : usersByUsername.values()) {
+            if (matches(record.user, term)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean matches(UserRepresentation user, String term) {
+        return contains(user.getUsername(), term) || contains(user.getEmail(), term)
+                || contains(user.getFirstName(), term) || contains(user.getLastName(), term);
+    }
+
+    // --- Groups ---
+
+    @Override
+    public String createGroup(GroupRepresentation groupRep) {
+        if (StringUtils.isBlank(groupRep.getName())) {
+            throw new ScimException("Group name is missing", HttpStatus.BAD_REQUEST);
+        }
+        GroupRepresentation group = copy(groupRep);
+        group.setId(StringUtils.isNotBlank(groupRep.getId()) ? groupRep.getId() : UUID.randomUUID().toString());
+        group.setParentId(null); // created at the top level, as by POST /groups
+        synchronized (groupLock) {
+            if (groupsById.containsKey(group.getId()) || groupsByName.containsKey(group.getName())) {
+                throw new ScimException("Failed to create group: Top level group named '" + group.getName() + "' already exists.", HttpStatus.CONFLICT);
+            }
+            GroupRecord record = new GroupRecord(group);
+            groupsById.put(group.getId(), record);
+            groupsByName.put(group.getName(), record);
+        }
+        return group.getId();
+    }
+
+    @Override
+    public Optional<GroupRepresentation> getGroupById(String id) {
+        GroupRecord record = id == null ? null : groupsById.get(id);
+        return record == null ? Optional.empty() : Optional.of(view(record));
+    }
+
+    @Override
+    public Optional<GroupRepresentation> getGroupByName(String name) {
+        GroupRecord record = name == null ? null : groupsByName.get(name);
+        return record == null ? Optional.empty() : Optional.of(view(record));
+    }
+
+    @Override
+    public void updateGroup(String id, GroupRepresentation groupRep) {
+        synchronized (groupLock) {
+            GroupRecord record = groupsById.get(id);
+            if (record == null) {
+                throw new ScimException("Group " + id + " not found in Keycloak for update.", HttpStatus.NOT_FOUND);
+            }
+            GroupRepresentation current = record.group;
+            GroupRepresentation next = copy(current);
+            if (groupRep.getName() != null && !groupRep.getName().equals(current.getName())) {
+                if (groupsByName.containsKey(groupRep.getName())) {
+                    throw new ScimException("Failed to update group " + id + ": Sibling group named '" + groupRep.getName() + "' already exists.", HttpStatus.CONFLICT);
+                }
+                next.setName(groupRep.getName());
+            }
+            if (groupRep.getAttributes() != null) {
+                next.setAttributes(copyAttributes(groupRep.getAttributes()));
+            }
+            record.group = next;
+            if (!next.getName().equals(current.getName())) {
+                groupsByName.remove(current.getName(), record);
+                groupsByName.put(next.getName(), record);
+            }
+        }
+    }
+
+    @Override
+    public void deleteGroup(String id) {
+        synchronized (groupLock) {
+            GroupRecord record = groupsById.get(id);
+            if (record == null) {
+                log.warn("Group {} not found during delete attempt.", id);
+                return;
+            }
+            GroupRecord parent = parentOf(record);
+            if (parent != null) {
+                parent.children.remove(id);
+            }
+            removeSubtree(record);
+        }
+    }
+
+    // Keycloak deletes subgroups along with their parent
+    private void removeSubtree(GroupRecord record) {
+        for (String childId : record.children) {
+            GroupRecord child = groupsById.get(childId);
+            if (child != null) {
+                removeSubtree(child);
+            }
+        }
+        groupsById.remove(record.group.getId(), record);
+        groupsByName.remove(record.group.getName(), record);
+    }
+
+    @Override
+    public List<GroupRepresentation> getGroups(Integer firstResult, Integer maxResults, String filter) {
+        int skip = firstResult == null ? 0 : Math.max(0, firstResult);
+        int max = maxResults == null || maxResults < 0 ? Integer.MAX_VALUE : maxResults;
+        String term = StringUtils.isBlank(filter) ? null : lower(filter);
+        List<GroupRepresentation> page = new ArrayList<>(Math.min(max, 100));
+        for (GroupRecord record : groupsByName.values()) {
+            if (page.size() >= max) {
+                break;
+            }
+            if (record.group.getParentId() != null || (term != null && !subtreeMatches(record, term, 0))) {
+                continue;
+            }
+            if (skip > 0) {
+                skip--;
+            } else {
+                page.add(view(record));
+            }
+        }
+        return page;
+    }
+
+    private boolean subtreeMatches(GroupRecord record, String term, int depth) {
+        if (contains(record.group.getName(), term)) {
+            return true;
+        }
+        if (depth > MAX_DEPTH) {
+            return false;
+        }
+        for (String childId : record.children) {
+            GroupRecord child = groupsById.get(childId);
+            if (child != null && subtreeMatches(child, term, depth + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long countGroups(String filter) {
+        if (StringUtils.isBlank(filter)) {
+            return groupsById.size();
+        }
+        String term = lower(filter);
+        return groupsByName.values().stream().filter(record -> contains(record.group.getName(), term)).count();
+    }
+
+    // --- Hierarchy ---
+
+    @Override
+    public List<GroupRepresentation> getSubGroups(String groupId, Integer firstResult, Integer maxResults) {
+        GroupRecord group = groupId == null ? null : groupsById.get(groupId);
+        if (group == null) {
+            return List.of();
+        }
+        List<GroupRecord> children = new ArrayList<>(group.children.size());
+        for (String childId : group.children) {
+            GroupRecord child = groupsById.get(childId);
+            if (child != null) {
+                children.add(child);
+            }
+        }
+        children.sort(Comparator.comparing(child -> child.group.getName()));
+        int first = firstResult == null ? 0 : Math.max(0, firstResult);
+        int max = maxResults == null || maxResults < 0 ? Integer.MAX_VALUE : maxResults;
+        List<GroupRepresentation> page = new ArrayList<>(Math.max(0, Math.min(max, children.size() - first)));
+        for (int i = first; i < children.size() && page.size() < max; i++) {
+            page.add(view(children.get(i)));
+        }
+        return page;
+    }
+
+    @Override
+    public void moveGroup(String groupId, String parentId) {
+        synchronized (groupLock) {
+            GroupRecord record = groupId == null ? null : groupsById.get(groupId);
+            GroupRecord parent = parentId == null ? null : groupsById.get(parentId);
+            if (record == null || (parentId != null && parent == null)) {
+                throw new ScimException("Group " + groupId + " or parent group " + parentId + " not found for move.", HttpStatus.NOT_FOUND);
+            }
+            for (GroupRecord ancestor = parent; ancestor != null; ancestor = parentOf(ancestor)) {
+                if (ancestor == record) {
+                    throw new ScimException("Cannot move group " + groupId + " under itself or one of its subgroups.", HttpStatus.BAD_REQUEST);
+                }
+            }
+            GroupRecord previous = parentOf(record);
+            if (previous != null) {
+                previous.children.remove(groupId);
+            }
+            GroupRepresentation next = copy(record.group);
+            next.setParentId(parentId);
+            record.group = next;
+            if (parent != null) {
+                parent.children.add(groupId);
+            }
+        }
+    }
+
+    private GroupRecord parentOf(GroupRecord record) {
+        String parentId = record.group.getParentId();
+        return parentId == null ? null : groupsById.get(parentId);
+    }
+
+    // --- Membership ---
+
+    @Override
+    public void addUserToGroup(String userId, String groupId) {
+        UserRecord user = userId == null ? null : usersById.get(userId);
+        GroupRecord group = groupId == null ? null : groupsById.get(groupId);
+        if (user == null || group == null) {
+            throw new ScimException("User " + userId + " or Group " + groupId + " not found for membership add.", HttpStatus.NOT_FOUND);
+        }
+        synchronized (group) {
+            // deleteUser clears the slot before it sweeps the groups, so this never re-adds a deleted user
+            if (slots.get(user.slot) != user) {
+                throw new ScimException("User " + userId + " or Group " + groupId + " not found for membership add.", HttpStatus.NOT_FOUND);
+            }
+            group.members.add(user.slot);
+        }
+    }
+
+    @Override
+    public void removeUserFromGroup(String userId, String groupId) {
+        UserRecord user = userId == null ? null : usersById.get(userId);
+        GroupRecord group = groupId == null ? null : groupsById.get(groupId);
+        if (user == null || group == null) {
+            log.warn("User {} or Group {} not found, or user not in group, during membership remove.", userId, groupId);
+            return;
+        }
+        synchronized (group) {
+            group.members.remove(user.slot);
+        }
+    }
+
+    @Override
+    public List<UserRepresentation> getGroupMembers(String groupId, Integer firstResult, Integer maxResults) {
+        GroupRecord group = groupId == null ? null : groupsById.get(groupId);
+        if (group == null) {
+            return List.of();
+        }
+        int first = firstResult == null ? 0 : Math.max(0, firstResult);
+        int max = maxResults == null || maxResults < 0 ? Integer.MAX_VALUE : maxResults;
+        int[] members;
+        synchronized (group) {
+            members = group.members.slice(first, max);
+        }
+        AtomicReferenceArray<UserRecord> table = slots;
+        List<UserRepresentation> page = new ArrayList<>(members.length);
+        for (int slot : members) {
+            UserRecord record = slot < table.length() ? table.get(slot) : null;
+            if (record != null) {
+                page.add(copy(record.user));
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public long countGroupMembers(String groupId) {
+        GroupRecord group = groupId == null ? null : groupsById.get(groupId);
+        if (group == null) {
+            return 0;
+        }
+        synchronized (group) {
+            return group.members.size();
+        }
+    }
+
+    @Override
+    public boolean isGroupMember(String userId, String groupId) {
+        UserRecord user = userId == null ? null : usersById.get(userId);
+        GroupRecord group = groupId == null ? null : groupsById.get(groupId);
+        if (user == null || group == null) {
+            return false;
+        }
+        synchronized (group) {
+            return group.members.contains(user.slot);
+        }
+    }
+
+    // --- Change feed ---
+
+    /** Every write goes through this instance, so there is nothing to catch up on. */
+    @Override
+    public List<AdminEventRepresentation> getAdminEvents(long fromMillis, Integer firstResult, Integer maxResults) {
+        return List.of();
+    }
+
+    // --- Bulk load ---
+
+    /**
+     * Emulates Keycloak's partial import with the single-resource writes. Unlike Keycloak's, it is not
+     * one transaction: conflicts under {@code FAIL} are checked up front, but a batch that fails half
+     * way (say, on an unknown group path) keeps what it created so far.
+     */
+    @Override
+    public List<ImportedResource> partialImport(PartialImportRepresentation batch) {
+        PartialImportRepresentation.Policy policy = batch.getPolicy() != null ? batch.getPolicy() : PartialImportRepresentation.Policy.FAIL;
+        List<GroupRepresentation> groups = batch.getGroups() != null ? batch.getGroups() : List.of();
+        List<UserRepresentation> users = batch.getUsers() != null ? batch.getUsers() : List.of();
+        if (policy == PartialImportRepresentation.Policy.FAIL) {
+            for (GroupRepresentation group : groups) {
+                if (groupsByName.containsKey(group.getName())) {
+                    throw new ScimException("Top level group named '" + group.getName() + "' already exists.", HttpStatus.CONFLICT, "uniqueness");
+                }
+            }
+            for (UserRepresentation user : users) {
+                if (existing(user) != null) {
+                    throw new ScimException("User '" + user.getUsername() + "' already exists.", HttpStatus.CONFLICT, "uniqueness");
+                }
+            }
+        }
+
+        List<ImportedResource> imported = new ArrayList<>();
+        for (GroupRepresentation group : groups) {
+            GroupRecord existing = group.getName() == null ? null : groupsByName.get(group.getName());
+            ImportedResource.Action action = ImportedResource.Action.ADDED;
+            if (existing != null && policy == PartialImportRepresentation.Policy.SKIP) {
+                imported.add(new ImportedResource(ImportedResource.Type.GROUP, group.getName(), existing.group.getId(), ImportedResource.Action.SKIPPED));
+                continue;
+            } else if (existing != null) {
+                deleteGroup(existing.group.getId());
+                action = ImportedResource.Action.OVERWRITTEN;
+            }
+            imported.add(new ImportedResource(ImportedResource.Type.GROUP, group.getName(), importGroup(group, null, 0), action));
+        }
+        for (UserRepresentation user : users) {
+            UserRecord existing = existing(user);
+            ImportedResource.Action action = ImportedResource.Action.ADDED;
+            if (existing != null && policy == PartialImportRepresentation.Policy.SKIP) {
+                imported.add(new ImportedResource(ImportedResource.Type.USER, user.getUsername(), existing.user.getId(), ImportedResource.Action.SKIPPED));
+                continue;
+            } else if (existing != null) {
+                deleteUser(existing.user.getId());
+                action = ImportedResource.Action.OVERWRITTEN;
+            }
+            UserRepresentation fresh = copy(user);
+            fresh.setId(null);
+            String id = createUser(fresh);
+            for (String path : user.getGroups() != null ? user.getGroups() : List.<String>of()) {
+                addUserToGroup(id, groupByPath(path).group.getId());
+            }
+            imported.add(new ImportedResource(ImportedResource.Type.USER, user.getUsername(), id, action));
+        }
+        return imported;
+    }
+
+    private UserRecord existing(UserRepresentation user) {
+        UserRecord record = user.getUsername() == null ? null : usersByUsername.get(lower(user.getUsername()));
+        return record != null || user.getEmail() == null ? record : usersByEmail.get(lower(user.getEmail()));
+    }
+
+    private String importGroup(GroupRepresentation group, String parentId, int depth) {
+        if (depth >= MAX_DEPTH) {
+            throw new ScimException("Group hierarchy too deep", HttpStatus.BAD_REQUEST);
+        }
+        GroupRepresentation fresh = copy(group);
+        fresh.setId(null);
+        String id = createGroup(fresh);
+        if (parentId != null) {
+            moveGroup(id, parentId);
+        }
+        for (GroupRepresentation child : group.getSubGroups() != null ? group.getSubGroups() : List.<GroupRepresentation>of()) {
+            importGroup(child, id, depth + 1);
+        }
+        return id;
+    }
+
+    private GroupRecord groupByPath(String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        GroupRecord record = groupsByName.get(name);
+        if (record == null || !view(record).getPath().equals(path.startsWith("/") ? path : "/" + path)) {
+            throw new ScimException("Unable to find group specified by path: " + path, HttpStatus.BAD_REQUEST);
+        }
+        return record;
+    }
+
+    // --- Copies ---
+
+    private static UserRepresentation copy(UserRepresentation source) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId(source.getId());
+        user.setUsername(source.getUsername());
+        user.setEmail(source.getEmail());
+        user.setEmailVerified(source.isEmailVerified());
+        user.setFirstName(source.getFirstName());
+        user.setLastName(source.getLastName());
+        user.setEnabled(source.isEnabled());
+        user.setCreatedTimestamp(source.getCreatedTimestamp());
+        user.setAttributes(copyAttributes(source.getAttributes()));
+        return user;
+    }
+
+    private static GroupRepresentation copy(GroupRepresentation source) {
+        GroupRepresentation group = new GroupRepresentation();
+        group.setId(source.getId());
+        group.setName(source.getName());
+        group.setPath(source.getPath());
+        group.setParentId(source.getParentId());
+        group.setAttributes(copyAttributes(source.getAttributes()));
+        return group;
+    }
+
+    // A copy as Keycloak would return it: with the path through its ancestors and the subgroup count
+    private GroupRepresentation view(GroupRecord record) {
+        GroupRepresentation group = copy(record.group);
+        StringBuilder path = new StringBuilder("/").append(group.getName());
+        GroupRecord ancestor = parentOf(record);
+        for (int depth = 0; ancestor != null && depth < MAX_DEPTH; depth++, ancestor = parentOf(ancestor)) {
+            path.insert(0, "/" + ancestor.group.getName());
+        }
+        group.setPath(path.toString());
+        group.setSubGroupCount((long) record.children.size());
+        return group;
+    }
+
+    private static Map<String, List<String>> copyAttributes(Map<String, List<String>> attributes) {
+        if (attributes == null) {
+            return null;
+        }
+        Map<String, List<String>> copy = new HashMap<>(attributes.size() * 2);
+        attributes.forEach((name, values) -> copy.put(name, values == null ? null : new ArrayList<>(values)));
+        return copy;
+    }
+
+    private static String lower(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean contains(String value, String term) {
+        return value != null && value.toLowerCase(Locale.ROOT).contains(term);
+    }
+}
@@ -0,0 +1,57 @@
+package com.learnhai.scim.backend;
+
+import java.util.Arrays;
+
+/**
+ * A sorted set of ints in one growable array: 4 bytes per element, binary-search lookups and
+ * ordered iteration for stable paging. Not thread-safe; owners guard it. Shared with the
+ * service-level indexes that need the same compact id storage.
+ */
+public final class SortedIntSet {
+
+    private static final int[] EMPTY = new int[0];
+
+    private int[] values = EMPTY;
+    private int size;
+
+    public boolean add(int value) {
+        int i = Arrays.binarySearch(values, 0, size, value);
+        if (i >= 0) {
+            return false;
+        }
+        i = -i - 1;
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(8, size + (size >> 1)));
+        }
+        System.arraycopy(values, i, values, i + 1, size - i);
+        values[i] = value;
+        size++;
+        return true;
+    }
+
+    public boolean remove(int value) {
+        int i = Arrays.binarySearch(values, 0, size, value);
+        if (i < 0) {
+            return false;
+        }
+        System.arraycopy(values, i + 1, values, i, size - i - 1);
+        size--;
+        return true;
+    }
+
+    public boolean contains(int value) {
+        return Arrays.binarySearch(values, 0, size, value) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Copies up to {@code max} values starting at position {@code from}. */
+    public int[] slice(int from, int max) {
+        if (from >= size) {
+            return EMPTY;
+        }
+        return Arrays.copyOfRange(values, from, (int) Math.min(size, (long) from + max));
+    }
+}
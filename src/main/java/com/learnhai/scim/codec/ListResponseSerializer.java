@@ -0,0 +1,74 @@
+package com.learnhai.scim.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.learnhai.scim.model.scim.ListResponse;
+import com.learnhai.scim.model.scim.ScimGroup;
+import com.learnhai.scim.model.scim.ScimUser;
+
+import java.io.IOException;
+import java.util.List;
+
+import static com.learnhai.scim.codec.ScimJson.SCHEMAS;
+import static com.learnhai.scim.codec.ScimJson.writeString;
+import static com.learnhai.scim.codec.ScimJson.writeStringArray;
+
+/**
+ * Streams a {@link ListResponse}. User and group pages call the resource codecs directly instead of
+ * resolving a serializer per element; anything else falls back to the provider.
+ */
+@SuppressWarnings("rawtypes")
+public class ListResponseSerializer extends StdSerializer<ListResponse> {
+
+    static final SerializableString TOTAL_RESULTS = new SerializedString("totalResults");
+    static final SerializableString START_INDEX = new SerializedString("startIndex");
+    static final SerializableString ITEMS_PER_PAGE = new SerializedString("itemsPerPage");
+    static final SerializableString RESOURCES = new SerializedString("Resources");
+    static final SerializableString NEXT_CURSOR = new SerializedString("nextCursor");
+
+    private final ScimUserSerializer userSerializer;
+    private final ScimGroupSerializer groupSerializer;
+
+    public ListResponseSerializer(ScimUserSerializer userSerializer, ScimGroupSerializer groupSerializer) {
+        super(ListResponse.class);
+        this.userSerializer = userSerializer;
+        this.groupSerializer = groupSerializer;
+    }
+
+    @Override
+    public void serialize(ListResponse raw, JsonGenerator g, SerializerProvider provider) throws IOException {
+        ListResponse<?> response = raw; // registered for the raw class; read it through a wildcard
+        g.writeStartObject(response);
+        writeStringArray(g, SCHEMAS, response.getSchemas());
+        g.writeFieldName(TOTAL_RESULTS);
+        g.writeNumber(response.getTotalResults());
+        g.writeFieldName(START_INDEX);
+        g.writeNumber(response.getStartIndex());
+        g.writeFieldName(ITEMS_PER_PAGE);
+        g.writeNumber(response.getItemsPerPage());
+        writeString(g, NEXT_CURSOR, response.getNextCursor());
+        List<?> resources = response.getResources();
+        g.writeFieldName(RESOURCES);
+        if (resources == null) {
+            g.writeStartArray(null, 0);
+            g.writeEndArray();
+        } else {
+            g.writeStartArray(resources, resources.size());
+            for (int i = 0, n = resources.size(); i < n; i++) {
+                Object resource = resources.get(i);
+                if (resource instanceof ScimUser user) {
+                    userSerializer.serialize(user, g, provider);
+                } else if (resource instanceof ScimGroup group) {
+                    groupSerializer.serialize(group, g, provider);
+                } else {
+                    provider.defaultSerializeValue(resource, g);
+                }
+            }
+            g.writeEndArray();
+        }
+        g.writeEndObject();
+    }
+}
@@ -0,0 +1,24 @@
+package com.learnhai.scim.codec;
+
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.learnhai.scim.model.scim.ListResponse;
+import com.learnhai.scim.model.scim.ScimGroup;
+import com.learnhai.scim.model.scim.ScimUser;
+
+/**
+ * Registers the hand-written SCIM codecs, replacing the reflective bean (de)serializers for the
+ * hot request/response types.
+ */
+public class ScimCodecModule extends SimpleModule {
+
+    public ScimCodecModule() {
+        super("ScimCodecModule");
+        ScimUserSerializer userSerializer = new ScimUserSerializer();
+        ScimGroupSerializer groupSerializer = new ScimGroupSerializer();
+        addSerializer(ScimUser.class, userSerializer);
+        addSerializer(ScimGroup.class, groupSerializer);
+        addSerializer(ListResponse.class, new ListResponseSerializer(userSerializer, groupSerializer));
+        addDeserializer(ScimUser.class, new ScimUserDeserializer());
+        addDeserializer(ScimGroup.class, new ScimGroupDeserializer());
+    }
+}
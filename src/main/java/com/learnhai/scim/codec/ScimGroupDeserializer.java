@@ -0,0 +1,103 @@
+package com.learnhai.scim.codec;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.learnhai.scim.model.scim.ScimGroup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.learnhai.scim.codec.ScimJson.*;
+
+/**
+ * Token-streaming reader for {@link ScimGroup}, with the same case-insensitive attribute matching
+ * as {@link ScimUserDeserializer}.
+ */
+public class ScimGroupDeserializer extends StdDeserializer<ScimGroup> {
+
+    private enum Field { SCHEMAS, ID, EXTERNAL_ID, META, DISPLAY_NAME, MEMBERS }
+
+    private enum MemberField { VALUE, DISPLAY, TYPE, REF }
+
+    private static final FieldIndex<Field> FIELDS = new FieldIndex<Field>()
+            .add("schemas", Field.SCHEMAS)
+            .add("id", Field.ID)
+            .add("externalId", Field.EXTERNAL_ID)
+            .add("meta", Field.META)
+            .add("displayName", Field.DISPLAY_NAME)
+            .add("members", Field.MEMBERS);
+
+    private static final FieldIndex<MemberField> MEMBER_FIELDS = new FieldIndex<MemberField>()
+            .add("value", MemberField.VALUE)
+            .add("display", MemberField.DISPLAY)
+            .add("type", MemberField.TYPE)
+            .add("$ref", MemberField.REF);
+
+    public ScimGroupDeserializer() {
+        super(ScimGroup.class);
+    }
+
+    @Override
+    public ScimGroup deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (!enterObject(p, ctxt, ScimGroup.class)) {
+            return null;
+        }
+        ScimGroup group = new ScimGroup();
+        for (JsonToken t = p.currentToken(); t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+            Field field = FIELDS.lookup(p.currentName());
+            p.nextToken();
+            if (field == null) {
+                p.skipChildren();
+                continue;
+            }
+            switch (field) {
+                case SCHEMAS -> {
+                    List<String> schemas = readStringList(p, ctxt);
+                    group.setSchemas(ScimGroup.SCHEMAS_CORE.equals(schemas) ? ScimGroup.SCHEMAS_CORE : schemas);
+                }
+                case ID -> group.setId(readString(p, ctxt));
+                case EXTERNAL_ID -> group.setExternalId(readString(p, ctxt));
+                case META -> group.setMeta(readMeta(p, ctxt));
+                case DISPLAY_NAME -> group.setDisplayName(readString(p, ctxt));
+                case MEMBERS -> group.setMembers(readMembers(p, ctxt));
+            }
+        }
+        return group;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<ScimGroup.Member> readMembers(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (p.currentToken() != JsonToken.START_ARRAY) {
+            return (List<ScimGroup.Member>) ctxt.handleUnexpectedToken(List.class, p);
+        }
+        List<ScimGroup.Member> members = new ArrayList<>();
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            if (!enterObject(p, ctxt, ScimGroup.Member.class)) {
+                continue;
+            }
+            ScimGroup.Member member = new ScimGroup.Member();
+            for (JsonToken t = p.currentToken(); t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+                MemberField field = MEMBER_FIELDS.lookup(p.currentName());
+                p.nextToken();
+                if (field == null) {
+                    p.skipChildren();
+                    continue;
+                }
+                switch (field) {
+                    case VALUE -> member.setValue(readString(p, ctxt));
+                    case DISPLAY -> member.setDisplay(readString(p, ctxt));
+                    case TYPE -> member.setType(readString(p, ctxt));
+                    case REF -> member.setRef(readString(p, ctxt));
+                }
+            }
+            members.add(member);
+        }
+        return members;
+    }
+}
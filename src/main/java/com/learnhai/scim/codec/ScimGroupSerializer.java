@@ -0,0 +1,57 @@
+package com.learnhai.scim.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.learnhai.scim.model.scim.ScimGroup;
+
+import java.io.IOException;
+import java.util.List;
+
+import static com.learnhai.scim.codec.ScimJson.*;
+
+/**
+ * Streams a {@link ScimGroup}. Large groups are dominated by the members array, so members are
+ * written in a tight indexed loop with pre-encoded field names.
+ */
+public class ScimGroupSerializer extends StdSerializer<ScimGroup> {
+
+    static final SerializableString DISPLAY_NAME = new SerializedString("displayName");
+    static final SerializableString MEMBERS = new SerializedString("members");
+
+    public ScimGroupSerializer() {
+        super(ScimGroup.class);
+    }
+
+    @Override
+    public void serialize(ScimGroup group, JsonGenerator g, SerializerProvider provider) throws IOException {
+        g.writeStartObject(group);
+        writeStringArray(g, SCHEMAS, group.getSchemas());
+        writeString(g, ID, group.getId());
+        writeString(g, EXTERNAL_ID, group.getExternalId());
+        writeMeta(g, group.getMeta());
+        writeString(g, DISPLAY_NAME, group.getDisplayName());
+        writeMembers(g, group.getMembers());
+        g.writeEndObject();
+    }
+
+    private static void writeMembers(JsonGenerator g, List<ScimGroup.Member> members) throws IOException {
+        if (members == null) {
+            return;
+        }
+        g.writeFieldName(MEMBERS);
+        g.writeStartArray(members, members.size());
+        for (int i = 0, n = members.size(); i < n; i++) {
+            ScimGroup.Member member = members.get(i);
+            g.writeStartObject();
+            writeString(g, VALUE, member.getValue());
+            writeString(g, DISPLAY, member.getDisplay());
+            writeString(g, TYPE, member.getType());
+            writeString(g, REF, member.getRef());
+            g.writeEndObject();
+        }
+        g.writeEndArray();
+    }
+}
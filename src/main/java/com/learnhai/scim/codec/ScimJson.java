@@ -0,0 +1,230 @@
+package com.learnhai.scim.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.learnhai.scim.model.scim.ScimUser;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Shared pieces of the hand-written SCIM codecs: pre-encoded field names and small typed
+ * read/write helpers that enforce SCIM attribute types while streaming.
+ */
+final class ScimJson {
+
+    static final SerializableString SCHEMAS = new SerializedString("schemas");
+    static final SerializableString ID = new SerializedString("id");
+    static final SerializableString EXTERNAL_ID = new SerializedString("externalId");
+    static final SerializableString META = new SerializedString("meta");
+    static final SerializableString RESOURCE_TYPE = new SerializedString("resourceType");
+    static final SerializableString CREATED = new SerializedString("created");
+    static final SerializableString LAST_MODIFIED = new SerializedString("lastModified");
+    static final SerializableString LOCATION = new SerializedString("location");
+    static final SerializableString VERSION = new SerializedString("version");
+    static final SerializableString VALUE = new SerializedString("value");
+    static final SerializableString DISPLAY = new SerializedString("display");
+    static final SerializableString TYPE = new SerializedString("type");
+    static final SerializableString PRIMARY = new SerializedString("primary");
+    static final SerializableString REF = new SerializedString("$ref");
+
+    private ScimJson() {
+    }
+
+    static void writeString(JsonGenerator g, SerializableString name, String value) throws IOException {
+        if (value != null) {
+            g.writeFieldName(name);
+            g.writeString(value);
+        }
+    }
+
+    static void writeStringArray(JsonGenerator g, SerializableString name, List<String> values) throws IOException {
+        if (values != null) {
+            g.writeFieldName(name);
+            g.writeStartArray(values, values.size());
+            for (int i = 0, n = values.size(); i < n; i++) {
+                g.writeString(values.get(i));
+            }
+            g.writeEndArray();
+        }
+    }
+
+    static void writeInstant(JsonGenerator g, SerializableString name, Instant value) throws IOException {
+        if (value != null) {
+            g.writeFieldName(name);
+            g.writeString(value.toString()); // xsd:dateTime, as SCIM requires
+        }
+    }
+
+    static void writeMeta(JsonGenerator g, ScimUser.Meta meta) throws IOException {
+        if (meta == null) {
+            return;
+        }
+        g.writeFieldName(META);
+        g.writeStartObject();
+        writeString(g, RESOURCE_TYPE, meta.getResourceType());
+        writeInstant(g, CREATED, meta.getCreated());
+        writeInstant(g, LAST_MODIFIED, meta.getLastModified());
+        writeString(g, LOCATION, meta.getLocation());
+        writeString(g, VERSION, meta.getVersion());
+        g.writeEndObject();
+    }
+
+    static String readString(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.VALUE_STRING) {
+            return p.getText();
+        }
+        if (t == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (t == JsonToken.VALUE_NUMBER_INT || t == JsonToken.VALUE_NUMBER_FLOAT || t == JsonToken.VALUE_TRUE || t == JsonToken.VALUE_FALSE) {
+            return p.getText(); // scalars are coerced to their textual form, as Jackson did
+        }
+        return (String) ctxt.handleUnexpectedToken(String.class, p);
+    }
+
+    static boolean readBoolean(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.VALUE_TRUE) {
+            return true;
+        }
+        if (t == JsonToken.VALUE_FALSE || t == JsonToken.VALUE_NULL) {
+            return false;
+        }
+        if (t == JsonToken.VALUE_STRING) {
+            // Some IdPs send booleans as "True"/"False"
+            String text = p.getText().trim();
+            if ("true".equalsIgnoreCase(text)) {
+                return true;
+            }
+            if ("false".equalsIgnoreCase(text)) {
+                return false;
+            }
+        }
+        return (Boolean) ctxt.handleUnexpectedToken(Boolean.class, p);
+    }
+
+    static Instant readInstant(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (t == JsonToken.VALUE_STRING) {
+            try {
+                return Instant.parse(p.getText().trim());
+            } catch (DateTimeParseException e) {
+                return (Instant) ctxt.handleWeirdStringValue(Instant.class, p.getText(), "not an xsd:dateTime");
+            }
+        }
+        if (t == JsonToken.VALUE_NUMBER_INT) {
+            return Instant.ofEpochSecond(p.getLongValue());
+        }
+        if (t == JsonToken.VALUE_NUMBER_FLOAT) {
+            // Epoch seconds with fraction, as the reflective JavaTimeModule path wrote them
+            BigDecimal seconds = p.getDecimalValue();
+            long whole = seconds.longValue();
+            int nanos = seconds.subtract(BigDecimal.valueOf(whole)).movePointRight(9).intValue();
+            return Instant.ofEpochSecond(whole, nanos);
+        }
+        return (Instant) ctxt.handleUnexpectedToken(Instant.class, p);
+    }
+
+    static List<String> readStringList(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (p.currentToken() != JsonToken.START_ARRAY) {
+            // Lenient: a single value where an array is expected becomes a one-element list
+            return new ArrayList<>(List.of(readString(p, ctxt)));
+        }
+        List<String> values = new ArrayList<>(2);
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            values.add(readString(p, ctxt));
+        }
+        return values;
+    }
+
+    static ScimUser.Meta readMeta(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (!enterObject(p, ctxt, ScimUser.Meta.class)) {
+            return null;
+        }
+        ScimUser.Meta meta = new ScimUser.Meta();
+        for (JsonToken t = p.currentToken(); t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+            MetaField field = META_FIELDS.lookup(p.currentName());
+            p.nextToken();
+            if (field == null) {
+                p.skipChildren();
+                continue;
+            }
+            switch (field) {
+                case RESOURCE_TYPE -> meta.setResourceType(readString(p, ctxt));
+                case CREATED -> meta.setCreated(readInstant(p, ctxt));
+                case LAST_MODIFIED -> meta.setLastModified(readInstant(p, ctxt));
+                case LOCATION -> meta.setLocation(readString(p, ctxt));
+                case VERSION -> meta.setVersion(readString(p, ctxt));
+            }
+        }
+        return meta;
+    }
+
+    private enum MetaField { RESOURCE_TYPE, CREATED, LAST_MODIFIED, LOCATION, VERSION }
+
+    private static final FieldIndex<MetaField> META_FIELDS = new FieldIndex<MetaField>()
+            .add("resourceType", MetaField.RESOURCE_TYPE)
+            .add("created", MetaField.CREATED)
+            .add("lastModified", MetaField.LAST_MODIFIED)
+            .add("location", MetaField.LOCATION)
+            .add("version", MetaField.VERSION);
+
+    /**
+     * Attribute name lookup. SCIM attribute names are case-insensitive; the exact spelling is tried
+     * first so well-behaved clients never pay for lower-casing.
+     */
+    static final class FieldIndex<E> {
+        private final Map<String, E> exact = new HashMap<>();
+        private final Map<String, E> lowerCase = new HashMap<>();
+
+        FieldIndex<E> add(String name, E field) {
+            exact.put(name, field);
+            lowerCase.put(name.toLowerCase(Locale.ROOT), field);
+            return this;
+        }
+
+        E lookup(String name) {
+            E field = exact.get(name);
+            return field != null ? field : lowerCase.get(name.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Advances from the current START_OBJECT (or FIELD_NAME) to the first field name; returns false
+     * for JSON null, which callers map to a null value.
+     */
+    static boolean enterObject(JsonParser p, DeserializationContext ctxt, Class<?> type) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.VALUE_NULL) {
+            return false;
+        }
+        if (t == JsonToken.START_OBJECT) {
+            p.nextToken();
+            return true;
+        }
+        if (t == JsonToken.FIELD_NAME || t == JsonToken.END_OBJECT) {
+            return true;
+        }
+        ctxt.handleUnexpectedToken(type, p);
+        return false;
+    }
+}
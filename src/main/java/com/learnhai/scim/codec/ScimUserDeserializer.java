@@ -0,0 +1,276 @@
+package com.learnhai.scim.codec;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.learnhai.scim.model.scim.ScimUser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.learnhai.scim.codec.ScimJson.*;
+
+/**
+ * Token-streaming reader for {@link ScimUser}. Attribute names are matched case-insensitively, as
+ * SCIM requires; unknown attributes are skipped and unknown extension schemas are kept as maps.
+ */
+public class ScimUserDeserializer extends StdDeserializer<ScimUser> {
+
+    private enum Field {
+        SCHEMAS, ID, EXTERNAL_ID, META, USER_NAME, NAME, DISPLAY_NAME, NICK_NAME, PROFILE_URL, TITLE, USER_TYPE,
+        PREFERRED_LANGUAGE, LOCALE, TIMEZONE, ACTIVE, PASSWORD, EMAILS, PHONE_NUMBERS, ENTERPRISE
+    }
+
+    private enum NameField { FORMATTED, FAMILY_NAME, GIVEN_NAME, MIDDLE_NAME, HONORIFIC_PREFIX, HONORIFIC_SUFFIX }
+
+    private enum MultiValueField { VALUE, DISPLAY, TYPE, PRIMARY }
+
+    private enum EnterpriseField { EMPLOYEE_NUMBER, COST_CENTER, ORGANIZATION, DIVISION, DEPARTMENT, MANAGER }
+
+    private enum ManagerField { VALUE, REF, DISPLAY_NAME }
+
+    private static final FieldIndex<Field> FIELDS = new FieldIndex<Field>()
+            .add("schemas", Field.SCHEMAS)
+            .add("id", Field.ID)
+            .add("externalId", Field.EXTERNAL_ID)
+            .add("meta", Field.META)
+            .add("userName", Field.USER_NAME)
+            .add("name", Field.NAME)
+            .add("displayName", Field.DISPLAY_NAME)
+            .add("nickName", Field.NICK_NAME)
+            .add("profileUrl", Field.PROFILE_URL)
+            .add("title", Field.TITLE)
+            .add("userType", Field.USER_TYPE)
+            .add("preferredLanguage", Field.PREFERRED_LANGUAGE)
+            .add("locale", Field.LOCALE)
+            .add("timezone", Field.TIMEZONE)
+            .add("active", Field.ACTIVE)
+            .add("password", Field.PASSWORD)
+            .add("emails", Field.EMAILS)
+            .add("phoneNumbers", Field.PHONE_NUMBERS)
+            .add(ScimUser.SCHEMA_ENTERPRISE_USER, Field.ENTERPRISE);
+
+    private static final FieldIndex<NameField> NAME_FIELDS = new FieldIndex<NameField>()
+            .add("formatted", NameField.FORMATTED)
+            .add("familyName", NameField.FAMILY_NAME)
+            .add("givenName", NameField.GIVEN_NAME)
+            .add("middleName", NameField.MIDDLE_NAME)
+            .add("honorificPrefix", NameField.HONORIFIC_PREFIX)
+            .add("honorificSuffix", NameField.HONORIFIC_SUFFIX);
+
+    private static final FieldIndex<MultiValueField> MULTI_VALUE_FIELDS = new FieldIndex<MultiValueField>()
+            .add("value", MultiValueField.VALUE)
+            .add("display", MultiValueField.DISPLAY)
+            .add("type", MultiValueField.TYPE)
+            .add("primary", MultiValueField.PRIMARY);
+
+    private static final FieldIndex<EnterpriseField> ENTERPRISE_FIELDS = new FieldIndex<EnterpriseField>()
+            .add("employeeNumber", EnterpriseField.EMPLOYEE_NUMBER)
+            .add("costCenter", EnterpriseField.COST_CENTER)
+            .add("organization", EnterpriseField.ORGANIZATION)
+            .add("division", EnterpriseField.DIVISION)
+            .add("department", EnterpriseField.DEPARTMENT)
+            .add("manager", EnterpriseField.MANAGER);
+
+    private static final FieldIndex<ManagerField> MANAGER_FIELDS = new FieldIndex<ManagerField>()
+            .add("value", ManagerField.VALUE)
+            .add("$ref", ManagerField.REF)
+            .add("displayName", ManagerField.DISPLAY_NAME);
+
+    public ScimUserDeserializer() {
+        super(ScimUser.class);
+    }
+
+    @Override
+    public ScimUser deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (!enterObject(p, ctxt, ScimUser.class)) {
+            return null;
+        }
+        ScimUser user = new ScimUser();
+        for (JsonToken t = p.currentToken(); t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+            String name = p.currentName();
+            Field field = FIELDS.lookup(name);
+            p.nextToken();
+            if (field == null) {
+                if (p.currentToken() == JsonToken.START_OBJECT && name.startsWith("urn:")) {
+                    user.putExtension(name, ctxt.readValue(p, Map.class));
+                } else {
+                    p.skipChildren();
+                }
+                continue;
+            }
+            switch (field) {
+                case SCHEMAS -> user.setSchemas(internSchemas(readStringList(p, ctxt)));
+                case ID -> user.setId(readString(p, ctxt));
+                case EXTERNAL_ID -> user.setExternalId(readString(p, ctxt));
+                case META -> user.setMeta(readMeta(p, ctxt));
+                case USER_NAME -> user.setUserName(readString(p, ctxt));
+                case NAME -> user.setName(readName(p, ctxt));
+                case DISPLAY_NAME -> user.setDisplayName(readString(p, ctxt));
+                case NICK_NAME -> user.setNickName(readString(p, ctxt));
+                case PROFILE_URL -> user.setProfileUrl(readString(p, ctxt));
+                case TITLE -> user.setTitle(readString(p, ctxt));
+                case USER_TYPE -> user.setUserType(readString(p, ctxt));
+                case PREFERRED_LANGUAGE -> user.setPreferredLanguage(readString(p, ctxt));
+                case LOCALE -> user.setLocale(readString(p, ctxt));
+                case TIMEZONE -> user.setTimezone(readString(p, ctxt));
+                case ACTIVE -> user.setActive(p.currentToken() == JsonToken.VALUE_NULL || readBoolean(p, ctxt));
+                case PASSWORD -> user.setPassword(readString(p, ctxt));
+                case EMAILS -> user.setEmails(readEmails(p, ctxt));
+                case PHONE_NUMBERS -> user.setPhoneNumbers(readPhoneNumbers(p, ctxt));
+                case ENTERPRISE -> user.setEnterpriseUser(readEnterprise(p, ctxt));
+            }
+        }
+        return user;
+    }
+
+    // Most payloads carry exactly the core (+ enterprise) schema; share the constant lists for those.
+    private static List<String> internSchemas(List<String> schemas) {
+        if (ScimUser.SCHEMAS_CORE.equals(schemas)) {
+            return ScimUser.SCHEMAS_CORE;
+        }
+        if (ScimUser.SCHEMAS_CORE_ENTERPRISE.equals(schemas)) {
+            return ScimUser.SCHEMAS_CORE_ENTERPRISE;
+        }
+        return schemas;
+    }
+
+    private static ScimUser.Name readName(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (!enterObject(p, ctxt, ScimUser.Name.class)) {
+            return null;
+        }
+        ScimUser.Name name = new ScimUser.Name();
+        for (JsonToken t = p.currentToken(); t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+            NameField field = NAME_FIELDS.lookup(p.currentName());
+            p.nextToken();
+            if (field == null) {
+                p.skipChildren();
+                continue;
+            }
+            String value = readString(p, ctxt);
+            switch (field) {
+                case FORMATTED -> name.setFormatted(value);
+                case FAMILY_NAME -> name.setFamilyName(value);
+                case GIVEN_NAME -> name.setGivenName(value);
+                case MIDDLE_NAME -> name.setMiddleName(value);
+                case HONORIFIC_PREFIX -> name.setHonorificPrefix(value);
+                case HONORIFIC_SUFFIX -> name.setHonorificSuffix(value);
+            }
+        }
+        return name;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<ScimUser.Email> readEmails(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (p.currentToken() != JsonToken.START_ARRAY) {
+            return (List<ScimUser.Email>) ctxt.handleUnexpectedToken(List.class, p);
+        }
+        List<ScimUser.Email> emails = new ArrayList<>(2);
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            if (!enterObject(p, ctxt, ScimUser.Email.class)) {
+                continue;
+            }
+            ScimUser.Email email = new ScimUser.Email();
+            for (JsonToken t = p.currentToken(); t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+                MultiValueField field = MULTI_VALUE_FIELDS.lookup(p.currentName());
+                p.nextToken();
+                if (field == null) {
+                    p.skipChildren();
+                    continue;
+                }
+                switch (field) {
+                    case VALUE -> email.setValue(readString(p, ctxt));
+                    case DISPLAY -> email.setDisplay(readString(p, ctxt));
+                    case TYPE -> email.setType(readString(p, ctxt));
+                    case PRIMARY -> email.setPrimary(readBoolean(p, ctxt));
+                }
+            }
+            emails.add(email);
+        }
+        return emails;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<ScimUser.PhoneNumber> readPhoneNumbers(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (p.currentToken() != JsonToken.START_ARRAY) {
+            return (List<ScimUser.PhoneNumber>) ctxt.handleUnexpectedToken(List.class, p);
+        }
+        List<ScimUser.PhoneNumber> phoneNumbers = new ArrayList<>(2);
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            if (!enterObject(p, ctxt, ScimUser.PhoneNumber.class)) {
+                continue;
+            }
+            ScimUser.PhoneNumber phone = new ScimUser.PhoneNumber();
+            for (JsonToken t = p.currentToken(); t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+                MultiValueField field = MULTI_VALUE_FIELDS.lookup(p.currentName());
+                p.nextToken();
+                if (field == null) {
+                    p.skipChildren();
+                    continue;
+                }
+                switch (field) {
+                    case VALUE -> phone.setValue(readString(p, ctxt));
+                    case DISPLAY -> phone.setDisplay(readString(p, ctxt));
+                    case TYPE -> phone.setType(readString(p, ctxt));
+                    case PRIMARY -> phone.setPrimary(readBoolean(p, ctxt));
+                }
+            }
+            phoneNumbers.add(phone);
+        }
+        return phoneNumbers;
+    }
+
+    private static ScimUser.EnterpriseUserExtension readEnterprise(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (!enterObject(p, ctxt, ScimUser.EnterpriseUserExtension.class)) {
+            return null;
+        }
+        ScimUser.EnterpriseUserExtension enterprise = new ScimUser.EnterpriseUserExtension();
+        for (JsonToken t = p.currentToken(); t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+            EnterpriseField field = ENTERPRISE_FIELDS.lookup(p.currentName());
+            p.nextToken();
+            if (field == null) {
+                p.skipChildren();
+                continue;
+            }
+            switch (field) {
+                case EMPLOYEE_NUMBER -> enterprise.setEmployeeNumber(readString(p, ctxt));
+                case COST_CENTER -> enterprise.setCostCenter(readString(p, ctxt));
+                case ORGANIZATION -> enterprise.setOrganization(readString(p, ctxt));
+                case DIVISION -> enterprise.setDivision(readString(p, ctxt));
+                case DEPARTMENT -> enterprise.setDepartment(readString(p, ctxt));
+                case MANAGER -> enterprise.setManager(readManager(p, ctxt));
+            }
+        }
+        return enterprise;
+    }
+
+    private static ScimUser.EnterpriseUserExtension.Manager readManager(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (!enterObject(p, ctxt, ScimUser.EnterpriseUserExtension.Manager.class)) {
+            return null;
+        }
+        ScimUser.EnterpriseUserExtension.Manager manager = new ScimUser.EnterpriseUserExtension.Manager();
+        for (JsonToken t = p.currentToken(); t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+            ManagerField field = MANAGER_FIELDS.lookup(p.currentName());
+            p.nextToken();
+            if (field == null) {
+                p.skipChildren();
+                continue;
+            }
+            switch (field) {
+                case VALUE -> manager.setValue(readString(p, ctxt));
+                case REF -> manager.setRef(readString(p, ctxt));
+                case DISPLAY_NAME -> manager.setDisplayName(readString(p, ctxt));
+            }
+        }
+        return manager;
+    }
+}
@@ -0,0 +1,183 @@
+package com.learnhai.scim.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.learnhai.scim.model.scim.ScimUser;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static com.learnhai.scim.codec.ScimJson.*;
+
+/**
+ * Streams a {@link ScimUser} straight to the generator, in the same property order and with the same
+ * null-omission rules as the reflective bean serializer, without introspection or per-call lookups.
+ */
+public class ScimUserSerializer extends StdSerializer<ScimUser> {
+
+    static final SerializableString USER_NAME = new SerializedString("userName");
+    static final SerializableString NAME = new SerializedString("name");
+    static final SerializableString FORMATTED = new SerializedString("formatted");
+    static final SerializableString FAMILY_NAME = new SerializedString("familyName");
+    static final SerializableString GIVEN_NAME = new SerializedString("givenName");
+    static final SerializableString MIDDLE_NAME = new SerializedString("middleName");
+    static final SerializableString HONORIFIC_PREFIX = new SerializedString("honorificPrefix");
+    static final SerializableString HONORIFIC_SUFFIX = new SerializedString("honorificSuffix");
+    static final SerializableString DISPLAY_NAME = new SerializedString("displayName");
+    static final SerializableString NICK_NAME = new SerializedString("nickName");
+    static final SerializableString PROFILE_URL = new SerializedString("profileUrl");
+    static final SerializableString TITLE = new SerializedString("title");
+    static final SerializableString USER_TYPE = new SerializedString("userType");
+    static final SerializableString PREFERRED_LANGUAGE = new SerializedString("preferredLanguage");
+    static final SerializableString LOCALE = new SerializedString("locale");
+    static final SerializableString TIMEZONE = new SerializedString("timezone");
+    static final SerializableString ACTIVE = new SerializedString("active");
+    static final SerializableString PASSWORD = new SerializedString("password");
+    static final SerializableString EMAILS = new SerializedString("emails");
+    static final SerializableString PHONE_NUMBERS = new SerializedString("phoneNumbers");
+    static final SerializableString GROUPS = new SerializedString("groups");
+    static final SerializableString ENTERPRISE = new SerializedString(ScimUser.SCHEMA_ENTERPRISE_USER);
+    static final SerializableString EMPLOYEE_NUMBER = new SerializedString("employeeNumber");
+    static final SerializableString COST_CENTER = new SerializedString("costCenter");
+    static final SerializableString ORGANIZATION = new SerializedString("organization");
+    static final SerializableString DIVISION = new SerializedString("division");
+    static final SerializableString DEPARTMENT = new SerializedString("department");
+    static final SerializableString MANAGER = new SerializedString("manager");
+
+    public ScimUserSerializer() {
+        super(ScimUser.class);
+    }
+
+    @Override
+    public void serialize(ScimUser user, JsonGenerator g, SerializerProvider provider) throws IOException {
+        g.writeStartObject(user);
+        writeStringArray(g, SCHEMAS, user.getSchemas());
+        writeString(g, ID, user.getId());
+        writeString(g, EXTERNAL_ID, user.getExternalId());
+        writeMeta(g, user.getMeta());
+        writeString(g, USER_NAME, user.getUserName());
+        writeName(g, user.getName());
+        writeString(g, DISPLAY_NAME, user.getDisplayName());
+        writeString(g, NICK_NAME, user.getNickName());
+        writeString(g, PROFILE_URL, user.getProfileUrl());
+        writeString(g, TITLE, user.getTitle());
+        writeString(g, USER_TYPE, user.getUserType());
+        writeString(g, PREFERRED_LANGUAGE, user.getPreferredLanguage());
+        writeString(g, LOCALE, user.getLocale());
+        writeString(g, TIMEZONE, user.getTimezone());
+        g.writeFieldName(ACTIVE);
+        g.writeBoolean(user.isActive());
+        // Only ever set on inbound payloads (e.g. writes persisted by the async queue); mappers never populate it.
+        writeString(g, PASSWORD, user.getPassword());
+        writeEmails(g, user.getEmails());
+        writePhoneNumbers(g, user.getPhoneNumbers());
+        writeGroups(g, user.getGroups());
+        writeEnterprise(g, user.getEnterpriseUser());
+        Map<String, Map<String, Object>> extensions = user.getExtensionAttributes();
+        if (extensions != null) {
+            for (Map.Entry<String, Map<String, Object>> extension : extensions.entrySet()) {
+                g.writeFieldName(extension.getKey());
+                provider.defaultSerializeValue(extension.getValue(), g);
+            }
+        }
+        g.writeEndObject();
+    }
+
+    private static void writeName(JsonGenerator g, ScimUser.Name name) throws IOException {
+        if (name == null) {
+            return;
+        }
+        g.writeFieldName(NAME);
+        g.writeStartObject();
+        writeString(g, FORMATTED, name.getFormatted());
+        writeString(g, FAMILY_NAME, name.getFamilyName());
+        writeString(g, GIVEN_NAME, name.getGivenName());
+        writeString(g, MIDDLE_NAME, name.getMiddleName());
+        writeString(g, HONORIFIC_PREFIX, name.getHonorificPrefix());
+        writeString(g, HONORIFIC_SUFFIX, name.getHonorificSuffix());
+        g.writeEndObject();
+    }
+
+    private static void writeEmails(JsonGenerator g, List<ScimUser.Email> emails) throws IOException {
+        if (emails == null) {
+            return;
+        }
+        g.writeFieldName(EMAILS);
+        g.writeStartArray(emails, emails.size());
+        for (int i = 0, n = emails.size(); i < n; i++) {
+            ScimUser.Email email = emails.get(i);
+            g.writeStartObject();
+            writeString(g, VALUE, email.getValue());
+            writeString(g, DISPLAY, email.getDisplay());
+            writeString(g, TYPE, email.getType());
+            g.writeFieldName(PRIMARY);
+            g.writeBoolean(email.isPrimary());
+            g.writeEndObject();
+        }
+        g.writeEndArray();
+    }
+
+    private static void writePhoneNumbers(JsonGenerator g, List<ScimUser.PhoneNumber> phoneNumbers) throws IOException {
+        if (phoneNumbers == null) {
+            return;
+        }
+        g.writeFieldName(PHONE_NUMBERS);
+        g.writeStartArray(phoneNumbers, phoneNumbers.size());
+        for (int i = 0, n = phoneNumbers.size(); i < n; i++) {
+            ScimUser.PhoneNumber phone = phoneNumbers.get(i);
+            g.writeStartObject();
+            writeString(g, VALUE, phone.getValue());
+            writeString(g, DISPLAY, phone.getDisplay());
+            writeString(g, TYPE, phone.getType());
+            g.writeFieldName(PRIMARY);
+            g.writeBoolean(phone.isPrimary());
+            g.writeEndObject();
+        }
+        g.writeEndArray();
+    }
+
+    private static void writeGroups(JsonGenerator g, List<ScimUser.Group> groups) throws IOException {
+        if (groups == null) {
+            return;
+        }
+        g.writeFieldName(GROUPS);
+        g.writeStartArray(groups, groups.size());
+        for (int i = 0, n = groups.size(); i < n; i++) {
+            ScimUser.Group group = groups.get(i);
+            g.writeStartObject();
+            writeString(g, VALUE, group.getValue());
+            writeString(g, REF, group.getRef());
+            writeString(g, DISPLAY, group.getDisplay());
+            writeString(g, TYPE, group.getType());
+            g.writeEndObject();
+        }
+        g.writeEndArray();
+    }
+
+    private static void writeEnterprise(JsonGenerator g, ScimUser.EnterpriseUserExtension enterprise) throws IOException {
+        if (enterprise == null) {
+            return;
+        }
+        g.writeFieldName(ENTERPRISE);
+        g.writeStartObject();
+        writeString(g, EMPLOYEE_NUMBER, enterprise.getEmployeeNumber());
+        writeString(g, COST_CENTER, enterprise.getCostCenter());
+        writeString(g, ORGANIZATION, enterprise.getOrganization());
+        writeString(g, DIVISION, enterprise.getDivision());
+        writeString(g, DEPARTMENT, enterprise.getDepartment());
+        ScimUser.EnterpriseUserExtension.Manager manager = enterprise.getManager();
+        if (manager != null) {
+            g.writeFieldName(MANAGER);
+            g.writeStartObject();
+            writeString(g, VALUE, manager.getValue());
+            writeString(g, REF, manager.getRef());
+            writeString(g, DISPLAY_NAME, manager.getDisplayName());
+            g.writeEndObject();
+        }
+        g.writeEndObject();
+    }
+}
@@ -0,0 +1,34 @@
+package com.learnhai.scim.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SCIM path to Keycloak field/attribute mappings (scim.mapping.*). Compiled once at startup by
+ * {@link com.learnhai.scim.mapper.UserMappingPlan}.
+ */
+@Data
+@ConfigurationProperties(prefix = "scim.mapping")
+public class AttributeMappingProperties {
+
+    private List<Rule> user = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Rule {
+        // SCIM attribute path, e.g. "title", "name.givenName" or
+        // "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:department"
+        private String scim;
+        // Keycloak target: a user field (username, firstName, lastName, email) or "attributes.<name>"
+        private String keycloak;
+        private boolean multiValued;
+        // Applied to values written to Keycloak: none, trim, lowercase, uppercase
+        private String transform;
+    }
+}
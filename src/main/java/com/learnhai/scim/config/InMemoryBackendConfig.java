@@ -0,0 +1,18 @@
+package com.learnhai.scim.config;
+
+import com.learnhai.scim.backend.InMemoryIdentityBackend;
+import com.learnhai.scim.tenant.TenantBackendFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(name = "scim.backend", havingValue = "in-memory")
+public class InMemoryBackendConfig {
+
+    // Every tenant gets its own, empty store
+    @Bean
+    public TenantBackendFactory inMemoryBackends() {
+        return tenant -> new InMemoryIdentityBackend();
+    }
+}
@@ -2,6 +2,9 @@ package com.learnhai.scim.config;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnhai.scim.service.KeycloakService;
+import com.learnhai.scim.tenant.TenantBackendFactory;
+import com.learnhai.scim.timing.KeycloakCallTimer;
 import org.jboss.resteasy.client.jaxrs.ResteasyClient;
 // Use the concrete implementation of ResteasyClientBuilder
 import org.jboss.resteasy.client.jaxrs.internal.ResteasyClientBuilderImpl;
@@ -9,10 +12,12 @@ import org.jboss.resteasy.plugins.providers.jackson.ResteasyJackson2Provider;
 import org.keycloak.admin.client.Keycloak;
 import org.keycloak.admin.client.KeycloakBuilder;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
+@ConditionalOnProperty(name = "scim.backend", havingValue = "keycloak", matchIfMissing = true)
 public class KeycloakConfig {
 
     @Value("${keycloak.server-url}")
@@ -27,8 +32,14 @@ public class KeycloakConfig {
     @Value("${keycloak.client-secret}")
     private String clientSecret;
 
+    // One admin client per tenant, each with its own connection pool, so one tenant's traffic cannot
+    // exhaust the connections another tenant needs.
     @Bean
-    public Keycloak keycloak() {
+    public TenantBackendFactory keycloakBackends() {
+        return tenant -> new KeycloakService(keycloak(tenant.getConnectionPoolSize()), tenant.getRealm());
+    }
+
+    private Keycloak keycloak(int connectionPoolSize) {
         ObjectMapper objectMapper = new ObjectMapper()
                 .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 
@@ -40,7 +51,8 @@ public class KeycloakConfig {
         // and its .build() method returns an org.jboss.resteasy.client.jaxrs.ResteasyClient
         ResteasyClient resteasyClient = new ResteasyClientBuilderImpl()
                 .register(jacksonProvider)
-                .connectionPoolSize(20) // This method should now be found
+                .register(new KeycloakCallTimer()) // per-request call accounting, see ServerTimingFilter
+                .connectionPoolSize(connectionPoolSize) // This method should now be found
                 .build();
 
         return KeycloakBuilder.builder()
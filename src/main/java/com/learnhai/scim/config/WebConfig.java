@@ -4,14 +4,30 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.learnhai.scim.audit.AuditInterceptor;
+import com.learnhai.scim.codec.ScimCodecModule;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    private final AuditInterceptor auditInterceptor;
+
+    @Autowired
+    public WebConfig(AuditInterceptor auditInterceptor) {
+        this.auditInterceptor = auditInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(auditInterceptor).addPathPatterns("/scim/v2/**");
+    }
+
     // If you need CORS enabled
     @Override
     public void addCorsMappings(CorsRegistry registry) {
@@ -30,6 +46,7 @@ public class WebConfig implements WebMvcConfigurer {
         ObjectMapper mapper = new ObjectMapper();
         mapper.registerModule(new JavaTimeModule()); // For Java 8 Date/Time (Instant, etc.)
         mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        mapper.registerModule(new ScimCodecModule()); // Streaming codecs for ScimUser/ScimGroup/ListResponse
         // mapper.setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE); // If your JSON uses snake_case
         return mapper;
     }
@@ -0,0 +1,56 @@
+package com.learnhai.scim.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnhai.scim.exception.ScimException;
+import com.learnhai.scim.service.ChangeFeed;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.idm.AdminEventRepresentation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Webhook for a Keycloak event listener pushing admin events (as Keycloak's
+ * {@code AdminEventRepresentation}, one or an array), so the change feed does not have to wait for
+ * its next poll. Not part of SCIM; authenticated like the SCIM endpoints.
+ */
+@RestController
+@RequestMapping({"/scim/v2/KeycloakEvents", "/scim/v2/{tenant}/KeycloakEvents"})
+@Slf4j
+public class KeycloakEventController {
+
+    private final ChangeFeed changeFeed;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public KeycloakEventController(ChangeFeed changeFeed, ObjectMapper objectMapper) {
+        this.changeFeed = changeFeed;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostMapping
+    public ResponseEntity<Void> receive(@RequestBody JsonNode body) {
+        if (!changeFeed.isEnabled()) {
+            throw new ScimException("The change feed is disabled", HttpStatus.NOT_FOUND);
+        }
+        List<AdminEventRepresentation> events = new ArrayList<>();
+        try {
+            for (JsonNode event : body.isArray() ? body : List.of(body)) {
+                events.add(objectMapper.treeToValue(event, AdminEventRepresentation.class));
+            }
+        } catch (Exception e) {
+            throw new ScimException("Invalid admin event: " + e.getMessage(), HttpStatus.BAD_REQUEST, "invalidSyntax");
+        }
+        log.debug("Received {} pushed admin events.", events.size());
+        changeFeed.accept(events);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,163 @@
+package com.learnhai.scim.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.learnhai.scim.exception.ScimException;
+import com.learnhai.scim.model.scim.ScimGroup;
+import com.learnhai.scim.model.scim.ScimUser;
+import com.learnhai.scim.schema.ScimSchemaValidator;
+import com.learnhai.scim.service.BulkLoadService;
+import com.learnhai.scim.tenant.TenantContext;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SCIM Bulk endpoint (RFC 7644, section 3.7), for initial loads: POSTs of Users and Groups, which
+ * {@link BulkLoadService} writes through the store's partial import. Group members may reference
+ * resources of the same request as {@code bulkId:<id>}. Other methods are rejected per operation.
+ */
+@RestController
+@RequestMapping({"/scim/v2/Bulk", "/scim/v2/{tenant}/Bulk"})
+@Slf4j
+public class ScimBulkController {
+
+    private static final String SCHEMA_BULK_RESPONSE = "urn:ietf:params:scim:api:messages:2.0:BulkResponse";
+    private static final String SCHEMA_SCIM_ERROR = "urn:ietf:params:scim:api:messages:2.0:Error";
+
+    private final BulkLoadService bulkLoadService;
+    private final ScimSchemaValidator schemaValidator;
+    private final boolean enabled;
+    private final int maxOperations;
+    private final long maxPayloadBytes;
+
+    @Autowired
+    public ScimBulkController(BulkLoadService bulkLoadService, ScimSchemaValidator schemaValidator,
+                              @Value("${scim.bulk.enabled:true}") boolean enabled,
+                              @Value("${scim.bulk.max-operations:100000}") int maxOperations,
+                              @Value("${scim.bulk.max-payload-bytes:104857600}") long maxPayloadBytes) {
+        this.bulkLoadService = bulkLoadService;
+        this.schemaValidator = schemaValidator;
+        this.enabled = enabled;
+        this.maxOperations = maxOperations;
+        this.maxPayloadBytes = maxPayloadBytes;
+    }
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> bulk(@RequestBody JsonNode body, HttpServletRequest request) {
+        if (!enabled) {
+            throw new ScimException("Bulk operations are not enabled", HttpStatus.NOT_IMPLEMENTED);
+        }
+        if (request.getContentLengthLong() > maxPayloadBytes) {
+            throw new ScimException("Bulk request exceeds " + maxPayloadBytes + " bytes", HttpStatus.PAYLOAD_TOO_LARGE, "tooMany");
+        }
+        JsonNode operations = body.path("Operations");
+        if (!operations.isArray()) {
+            throw new ScimException("Bulk request has no Operations", HttpStatus.BAD_REQUEST, "invalidSyntax");
+        }
+        if (operations.size() > maxOperations) {
+            throw new ScimException("Bulk request has " + operations.size() + " operations; the maximum is " + maxOperations,
+                    HttpStatus.PAYLOAD_TOO_LARGE, "tooMany");
+        }
+        Integer failOnErrors = body.hasNonNull("failOnErrors") ? body.get("failOnErrors").asInt() : null;
+        log.debug("SCIM bulk request received with {} operations", operations.size());
+
+        // Operations rejected here never reach the store; the rest are loaded together
+        List<Map<String, Object>> results = new ArrayList<>();
+        List<BulkLoadService.Item> items = new ArrayList<>();
+        List<Integer> itemPositions = new ArrayList<>();
+        int rejected = 0;
+        for (JsonNode operation : operations) {
+            String method = operation.path("method").asText("");
+            String bulkId = operation.hasNonNull("bulkId") ? operation.get("bulkId").asText() : null;
+            String path = operation.path("path").asText("");
+            try {
+                if (!"POST".equalsIgnoreCase(method)) {
+                    throw new ScimException("Bulk " + method + " is not supported; only POST to /Users and /Groups",
+                            HttpStatus.BAD_REQUEST, "invalidValue");
+                }
+                if (bulkId == null) {
+                    throw new ScimException("POST operations need a bulkId", HttpStatus.BAD_REQUEST, "invalidValue");
+                }
+                BulkLoadService.Item item = switch (path) {
+                    case "/Users" -> new BulkLoadService.Item(bulkId,
+                            schemaValidator.readResource(ScimSchemaValidator.USER, operation.path("data"), ScimUser.class), null);
+                    case "/Groups" -> new BulkLoadService.Item(bulkId, null,
+                            schemaValidator.readResource(ScimSchemaValidator.GROUP, operation.path("data"), ScimGroup.class));
+                    default -> throw new ScimException("Unsupported bulk path: " + path, HttpStatus.BAD_REQUEST, "invalidPath");
+                };
+                items.add(item);
+                itemPositions.add(results.size());
+                results.add(null);
+            } catch (ScimException e) {
+                rejected++;
+                results.add(result(method, bulkId, null, e.getStatus().value(), e.getScimType(), e.getMessage()));
+            }
+        }
+
+        if (failOnErrors == null || rejected < failOnErrors) {
+            List<BulkLoadService.Outcome> outcomes = bulkLoadService.load(items,
+                    failOnErrors == null ? null : failOnErrors - rejected);
+            for (int i = 0; i < outcomes.size(); i++) {
+                BulkLoadService.Outcome outcome = outcomes.get(i);
+                if (outcome != null) {
+                    results.set(itemPositions.get(i), result("POST", outcome.bulkId(), location(outcome),
+                            outcome.status(), outcome.scimType(), outcome.detail()));
+                }
+            }
+        }
+        results.removeIf(result -> result == null); // not processed once failOnErrors was reached
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("schemas", List.of(SCHEMA_BULK_RESPONSE));
+        response.put("Operations", results);
+        return ResponseEntity.ok(response);
+    }
+
+    private static String location(BulkLoadService.Outcome outcome) {
+        if (outcome.id() == null) {
+            return null;
+        }
+        return ServletUriComponentsBuilder
+                .fromCurrentContextPath()
+                .path(TenantContext.scimPath() + ("User".equals(outcome.resourceType()) ? "/Users/{id}" : "/Groups/{id}"))
+                .buildAndExpand(outcome.id())
+                .toUriString();
+    }
+
+    private static Map<String, Object> result(String method, String bulkId, String location, int status,
+                                              String scimType, String detail) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("method", method.toUpperCase());
+        if (bulkId != null) {
+            result.put("bulkId", bulkId);
+        }
+        if (location != null) {
+            result.put("location", location);
+        }
+        result.put("status", String.valueOf(status)); // SCIM spec expects status as string
+        if (status >= 400) {
+            Map<String, Object> error = new LinkedHashMap<>();
+            error.put("schemas", List.of(SCHEMA_SCIM_ERROR));
+            if (scimType != null) {
+                error.put("scimType", scimType);
+            }
+            error.put("detail", detail);
+            error.put("status", String.valueOf(status));
+            result.put("response", error);
+        }
+        return result;
+    }
+}
@@ -1,10 +1,17 @@
 package com.learnhai.scim.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.learnhai.scim.model.scim.ListResponse;
 import com.learnhai.scim.model.scim.ScimGroup;
+import com.learnhai.scim.schema.ScimSchemaValidator;
+import com.learnhai.scim.service.IdempotencyService;
 import com.learnhai.scim.service.ScimGroupService;
-import jakarta.validation.Valid;
+import com.learnhai.scim.service.async.ProvisioningOperation;
+import com.learnhai.scim.service.async.ProvisioningQueue;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -14,79 +21,152 @@ import java.net.URI;
 import java.util.Map;
 
 @RestController
-@RequestMapping("/scim/v2/Groups")
+@RequestMapping({"/scim/v2/Groups", "/scim/v2/{tenant}/Groups"})
 @Slf4j
 public class ScimGroupController {
 
     private final ScimGroupService scimGroupService;
+    private final ProvisioningQueue provisioningQueue;
+    private final IdempotencyService idempotencyService;
+    private final ScimSchemaValidator schemaValidator;
 
     @Autowired
-    public ScimGroupController(ScimGroupService scimGroupService) {
+    public ScimGroupController(ScimGroupService scimGroupService, ProvisioningQueue provisioningQueue,
+                               IdempotencyService idempotencyService, ScimSchemaValidator schemaValidator) {
         this.scimGroupService = scimGroupService;
+        this.provisioningQueue = provisioningQueue;
+        this.idempotencyService = idempotencyService;
+        this.schemaValidator = schemaValidator;
     }
 
     @PostMapping
-    public ResponseEntity<ScimGroup> createGroup(@Valid @RequestBody ScimGroup scimGroup) {
-        log.info("SCIM createGroup request received for displayName: {}", scimGroup.getDisplayName());
-        ScimGroup createdGroup = scimGroupService.createGroup(scimGroup);
+    public ResponseEntity<?> createGroup(@RequestBody JsonNode body,
+                                         @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        // Validated against the compiled schema before anything reaches Keycloak
+        ScimGroup scimGroup = schemaValidator.readResource(ScimSchemaValidator.GROUP, body, ScimGroup.class);
+        log.debug("SCIM createGroup request received for displayName: {}", scimGroup.getDisplayName());
+        // Retries of the same create (same Idempotency-Key, or same externalId from the same client)
+        // join or replay the original outcome instead of reaching Keycloak again.
+        IdempotencyService.Key dedupKey = idempotencyService.keyFor("Group", idempotencyKey, scimGroup.getExternalId(), body);
+        if (provisioningQueue.isEnabled()) {
+            return ScimOperationController.accepted(idempotencyService.execute(dedupKey,
+                    () -> provisioningQueue.submit(ProvisioningOperation.Type.CREATE_GROUP, null, scimGroup)));
+        }
+        ScimGroup createdGroup = idempotencyService.execute(dedupKey, () -> scimGroupService.createGroup(scimGroup));
         URI location = ServletUriComponentsBuilder
                 .fromCurrentRequest()
                 .path("/{id}")
                 .buildAndExpand(createdGroup.getId())
                 .toUri();
-        log.info("SCIM group created with ID: {}", createdGroup.getId());
+        log.debug("SCIM group created with ID: {}", createdGroup.getId());
         return ResponseEntity.created(location).body(createdGroup);
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<ScimGroup> getGroup(@PathVariable String id) {
-        log.info("SCIM getGroup request received for ID: {}", id);
-        return scimGroupService.getGroupById(id)
+    public ResponseEntity<ScimGroup> getGroup(@PathVariable String id,
+                                              @RequestParam(name = "attributes", required = false) String attributes,
+                                              @RequestParam(name = "excludedAttributes", required = false) String excludedAttributes) {
+        log.debug("SCIM getGroup request received for ID: {}", id);
+        boolean includeMembers = membersRequested(attributes, excludedAttributes);
+        return scimGroupService.getGroupById(id, includeMembers)
                 .map(group -> {
-                     log.info("SCIM group found with ID: {}", id);
+                     log.debug("SCIM group found with ID: {}", id);
+                    if (includeMembers && group.getMembers() == null) {
+                        // Too many to inline; point at the paged listing
+                        URI members = ServletUriComponentsBuilder.fromCurrentRequestUri().path("/members").replaceQuery(null).build().toUri();
+                        return ResponseEntity.ok().header(HttpHeaders.LINK, "<" + members + ">; rel=\"members\"").body(group);
+                    }
                     return ResponseEntity.ok(group);
                 })
                 .orElseGet(() -> {
-                    log.warn("SCIM group not found with ID: {}", id);
+                    log.debug("SCIM group not found with ID: {}", id);
                     return ResponseEntity.notFound().build();
                 });
     }
 
     @PutMapping("/{id}")
-    public ResponseEntity<ScimGroup> replaceGroup(@PathVariable String id,
-                                                  @Valid @RequestBody ScimGroup scimGroup) {
-        log.info("SCIM replaceGroup (PUT) request received for ID: {}", id);
+    public ResponseEntity<?> replaceGroup(@PathVariable String id,
+                                          @RequestBody JsonNode body) {
+        ScimGroup scimGroup = schemaValidator.readResource(ScimSchemaValidator.GROUP, body, ScimGroup.class);
+        log.debug("SCIM replaceGroup (PUT) request received for ID: {}", id);
+        if (provisioningQueue.isEnabled()) {
+            return ScimOperationController.accepted(
+                    provisioningQueue.submit(ProvisioningOperation.Type.REPLACE_GROUP, id, scimGroup));
+        }
         ScimGroup updatedGroup = scimGroupService.replaceGroup(id, scimGroup);
-        log.info("SCIM group updated with ID: {}", id);
+        log.debug("SCIM group updated with ID: {}", id);
         return ResponseEntity.ok(updatedGroup);
     }
 
     @PatchMapping("/{id}")
-    public ResponseEntity<ScimGroup> patchGroup(@PathVariable String id,
-                                                @RequestBody Map<String, Object> patchRequest) {
-        log.info("SCIM patchGroup request received for ID: {}", id);
+    public ResponseEntity<?> patchGroup(@PathVariable String id,
+                                        @RequestBody JsonNode body) {
+        Map<String, Object> patchRequest = schemaValidator.readPatch(ScimSchemaValidator.GROUP, body);
+        log.debug("SCIM patchGroup request received for ID: {}", id);
+        if (provisioningQueue.isEnabled()) {
+            return ScimOperationController.accepted(
+                    provisioningQueue.submit(ProvisioningOperation.Type.PATCH_GROUP, id, patchRequest));
+        }
         ScimGroup updatedGroup = scimGroupService.patchGroup(id, patchRequest);
-        log.info("SCIM group patched with ID: {}", id);
+        log.debug("SCIM group patched with ID: {}", id);
         return ResponseEntity.ok(updatedGroup);
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteGroup(@PathVariable String id) {
-        log.info("SCIM deleteGroup request received for ID: {}", id);
+    public ResponseEntity<?> deleteGroup(@PathVariable String id) {
+        log.debug("SCIM deleteGroup request received for ID: {}", id);
+        if (provisioningQueue.isEnabled()) {
+            return ScimOperationController.accepted(
+                    provisioningQueue.submit(ProvisioningOperation.Type.DELETE_GROUP, id, null));
+        }
         scimGroupService.deleteGroup(id);
-        log.info("SCIM group deleted with ID: {}", id);
+        log.debug("SCIM group deleted with ID: {}", id);
         return ResponseEntity.noContent().build();
     }
 
     @GetMapping
-    public ResponseEntity<Map<String, Object>> findGroups(
+    public ResponseEntity<ListResponse<ScimGroup>> findGroups(
             @RequestParam(name = "filter", required = false) String filter,
             @RequestParam(name = "startIndex", defaultValue = "1") int startIndex,
-            @RequestParam(name = "count", defaultValue = "100") int count) {
-        log.info("SCIM findGroups request received. Filter: '{}', StartIndex: {}, Count: {}", filter, startIndex, count);
+            @RequestParam(name = "count", defaultValue = "100") int count,
+            @RequestParam(name = "attributes", required = false) String attributes,
+            @RequestParam(name = "excludedAttributes", required = false) String excludedAttributes) {
+        log.debug("SCIM findGroups request received. Filter: '{}', StartIndex: {}, Count: {}", filter, startIndex, count);
         int effectiveCount = Math.min(count, 200);
 
-        Map<String, Object> listResponse = scimGroupService.getGroups(startIndex, effectiveCount, filter);
+        ListResponse<ScimGroup> listResponse = scimGroupService.getGroups(startIndex, effectiveCount, filter,
+                membersRequested(attributes, excludedAttributes));
         return ResponseEntity.ok(listResponse);
     }
+
+    /** Members of a group in pages, for groups too large to inline; follow nextCursor to the end. */
+    @GetMapping("/{id}/members")
+    public ResponseEntity<ListResponse<ScimGroup.Member>> getGroupMembers(
+            @PathVariable String id,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "startIndex", defaultValue = "1") int startIndex,
+            @RequestParam(name = "count", defaultValue = "100") int count) {
+        log.debug("SCIM getGroupMembers request received for ID: {}, StartIndex: {}, Count: {}", id, startIndex, count);
+        int effectiveCount = Math.max(0, Math.min(count, 1000));
+        return ResponseEntity.ok(scimGroupService.getGroupMembers(id, startIndex, effectiveCount, cursor));
+    }
+
+    // Only members is expensive to produce, so it is the one attribute the attributes and
+    // excludedAttributes parameters (RFC 7644, Section 3.4.2.5) are honoured for.
+    private static boolean membersRequested(String attributes, String excludedAttributes) {
+        if (attributes != null) {
+            return listsAttribute(attributes, "members");
+        }
+        return excludedAttributes == null || !listsAttribute(excludedAttributes, "members");
+    }
+
+    private static boolean listsAttribute(String attributeList, String name) {
+        for (String attribute : attributeList.split(",")) {
+            String path = StringUtils.removeStartIgnoreCase(attribute.trim(), ScimGroup.SCHEMA_CORE_GROUP + ":");
+            if (path.equalsIgnoreCase(name) || StringUtils.startsWithIgnoreCase(path, name + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,90 @@
+package com.learnhai.scim.controller;
+
+import com.learnhai.scim.exception.ScimException;
+import com.learnhai.scim.service.importjob.ImportJob;
+import com.learnhai.scim.service.importjob.ImportJobService;
+import com.learnhai.scim.tenant.TenantContext;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Import jobs: a CSV ({@code text/csv}) or NDJSON ({@code application/x-ndjson}) file of users as the
+ * request body, applied in the background by {@link ImportJobService}. Submitting answers 202 with the
+ * job's status resource; its row errors are served as NDJSON under {@code /{id}/errors}.
+ */
+@RestController
+@RequestMapping({"/scim/v2/ImportJobs", "/scim/v2/{tenant}/ImportJobs"})
+@Slf4j
+public class ScimImportJobController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final ImportJobService importJobService;
+
+    @Autowired
+    public ScimImportJobController(ImportJobService importJobService) {
+        this.importJobService = importJobService;
+    }
+
+    @PostMapping
+    public ResponseEntity<ImportJob> submit(HttpServletRequest request) throws IOException {
+        ImportJob.Format format = format(request.getContentType());
+        log.debug("SCIM import job received: {} bytes of {}", request.getContentLengthLong(), format);
+        ImportJob job = importJobService.submit(request.getInputStream(), format);
+        URI location = ServletUriComponentsBuilder
+                .fromCurrentContextPath()
+                .path(TenantContext.scimPath() + "/ImportJobs/{id}")
+                .buildAndExpand(job.getId())
+                .toUri();
+        return ResponseEntity.accepted().location(location).body(job);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<ImportJob> getJob(@PathVariable String id) {
+        log.debug("SCIM getImportJob request received for ID: {}", id);
+        return importJobService.getJob(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/{id}/errors")
+    public ResponseEntity<StreamingResponseBody> getErrors(@PathVariable String id) {
+        if (importJobService.getJob(id).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .body(out -> importJobService.writeErrors(id, out));
+    }
+
+    private static ImportJob.Format format(String contentType) {
+        MediaType type;
+        try {
+            type = contentType == null ? null : MediaType.parseMediaType(contentType);
+        } catch (IllegalArgumentException e) {
+            type = null;
+        }
+        if (type != null && type.isCompatibleWith(MediaType.parseMediaType("text/csv"))) {
+            return ImportJob.Format.CSV;
+        }
+        if (type != null && (type.isCompatibleWith(NDJSON) || type.isCompatibleWith(MediaType.parseMediaType("application/ndjson")))) {
+            return ImportJob.Format.NDJSON;
+        }
+        throw new ScimException("Import jobs take text/csv or application/x-ndjson, not " + contentType,
+                HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+    }
+}
@@ -0,0 +1,51 @@
+package com.learnhai.scim.controller;
+
+import com.learnhai.scim.service.async.OperationStatus;
+import com.learnhai.scim.service.async.ProvisioningQueue;
+import com.learnhai.scim.tenant.TenantContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.net.URI;
+
+/**
+ * Status of writes accepted in asynchronous provisioning mode.
+ */
+@RestController
+@RequestMapping({"/scim/v2/Operations", "/scim/v2/{tenant}/Operations"})
+@Slf4j
+public class ScimOperationController {
+
+    private final ProvisioningQueue provisioningQueue;
+
+    @Autowired
+    public ScimOperationController(ProvisioningQueue provisioningQueue) {
+        this.provisioningQueue = provisioningQueue;
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<OperationStatus> getOperation(@PathVariable String id) {
+        log.debug("SCIM getOperation request received for ID: {}", id);
+        return provisioningQueue.getStatus(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * 202 Accepted response for a queued write, pointing at the operation's status resource.
+     */
+    static ResponseEntity<OperationStatus> accepted(OperationStatus status) {
+        URI location = ServletUriComponentsBuilder
+                .fromCurrentContextPath()
+                .path(TenantContext.scimPath() + "/Operations/{id}")
+                .buildAndExpand(status.getId())
+                .toUri();
+        return ResponseEntity.accepted().location(location).body(status);
+    }
+}
@@ -0,0 +1,39 @@
+package com.learnhai.scim.controller;
+
+import com.learnhai.scim.service.reconcile.ReconcileReport;
+import com.learnhai.scim.service.reconcile.ReconcileService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+/**
+ * Full-sync reconcile: the request body is an NDJSON snapshot of every user and group, read as it
+ * streams in. {@link ReconcileService} writes only what differs from the store; with
+ * {@code dryRun=true} nothing is written and the response reports the diff.
+ */
+@RestController
+@RequestMapping({"/scim/v2/Reconcile", "/scim/v2/{tenant}/Reconcile"})
+@Slf4j
+public class ScimReconcileController {
+
+    private final ReconcileService reconcileService;
+
+    @Autowired
+    public ScimReconcileController(ReconcileService reconcileService) {
+        this.reconcileService = reconcileService;
+    }
+
+    @PostMapping
+    public ResponseEntity<ReconcileReport> reconcile(@RequestParam(defaultValue = "false") boolean dryRun,
+                                                     HttpServletRequest request) throws IOException {
+        log.debug("SCIM reconcile request received (dryRun={}, {} bytes)", dryRun, request.getContentLengthLong());
+        return ResponseEntity.ok(reconcileService.reconcile(request.getInputStream(), dryRun));
+    }
+}
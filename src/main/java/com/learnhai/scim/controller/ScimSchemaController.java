@@ -2,6 +2,7 @@ package com.learnhai.scim.controller;
 
 import com.learnhai.scim.model.scim.ScimUser; // For schema URN constants
 import com.learnhai.scim.model.scim.ScimGroup; // For schema URN constants
+import com.learnhai.scim.tenant.TenantContext;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -9,13 +10,22 @@ import org.springframework.web.bind.annotation.*;
 import java.util.*;
 
 @RestController
-@RequestMapping("/scim/v2")
+@RequestMapping({"/scim/v2", "/scim/v2/{tenant}"})
 public class ScimSchemaController {
 
     private final String scimBaseUrl;
-
-    public ScimSchemaController(@Value("${scim.base-url:${server.servlet.context-path:}}") String scimBaseUrl) {
+    private final boolean bulkEnabled;
+    private final int bulkMaxOperations;
+    private final long bulkMaxPayloadBytes;
+
+    public ScimSchemaController(@Value("${scim.base-url:${server.servlet.context-path:}}") String scimBaseUrl,
+                                @Value("${scim.bulk.enabled:true}") boolean bulkEnabled,
+                                @Value("${scim.bulk.max-operations:100000}") int bulkMaxOperations,
+                                @Value("${scim.bulk.max-payload-bytes:104857600}") long bulkMaxPayloadBytes) {
         this.scimBaseUrl = "/".equals(scimBaseUrl) ? "" : scimBaseUrl;
+        this.bulkEnabled = bulkEnabled;
+        this.bulkMaxOperations = bulkMaxOperations;
+        this.bulkMaxPayloadBytes = bulkMaxPayloadBytes;
     }
 
     private static final String SCHEMA_LIST_RESPONSE = "urn:ietf:params:scim:api:messages:2.0:ListResponse";
@@ -35,9 +45,9 @@ public class ScimSchemaController {
         config.put("patch", patch);
 
         Map<String, Object> bulk = new LinkedHashMap<>();
-        bulk.put("supported", false); // Set to true if you implement bulk
-        bulk.put("maxOperations", 1000); // Example if supported
-        bulk.put("maxPayloadSize", 1048576); // Example if supported
+        bulk.put("supported", bulkEnabled); // POSTs of Users and Groups only, for initial loads
+        bulk.put("maxOperations", bulkMaxOperations);
+        bulk.put("maxPayloadSize", bulkMaxPayloadBytes);
         config.put("bulk", bulk);
 
         Map<String, Object> filter = new LinkedHashMap<>();
@@ -134,7 +144,7 @@ public class ScimSchemaController {
         userType.put("id", "User");
         userType.put("name", "User");
         userType.put("description", "User Account");
-        userType.put("endpoint", scimBaseUrl + "/scim/v2/Users");
+        userType.put("endpoint", scimBaseUrl + TenantContext.scimPath() + "/Users");
         userType.put("schema", ScimUser.SCHEMA_CORE_USER);
         List<Map<String,Object>> schemaExtensions = new ArrayList<>();
         Map<String,Object> enterpriseExt = new LinkedHashMap<>();
@@ -144,7 +154,7 @@ public class ScimSchemaController {
         userType.put("schemaExtensions", schemaExtensions);
         // meta for resourceType itself
         Map<String,Object> meta = new LinkedHashMap<>();
-        meta.put("location", scimBaseUrl + "/scim/v2/ResourceTypes/User");
+        meta.put("location", scimBaseUrl + TenantContext.scimPath() + "/ResourceTypes/User");
         meta.put("resourceType", "ResourceType");
         userType.put("meta", meta);
         return userType;
@@ -156,11 +166,11 @@ public class ScimSchemaController {
         groupType.put("id", "Group");
         groupType.put("name", "Group");
         groupType.put("description", "Group");
-        groupType.put("endpoint", scimBaseUrl + "/scim/v2/Groups");
+        groupType.put("endpoint", scimBaseUrl + TenantContext.scimPath() + "/Groups");
         groupType.put("schema", ScimGroup.SCHEMA_CORE_GROUP);
         // meta for resourceType itself
         Map<String,Object> meta = new LinkedHashMap<>();
-        meta.put("location", scimBaseUrl + "/scim/v2/ResourceTypes/Group");
+        meta.put("location", scimBaseUrl + TenantContext.scimPath() + "/ResourceTypes/Group");
         meta.put("resourceType", "ResourceType");
         groupType.put("meta", meta);
         return groupType;
@@ -175,7 +185,7 @@ public class ScimSchemaController {
         schema.put("attributes", getUserAttributes());
         Map<String,Object> meta = new LinkedHashMap<>();
         meta.put("resourceType", "Schema");
-        meta.put("location", scimBaseUrl + "/scim/v2/Schemas/" + ScimUser.SCHEMA_CORE_USER);
+        meta.put("location", scimBaseUrl + TenantContext.scimPath() + "/Schemas/" + ScimUser.SCHEMA_CORE_USER);
         schema.put("meta", meta);
         return schema;
     }
@@ -188,7 +198,7 @@ public class ScimSchemaController {
         schema.put("attributes", getGroupAttributes());
         Map<String,Object> meta = new LinkedHashMap<>();
         meta.put("resourceType", "Schema");
-        meta.put("location", scimBaseUrl + "/scim/v2/Schemas/" + ScimGroup.SCHEMA_CORE_GROUP);
+        meta.put("location", scimBaseUrl + TenantContext.scimPath() + "/Schemas/" + ScimGroup.SCHEMA_CORE_GROUP);
         schema.put("meta", meta);
         return schema;
     }
@@ -201,7 +211,7 @@ public class ScimSchemaController {
         schema.put("attributes", getEnterpriseUserAttributes());
         Map<String,Object> meta = new LinkedHashMap<>();
         meta.put("resourceType", "Schema");
-        meta.put("location", scimBaseUrl + "/scim/v2/Schemas/" + ScimUser.SCHEMA_ENTERPRISE_USER);
+        meta.put("location", scimBaseUrl + TenantContext.scimPath() + "/Schemas/" + ScimUser.SCHEMA_ENTERPRISE_USER);
         schema.put("meta", meta);
         return schema;
     }
@@ -241,6 +251,12 @@ public class ScimSchemaController {
                 createAttribute("primary", "boolean", false, false, "none", "readWrite", "default", "A Boolean value indicating the 'primary' or preferred attribute value for this attribute.")
         )));
         attributes.add(createAttribute("password", "string", false, false, "none", "writeOnly", "never", "The User's password. This attribute is write-only, and will never be returned in a response."));
+        attributes.add(createComplexAttribute("groups", true, "readOnly", "default", "A list of groups to which the user belongs, either through direct membership or through nested groups.", List.of(
+                createAttribute("value", "string", false, false, "none", "readOnly", "default", "The identifier of the User's group."),
+                createAttribute("$ref", "reference", false, false, "none", "readOnly", "default", "The URI of the corresponding 'Group' resource to which the user belongs."),
+                createAttribute("display", "string", false, false, "none", "readOnly", "default", "A human-readable name, primarily used for display purposes."),
+                createAttribute("type", "string", false, false, "none", "readOnly", "default", "A label indicating the attribute's function, e.g., 'direct' or 'indirect'.")
+        )));
 
         return attributes;
     }
@@ -1,8 +1,13 @@
 package com.learnhai.scim.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.learnhai.scim.model.scim.ListResponse;
 import com.learnhai.scim.model.scim.ScimUser;
+import com.learnhai.scim.schema.ScimSchemaValidator;
+import com.learnhai.scim.service.IdempotencyService;
 import com.learnhai.scim.service.ScimUserService;
-import jakarta.validation.Valid;
+import com.learnhai.scim.service.async.ProvisioningOperation;
+import com.learnhai.scim.service.async.ProvisioningQueue;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -15,87 +20,118 @@ import java.net.URI;
 import java.util.Map;
 
 @RestController
-@RequestMapping("/scim/v2/Users")
+@RequestMapping({"/scim/v2/Users", "/scim/v2/{tenant}/Users"})
 @Slf4j
 public class ScimUserController {
 
     private final ScimUserService scimUserService;
+    private final ProvisioningQueue provisioningQueue;
+    private final IdempotencyService idempotencyService;
+    private final ScimSchemaValidator schemaValidator;
 
     @Autowired
-    public ScimUserController(ScimUserService scimUserService) {
+    public ScimUserController(ScimUserService scimUserService, ProvisioningQueue provisioningQueue,
+                              IdempotencyService idempotencyService, ScimSchemaValidator schemaValidator) {
         this.scimUserService = scimUserService;
+        this.provisioningQueue = provisioningQueue;
+        this.idempotencyService = idempotencyService;
+        this.schemaValidator = schemaValidator;
     }
 
     @PostMapping
-    public ResponseEntity<ScimUser> createUser(@Valid @RequestBody ScimUser scimUser) {
-        log.info("SCIM createUser request received for userName: {}", scimUser.getUserName());
-        ScimUser createdUser = scimUserService.createUser(scimUser);
+    public ResponseEntity<?> createUser(@RequestBody JsonNode body,
+                                        @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        // Validated against the compiled schema before anything reaches Keycloak
+        ScimUser scimUser = schemaValidator.readResource(ScimSchemaValidator.USER, body, ScimUser.class);
+        log.debug("SCIM createUser request received for userName: {}", scimUser.getUserName());
+        // Retries of the same create (same Idempotency-Key, or same externalId from the same client)
+        // join or replay the original outcome instead of reaching Keycloak again.
+        IdempotencyService.Key dedupKey = idempotencyService.keyFor("User", idempotencyKey, scimUser.getExternalId(), body);
+        if (provisioningQueue.isEnabled()) {
+            return ScimOperationController.accepted(idempotencyService.execute(dedupKey,
+                    () -> provisioningQueue.submit(ProvisioningOperation.Type.CREATE_USER, null, scimUser)));
+        }
+        ScimUser createdUser = idempotencyService.execute(dedupKey, () -> scimUserService.createUser(scimUser));
         URI location = ServletUriComponentsBuilder
                 .fromCurrentRequest()
                 .path("/{id}")
                 .buildAndExpand(createdUser.getId())
                 .toUri();
-        log.info("SCIM user created with ID: {}", createdUser.getId());
+        log.debug("SCIM user created with ID: {}", createdUser.getId());
         return ResponseEntity.created(location).body(createdUser);
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<ScimUser> getUser(@PathVariable String id) {
-        log.info("SCIM getUser request received for ID: {}", id);
+        log.debug("SCIM getUser request received for ID: {}", id);
         return scimUserService.getUserById(id)
                 .map(user -> {
-                    log.info("SCIM user found with ID: {}", id);
+                    log.debug("SCIM user found with ID: {}", id);
                     return ResponseEntity.ok(user);
                 })
                 .orElseGet(() -> {
-                    log.warn("SCIM user not found with ID: {}", id);
+                    log.debug("SCIM user not found with ID: {}", id);
                     return ResponseEntity.notFound().build();
                 });
     }
 
     @PutMapping("/{id}")
-    public ResponseEntity<ScimUser> replaceUser(@PathVariable String id,
-                                                @Valid @RequestBody ScimUser scimUser) {
-        log.info("SCIM replaceUser (PUT) request received for ID: {}", id);
+    public ResponseEntity<?> replaceUser(@PathVariable String id,
+                                         @RequestBody JsonNode body) {
+        ScimUser scimUser = schemaValidator.readResource(ScimSchemaValidator.USER, body, ScimUser.class);
+        log.debug("SCIM replaceUser (PUT) request received for ID: {}", id);
+        if (provisioningQueue.isEnabled()) {
+            return ScimOperationController.accepted(
+                    provisioningQueue.submit(ProvisioningOperation.Type.REPLACE_USER, id, scimUser));
+        }
         // SCIM spec says PUT should include the id in the body matching the path id, or it's an error.
         // For simplicity, we're not strictly enforcing that here, relying on path id.
         // Also, SCIM PUT is a full replace. If attributes are missing, they should be cleared.
         ScimUser updatedUser = scimUserService.replaceUser(id, scimUser);
-        log.info("SCIM user updated with ID: {}", id);
+        log.debug("SCIM user updated with ID: {}", id);
         return ResponseEntity.ok(updatedUser);
     }
 
     @PatchMapping("/{id}")
-    public ResponseEntity<ScimUser> patchUser(@PathVariable String id,
-                                              @RequestBody Map<String, Object> patchRequest) {
+    public ResponseEntity<?> patchUser(@PathVariable String id,
+                                       @RequestBody JsonNode body) {
+        Map<String, Object> patchRequest = schemaValidator.readPatch(ScimSchemaValidator.USER, body);
         // SCIM Patch request body should be like:
         // { "schemas": ["urn:ietf:params:scim:api:messages:2.0:PatchOp"], "Operations": [ ... ] }
-        log.info("SCIM patchUser request received for ID: {}", id);
+        log.debug("SCIM patchUser request received for ID: {}", id);
+        if (provisioningQueue.isEnabled()) {
+            return ScimOperationController.accepted(
+                    provisioningQueue.submit(ProvisioningOperation.Type.PATCH_USER, id, patchRequest));
+        }
         ScimUser updatedUser = scimUserService.patchUser(id, patchRequest);
-         log.info("SCIM user patched with ID: {}", id);
+        log.debug("SCIM user patched with ID: {}", id);
         return ResponseEntity.ok(updatedUser);
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteUser(@PathVariable String id) {
-        log.info("SCIM deleteUser request received for ID: {}", id);
+    public ResponseEntity<?> deleteUser(@PathVariable String id) {
+        log.debug("SCIM deleteUser request received for ID: {}", id);
+        if (provisioningQueue.isEnabled()) {
+            return ScimOperationController.accepted(
+                    provisioningQueue.submit(ProvisioningOperation.Type.DELETE_USER, id, null));
+        }
         scimUserService.deleteUser(id);
-        log.info("SCIM user deleted with ID: {}", id);
+        log.debug("SCIM user deleted with ID: {}", id);
         return ResponseEntity.noContent().build();
     }
 
     @GetMapping
-    public ResponseEntity<Map<String, Object>> findUsers(
+    public ResponseEntity<ListResponse<ScimUser>> findUsers(
             @RequestParam(name = "filter", required = false) String filter,
             @RequestParam(name = "sortBy", required = false) String sortBy, // Not implemented yet
             @RequestParam(name = "sortOrder", required = false) String sortOrder, // Not implemented yet
             @RequestParam(name = "startIndex", defaultValue = "1") int startIndex,
             @RequestParam(name = "count", defaultValue = "100") int count) {
-        log.info("SCIM findUsers request received. Filter: '{}', StartIndex: {}, Count: {}", filter, startIndex, count);
+        log.debug("SCIM findUsers request received. Filter: '{}', StartIndex: {}, Count: {}", filter, startIndex, count);
         // SCIM specifies max results can be requested by client, server can cap.
         int effectiveCount = Math.min(count, 200); // Example server-side cap
 
-        Map<String, Object> listResponse = scimUserService.getUsers(startIndex, effectiveCount, filter);
+        ListResponse<ScimUser> listResponse = scimUserService.getUsers(startIndex, effectiveCount, filter);
         return ResponseEntity.ok(listResponse);
     }
 }
\ No newline at end of file
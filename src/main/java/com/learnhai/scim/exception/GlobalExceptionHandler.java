@@ -3,6 +3,7 @@ package com.learnhai.scim.exception;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -45,7 +46,17 @@ public class GlobalExceptionHandler {
         Map<String, Object> errorBody = createScimErrorBody(detail, HttpStatus.BAD_REQUEST.value(), "invalidSyntax");
         return new ResponseEntity<>(errorBody, HttpStatus.BAD_REQUEST);
     }
-    
+
+    // Malformed JSON or a value of the wrong SCIM type, rejected by the streaming codecs
+    @ExceptionHandler(HttpMessageNotReadableException.class)
+    public ResponseEntity<Map<String, Object>> handleUnreadableMessage(HttpMessageNotReadableException ex) {
+        String detail = ex.getMostSpecificCause() != null ? ex.getMostSpecificCause().getMessage() : ex.getMessage();
+        log.warn("Unreadable SCIM request body: {}", detail);
+        Map<String, Object> errorBody = createScimErrorBody("Request body is not valid SCIM JSON: " + detail,
+                HttpStatus.BAD_REQUEST.value(), "invalidSyntax");
+        return new ResponseEntity<>(errorBody, HttpStatus.BAD_REQUEST);
+    }
+
     // Fallback for other RuntimeExceptions
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<Map<String, Object>> handleGenericRuntimeException(RuntimeException ex, WebRequest request) {
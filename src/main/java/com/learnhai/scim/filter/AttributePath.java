@@ -0,0 +1,25 @@
+package com.learnhai.scim.filter;
+
+/**
+ * {@code [schemaURN ":"] attrName ["." subAttr]} as used in filters and PATCH paths.
+ * Attribute names compare case-insensitively, as SCIM requires.
+ */
+public record AttributePath(String schemaUrn, String attribute, String subAttribute) {
+
+    /** True when this path names {@code attribute} (and no sub-attribute), ignoring case. */
+    public boolean is(String attribute) {
+        return subAttribute == null && this.attribute.equalsIgnoreCase(attribute);
+    }
+
+    /** True when this path names {@code attribute.subAttribute}, ignoring case. */
+    public boolean is(String attribute, String subAttribute) {
+        return this.subAttribute != null && this.attribute.equalsIgnoreCase(attribute)
+                && this.subAttribute.equalsIgnoreCase(subAttribute);
+    }
+
+    @Override
+    public String toString() {
+        String path = subAttribute == null ? attribute : attribute + "." + subAttribute;
+        return schemaUrn == null ? path : schemaUrn + ":" + path;
+    }
+}
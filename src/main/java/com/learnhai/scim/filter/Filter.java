@@ -0,0 +1,36 @@
+package com.learnhai.scim.filter;
+
+/**
+ * Parsed SCIM filter expression (RFC 7644, Section 3.4.2.2).
+ */
+public sealed interface Filter {
+
+    enum Operator { EQ, NE, CO, SW, EW, GT, GE, LT, LE }
+
+    /** {@code attrPath op value}; value is a String, Boolean, Number or null. */
+    record Comparison(AttributePath path, Operator operator, Object value) implements Filter { }
+
+    /** {@code attrPath pr} */
+    record Present(AttributePath path) implements Filter { }
+
+    record And(Filter left, Filter right) implements Filter { }
+
+    record Or(Filter left, Filter right) implements Filter { }
+
+    record Not(Filter filter) implements Filter { }
+
+    /** {@code attrPath "[" valFilter "]"}: a filter over the values of a multi-valued attribute. */
+    record ValuePath(AttributePath path, Filter filter) implements Filter { }
+
+    /**
+     * The value of a top-level {@code attribute eq value} comparison, or null when this filter is
+     * anything else. Most IdP lookups (userName, externalId, displayName) take this shape.
+     */
+    default String equalityValue(String attribute) {
+        if (this instanceof Comparison comparison && comparison.operator() == Operator.EQ
+                && comparison.path().is(attribute) && comparison.value() != null) {
+            return comparison.value().toString();
+        }
+        return null;
+    }
+}
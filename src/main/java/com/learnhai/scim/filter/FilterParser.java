@@ -0,0 +1,296 @@
+package com.learnhai.scim.filter;
+
+import com.learnhai.scim.exception.ScimException;
+import org.springframework.http.HttpStatus;
+
+import java.math.BigDecimal;
+
+/**
+ * Recursive-descent parser for SCIM filter expressions (RFC 7644, Section 3.4.2.2). Works directly
+ * on the input characters without regular expressions or a separate token list.
+ * <p>
+ * Precedence, tightest first: grouping/valuePath, {@code not}, {@code and}, {@code or}.
+ * Syntax errors are reported as 400 with scimType {@code invalidFilter}.
+ */
+public final class FilterParser {
+
+    private final String input;
+    private int pos;
+
+    private FilterParser(String input) {
+        this.input = input;
+    }
+
+    public static Filter parse(String filter) {
+        if (filter == null || filter.isBlank()) {
+            throw invalidFilter("Filter must not be empty", filter, 0);
+        }
+        FilterParser parser = new FilterParser(filter);
+        Filter result = parser.parseOr();
+        parser.skipSpaces();
+        if (parser.pos != filter.length()) {
+            throw invalidFilter("Unexpected input", filter, parser.pos);
+        }
+        return result;
+    }
+
+    /**
+     * Parses a PATCH/attribute path ({@code [URN:]attr[.sub]}) without a value filter.
+     */
+    public static AttributePath parsePath(String path) {
+        FilterParser parser = new FilterParser(path);
+        AttributePath result = parser.parseAttributePath();
+        if (parser.pos != path.length()) {
+            throw invalidFilter("Unexpected input in attribute path", path, parser.pos);
+        }
+        return result;
+    }
+
+    private Filter parseOr() {
+        Filter left = parseAnd();
+        while (keyword("or")) {
+            left = new Filter.Or(left, parseAnd());
+        }
+        return left;
+    }
+
+    private Filter parseAnd() {
+        Filter left = parseUnary();
+        while (keyword("and")) {
+            left = new Filter.And(left, parseUnary());
+        }
+        return left;
+    }
+
+    private Filter parseUnary() {
+        skipSpaces();
+        if (keyword("not")) {
+            skipSpaces();
+            expect('(');
+            Filter inner = parseOr();
+            skipSpaces();
+            expect(')');
+            return new Filter.Not(inner);
+        }
+        if (peek() == '(') {
+            pos++;
+            Filter inner = parseOr();
+            skipSpaces();
+            expect(')');
+            return inner;
+        }
+        AttributePath path = parseAttributePath();
+        if (peek() == '[') {
+            if (path.subAttribute() != null) {
+                throw invalidFilter("Value filter on a sub-attribute", input, pos);
+            }
+            pos++;
+            Filter inner = parseOr();
+            skipSpaces();
+            expect(']');
+            return new Filter.ValuePath(path, inner);
+        }
+        requireSpace();
+        String op = word();
+        if ("pr".equalsIgnoreCase(op)) {
+            return new Filter.Present(path);
+        }
+        Filter.Operator operator = operator(op);
+        requireSpace();
+        return new Filter.Comparison(path, operator, parseValue());
+    }
+
+    private AttributePath parseAttributePath() {
+        skipSpaces();
+        int start = pos;
+        String schemaUrn = null;
+        if (input.regionMatches(true, pos, "urn:", 0, 4)) {
+            // The URN runs up to the last ':' before the attribute name
+            int end = pos;
+            while (end < input.length() && isPathChar(input.charAt(end))) {
+                end++;
+            }
+            int colon = input.lastIndexOf(':', end - 1);
+            if (colon <= pos + 3) {
+                throw invalidFilter("Invalid schema URN", input, pos);
+            }
+            schemaUrn = input.substring(pos, colon);
+            pos = colon + 1;
+            start = pos;
+        }
+        String attribute = name();
+        if (attribute.isEmpty()) {
+            throw invalidFilter("Expected attribute name", input, start);
+        }
+        String subAttribute = null;
+        if (peek() == '.') {
+            pos++;
+            subAttribute = name();
+            if (subAttribute.isEmpty()) {
+                throw invalidFilter("Expected sub-attribute name", input, pos);
+            }
+        }
+        return new AttributePath(schemaUrn, attribute, subAttribute);
+    }
+
+    private Object parseValue() {
+        char c = peek();
+        if (c == '"') {
+            return string();
+        }
+        String word = word();
+        if (word.isEmpty()) {
+            throw invalidFilter("Expected comparison value", input, pos);
+        }
+        switch (word) {
+            case "true":
+                return Boolean.TRUE;
+            case "false":
+                return Boolean.FALSE;
+            case "null":
+                return null;
+            default:
+                try {
+                    return new BigDecimal(word);
+                } catch (NumberFormatException e) {
+                    throw invalidFilter("Invalid comparison value '" + word + "'", input, pos - word.length());
+                }
+        }
+    }
+
+    // JSON string literal, including escapes
+    private String string() {
+        int start = pos++;
+        StringBuilder sb = null;
+        int runStart = pos;
+        while (pos < input.length()) {
+            char c = input.charAt(pos);
+            if (c == '"') {
+                String value = sb == null ? input.substring(runStart, pos) : sb.append(input, runStart, pos).toString();
+                pos++;
+                return value;
+            }
+            if (c == '\\') {
+                if (sb == null) {
+                    sb = new StringBuilder();
+                }
+                sb.append(input, runStart, pos);
+                if (++pos >= input.length()) {
+                    break;
+                }
+                char e = input.charAt(pos);
+                switch (e) {
+                    case '"', '\\', '/' -> sb.append(e);
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'u' -> {
+                        if (pos + 4 >= input.length()) {
+                            throw invalidFilter("Invalid unicode escape", input, pos);
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(input.substring(pos + 1, pos + 5), 16));
+                        } catch (NumberFormatException ex) {
+                            throw invalidFilter("Invalid unicode escape", input, pos);
+                        }
+                        pos += 4;
+                    }
+                    default -> throw invalidFilter("Invalid escape", input, pos);
+                }
+                runStart = ++pos;
+                continue;
+            }
+            pos++;
+        }
+        throw invalidFilter("Unterminated string", input, start);
+    }
+
+    private static Filter.Operator operator(String op) {
+        return switch (op.toLowerCase()) {
+            case "eq" -> Filter.Operator.EQ;
+            case "ne" -> Filter.Operator.NE;
+            case "co" -> Filter.Operator.CO;
+            case "sw" -> Filter.Operator.SW;
+            case "ew" -> Filter.Operator.EW;
+            case "gt" -> Filter.Operator.GT;
+            case "ge" -> Filter.Operator.GE;
+            case "lt" -> Filter.Operator.LT;
+            case "le" -> Filter.Operator.LE;
+            default -> throw new ScimException("Unsupported filter operator '" + op + "'", HttpStatus.BAD_REQUEST, "invalidFilter");
+        };
+    }
+
+    // Consumes a case-insensitive keyword followed by a space or '(' (for "not(")
+    private boolean keyword(String keyword) {
+        int save = pos;
+        skipSpaces();
+        int end = pos + keyword.length();
+        if (input.regionMatches(true, pos, keyword, 0, keyword.length())
+                && end < input.length() && (input.charAt(end) == ' ' || input.charAt(end) == '(')) {
+            pos = end;
+            return true;
+        }
+        pos = save;
+        return false;
+    }
+
+    private String name() {
+        int start = pos;
+        while (pos < input.length()) {
+            char c = input.charAt(pos);
+            if (Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '$') {
+                pos++;
+            } else {
+                break;
+            }
+        }
+        return input.substring(start, pos);
+    }
+
+    private String word() {
+        int start = pos;
+        while (pos < input.length()) {
+            char c = input.charAt(pos);
+            if (c == ' ' || c == ')' || c == ']' || c == '(' || c == '[') {
+                break;
+            }
+            pos++;
+        }
+        return input.substring(start, pos);
+    }
+
+    private static boolean isPathChar(char c) {
+        return Character.isLetterOrDigit(c) || c == ':' || c == '.' || c == '_' || c == '-' || c == '$';
+    }
+
+    private void requireSpace() {
+        if (peek() != ' ') {
+            throw invalidFilter("Expected space", input, pos);
+        }
+        skipSpaces();
+    }
+
+    private void skipSpaces() {
+        while (pos < input.length() && input.charAt(pos) == ' ') {
+            pos++;
+        }
+    }
+
+    private char peek() {
+        return pos < input.length() ? input.charAt(pos) : '\0';
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw invalidFilter("Expected '" + c + "'", input, pos);
+        }
+        pos++;
+    }
+
+    private static ScimException invalidFilter(String message, String filter, int position) {
+        return new ScimException(message + " at position " + position + " in filter: " + filter,
+                HttpStatus.BAD_REQUEST, "invalidFilter");
+    }
+}
@@ -0,0 +1,81 @@
+package com.learnhai.scim.filter;
+
+import com.learnhai.scim.exception.ScimException;
+import org.springframework.http.HttpStatus;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * The interval a filter over {@code meta.lastModified} selects, e.g.
+ * {@code meta.lastModified gt "2024-05-01T00:00:00Z"} or a {@code ge ... and lt ...} window.
+ * Null bounds are open.
+ */
+public record LastModifiedRange(Instant lower, boolean lowerInclusive, Instant upper, boolean upperInclusive) {
+
+    /**
+     * The range selected by {@code filter}, or null when it is anything other than
+     * {@code meta.lastModified} comparisons joined by {@code and}.
+     */
+    public static LastModifiedRange of(Filter filter) {
+        if (filter instanceof Filter.And and) {
+            LastModifiedRange left = of(and.left());
+            LastModifiedRange right = of(and.right());
+            return left == null || right == null ? null : left.intersect(right);
+        }
+        if (filter instanceof Filter.Comparison comparison && comparison.path().is("meta", "lastModified")) {
+            Instant at = parse(comparison.value());
+            return switch (comparison.operator()) {
+                case GT -> new LastModifiedRange(at, false, null, false);
+                case GE -> new LastModifiedRange(at, true, null, false);
+                case LT -> new LastModifiedRange(null, false, at, false);
+                case LE -> new LastModifiedRange(null, false, at, true);
+                case EQ -> new LastModifiedRange(at, true, at, true);
+                default -> throw new ScimException("Operator '" + comparison.operator().name().toLowerCase()
+                        + "' is not supported for meta.lastModified.", HttpStatus.BAD_REQUEST, "invalidFilter");
+            };
+        }
+        return null;
+    }
+
+    public boolean contains(Instant instant) {
+        if (instant == null) {
+            return false;
+        }
+        if (lower != null && (lowerInclusive ? instant.isBefore(lower) : !instant.isAfter(lower))) {
+            return false;
+        }
+        return upper == null || (upperInclusive ? !instant.isAfter(upper) : instant.isBefore(upper));
+    }
+
+    LastModifiedRange intersect(LastModifiedRange other) {
+        Instant newLower = lower;
+        boolean newLowerInclusive = lowerInclusive;
+        if (other.lower != null && (lower == null || other.lower.isAfter(lower)
+                || (other.lower.equals(lower) && !other.lowerInclusive))) {
+            newLower = other.lower;
+            newLowerInclusive = other.lowerInclusive;
+        }
+        Instant newUpper = upper;
+        boolean newUpperInclusive = upperInclusive;
+        if (other.upper != null && (upper == null || other.upper.isBefore(upper)
+                || (other.upper.equals(upper) && !other.upperInclusive))) {
+            newUpper = other.upper;
+            newUpperInclusive = other.upperInclusive;
+        }
+        return new LastModifiedRange(newLower, newLowerInclusive, newUpper, newUpperInclusive);
+    }
+
+    private static Instant parse(Object value) {
+        if (value instanceof String text) {
+            try {
+                return OffsetDateTime.parse(text).toInstant();
+            } catch (DateTimeParseException e) {
+                // reported below
+            }
+        }
+        throw new ScimException("meta.lastModified must be compared with an xsd:dateTime string, e.g. \"2024-05-01T00:00:00Z\"; got "
+                + value + ".", HttpStatus.BAD_REQUEST, "invalidFilter");
+    }
+}
@@ -0,0 +1,33 @@
+package com.learnhai.scim.filter;
+
+/**
+ * A group membership check: {@code id eq "G" and members[value eq "U"]}, in either order and also
+ * with {@code members.value eq "U"}. Azure AD sends it to verify a membership it just provisioned.
+ */
+public record MembershipProbe(String groupId, String memberId) {
+
+    /** The probe {@code filter} expresses, or null when it is anything else. */
+    public static MembershipProbe of(Filter filter) {
+        if (!(filter instanceof Filter.And and)) {
+            return null;
+        }
+        String groupId = and.left().equalityValue("id");
+        String memberId = memberValue(and.right());
+        if (groupId == null || memberId == null) {
+            groupId = and.right().equalityValue("id");
+            memberId = memberValue(and.left());
+        }
+        return groupId == null || memberId == null ? null : new MembershipProbe(groupId, memberId);
+    }
+
+    private static String memberValue(Filter filter) {
+        if (filter instanceof Filter.ValuePath valuePath && valuePath.path().is("members")) {
+            return valuePath.filter().equalityValue("value");
+        }
+        if (filter instanceof Filter.Comparison comparison && comparison.operator() == Filter.Operator.EQ
+                && comparison.path().is("members", "value") && comparison.value() != null) {
+            return comparison.value().toString();
+        }
+        return null;
+    }
+}
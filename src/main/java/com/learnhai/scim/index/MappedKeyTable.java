@@ -0,0 +1,287 @@
+package com.learnhai.scim.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Hash table from string keys to short string values, in a memory-mapped file: open addressing
+ * with linear probing over fixed-size slots, so a lookup is a hash and one or two slot reads.
+ * <p>
+ * Keys are not stored, only the first 16 bytes of their SHA-256, which also place them; values
+ * are at most {@link #MAX_VALUE_BYTES} bytes of UTF-8. Layout: a {@value #HEADER_BYTES}-byte header
+ * (magic, capacity, size, deleted slots, complete flag) followed by {@code capacity} slots of
+ * {@value #SLOT_BYTES} bytes (state, digest, value length, value). A table is complete once
+ * {@link #complete()} has been called; a table found incomplete or inconsistent is not opened.
+ * <p>
+ * Not thread-safe: callers serialise writes, and reads against writes.
+ */
+final class MappedKeyTable implements Closeable {
+
+    static final int HEADER_BYTES = 64;
+    static final int SLOT_BYTES = 64;
+    static final int MAX_VALUE_BYTES = 46;
+
+    private static final byte[] MAGIC = "SCIMKEY1".getBytes(StandardCharsets.US_ASCII);
+    private static final int DIGEST_BYTES = 16;
+    private static final int MIN_CAPACITY = 1024;
+    private static final int MAX_CAPACITY = 1 << 25; // slots * SLOT_BYTES must stay under 2 GiB
+    private static final double MAX_LOAD = 0.7;
+
+    private static final byte EMPTY = 0;
+    private static final byte FULL = 1;
+    private static final byte DELETED = 2;
+
+    // Header fields
+    private static final int CAPACITY_AT = 8;
+    private static final int SIZE_AT = 12;
+    private static final int DELETED_AT = 16;
+    private static final int COMPLETE_AT = 20;
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private Path file;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int size;
+    private int deleted;
+
+    private MappedKeyTable(Path file, MappedByteBuffer buffer, int capacity, int size, int deleted) {
+        this.file = file;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.size = size;
+        this.deleted = deleted;
+    }
+
+    /** An empty, incomplete table sized for {@code expected} keys, replacing any file at {@code file}. */
+    static MappedKeyTable create(Path file, long expected) throws IOException {
+        int capacity = MIN_CAPACITY;
+        while (capacity < MAX_CAPACITY && expected > capacity / 2) {
+            capacity <<= 1;
+        }
+        Files.deleteIfExists(file);
+        MappedByteBuffer buffer = map(file, capacity, StandardOpenOption.CREATE_NEW);
+        buffer.put(0, MAGIC);
+        buffer.putInt(CAPACITY_AT, capacity);
+        return new MappedKeyTable(file, buffer, capacity, 0, 0);
+    }
+
+    /** Maps an existing table; fails if it is missing, incomplete or inconsistent. */
+    static MappedKeyTable open(Path file) throws IOException {
+        long length = Files.size(file);
+        if (length < HEADER_BYTES) {
+            throw new IOException("Truncated key table " + file);
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(0, magic);
+        int capacity = buffer.getInt(CAPACITY_AT);
+        int size = buffer.getInt(SIZE_AT);
+        int deleted = buffer.getInt(DELETED_AT);
+        if (!Arrays.equals(magic, MAGIC) || Integer.bitCount(capacity) != 1 || capacity > MAX_CAPACITY
+                || length != HEADER_BYTES + (long) capacity * SLOT_BYTES
+                || size < 0 || deleted < 0 || (long) size + deleted > capacity) {
+            throw new IOException("Corrupt key table " + file);
+        }
+        if (buffer.get(COMPLETE_AT) != 1) {
+            throw new IOException("Incomplete key table " + file);
+        }
+        return new MappedKeyTable(file, buffer, capacity, size, deleted);
+    }
+
+    private static MappedByteBuffer map(Path file, int capacity, StandardOpenOption create) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, create, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * SLOT_BYTES); // valid after close
+        }
+    }
+
+    static byte[] digest(String key) {
+        return Arrays.copyOf(SHA_256.get().digest(key.getBytes(StandardCharsets.UTF_8)), DIGEST_BYTES);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** The value of {@code digest}, or null. */
+    String get(byte[] digest) {
+        int slot = find(digest);
+        if (slot < 0) {
+            return null;
+        }
+        int at = offset(slot) + 1 + DIGEST_BYTES;
+        byte[] value = new byte[buffer.get(at)];
+        buffer.get(at + 1, value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /** Sets the value of {@code digest}; returns false if the value is too long to be stored. */
+    boolean put(byte[] digest, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_VALUE_BYTES) {
+            return false;
+        }
+        int slot = find(digest);
+        if (slot < 0) {
+            if (size + deleted + 1 > capacity * MAX_LOAD) {
+                rehash();
+            }
+            slot = free(digest);
+            if (buffer.get(offset(slot)) == DELETED) {
+                deleted--;
+            }
+            size++;
+            writeCounts();
+        }
+        int at = offset(slot);
+        buffer.put(at + 1, digest, 0, DIGEST_BYTES);
+        buffer.put(at + 1 + DIGEST_BYTES, (byte) bytes.length);
+        buffer.put(at + 2 + DIGEST_BYTES, bytes);
+        buffer.put(at, FULL); // last, so a slot is never seen full with a partial entry
+        return true;
+    }
+
+    /** Removes {@code digest} if its value is {@code value} (or any value, if null); returns whether it did. */
+    boolean remove(byte[] digest, String value) {
+        int slot = find(digest);
+        if (slot < 0 || (value != null && !value.equals(get(digest)))) {
+            return false;
+        }
+        buffer.put(offset(slot), DELETED);
+        size--;
+        deleted++;
+        writeCounts();
+        return true;
+    }
+
+    /** Marks the table complete and writes it to disk. */
+    void complete() {
+        buffer.put(COMPLETE_AT, (byte) 1);
+        buffer.force();
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    Path file() {
+        return file;
+    }
+
+    /** The slot holding {@code digest}, or a negative number if there is none. */
+    private int find(byte[] digest) {
+        int mask = capacity - 1;
+        for (int slot = home(digest) & mask, probes = 0; probes < capacity; slot = (slot + 1) & mask, probes++) {
+            byte state = buffer.get(offset(slot));
+            if (state == EMPTY) {
+                return -1;
+            }
+            if (state == FULL && sameDigest(slot, digest)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /** The first empty or deleted slot on the probe path of {@code digest}; the table has room. */
+    private int free(byte[] digest) {
+        int mask = capacity - 1;
+        int slot = home(digest) & mask;
+        while (buffer.get(offset(slot)) == FULL) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean sameDigest(int slot, byte[] digest) {
+        int at = offset(slot) + 1;
+        for (int i = 0; i < DIGEST_BYTES; i++) {
+            if (buffer.get(at + i) != digest[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int home(byte[] digest) {
+        return (digest[0] & 0xff) << 24 | (digest[1] & 0xff) << 16 | (digest[2] & 0xff) << 8 | (digest[3] & 0xff);
+    }
+
+    private static int offset(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    private void writeCounts() {
+        buffer.putInt(SIZE_AT, size);
+        buffer.putInt(DELETED_AT, deleted);
+    }
+
+    /**
+     * Copies the entries into a new file, twice as large if the table is more than half full, and
+     * swaps it in; this also clears deleted slots.
+     */
+    private void rehash() throws IOException {
+        int newCapacity = capacity;
+        while (newCapacity < MAX_CAPACITY && size + 1 > newCapacity / 2) {
+            newCapacity <<= 1;
+        }
+        if (size + 1 > newCapacity * MAX_LOAD) {
+            throw new IOException("Key table " + file + " is full");
+        }
+        Path next = file.resolveSibling(file.getFileName() + ".rehash");
+        Files.deleteIfExists(next);
+        MappedKeyTable copy = new MappedKeyTable(next, map(next, newCapacity, StandardOpenOption.CREATE_NEW), newCapacity, 0, 0);
+        copy.buffer.put(0, MAGIC);
+        copy.buffer.putInt(CAPACITY_AT, newCapacity);
+        copy.buffer.put(COMPLETE_AT, buffer.get(COMPLETE_AT));
+        byte[] digest = new byte[DIGEST_BYTES];
+        for (int slot = 0; slot < capacity; slot++) {
+            int at = offset(slot);
+            if (buffer.get(at) != FULL) {
+                continue;
+            }
+            buffer.get(at + 1, digest);
+            int target = copy.free(digest);
+            copy.buffer.put(offset(target), buffer, at, SLOT_BYTES);
+            copy.size++;
+        }
+        copy.writeCounts();
+        copy.buffer.force();
+        Files.move(next, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        buffer = copy.buffer;
+        capacity = copy.capacity;
+        size = copy.size;
+        deleted = 0;
+    }
+
+    /** Moves the table's file to {@code target}, replacing it. */
+    void moveTo(Path target) throws IOException {
+        buffer.force();
+        Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        file = target;
+    }
+
+    @Override
+    public void close() {
+        buffer.force(); // the mapping itself is released when collected
+    }
+}
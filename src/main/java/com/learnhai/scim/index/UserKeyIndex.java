@@ -0,0 +1,396 @@
+package com.learnhai.scim.index;
+
+import com.learnhai.scim.backend.IdentityBackend;
+import com.learnhai.scim.exception.ScimException;
+import com.learnhai.scim.mapper.UserMappingPlan;
+import com.learnhai.scim.tenant.TenantContext;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Persistent externalId → user id and userName → user id index, one {@link MappedKeyTable} file per
+ * tenant under {@code scim.users.key-index.dir}, so {@code filter=externalId eq "..."} and userName
+ * conflict checks are a hash lookup instead of a realm search, from the first request after a restart.
+ * <p>
+ * Writes made through the bridge update the table once the store accepted them; writes made in
+ * Keycloak directly come in through the change feed. A table that is missing or fails its checks is
+ * rebuilt in the background from a realm scan, into a new file swapped in when complete; writes made
+ * meanwhile are replayed onto it. Tables are also rebuilt every {@code refresh-interval-ms}.
+ * <p>
+ * The table can lag behind the store: entries go stale (a user deleted or renamed outside the bridge
+ * while no feed was running) and users can be missing (created outside the bridge, or skipped by a
+ * scan of a realm that changed under it). So a hit is verified by one read by id and dropped if it
+ * no longer holds, and a miss is confirmed with the store's own search, whose result is then indexed.
+ * The same search answers while a tenant's table is not built yet.
+ */
+@Service
+@Slf4j
+public class UserKeyIndex {
+
+    private static final int PAGE_SIZE = 500;
+    private static final String FILE_NAME = "users.idx";
+    private static final String DEFAULT_TENANT_DIR = "_default"; // tenant ids cannot start with '_'
+    private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(30); // after a failed build
+
+    private final IdentityBackend identityBackend;
+    private final UserMappingPlan mappingPlan;
+    private final boolean enabled;
+    private final Path directory;
+    private final long refreshIntervalNanos;
+    private final ExecutorService builder;
+    private final Map<String, Table> tables = new ConcurrentHashMap<>(); // by tenant
+
+    private record Write(String key, String userId, boolean put) {
+    }
+
+    private static final class Table {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        final Path file;
+        MappedKeyTable keys;           // guarded by lock; null until opened or first built
+        List<Write> journal;           // guarded by lock; writes made while a build runs, else null
+        CompletableFuture<Void> build; // guarded by lock; the running or last build
+        volatile long nextBuildAtNanos;
+
+        Table(Path file) {
+            this.file = file;
+        }
+    }
+
+    @Autowired
+    public UserKeyIndex(IdentityBackend identityBackend, UserMappingPlan mappingPlan,
+                        @Value("${scim.users.key-index.enabled:true}") boolean enabled,
+                        @Value("${scim.users.key-index.dir:./data/index}") String directory,
+                        @Value("${scim.users.key-index.refresh-interval-ms:3600000}") long refreshIntervalMs) {
+        this.identityBackend = identityBackend;
+        this.mappingPlan = mappingPlan;
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.refreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(refreshIntervalMs);
+        this.builder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "scim-key-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // --- Lookups ---
+
+    /** The user whose userName is {@code userName} (case-insensitive, as in Keycloak). */
+    public Optional<UserRepresentation> findByUserName(String userName) {
+        if (!enabled) {
+            return identityBackend.getUserByUsername(userName);
+        }
+        Table table = table();
+        String key = userNameKey(userName);
+        String userId = get(table, key);
+        if (userId != null) {
+            Optional<UserRepresentation> user = identityBackend.getUserById(userId);
+            if (user.isPresent() && user.get().getUsername() != null && user.get().getUsername().equalsIgnoreCase(userName)) {
+                return user;
+            }
+            remove(table, key, userId);
+        }
+        Optional<UserRepresentation> user = identityBackend.getUserByUsername(userName);
+        user.ifPresent(found -> indexed(found.getId(), found));
+        return user;
+    }
+
+    /** The user whose externalId is {@code externalId} (case-exact). */
+    public Optional<UserRepresentation> findByExternalId(String externalId) {
+        Table table = table();
+        String stored = mappingPlan.storedExternalId(externalId);
+        String key = externalIdKey(stored);
+        String userId = get(table, key);
+        if (userId != null) {
+            Optional<UserRepresentation> user = identityBackend.getUserById(userId);
+            if (user.isPresent() && stored.equals(mappingPlan.externalId(user.get()))) {
+                return user;
+            }
+            remove(table, key, userId);
+        }
+        Optional<UserRepresentation> user = searchByExternalId(stored);
+        user.ifPresent(found -> indexed(found.getId(), found));
+        return user;
+    }
+
+    private Optional<UserRepresentation> searchByExternalId(String stored) {
+        String attribute = mappingPlan.externalIdAttribute();
+        List<UserRepresentation> candidates = attribute != null
+                ? identityBackend.findUsersByAttribute(attribute, stored)
+                : identityBackend.getUsers(0, PAGE_SIZE, stored); // mapped onto a user field, which the search covers
+        return candidates.stream().filter(user -> stored.equals(mappingPlan.externalId(user))).findFirst();
+    }
+
+    // --- Writes, after the store accepted them ---
+
+    /** Records the current userName and externalId of user {@code userId}. */
+    public void indexed(String userId, UserRepresentation user) {
+        if (!enabled || userId == null || user == null) {
+            return;
+        }
+        Table table = table();
+        List<Write> writes = new ArrayList<>(2);
+        if (user.getUsername() != null) {
+            writes.add(new Write(userNameKey(user.getUsername()), userId, true));
+        }
+        String externalId = mappingPlan.externalId(user);
+        if (externalId != null) {
+            writes.add(new Write(externalIdKey(externalId), userId, true));
+        }
+        write(table, writes);
+    }
+
+    /** Drops the keys of {@code user}, if they still point at it. */
+    public void removed(UserRepresentation user) {
+        if (!enabled || user == null || user.getId() == null) {
+            return;
+        }
+        Table table = table();
+        List<Write> writes = new ArrayList<>(2);
+        if (user.getUsername() != null) {
+            writes.add(new Write(userNameKey(user.getUsername()), user.getId(), false));
+        }
+        String externalId = mappingPlan.externalId(user);
+        if (externalId != null) {
+            writes.add(new Write(externalIdKey(externalId), user.getId(), false));
+        }
+        write(table, writes);
+    }
+
+    /** A user was created or updated in the store by someone else: re-reads it, if the table is in use. */
+    public void changed(String userId) {
+        if (!enabled || !tables.containsKey(tenantKey())) {
+            return;
+        }
+        identityBackend.getUserById(userId).ifPresent(user -> indexed(userId, user));
+    }
+
+    /** Rebuilds the tenant's table in the background; the current one keeps answering meanwhile. */
+    public void invalidate() {
+        if (!enabled) {
+            return;
+        }
+        Table table = tables.get(tenantKey());
+        if (table != null) {
+            startBuild(table, "invalidated");
+        }
+    }
+
+    // --- Table access ---
+
+    private String get(Table table, String key) {
+        byte[] digest = MappedKeyTable.digest(key);
+        table.lock.readLock().lock();
+        try {
+            return table.keys != null ? table.keys.get(digest) : null;
+        } finally {
+            table.lock.readLock().unlock();
+        }
+    }
+
+    private void remove(Table table, String key, String userId) {
+        write(table, List.of(new Write(key, userId, false)));
+    }
+
+    private void write(Table table, List<Write> writes) {
+        if (writes.isEmpty()) {
+            return;
+        }
+        table.lock.writeLock().lock();
+        try {
+            if (table.journal != null) {
+                table.journal.addAll(writes);
+            }
+            if (table.keys != null) {
+                apply(table.keys, writes);
+            }
+        } catch (IOException e) {
+            log.warn("Could not update user key index {}: {}. Rebuilding it.", table.file, e.getMessage());
+            startBuild(table, "write failed");
+        } finally {
+            table.lock.writeLock().unlock();
+        }
+    }
+
+    private static void apply(MappedKeyTable keys, List<Write> writes) throws IOException {
+        for (Write write : writes) {
+            byte[] digest = MappedKeyTable.digest(write.key());
+            if (write.put()) {
+                keys.put(digest, write.userId());
+            } else {
+                keys.remove(digest, write.userId());
+            }
+        }
+    }
+
+    // --- Opening and building ---
+
+    private Table table() {
+        if (!enabled) {
+            throw new ScimException("The user key index is disabled.", HttpStatus.NOT_IMPLEMENTED);
+        }
+        Table table = tables.computeIfAbsent(tenantKey(), this::open);
+        if (System.nanoTime() - table.nextBuildAtNanos >= 0) {
+            startBuild(table, "refresh");
+        }
+        return table;
+    }
+
+    private Table open(String tenantKey) {
+        Table table = new Table(directory.resolve(tenantKey.isEmpty() ? DEFAULT_TENANT_DIR : tenantKey).resolve(FILE_NAME));
+        table.lock.writeLock().lock();
+        try {
+            if (Files.exists(table.file)) {
+                try {
+                    table.keys = MappedKeyTable.open(table.file);
+                    table.build = CompletableFuture.completedFuture(null);
+                    table.nextBuildAtNanos = System.nanoTime() + refreshIntervalNanos;
+                    log.info("Opened user key index {} ({} keys).", table.file, table.keys.size());
+                    return table;
+                } catch (IOException e) {
+                    log.warn("User key index {} is unusable ({}); rebuilding it.", table.file, e.getMessage());
+                }
+            }
+            startBuild(table, "no usable index file");
+        } finally {
+            table.lock.writeLock().unlock();
+        }
+        return table;
+    }
+
+    private void startBuild(Table table, String reason) {
+        table.lock.writeLock().lock();
+        try {
+            if (table.build != null && !table.build.isDone()) {
+                return;
+            }
+            table.journal = new ArrayList<>();
+            table.nextBuildAtNanos = System.nanoTime() + refreshIntervalNanos;
+            TenantContext context = TenantContext.current();
+            table.build = CompletableFuture.runAsync(() -> TenantContext.callAs(context, () -> {
+                build(table, reason);
+                return null;
+            }), builder);
+        } finally {
+            table.lock.writeLock().unlock();
+        }
+    }
+
+    private void build(Table table, String reason) {
+        long started = System.nanoTime();
+        Path building = table.file.resolveSibling(FILE_NAME + ".building");
+        try {
+            Files.createDirectories(table.file.getParent());
+            long expected = identityBackend.countUsers(null);
+            MappedKeyTable keys = MappedKeyTable.create(building, expected * 2);
+            long scanned = 0;
+            for (int first = 0; ; first += PAGE_SIZE) {
+                List<UserRepresentation> page = identityBackend.getUsers(first, PAGE_SIZE, null);
+                List<Write> writes = new ArrayList<>(page.size() * 2);
+                for (UserRepresentation user : page) {
+                    if (user.getUsername() != null) {
+                        writes.add(new Write(userNameKey(user.getUsername()), user.getId(), true));
+                    }
+                    String externalId = mappingPlan.externalId(user);
+                    if (externalId != null) {
+                        writes.add(new Write(externalIdKey(externalId), user.getId(), true));
+                    }
+                }
+                apply(keys, writes);
+                scanned += page.size();
+                if (page.size() < PAGE_SIZE) {
+                    break;
+                }
+            }
+            if (scanned < expected) {
+                // Users deleted during the scan, or a page cut short: misses are confirmed against the store anyway
+                log.warn("User key index scan of {} read {} of {} users.", table.file, scanned, expected);
+            }
+            table.lock.writeLock().lock();
+            try {
+                apply(keys, table.journal);
+                keys.complete();
+                keys.moveTo(table.file);
+                if (table.keys != null) {
+                    table.keys.close();
+                }
+                table.keys = keys;
+                table.journal = null;
+            } finally {
+                table.lock.writeLock().unlock();
+            }
+            log.info("Built user key index {} from {} users in {} ms ({}).", table.file, scanned,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), reason);
+        } catch (IOException | RuntimeException e) {
+            table.lock.writeLock().lock();
+            try {
+                table.journal = null;
+            } finally {
+                table.lock.writeLock().unlock();
+            }
+            table.nextBuildAtNanos = System.nanoTime() + RETRY_NANOS;
+            log.warn("Could not build user key index {}, retrying in {} s: {}", table.file,
+                    TimeUnit.NANOSECONDS.toSeconds(RETRY_NANOS), e.getMessage());
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        builder.shutdownNow();
+        try {
+            // A running build keeps writing its file; let it finish before the tables are closed
+            builder.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Table table : tables.values()) {
+            table.lock.writeLock().lock();
+            try {
+                if (table.keys != null) {
+                    table.keys.close();
+                }
+            } finally {
+                table.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static String userNameKey(String userName) {
+        return "u:" + userName.toLowerCase(Locale.ROOT);
+    }
+
+    private static String externalIdKey(String externalId) {
+        return "e:" + externalId;
+    }
+
+    private static String tenantKey() {
+        String tenant = TenantContext.tenantId();
+        return tenant != null ? tenant : "";
+    }
+}
@@ -0,0 +1,112 @@
+package com.learnhai.scim.limit;
+
+import com.learnhai.scim.exception.ScimException;
+import com.learnhai.scim.tenant.TenantContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Sheds SCIM requests beyond an adaptive concurrency limit, with separate bulkheads for reads,
+ * writes and listings, so a list-heavy sync cannot occupy every servlet thread and starve
+ * deprovisioning writes. Bulk, import and reconcile requests share the listing bulkhead. Each bulkhead's limit follows the latency of the requests it lets through,
+ * which is mostly Keycloak's (see {@link GradientLimiter}); requests over the limit get 503 with
+ * Retry-After at once rather than waiting for a thread.
+ * <p>
+ * Limits, requests in flight and rejections are exported as {@code scim.limiter.*} metrics, tagged
+ * by bulkhead.
+ */
+@Component
+@Slf4j
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    enum Bulkhead { READ, WRITE, LIST }
+
+    private final LimitProperties properties;
+    private final HandlerExceptionResolver exceptionResolver;
+    private final Map<Bulkhead, GradientLimiter> limiters = new EnumMap<>(Bulkhead.class);
+    private final Map<Bulkhead, Counter> rejections = new EnumMap<>(Bulkhead.class);
+
+    @Autowired
+    public ConcurrencyLimitFilter(LimitProperties properties, MeterRegistry meterRegistry,
+                                  @Qualifier("handlerExceptionResolver") HandlerExceptionResolver exceptionResolver) {
+        this.properties = properties;
+        this.exceptionResolver = exceptionResolver;
+        limiters.put(Bulkhead.READ, new GradientLimiter(properties.getRead()));
+        limiters.put(Bulkhead.WRITE, new GradientLimiter(properties.getWrite()));
+        limiters.put(Bulkhead.LIST, new GradientLimiter(properties.getList()));
+        limiters.forEach((bulkhead, limiter) -> {
+            String tag = bulkhead.name().toLowerCase();
+            Gauge.builder("scim.limiter.limit", limiter, GradientLimiter::limit).tag("bulkhead", tag).register(meterRegistry);
+            Gauge.builder("scim.limiter.inflight", limiter, GradientLimiter::inflight).tag("bulkhead", tag).register(meterRegistry);
+            rejections.put(bulkhead, meterRegistry.counter("scim.limiter.rejections", "bulkhead", tag));
+        });
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !properties.isEnabled() || !scimPath(request).startsWith(TenantContext.SCIM_PATH + "/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Bulkhead bulkhead = classify(request.getMethod(), scimPath(request));
+        GradientLimiter limiter = limiters.get(bulkhead);
+        if (!limiter.tryAcquire()) {
+            rejections.get(bulkhead).increment();
+            log.debug("Shedding {} {}: {} limit of {} reached", request.getMethod(), request.getRequestURI(),
+                    bulkhead.name().toLowerCase(), limiter.limit());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(properties.getRetryAfterSeconds()));
+            exceptionResolver.resolveException(request, response, null, new ScimException(
+                    "Too many concurrent " + bulkhead.name().toLowerCase() + " requests. Retry later.", HttpStatus.SERVICE_UNAVAILABLE));
+            return;
+        }
+        int inflight = limiter.inflight();
+        long started = System.nanoTime();
+        boolean completed = false;
+        try {
+            chain.doFilter(request, response);
+            completed = true;
+        } finally {
+            int status = response.getStatus();
+            if (!completed || (status >= 500 && status != HttpStatus.SERVICE_UNAVAILABLE.value())) {
+                limiter.releaseDropped(); // Keycloak failing or timing out
+            } else {
+                // Client errors are mostly rejected before reaching Keycloak; their latency says nothing about it
+                limiter.release(status < 400 ? System.nanoTime() - started : -1, inflight);
+            }
+        }
+    }
+
+    static Bulkhead classify(String method, String path) {
+        if ("GET".equals(method) || "HEAD".equals(method)) {
+            return path.endsWith("/Users") || path.endsWith("/Groups") || path.endsWith("/members")
+                    || path.endsWith("/errors") ? Bulkhead.LIST : Bulkhead.READ;
+        }
+        // Bulk loads, import jobs and reconcile runs take minutes: as writes they would hold write
+        // slots and their latency would pull the write limit down for single-resource writes
+        boolean batch = path.endsWith("/Bulk") || path.endsWith("/ImportJobs") || path.endsWith("/Reconcile");
+        return "POST".equals(method) && (batch || path.endsWith("/.search")) ? Bulkhead.LIST : Bulkhead.WRITE;
+    }
+
+    private static String scimPath(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+}
@@ -0,0 +1,89 @@
+package com.learnhai.scim.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A concurrency limit that adapts to latency, after the gradient algorithm: a long-term average of
+ * request latency is the baseline, and while recent latency stays near it the limit grows by about
+ * its square root per sample; when recent latency rises above it (the store behind is queueing) the
+ * limit shrinks in proportion, down to half per sample. Failures that look like overload cut it by
+ * a tenth. The limit stays within [min, max].
+ * <p>
+ * Requests beyond the limit are not queued: {@link #tryAcquire()} fails and the caller sheds them.
+ */
+final class GradientLimiter {
+
+    private static final double LONG_WINDOW = 600;  // samples in the baseline average
+    private static final double SHORT_WINDOW = 10;  // samples in the recent average
+    private static final double TOLERANCE = 1.5;    // recent/baseline ratio taken as no queueing
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private volatile double limit;
+    // Guarded by this
+    private double longRttNanos;
+    private double shortRttNanos;
+
+    GradientLimiter(LimitProperties.BulkheadProperties properties) {
+        this.minLimit = Math.max(1, properties.getMinLimit());
+        this.maxLimit = Math.max(minLimit, properties.getMaxLimit());
+        this.limit = Math.min(maxLimit, Math.max(minLimit, properties.getInitialLimit()));
+    }
+
+    /** Takes a slot if one is free; each successful call must be paired with {@link #release}. */
+    boolean tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /** Frees a slot, counting the request's latency towards the limit; a negative latency counts for nothing. */
+    void release(long rttNanos, int inflightAtStart) {
+        inflight.decrementAndGet();
+        if (rttNanos >= 0) {
+            sample(rttNanos, inflightAtStart);
+        }
+    }
+
+    /** Frees a slot of a request that failed in a way suggesting overload. */
+    synchronized void releaseDropped() {
+        inflight.decrementAndGet();
+        limit = Math.max(minLimit, limit * BACKOFF);
+    }
+
+    private synchronized void sample(long rttNanos, int inflightAtStart) {
+        if (longRttNanos == 0) {
+            longRttNanos = rttNanos;
+            shortRttNanos = rttNanos;
+            return;
+        }
+        shortRttNanos += (rttNanos - shortRttNanos) / SHORT_WINDOW;
+        longRttNanos += (rttNanos - longRttNanos) / LONG_WINDOW;
+        if (longRttNanos > 2 * shortRttNanos) {
+            longRttNanos *= 0.95; // latency fell away after an overload: let the baseline catch up
+        }
+        if (inflightAtStart * 2 < limit) {
+            return; // well below the limit: latency says nothing about whether it is too low
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNanos / shortRttNanos));
+        double target = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + target * SMOOTHING));
+    }
+
+    int inflight() {
+        return inflight.get();
+    }
+
+    int limit() {
+        return (int) limit;
+    }
+}
@@ -0,0 +1,38 @@
+package com.learnhai.scim.limit;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Adaptive concurrency limits (scim.limits.*), one bulkhead per kind of request; see
+ * {@link ConcurrencyLimitFilter}.
+ */
+@Data
+@ConfigurationProperties(prefix = "scim.limits")
+public class LimitProperties {
+
+    private boolean enabled = true;
+    private int retryAfterSeconds = 1;
+    // Single-resource GETs
+    private BulkheadProperties read = new BulkheadProperties(64, 8, 200);
+    // POST, PUT, PATCH, DELETE
+    private BulkheadProperties write = new BulkheadProperties(32, 4, 200);
+    // Filtered/paged listings, .search and member pages
+    private BulkheadProperties list = new BulkheadProperties(8, 2, 50);
+
+    @Data
+    public static class BulkheadProperties {
+        private int initialLimit;
+        private int minLimit;
+        private int maxLimit;
+
+        public BulkheadProperties() {
+        }
+
+        BulkheadProperties(int initialLimit, int minLimit, int maxLimit) {
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.learnhai.scim.mapper;
 
 import com.learnhai.scim.model.scim.ScimGroup;
 import com.learnhai.scim.model.scim.ScimUser;
+import com.learnhai.scim.tenant.TenantContext;
+import com.learnhai.scim.timing.RequestTimings;
 import org.keycloak.representations.idm.GroupRepresentation;
 import org.keycloak.representations.idm.UserRepresentation; // For mapping members
 import org.springframework.beans.factory.annotation.Value;
@@ -9,12 +11,10 @@ import org.springframework.stereotype.Component;
 import org.apache.commons.lang3.StringUtils;
 
 
-import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @Component
 public class GroupMapper {
@@ -26,6 +26,7 @@ public class GroupMapper {
     }
 
     public GroupRepresentation toKeycloakGroup(ScimGroup scimGroup, GroupRepresentation existingKcGroup) {
+        long started = System.nanoTime();
         GroupRepresentation kcGroup = (existingKcGroup != null) ? existingKcGroup : new GroupRepresentation();
 
         if (StringUtils.isNotBlank(scimGroup.getDisplayName())) {
@@ -41,10 +42,20 @@ public class GroupMapper {
         if (!attributes.isEmpty()) {
             kcGroup.setAttributes(attributes);
         }
+        RequestTimings.mapping(started);
         return kcGroup;
     }
 
     public ScimGroup toScimGroup(GroupRepresentation kcGroup, List<UserRepresentation> groupMembers) {
+        return toScimGroup(kcGroup, groupMembers, List.of());
+    }
+
+    /**
+     * @param subGroups Keycloak subgroups, emitted as members of type Group
+     */
+    public ScimGroup toScimGroup(GroupRepresentation kcGroup, List<UserRepresentation> groupMembers,
+                                 List<GroupRepresentation> subGroups) {
+        long started = System.nanoTime();
         ScimGroup scimGroup = new ScimGroup();
         scimGroup.setId(kcGroup.getId());
         scimGroup.setDisplayName(kcGroup.getName());
@@ -54,30 +65,54 @@ public class GroupMapper {
             scimGroup.setExternalId(kcAttributes.get("externalId").get(0));
         }
 
-        if (groupMembers != null && !groupMembers.isEmpty()) {
-            List<ScimGroup.Member> scimMembers = groupMembers.stream().map(kcUser -> {
-                ScimGroup.Member member = new ScimGroup.Member();
-                member.setValue(kcUser.getId());
-                member.setDisplay(kcUser.getUsername()); // Or another display attribute
-                member.setType("User");
-                member.setRef(scimBaseUrl + "/scim/v2/Users/" + kcUser.getId());
-                return member;
-            }).collect(Collectors.toList());
+        int memberCount = (groupMembers == null ? 0 : groupMembers.size()) + (subGroups == null ? 0 : subGroups.size());
+        if (memberCount > 0) {
+            List<ScimGroup.Member> scimMembers = new ArrayList<>(memberCount);
+            if (groupMembers != null) {
+                for (UserRepresentation kcUser : groupMembers) {
+                    scimMembers.add(toScimMember(kcUser));
+                }
+            }
+            if (subGroups != null) {
+                for (GroupRepresentation kcSubGroup : subGroups) {
+                    scimMembers.add(toScimMember(kcSubGroup));
+                }
+            }
             scimGroup.setMembers(scimMembers);
         } else {
-            scimGroup.setMembers(new ArrayList<>()); // Ensure members list is present even if empty
+            scimGroup.setMembers(List.of()); // Ensure members list is present even if empty (shared, immutable)
         }
 
         ScimUser.Meta meta = new ScimUser.Meta(); // Re-use Meta structure
         meta.setResourceType("Group");
-        meta.setLocation(scimBaseUrl + "/scim/v2/Groups/" + kcGroup.getId());
-        // Keycloak GroupRepresentation doesn't have created/lastModified timestamps directly
-        // If you store them as attributes, map them here.
-        meta.setCreated(Instant.now()); // Placeholder
-        meta.setLastModified(Instant.now()); // Placeholder
+        meta.setLocation(scimBaseUrl + TenantContext.scimPath() + "/Groups/" + kcGroup.getId());
+        // Keycloak keeps no timestamps for groups; these are the bridge's own stamps, absent for
+        // groups it has never written; member changes made through it move lastModified too
+        meta.setCreated(ModificationStamps.created(kcGroup));
+        meta.setLastModified(ModificationStamps.lastModified(kcGroup));
         // meta.setVersion(...); // ETag - Placeholder
         scimGroup.setMeta(meta);
 
+        RequestTimings.mapping(started);
         return scimGroup;
     }
-}
\ No newline at end of file
+
+    public ScimGroup.Member toScimMember(UserRepresentation kcUser) {
+        ScimGroup.Member member = new ScimGroup.Member();
+        member.setValue(kcUser.getId());
+        member.setDisplay(kcUser.getUsername()); // Or another display attribute
+        member.setType("User");
+        member.setRef(scimBaseUrl + TenantContext.scimPath() + "/Users/" + kcUser.getId());
+        return member;
+    }
+
+    /** A Keycloak subgroup as a member of type Group. */
+    public ScimGroup.Member toScimMember(GroupRepresentation kcSubGroup) {
+        ScimGroup.Member member = new ScimGroup.Member();
+        member.setValue(kcSubGroup.getId());
+        member.setDisplay(kcSubGroup.getName());
+        member.setType("Group");
+        member.setRef(scimBaseUrl + TenantContext.scimPath() + "/Groups/" + kcSubGroup.getId());
+        return member;
+    }
+}
@@ -0,0 +1,84 @@
+package com.learnhai.scim.mapper;
+
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write times the bridge records as Keycloak attributes, backing {@code meta.created} and
+ * {@code meta.lastModified}. Keycloak itself only keeps a creation time, and only for users.
+ * Changes made in Keycloak directly are not stamped.
+ */
+public final class ModificationStamps {
+
+    /** Groups only; users have {@code createdTimestamp}. */
+    public static final String CREATED_ATTRIBUTE = "scimCreated";
+    public static final String LAST_MODIFIED_ATTRIBUTE = "scimLastModified";
+
+    private ModificationStamps() {
+    }
+
+    /** A write time, at the millisecond precision it is stored with. */
+    public static Instant now() {
+        return Instant.now().truncatedTo(ChronoUnit.MILLIS);
+    }
+
+    public static void stamp(UserRepresentation kcUser, Instant at) {
+        kcUser.setAttributes(withValue(kcUser.getAttributes(), LAST_MODIFIED_ATTRIBUTE, at));
+    }
+
+    /** @param created also records {@code at} as the creation time */
+    public static void stamp(GroupRepresentation kcGroup, Instant at, boolean created) {
+        Map<String, List<String>> attributes = withValue(kcGroup.getAttributes(), LAST_MODIFIED_ATTRIBUTE, at);
+        if (created) {
+            attributes.put(CREATED_ATTRIBUTE, Collections.singletonList(at.toString()));
+        }
+        kcGroup.setAttributes(attributes);
+    }
+
+    /** The last write through the bridge, else the creation time; null if neither is known. */
+    public static Instant lastModified(UserRepresentation kcUser) {
+        Instant stamped = read(kcUser.getAttributes(), LAST_MODIFIED_ATTRIBUTE);
+        Instant created = kcUser.getCreatedTimestamp() != null ? Instant.ofEpochMilli(kcUser.getCreatedTimestamp()) : null;
+        if (stamped == null || (created != null && created.isAfter(stamped))) {
+            return created;
+        }
+        return stamped;
+    }
+
+    public static Instant created(GroupRepresentation kcGroup) {
+        return read(kcGroup.getAttributes(), CREATED_ATTRIBUTE);
+    }
+
+    public static Instant lastModified(GroupRepresentation kcGroup) {
+        Instant stamped = read(kcGroup.getAttributes(), LAST_MODIFIED_ATTRIBUTE);
+        return stamped != null ? stamped : created(kcGroup);
+    }
+
+    private static Map<String, List<String>> withValue(Map<String, List<String>> attributes, String name, Instant at) {
+        // Keycloak may hand out maps we cannot write to
+        Map<String, List<String>> writable = attributes instanceof HashMap ? attributes
+                : attributes == null ? new HashMap<>() : new HashMap<>(attributes);
+        writable.put(name, Collections.singletonList(at.toString()));
+        return writable;
+    }
+
+    private static Instant read(Map<String, List<String>> attributes, String name) {
+        List<String> values = attributes == null ? null : attributes.get(name);
+        if (values == null || values.isEmpty() || values.get(0) == null) {
+            return null;
+        }
+        try {
+            return Instant.parse(values.get(0));
+        } catch (DateTimeParseException e) {
+            return null; // edited by hand in Keycloak; treat as unknown
+        }
+    }
+}
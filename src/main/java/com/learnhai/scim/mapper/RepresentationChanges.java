@@ -0,0 +1,133 @@
+package com.learnhai.scim.mapper;
+
+import org.apache.commons.lang3.StringUtils;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Field-level differences between a stored representation and the one a write would store, so
+ * writes that change nothing can be skipped and the others send only what they change.
+ * {@link ModificationStamps#LAST_MODIFIED_ATTRIBUTE} is not compared: every write sets it anew.
+ */
+public final class RepresentationChanges {
+
+    private RepresentationChanges() {
+    }
+
+    /** The fields a user write can send, with attributes copied, so a mapper can apply changes without touching {@code source}. */
+    public static UserRepresentation copy(UserRepresentation source) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId(source.getId());
+        user.setUsername(source.getUsername());
+        user.setEmail(source.getEmail());
+        user.setEmailVerified(source.isEmailVerified());
+        user.setFirstName(source.getFirstName());
+        user.setLastName(source.getLastName());
+        user.setEnabled(source.isEnabled());
+        user.setCreatedTimestamp(source.getCreatedTimestamp());
+        user.setAttributes(copy(source.getAttributes()));
+        return user;
+    }
+
+    /** The fields a group write can send, and its place in the hierarchy, with attributes copied. */
+    public static GroupRepresentation copy(GroupRepresentation source) {
+        GroupRepresentation group = new GroupRepresentation();
+        group.setId(source.getId());
+        group.setName(source.getName());
+        group.setPath(source.getPath());
+        group.setParentId(source.getParentId());
+        group.setSubGroupCount(source.getSubGroupCount());
+        group.setAttributes(copy(source.getAttributes()));
+        return group;
+    }
+
+    /**
+     * Names of the user fields that differ, attributes as {@code attributes.<name>}; user names and
+     * emails compare as the store keeps them, ignoring case.
+     */
+    public static List<String> changed(UserRepresentation current, UserRepresentation desired) {
+        List<String> changed = new ArrayList<>();
+        if (!StringUtils.equalsIgnoreCase(current.getUsername(), desired.getUsername())) {
+            changed.add("username");
+        }
+        if (!StringUtils.equalsIgnoreCase(current.getEmail(), desired.getEmail())) {
+            changed.add("email");
+        }
+        if (!Objects.equals(current.isEmailVerified(), desired.isEmailVerified())) {
+            changed.add("emailVerified");
+        }
+        if (!Objects.equals(current.getFirstName(), desired.getFirstName())) {
+            changed.add("firstName");
+        }
+        if (!Objects.equals(current.getLastName(), desired.getLastName())) {
+            changed.add("lastName");
+        }
+        if (!Objects.equals(current.isEnabled(), desired.isEnabled())) {
+            changed.add("enabled");
+        }
+        changedAttributes(current.getAttributes(), desired.getAttributes(), changed);
+        return changed;
+    }
+
+    /** Names of the group fields that differ, attributes as {@code attributes.<name>}. */
+    public static List<String> changed(GroupRepresentation current, GroupRepresentation desired) {
+        List<String> changed = new ArrayList<>();
+        if (!Objects.equals(current.getName(), desired.getName())) {
+            changed.add("name");
+        }
+        changedAttributes(current.getAttributes(), desired.getAttributes(), changed);
+        return changed;
+    }
+
+    /**
+     * The update to send for {@code changed} fields of {@code desired}. Keycloak validates a user
+     * update against the user profile as a whole, so the profile fields (user name, email, names)
+     * and the full attribute map always go along; {@code enabled} and {@code emailVerified} only
+     * when they changed, and nothing else.
+     */
+    public static UserRepresentation update(UserRepresentation desired, List<String> changed) {
+        UserRepresentation update = new UserRepresentation();
+        update.setUsername(desired.getUsername());
+        update.setEmail(desired.getEmail());
+        update.setFirstName(desired.getFirstName());
+        update.setLastName(desired.getLastName());
+        if (changed.contains("enabled")) {
+            update.setEnabled(desired.isEnabled());
+        }
+        if (changed.contains("emailVerified")) {
+            update.setEmailVerified(desired.isEmailVerified());
+        }
+        update.setAttributes(desired.getAttributes() != null ? desired.getAttributes() : new HashMap<>());
+        return update;
+    }
+
+    private static void changedAttributes(Map<String, List<String>> current, Map<String, List<String>> desired,
+                                          List<String> changed) {
+        Map<String, List<String>> before = current != null ? current : Map.of();
+        Map<String, List<String>> after = desired != null ? desired : Map.of();
+        Set<String> names = new LinkedHashSet<>(after.keySet());
+        names.addAll(before.keySet());
+        for (String name : names) {
+            if (!ModificationStamps.LAST_MODIFIED_ATTRIBUTE.equals(name) && !Objects.equals(before.get(name), after.get(name))) {
+                changed.add("attributes." + name);
+            }
+        }
+    }
+
+    private static Map<String, List<String>> copy(Map<String, List<String>> attributes) {
+        if (attributes == null) {
+            return null;
+        }
+        Map<String, List<String>> copy = new HashMap<>(attributes.size() * 2);
+        attributes.forEach((name, values) -> copy.put(name, values == null ? null : new ArrayList<>(values)));
+        return copy;
+    }
+}
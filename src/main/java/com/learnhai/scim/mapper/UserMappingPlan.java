@@ -0,0 +1,332 @@
+package com.learnhai.scim.mapper;
+
+import com.learnhai.scim.config.AttributeMappingProperties;
+import com.learnhai.scim.config.AttributeMappingProperties.Rule;
+import com.learnhai.scim.model.scim.ScimUser;
+import org.apache.commons.lang3.StringUtils;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * The scim.mapping.user rules compiled into arrays of accessor/mutator pairs.
+ * <p>
+ * Paths and targets are resolved once at startup; per-user work is a plain loop over the bindings
+ * with no lookups by name and no intermediate collections beyond the value lists Keycloak needs.
+ */
+@Component
+public class UserMappingPlan {
+
+    private static final String ATTRIBUTE_PREFIX = "attributes.";
+    private static final String ENTERPRISE_PREFIX = ScimUser.SCHEMA_ENTERPRISE_USER + ":";
+
+    private final Binding[] fieldBindings;
+    private final Binding[] attributeBindings;
+    private final Binding externalIdBinding; // null if externalId is not mapped
+
+    private static final class Binding {
+        final Function<ScimUser, Object> scimGetter;
+        final BiConsumer<ScimUser, Object> scimSetter;
+        final Function<UserRepresentation, String> kcGetter; // field bindings only
+        final BiConsumer<UserRepresentation, String> kcSetter;
+        final String kcAttribute;                            // attribute bindings only
+        final boolean multiValued;
+        final UnaryOperator<String> transform;
+
+        Binding(ScimAccessor scim, KeycloakField field, String kcAttribute, boolean multiValued, UnaryOperator<String> transform) {
+            this.scimGetter = scim.getter;
+            this.scimSetter = scim.setter;
+            this.kcGetter = field != null ? field.getter : null;
+            this.kcSetter = field != null ? field.setter : null;
+            this.kcAttribute = kcAttribute;
+            this.multiValued = multiValued;
+            this.transform = transform;
+        }
+    }
+
+    private record ScimAccessor(Function<ScimUser, Object> getter, BiConsumer<ScimUser, Object> setter, boolean multiValuedCapable) { }
+
+    private record KeycloakField(Function<UserRepresentation, String> getter, BiConsumer<UserRepresentation, String> setter) { }
+
+    @Autowired
+    public UserMappingPlan(AttributeMappingProperties properties) {
+        this(properties.getUser().isEmpty() ? defaultRules() : properties.getUser());
+    }
+
+    public UserMappingPlan(List<Rule> rules) {
+        List<Binding> fields = new ArrayList<>();
+        List<Binding> attributes = new ArrayList<>();
+        Binding externalId = null;
+        for (Rule rule : rules) {
+            ScimAccessor scim = resolveScimPath(rule.getScim());
+            if (rule.isMultiValued() && !scim.multiValuedCapable()) {
+                throw new IllegalArgumentException("SCIM path '" + rule.getScim() + "' is single-valued; only extension attributes can be multi-valued");
+            }
+            UnaryOperator<String> transform = resolveTransform(rule.getTransform());
+            String target = rule.getKeycloak();
+            Binding binding;
+            if (target != null && target.startsWith(ATTRIBUTE_PREFIX)) {
+                binding = new Binding(scim, null, target.substring(ATTRIBUTE_PREFIX.length()), rule.isMultiValued(), transform);
+                attributes.add(binding);
+            } else {
+                if (rule.isMultiValued()) {
+                    throw new IllegalArgumentException("Keycloak field '" + target + "' cannot be multi-valued (mapping for " + rule.getScim() + ")");
+                }
+                binding = new Binding(scim, resolveKeycloakField(target), null, false, transform);
+                fields.add(binding);
+            }
+            if ("externalId".equalsIgnoreCase(rule.getScim())) {
+                externalId = binding;
+            }
+        }
+        this.fieldBindings = fields.toArray(new Binding[0]);
+        this.attributeBindings = attributes.toArray(new Binding[0]);
+        this.externalIdBinding = externalId;
+    }
+
+    /** Built-in mapping, used when scim.mapping.user is not configured. */
+    public static List<Rule> defaultRules() {
+        return List.of(
+                new Rule("userName", "username", false, null),
+                new Rule("name.givenName", "firstName", false, null),
+                new Rule("name.familyName", "lastName", false, null),
+                new Rule("externalId", "attributes.externalId", false, null),
+                new Rule("displayName", "attributes.displayName", false, null),
+                new Rule("nickName", "attributes.nickName", false, null),
+                new Rule("profileUrl", "attributes.profileUrl", false, null),
+                new Rule("title", "attributes.title", false, null),
+                new Rule("userType", "attributes.userType", false, null),
+                new Rule("preferredLanguage", "attributes.locale", false, null), // Keycloak uses 'locale'
+                new Rule("timezone", "attributes.timezone", false, null),
+                new Rule(ENTERPRISE_PREFIX + "employeeNumber", "attributes.employeeNumber", false, null),
+                new Rule(ENTERPRISE_PREFIX + "costCenter", "attributes.costCenter", false, null),
+                new Rule(ENTERPRISE_PREFIX + "organization", "attributes.organization", false, null),
+                new Rule(ENTERPRISE_PREFIX + "division", "attributes.division", false, null),
+                new Rule(ENTERPRISE_PREFIX + "department", "attributes.department", false, null),
+                new Rule(ENTERPRISE_PREFIX + "manager.value", "attributes.managerId", false, null),
+                new Rule(ENTERPRISE_PREFIX + "manager.displayName", "attributes.managerDisplayName", false, null));
+    }
+
+    /**
+     * Copies mapped SCIM values onto the Keycloak user. Blank values leave the target untouched,
+     * matching the previous hand-written mapping.
+     */
+    public void toKeycloak(ScimUser scimUser, UserRepresentation kcUser) {
+        for (Binding binding : fieldBindings) {
+            Object value = binding.scimGetter.apply(scimUser);
+            if (value instanceof String s && StringUtils.isNotBlank(s)) {
+                binding.kcSetter.accept(kcUser, binding.transform.apply(s));
+            }
+        }
+
+        Map<String, List<String>> attributes = kcUser.getAttributes();
+        boolean writable = false;
+        for (Binding binding : attributeBindings) {
+            List<String> values = toAttributeValues(binding, binding.scimGetter.apply(scimUser));
+            if (values == null) {
+                continue;
+            }
+            if (!writable) {
+                // Reuse the map Keycloak handed us when we can write to it; copy at most once otherwise.
+                if (!(attributes instanceof HashMap)) {
+                    attributes = attributes == null ? new HashMap<>(attributeBindings.length * 2) : new HashMap<>(attributes);
+                    kcUser.setAttributes(attributes);
+                }
+                writable = true;
+            }
+            attributes.put(binding.kcAttribute, values);
+        }
+    }
+
+    private List<String> toAttributeValues(Binding binding, Object value) {
+        if (value instanceof String s) {
+            return StringUtils.isNotBlank(s) ? Collections.singletonList(binding.transform.apply(s)) : null;
+        }
+        if (binding.multiValued && value instanceof List<?> list && !list.isEmpty()) {
+            List<String> values = new ArrayList<>(list.size());
+            for (Object item : list) {
+                if (item != null && StringUtils.isNotBlank(item.toString())) {
+                    values.add(binding.transform.apply(item.toString()));
+                }
+            }
+            return values.isEmpty() ? null : values;
+        }
+        return null;
+    }
+
+    public void toScim(UserRepresentation kcUser, ScimUser scimUser) {
+        for (Binding binding : fieldBindings) {
+            String value = binding.kcGetter.apply(kcUser);
+            if (value != null) {
+                binding.scimSetter.accept(scimUser, value);
+            }
+        }
+
+        Map<String, List<String>> attributes = kcUser.getAttributes();
+        if (attributes == null || attributes.isEmpty()) {
+            return;
+        }
+        for (Binding binding : attributeBindings) {
+            List<String> values = attributes.get(binding.kcAttribute);
+            if (values == null || values.isEmpty()) {
+                continue;
+            }
+            binding.scimSetter.accept(scimUser, binding.multiValued ? values : values.get(0));
+        }
+    }
+
+    /** The externalId stored on a Keycloak user, or null if it has none or externalId is not mapped. */
+    public String externalId(UserRepresentation kcUser) {
+        Binding binding = externalIdBinding;
+        if (binding == null) {
+            return null;
+        }
+        String value;
+        if (binding.kcGetter != null) {
+            value = binding.kcGetter.apply(kcUser);
+        } else {
+            List<String> values = kcUser.getAttributes() == null ? null : kcUser.getAttributes().get(binding.kcAttribute);
+            value = values == null || values.isEmpty() ? null : values.get(0);
+        }
+        return StringUtils.isNotBlank(value) ? value : null;
+    }
+
+    /** The Keycloak attribute externalId is stored in, or null if it is unmapped or stored in a user field. */
+    public String externalIdAttribute() {
+        return externalIdBinding == null ? null : externalIdBinding.kcAttribute;
+    }
+
+    /** A SCIM externalId as {@link #toKeycloak} would store it, for comparing against {@link #externalId}. */
+    public String storedExternalId(String scimValue) {
+        return externalIdBinding == null || scimValue == null ? scimValue : externalIdBinding.transform.apply(scimValue);
+    }
+
+    private static UnaryOperator<String> resolveTransform(String transform) {
+        if (transform == null || transform.isBlank()) {
+            return UnaryOperator.identity();
+        }
+        return switch (transform.toLowerCase(Locale.ROOT)) {
+            case "none" -> UnaryOperator.identity();
+            case "trim" -> String::trim;
+            case "lowercase" -> s -> s.toLowerCase(Locale.ROOT);
+            case "uppercase" -> s -> s.toUpperCase(Locale.ROOT);
+            default -> throw new IllegalArgumentException("Unknown mapping transform: " + transform);
+        };
+    }
+
+    private static KeycloakField resolveKeycloakField(String field) {
+        if (field == null) {
+            throw new IllegalArgumentException("Mapping rule without a keycloak target");
+        }
+        return switch (field) {
+            case "username" -> new KeycloakField(UserRepresentation::getUsername, UserRepresentation::setUsername);
+            case "firstName" -> new KeycloakField(UserRepresentation::getFirstName, UserRepresentation::setFirstName);
+            case "lastName" -> new KeycloakField(UserRepresentation::getLastName, UserRepresentation::setLastName);
+            case "email" -> new KeycloakField(UserRepresentation::getEmail, UserRepresentation::setEmail);
+            default -> throw new IllegalArgumentException("Unknown Keycloak user field '" + field
+                    + "'. Use one of username, firstName, lastName, email or attributes.<name>.");
+        };
+    }
+
+    private static ScimAccessor resolveScimPath(String path) {
+        if (path == null || path.isBlank()) {
+            throw new IllegalArgumentException("Mapping rule without a scim path");
+        }
+        if (path.regionMatches(true, 0, ENTERPRISE_PREFIX, 0, ENTERPRISE_PREFIX.length())) {
+            return resolveEnterprisePath(path.substring(ENTERPRISE_PREFIX.length()));
+        }
+        if (path.regionMatches(true, 0, "urn:", 0, 4)) {
+            // Attribute of a custom extension schema: "<schema urn>:<attribute>"
+            int split = path.lastIndexOf(':');
+            String schema = path.substring(0, split);
+            String attribute = path.substring(split + 1);
+            return new ScimAccessor(u -> u.getExtensionAttribute(schema, attribute),
+                    (u, v) -> u.setExtensionAttribute(schema, attribute, v), true);
+        }
+        return switch (path.toLowerCase(Locale.ROOT)) {
+            case "username" -> stringAccessor(ScimUser::getUserName, ScimUser::setUserName);
+            case "externalid" -> stringAccessor(ScimUser::getExternalId, ScimUser::setExternalId);
+            case "displayname" -> stringAccessor(ScimUser::getDisplayName, ScimUser::setDisplayName);
+            case "nickname" -> stringAccessor(ScimUser::getNickName, ScimUser::setNickName);
+            case "profileurl" -> stringAccessor(ScimUser::getProfileUrl, ScimUser::setProfileUrl);
+            case "title" -> stringAccessor(ScimUser::getTitle, ScimUser::setTitle);
+            case "usertype" -> stringAccessor(ScimUser::getUserType, ScimUser::setUserType);
+            case "preferredlanguage" -> stringAccessor(ScimUser::getPreferredLanguage, ScimUser::setPreferredLanguage);
+            case "locale" -> stringAccessor(ScimUser::getLocale, ScimUser::setLocale);
+            case "timezone" -> stringAccessor(ScimUser::getTimezone, ScimUser::setTimezone);
+            case "name.formatted" -> nameAccessor(ScimUser.Name::getFormatted, ScimUser.Name::setFormatted);
+            case "name.givenname" -> nameAccessor(ScimUser.Name::getGivenName, ScimUser.Name::setGivenName);
+            case "name.familyname" -> nameAccessor(ScimUser.Name::getFamilyName, ScimUser.Name::setFamilyName);
+            case "name.middlename" -> nameAccessor(ScimUser.Name::getMiddleName, ScimUser.Name::setMiddleName);
+            case "name.honorificprefix" -> nameAccessor(ScimUser.Name::getHonorificPrefix, ScimUser.Name::setHonorificPrefix);
+            case "name.honorificsuffix" -> nameAccessor(ScimUser.Name::getHonorificSuffix, ScimUser.Name::setHonorificSuffix);
+            default -> throw new IllegalArgumentException("Unsupported SCIM path in attribute mapping: " + path);
+        };
+    }
+
+    private static ScimAccessor resolveEnterprisePath(String attribute) {
+        return switch (attribute.toLowerCase(Locale.ROOT)) {
+            case "employeenumber" -> enterpriseAccessor(ScimUser.EnterpriseUserExtension::getEmployeeNumber, ScimUser.EnterpriseUserExtension::setEmployeeNumber);
+            case "costcenter" -> enterpriseAccessor(ScimUser.EnterpriseUserExtension::getCostCenter, ScimUser.EnterpriseUserExtension::setCostCenter);
+            case "organization" -> enterpriseAccessor(ScimUser.EnterpriseUserExtension::getOrganization, ScimUser.EnterpriseUserExtension::setOrganization);
+            case "division" -> enterpriseAccessor(ScimUser.EnterpriseUserExtension::getDivision, ScimUser.EnterpriseUserExtension::setDivision);
+            case "department" -> enterpriseAccessor(ScimUser.EnterpriseUserExtension::getDepartment, ScimUser.EnterpriseUserExtension::setDepartment);
+            case "manager.value" -> managerAccessor(ScimUser.EnterpriseUserExtension.Manager::getValue, ScimUser.EnterpriseUserExtension.Manager::setValue);
+            case "manager.displayname" -> managerAccessor(ScimUser.EnterpriseUserExtension.Manager::getDisplayName, ScimUser.EnterpriseUserExtension.Manager::setDisplayName);
+            default -> throw new IllegalArgumentException("Unsupported enterprise extension path in attribute mapping: " + attribute);
+        };
+    }
+
+    private static ScimAccessor stringAccessor(Function<ScimUser, String> getter, BiConsumer<ScimUser, String> setter) {
+        return new ScimAccessor(getter::apply, (u, v) -> setter.accept(u, (String) v), false);
+    }
+
+    private static ScimAccessor nameAccessor(Function<ScimUser.Name, String> getter, BiConsumer<ScimUser.Name, String> setter) {
+        return new ScimAccessor(
+                u -> u.getName() == null ? null : getter.apply(u.getName()),
+                (u, v) -> {
+                    if (u.getName() == null) {
+                        u.setName(new ScimUser.Name());
+                    }
+                    setter.accept(u.getName(), (String) v);
+                }, false);
+    }
+
+    private static ScimAccessor enterpriseAccessor(Function<ScimUser.EnterpriseUserExtension, String> getter,
+                                                   BiConsumer<ScimUser.EnterpriseUserExtension, String> setter) {
+        return new ScimAccessor(
+                u -> u.getEnterpriseUser() == null ? null : getter.apply(u.getEnterpriseUser()),
+                (u, v) -> setter.accept(enterprise(u), (String) v), false);
+    }
+
+    private static ScimAccessor managerAccessor(Function<ScimUser.EnterpriseUserExtension.Manager, String> getter,
+                                                BiConsumer<ScimUser.EnterpriseUserExtension.Manager, String> setter) {
+        return new ScimAccessor(
+                u -> u.getEnterpriseUser() == null || u.getEnterpriseUser().getManager() == null
+                        ? null : getter.apply(u.getEnterpriseUser().getManager()),
+                (u, v) -> {
+                    ScimUser.EnterpriseUserExtension enterprise = enterprise(u);
+                    if (enterprise.getManager() == null) {
+                        enterprise.setManager(new ScimUser.EnterpriseUserExtension.Manager());
+                    }
+                    setter.accept(enterprise.getManager(), (String) v);
+                }, false);
+    }
+
+    private static ScimUser.EnterpriseUserExtension enterprise(ScimUser user) {
+        if (user.getEnterpriseUser() == null) {
+            user.setEnterpriseUser(new ScimUser.EnterpriseUserExtension());
+        }
+        return user.getEnterpriseUser();
+    }
+}
@@ -0,0 +1,38 @@
+package com.learnhai.scim.model.scim;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * SCIM ListResponse message (RFC 7644, Section 3.4.2), with the {@code nextCursor} of cursor-based
+ * pagination (RFC 9865) where a listing supports it.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ListResponse<T> {
+
+    public static final String SCHEMA_LIST_RESPONSE = "urn:ietf:params:scim:api:messages:2.0:ListResponse";
+    public static final List<String> SCHEMAS = List.of(SCHEMA_LIST_RESPONSE);
+
+    private long totalResults;
+    private int startIndex;
+    private int itemsPerPage;
+    @JsonProperty("Resources")
+    private List<T> resources;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
+
+    public ListResponse(long totalResults, int startIndex, List<T> resources) {
+        this(totalResults, startIndex, resources.size(), resources, null);
+    }
+
+    public List<String> getSchemas() {
+        return SCHEMAS;
+    }
+}
@@ -30,6 +30,7 @@ public class ScimGroup extends ScimResource {
     */
 
     public static final String SCHEMA_CORE_GROUP = "urn:ietf:params:scim:schemas:core:2.0:Group";
+    public static final List<String> SCHEMAS_CORE = List.of(SCHEMA_CORE_GROUP); // shared, never mutated
 
     // Inner classes (Member) remain the same...
     @Data
@@ -59,13 +60,15 @@ public class ScimGroup extends ScimResource {
      // Override getSchemas to ensure it's initialized correctly
      @Override
      public List<String> getSchemas() {
-         if (super.getSchemas() == null || super.getSchemas().isEmpty()) {
-             super.setSchemas(new ArrayList<>(List.of(SCHEMA_CORE_GROUP)));
-         } else if (!super.getSchemas().contains(SCHEMA_CORE_GROUP)) {
-             List<String> updatedSchemas = new ArrayList<>(super.getSchemas());
+         List<String> schemas = super.getSchemas();
+         if (schemas == null || schemas.isEmpty()) {
+             super.setSchemas(SCHEMAS_CORE);
+         } else if (!schemas.contains(SCHEMA_CORE_GROUP)) {
+             List<String> updatedSchemas = new ArrayList<>(schemas.size() + 1);
              updatedSchemas.add(SCHEMA_CORE_GROUP);
+             updatedSchemas.addAll(schemas);
              super.setSchemas(updatedSchemas);
          }
          return super.getSchemas();
      }
-}
\ No newline at end of file
+}
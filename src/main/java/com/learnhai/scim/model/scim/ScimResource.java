@@ -11,10 +11,23 @@ import java.util.List;
 @NoArgsConstructor // For Jackson and subclasses that might call super() implicitly
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public abstract class ScimResource {
-    // Field initializations are done when an object is created,
-    // including via Lombok's @NoArgsConstructor
-    private List<String> schemas = new ArrayList<>();
+    // Left null until first read: subclasses fall back to a shared, immutable schema list and the
+    // mapper always supplies its own Meta, so eager defaults would only be allocated and thrown away.
+    private List<String> schemas;
     private String id;
     private String externalId;
-    private ScimUser.Meta meta = new ScimUser.Meta(); // Default Meta, resourceType set by subclasses
-}
\ No newline at end of file
+    private ScimUser.Meta meta;
+
+    /**
+     * Adds a schema URN. Schema lists are usually shared immutable constants, so this copies on write.
+     */
+    public void addSchema(String schemaUrn) {
+        List<String> current = getSchemas();
+        if (!current.contains(schemaUrn)) {
+            List<String> updated = new ArrayList<>(current.size() + 1);
+            updated.addAll(current);
+            updated.add(schemaUrn);
+            setSchemas(updated);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.learnhai.scim.model.scim;
 
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
@@ -8,7 +11,9 @@ import lombok.NoArgsConstructor;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @EqualsAndHashCode(callSuper = true) // Ensure ScimResource's fields are included if it has them
@@ -34,13 +39,25 @@ public class ScimUser extends ScimResource { // Make sure ScimResource also has
     private String password;
     private List<Email> emails;
     private List<PhoneNumber> phoneNumbers;
+    // readOnly; filled from the membership index, never written to Keycloak
+    private List<Group> groups;
 
     @JsonProperty("urn:ietf:params:scim:schemas:extension:enterprise:2.0:User")
     private EnterpriseUserExtension enterpriseUser;
 
+    // Custom extension schemas without a typed model, keyed by schema URN,
+    // e.g. "urn:acme:params:scim:schemas:extension:2.0:User" -> {"badgeId": "42"}.
+    // Mapped to Keycloak through scim.mapping rules.
+    @JsonIgnore
+    private Map<String, Map<String, Object>> extensionAttributes;
+
     public static final String SCHEMA_CORE_USER = "urn:ietf:params:scim:schemas:core:2.0:User";
     public static final String SCHEMA_ENTERPRISE_USER = "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User";
 
+    // Shared schema lists for the common cases; never mutated (see ScimResource#addSchema)
+    public static final List<String> SCHEMAS_CORE = List.of(SCHEMA_CORE_USER);
+    public static final List<String> SCHEMAS_CORE_ENTERPRISE = List.of(SCHEMA_CORE_USER, SCHEMA_ENTERPRISE_USER);
+
     // Constructor for ScimResource to set default schemas
     // This will be called by super() if ScimResource defines such a constructor
     // If ScimResource has a no-arg constructor and initializes schemas,
@@ -84,6 +101,17 @@ public class ScimUser extends ScimResource { // Make sure ScimResource also has
         private boolean primary;
     }
 
+    @Data
+    @NoArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Group {
+        private String value;
+        @JsonProperty("$ref")
+        private String ref;
+        private String display;
+        private String type; // "direct" or "indirect"
+    }
+
     @Data
     @NoArgsConstructor // Meta needs a no-arg constructor
     @JsonInclude(JsonInclude.Include.NON_NULL)
@@ -118,6 +146,39 @@ public class ScimUser extends ScimResource { // Make sure ScimResource also has
         }
     }
 
+    @JsonAnySetter
+    @SuppressWarnings("unchecked")
+    public void putExtension(String schemaUrn, Object value) {
+        // Unknown top-level properties other than extension objects are ignored, as before.
+        if (schemaUrn.startsWith("urn:") && value instanceof Map) {
+            if (extensionAttributes == null) {
+                extensionAttributes = new LinkedHashMap<>();
+            }
+            extensionAttributes.put(schemaUrn, (Map<String, Object>) value);
+        }
+    }
+
+    @JsonAnyGetter
+    public Map<String, Map<String, Object>> getExtensionAttributes() {
+        return extensionAttributes;
+    }
+
+    public Object getExtensionAttribute(String schemaUrn, String attribute) {
+        if (extensionAttributes == null) {
+            return null;
+        }
+        Map<String, Object> extension = extensionAttributes.get(schemaUrn);
+        return extension == null ? null : extension.get(attribute);
+    }
+
+    public void setExtensionAttribute(String schemaUrn, String attribute, Object value) {
+        if (extensionAttributes == null) {
+            extensionAttributes = new LinkedHashMap<>();
+        }
+        extensionAttributes.computeIfAbsent(schemaUrn, k -> new LinkedHashMap<>()).put(attribute, value);
+        addSchema(schemaUrn);
+    }
+
      // Override getMeta to ensure it's initialized if null from super
      @Override
      public Meta getMeta() {
@@ -134,16 +195,26 @@ public class ScimUser extends ScimResource { // Make sure ScimResource also has
      // Override getSchemas to ensure it's initialized correctly
      @Override
      public List<String> getSchemas() {
-         if (super.getSchemas() == null || super.getSchemas().isEmpty()) {
-             super.setSchemas(new ArrayList<>(List.of(SCHEMA_CORE_USER)));
-         } else if (!super.getSchemas().contains(SCHEMA_CORE_USER)) {
+         List<String> schemas = super.getSchemas();
+         if (schemas == null || schemas.isEmpty()) {
+             super.setSchemas(SCHEMAS_CORE);
+         } else if (!schemas.contains(SCHEMA_CORE_USER)) {
              // If schemas list exists but doesn't contain the core user schema, add it.
-             // This is a bit defensive, depends on how ScimResource initializes.
-             List<String> updatedSchemas = new ArrayList<>(super.getSchemas());
+             List<String> updatedSchemas = new ArrayList<>(schemas.size() + 1);
              updatedSchemas.add(SCHEMA_CORE_USER);
+             updatedSchemas.addAll(schemas);
              super.setSchemas(updatedSchemas);
          }
          return super.getSchemas();
      }
 
-}
\ No newline at end of file
+     @Override
+     public void addSchema(String schemaUrn) {
+         if (SCHEMA_ENTERPRISE_USER.equals(schemaUrn) && getSchemas() == SCHEMAS_CORE) {
+             super.setSchemas(SCHEMAS_CORE_ENTERPRISE);
+         } else {
+             super.addSchema(schemaUrn);
+         }
+     }
+
+}
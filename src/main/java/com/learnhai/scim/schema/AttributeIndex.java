@@ -0,0 +1,31 @@
+package com.learnhai.scim.schema;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Case-insensitive attribute lookup; the exact spelling is tried first so well-behaved clients
+ * never pay for lower-casing.
+ */
+final class AttributeIndex {
+
+    private final Map<String, SchemaAttribute> exact = new LinkedHashMap<>();
+    private final Map<String, SchemaAttribute> lowerCase = new HashMap<>();
+
+    void add(SchemaAttribute attribute) {
+        exact.put(attribute.name, attribute);
+        lowerCase.put(attribute.name.toLowerCase(Locale.ROOT), attribute);
+    }
+
+    SchemaAttribute get(String name) {
+        SchemaAttribute attribute = exact.get(name);
+        return attribute != null ? attribute : lowerCase.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    Collection<SchemaAttribute> values() {
+        return exact.values();
+    }
+}
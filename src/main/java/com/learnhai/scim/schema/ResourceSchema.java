@@ -0,0 +1,30 @@
+package com.learnhai.scim.schema;
+
+import java.util.List;
+
+/**
+ * A resource type's core schema plus its extension schemas. The core and each extension are held
+ * as synthetic complex attributes so the validator walks every level with the same code.
+ */
+final class ResourceSchema {
+
+    final String name;
+    final SchemaAttribute core;
+    final List<SchemaAttribute> extensions; // name is the extension URN
+
+    ResourceSchema(String name, SchemaAttribute core, List<SchemaAttribute> extensions) {
+        this.name = name;
+        this.core = core;
+        this.extensions = extensions;
+    }
+
+    SchemaAttribute extension(String urn) {
+        for (int i = 0, n = extensions.size(); i < n; i++) {
+            SchemaAttribute extension = extensions.get(i);
+            if (extension.name.equalsIgnoreCase(urn)) {
+                return extension;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,117 @@
+package com.learnhai.scim.schema;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * One attribute definition from scim-schema.json, compiled into the flags and lookup structures the
+ * validator needs per value.
+ */
+final class SchemaAttribute {
+
+    enum Type { STRING, BOOLEAN, DECIMAL, INTEGER, DATE_TIME, BINARY, REFERENCE, COMPLEX }
+
+    enum Mutability { READ_ONLY, READ_WRITE, IMMUTABLE, WRITE_ONLY }
+
+    private static final SchemaAttribute[] NONE = new SchemaAttribute[0];
+
+    final String name;
+    final String path; // qualified name used in error messages, e.g. emails.type
+    final Type type;
+    final boolean multiValued;
+    final boolean required;
+    final boolean caseExact;
+    final Mutability mutability;
+    final Set<String> canonicalValues; // lower-cased unless caseExact; null when unconstrained
+    final AttributeIndex subAttributes; // null unless complex
+    final SchemaAttribute[] requiredSubAttributes;
+
+    SchemaAttribute(String name, String path, Type type, boolean multiValued, boolean required, boolean caseExact,
+                    Mutability mutability, Set<String> canonicalValues, AttributeIndex subAttributes) {
+        this.name = name;
+        this.path = path;
+        this.type = type;
+        this.multiValued = multiValued;
+        this.required = required;
+        this.caseExact = caseExact;
+        this.mutability = mutability;
+        this.canonicalValues = canonicalValues;
+        this.subAttributes = subAttributes;
+        if (subAttributes == null) {
+            this.requiredSubAttributes = NONE;
+        } else {
+            List<SchemaAttribute> requiredSubs = new ArrayList<>();
+            for (SchemaAttribute sub : subAttributes.values()) {
+                if (sub.required) {
+                    requiredSubs.add(sub);
+                }
+            }
+            this.requiredSubAttributes = requiredSubs.toArray(NONE);
+        }
+    }
+
+    static SchemaAttribute compile(JsonNode definition, String parentPath) {
+        String name = definition.path("name").asText();
+        String path = parentPath == null ? name : parentPath + "." + name;
+        Type type = parseType(definition.path("type").asText("string"), path);
+        boolean caseExact = definition.path("caseExact").asBoolean(false);
+
+        Set<String> canonical = null;
+        JsonNode canonicalValues = definition.get("canonicalValues");
+        if (canonicalValues != null && canonicalValues.isArray() && !canonicalValues.isEmpty()) {
+            canonical = new HashSet<>();
+            for (JsonNode value : canonicalValues) {
+                canonical.add(caseExact ? value.asText() : value.asText().toLowerCase(Locale.ROOT));
+            }
+        }
+
+        AttributeIndex subAttributes = null;
+        if (type == Type.COMPLEX) {
+            subAttributes = new AttributeIndex();
+            for (JsonNode sub : definition.path("subAttributes")) {
+                subAttributes.add(compile(sub, path));
+            }
+        }
+
+        return new SchemaAttribute(name, path, type,
+                definition.path("multiValued").asBoolean(false),
+                definition.path("required").asBoolean(false),
+                caseExact,
+                parseMutability(definition.path("mutability").asText("readWrite"), path),
+                canonical, subAttributes);
+    }
+
+    boolean allowsValue(String value) {
+        return canonicalValues == null
+                || canonicalValues.contains(caseExact ? value : value.toLowerCase(Locale.ROOT));
+    }
+
+    private static Type parseType(String type, String path) {
+        return switch (type) {
+            case "string" -> Type.STRING;
+            case "boolean" -> Type.BOOLEAN;
+            case "decimal" -> Type.DECIMAL;
+            case "integer" -> Type.INTEGER;
+            case "dateTime" -> Type.DATE_TIME;
+            case "binary" -> Type.BINARY;
+            case "reference" -> Type.REFERENCE;
+            case "complex" -> Type.COMPLEX;
+            default -> throw new IllegalStateException("Unknown SCIM attribute type '" + type + "' for " + path);
+        };
+    }
+
+    private static Mutability parseMutability(String mutability, String path) {
+        return switch (mutability) {
+            case "readOnly" -> Mutability.READ_ONLY;
+            case "readWrite" -> Mutability.READ_WRITE;
+            case "immutable" -> Mutability.IMMUTABLE;
+            case "writeOnly" -> Mutability.WRITE_ONLY;
+            default -> throw new IllegalStateException("Unknown SCIM mutability '" + mutability + "' for " + path);
+        };
+    }
+}
@@ -0,0 +1,581 @@
+package com.learnhai.scim.schema;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.learnhai.scim.exception.ScimException;
+import com.learnhai.scim.model.scim.ScimGroup;
+import com.learnhai.scim.model.scim.ScimUser;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validates incoming SCIM request bodies against scim-schema.json before anything reaches Keycloak.
+ * The schema is compiled once at startup; each request is checked in a single walk over its JSON
+ * tree covering attribute types, required attributes, readOnly/immutable rules for PATCH, canonical
+ * values and case-exactness.
+ * <p>
+ * Following RFC 7643, readOnly attributes in POST/PUT bodies are ignored rather than rejected.
+ * Boolean strings ("True"/"False", as some IdPs send) are normalized to JSON booleans in place.
+ */
+@Component
+@Slf4j
+public class ScimSchemaValidator {
+
+    public static final String USER = "User";
+    public static final String GROUP = "Group";
+
+    private static final String SCHEMA_LOCATION = "static/scim-schema.json";
+
+    private enum PatchOp { ADD, REPLACE, REMOVE }
+
+    /** Resolved PATCH path: the attribute, an optional sub-attribute, and whether a value filter was given. */
+    private record PatchTarget(SchemaAttribute attribute, SchemaAttribute subAttribute, boolean filtered) {
+        SchemaAttribute target() {
+            return subAttribute != null ? subAttribute : attribute;
+        }
+    }
+
+    private static final TypeReference<Map<String, Object>> PATCH_REQUEST = new TypeReference<>() { };
+
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final boolean strict;
+    private final boolean enforceCanonicalValues;
+    private final Map<String, ResourceSchema> resources = new HashMap<>();
+
+    @Autowired
+    public ScimSchemaValidator(ObjectMapper objectMapper,
+                               @Value("${scim.validation.enabled:true}") boolean enabled,
+                               @Value("${scim.validation.strict:false}") boolean strict,
+                               @Value("${scim.validation.enforce-canonical-values:false}") boolean enforceCanonicalValues) throws IOException {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.strict = strict;
+        this.enforceCanonicalValues = enforceCanonicalValues;
+
+        Map<String, JsonNode> definitions = new HashMap<>();
+        try (InputStream in = new ClassPathResource(SCHEMA_LOCATION).getInputStream()) {
+            for (JsonNode schema : objectMapper.readTree(in).path("Resources")) {
+                definitions.put(schema.path("id").asText(), schema);
+            }
+        }
+        resources.put(USER, compile(USER, definitions, ScimUser.SCHEMA_CORE_USER, ScimUser.SCHEMA_ENTERPRISE_USER));
+        resources.put(GROUP, compile(GROUP, definitions, ScimGroup.SCHEMA_CORE_GROUP));
+        log.info("Compiled SCIM schema validator (enabled={}, strict={}, enforceCanonicalValues={})",
+                enabled, strict, enforceCanonicalValues);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Validates a POST/PUT body and binds it to the resource model.
+     */
+    public <T> T readResource(String resourceType, JsonNode body, Class<T> type) {
+        validateResource(resourceType, body);
+        try {
+            return objectMapper.treeToValue(body, type);
+        } catch (JsonProcessingException e) {
+            throw invalidSyntax("Request body is not a valid " + resourceType + ": " + e.getOriginalMessage());
+        }
+    }
+
+    /**
+     * Validates a PatchOp body and returns it in the map form the services apply.
+     */
+    public Map<String, Object> readPatch(String resourceType, JsonNode body) {
+        validatePatch(resourceType, body);
+        return objectMapper.convertValue(body, PATCH_REQUEST);
+    }
+
+    /**
+     * Validates a full resource representation, as sent with POST or PUT.
+     */
+    public void validateResource(String resourceType, JsonNode body) {
+        if (!enabled) {
+            return;
+        }
+        ResourceSchema schema = schema(resourceType);
+        if (body == null || !body.isObject()) {
+            throw invalidSyntax("Request body must be a JSON object.");
+        }
+        walkComplex(schema.core, (ObjectNode) body, true, null, schema);
+    }
+
+    /**
+     * Validates a PatchOp request (RFC 7644, Section 3.5.2): operation names, paths, value types and
+     * the mutability of every attribute an operation targets.
+     */
+    public void validatePatch(String resourceType, JsonNode body) {
+        if (!enabled) {
+            return;
+        }
+        ResourceSchema schema = schema(resourceType);
+        JsonNode operations = body == null || !body.isObject() ? null : body.get("Operations");
+        if (operations == null || !operations.isArray() || operations.isEmpty()) {
+            throw invalidSyntax("Patch request must contain 'Operations'.");
+        }
+        for (JsonNode operation : operations) {
+            if (!operation.isObject()) {
+                throw invalidSyntax("Each patch operation must be a JSON object.");
+            }
+            validateOperation(schema, (ObjectNode) operation);
+        }
+    }
+
+    private void validateOperation(ResourceSchema schema, ObjectNode operation) {
+        PatchOp op = parseOp(operation.get("op"));
+        JsonNode pathNode = operation.get("path");
+        if (pathNode != null && !pathNode.isNull() && !pathNode.isTextual()) {
+            throw new ScimException("Patch 'path' must be a string.", HttpStatus.BAD_REQUEST, "invalidPath");
+        }
+        String path = pathNode == null || pathNode.isNull() || pathNode.asText().isBlank() ? null : pathNode.asText().trim();
+        JsonNode value = operation.get("value");
+
+        if (op == PatchOp.REMOVE) {
+            if (path == null) {
+                throw new ScimException("Patch 'remove' requires a 'path'.", HttpStatus.BAD_REQUEST, "noTarget");
+            }
+            PatchTarget target = resolve(schema, path);
+            if (target != null) {
+                checkMutability(target.target(), op, true);
+            }
+            return;
+        }
+        if (value == null) {
+            throw invalidSyntax("Patch '" + op.name().toLowerCase() + "' requires a 'value'.");
+        }
+
+        if (path == null) {
+            // No path: the value is a partial resource whose top-level attributes are the targets
+            if (!value.isObject()) {
+                throw invalidSyntax("Patch value without a 'path' must be a JSON object.");
+            }
+            walkComplex(schema.core, (ObjectNode) value, false, op, schema);
+            return;
+        }
+
+        PatchTarget target = resolve(schema, path);
+        if (target == null) {
+            return; // unknown attribute outside strict mode
+        }
+        SchemaAttribute attribute = target.attribute();
+        checkMutability(target.target(), op, target.filtered() || target.subAttribute() != null);
+
+        JsonNode checked;
+        if (target.subAttribute() != null) {
+            checked = checkValue(target.subAttribute(), value, false);
+        } else if (attribute.multiValued && (target.filtered() || !value.isArray())) {
+            // A filtered path addresses existing values; an unfiltered non-array value adds one new value
+            checked = value.isNull() ? value : checkSingle(attribute, value, !target.filtered());
+        } else if (attribute.type == SchemaAttribute.Type.COMPLEX && attribute.subAttributes != null
+                && schema.extension(attribute.name) == attribute) {
+            // Path is an extension schema URN: its attributes are top-level targets
+            if (!value.isObject()) {
+                throw invalidValue("Value for '" + attribute.name + "' must be a JSON object.");
+            }
+            walkComplex(attribute, (ObjectNode) value, false, op, null);
+            checked = value;
+        } else {
+            checked = checkValue(attribute, value, attribute.multiValued);
+        }
+        if (checked != value) {
+            operation.set("value", checked);
+        }
+    }
+
+    /**
+     * Walks the attributes of a complex value. {@code op} is set when these attributes are PATCH
+     * targets and their mutability must be checked; {@code resource} is set at the resource root,
+     * where extension schema URNs may appear as keys.
+     */
+    private void walkComplex(SchemaAttribute parent, ObjectNode object, boolean complete, PatchOp op, ResourceSchema resource) {
+        int requiredSeen = 0;
+        Iterator<Map.Entry<String, JsonNode>> fields = object.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String name = field.getKey();
+            JsonNode value = field.getValue();
+            SchemaAttribute attribute = parent.subAttributes.get(name);
+            if (attribute == null) {
+                if (resource != null && name.regionMatches(true, 0, "urn:", 0, 4)) {
+                    SchemaAttribute extension = resource.extension(name);
+                    if (extension != null && !value.isNull()) {
+                        if (!value.isObject()) {
+                            throw invalidValue("Value for '" + extension.name + "' must be a JSON object.");
+                        }
+                        walkComplex(extension, (ObjectNode) value, complete, op, null);
+                    }
+                    // Other extension schemas are handled by the attribute mapping, not validated here
+                    continue;
+                }
+                if (strict) {
+                    throw invalidSyntax("Unknown attribute '" + qualify(parent, name) + "'.");
+                }
+                continue;
+            }
+            if (op != null) {
+                checkMutability(attribute, op, false);
+            } else if (attribute.mutability == SchemaAttribute.Mutability.READ_ONLY) {
+                continue; // ignored on POST/PUT (RFC 7643, Section 7)
+            }
+            JsonNode checked = checkValue(attribute, value, complete);
+            if (checked != value) {
+                field.setValue(checked);
+            }
+            if (attribute.required && isPresent(checked)) {
+                requiredSeen++;
+            }
+        }
+        if (complete && requiredSeen < parent.requiredSubAttributes.length) {
+            for (SchemaAttribute required : parent.requiredSubAttributes) {
+                if (!isPresent(find(object, required))) {
+                    throw invalidValue("Attribute '" + required.path + "' is required.");
+                }
+            }
+        }
+    }
+
+    private JsonNode checkValue(SchemaAttribute attribute, JsonNode value, boolean complete) {
+        if (value.isNull()) {
+            return value;
+        }
+        if (!attribute.multiValued) {
+            return checkSingle(attribute, value, complete);
+        }
+        if (!value.isArray()) {
+            throw invalidValue("Attribute '" + attribute.path + "' is multi-valued and must be a JSON array.");
+        }
+        ArrayNode array = (ArrayNode) value;
+        for (int i = 0, n = array.size(); i < n; i++) {
+            JsonNode element = array.get(i);
+            if (element.isNull()) {
+                continue;
+            }
+            JsonNode checked = checkSingle(attribute, element, true);
+            if (checked != element) {
+                array.set(i, checked);
+            }
+        }
+        return value;
+    }
+
+    private JsonNode checkSingle(SchemaAttribute attribute, JsonNode value, boolean complete) {
+        switch (attribute.type) {
+            case STRING, REFERENCE, BINARY -> {
+                if (!value.isTextual()) {
+                    if (attribute.type != SchemaAttribute.Type.STRING || !value.isValueNode()) {
+                        throw invalidValue("Attribute '" + attribute.path + "' must be a string.");
+                    }
+                    return value; // numbers/booleans are coerced to their textual form when read
+                }
+                if (enforceCanonicalValues && !attribute.allowsValue(value.textValue())) {
+                    throw invalidValue("Value '" + value.textValue() + "' is not allowed for '" + attribute.path
+                            + "'; expected one of " + attribute.canonicalValues + ".");
+                }
+                return value;
+            }
+            case BOOLEAN -> {
+                if (value.isBoolean()) {
+                    return value;
+                }
+                if (value.isTextual()) {
+                    String text = value.textValue().trim();
+                    if ("true".equalsIgnoreCase(text)) {
+                        return BooleanNode.TRUE;
+                    }
+                    if ("false".equalsIgnoreCase(text)) {
+                        return BooleanNode.FALSE;
+                    }
+                }
+                throw invalidValue("Attribute '" + attribute.path + "' must be a boolean.");
+            }
+            case INTEGER -> {
+                if (!value.isIntegralNumber()) {
+                    throw invalidValue("Attribute '" + attribute.path + "' must be an integer.");
+                }
+                return value;
+            }
+            case DECIMAL -> {
+                if (!value.isNumber()) {
+                    throw invalidValue("Attribute '" + attribute.path + "' must be a number.");
+                }
+                return value;
+            }
+            case DATE_TIME -> {
+                if (!value.isTextual() || !isDateTime(value.textValue())) {
+                    throw invalidValue("Attribute '" + attribute.path + "' must be an xsd:dateTime string.");
+                }
+                return value;
+            }
+            case COMPLEX -> {
+                if (!value.isObject()) {
+                    throw invalidValue("Attribute '" + attribute.path + "' must be a JSON object.");
+                }
+                walkComplex(attribute, (ObjectNode) value, complete, null, null);
+                return value;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @param modifiesExisting true when the operation changes or removes values that already exist
+     *                         (filtered or sub-attribute paths, remove), as opposed to adding new ones
+     */
+    private void checkMutability(SchemaAttribute attribute, PatchOp op, boolean modifiesExisting) {
+        if (attribute.mutability == SchemaAttribute.Mutability.READ_ONLY) {
+            throw new ScimException("Attribute '" + attribute.path + "' is readOnly and cannot be modified.",
+                    HttpStatus.BAD_REQUEST, "mutability");
+        }
+        if (attribute.mutability == SchemaAttribute.Mutability.IMMUTABLE && (op != PatchOp.ADD || modifiesExisting)) {
+            throw new ScimException("Attribute '" + attribute.path + "' is immutable and cannot be modified.",
+                    HttpStatus.BAD_REQUEST, "mutability");
+        }
+    }
+
+    /**
+     * Resolves {@code [schemaURN ":"] attrName ["[" valFilter "]"] ["." subAttr]}. Returns null for
+     * attributes outside the compiled schemas unless running in strict mode.
+     */
+    private PatchTarget resolve(ResourceSchema schema, String path) {
+        SchemaAttribute scope = schema.core;
+        String attrPath = path;
+        if (path.regionMatches(true, 0, "urn:", 0, 4)) {
+            SchemaAttribute extension = schema.extension(path);
+            if (extension != null) {
+                return new PatchTarget(extension, null, false);
+            }
+            scope = null;
+            for (SchemaAttribute candidate : schemaScopes(schema)) {
+                int length = candidate.name.length();
+                if (path.length() > length + 1 && path.charAt(length) == ':' && path.regionMatches(true, 0, candidate.name, 0, length)) {
+                    scope = candidate;
+                    attrPath = path.substring(length + 1);
+                    break;
+                }
+            }
+            if (scope == null) {
+                if (strict) {
+                    throw invalidPath("Unknown schema in path '" + path + "'.");
+                }
+                return null;
+            }
+        }
+
+        int bracket = attrPath.indexOf('[');
+        int dot = attrPath.indexOf('.');
+        int nameEnd = bracket >= 0 && (dot < 0 || bracket < dot) ? bracket : dot >= 0 ? dot : attrPath.length();
+        String name = attrPath.substring(0, nameEnd);
+        if (name.isEmpty()) {
+            throw invalidPath("Invalid path '" + path + "'.");
+        }
+        boolean filtered = false;
+        String subName = null;
+        int rest = nameEnd;
+        if (bracket == nameEnd) {
+            int close = closingBracket(attrPath, bracket);
+            if (close < 0 || close == bracket + 1) {
+                throw invalidPath("Invalid value filter in path '" + path + "'.");
+            }
+            filtered = true;
+            rest = close + 1;
+        }
+        if (rest < attrPath.length()) {
+            if (attrPath.charAt(rest) != '.' || rest + 1 >= attrPath.length()) {
+                throw invalidPath("Invalid path '" + path + "'.");
+            }
+            subName = attrPath.substring(rest + 1);
+        }
+
+        SchemaAttribute attribute = scope.subAttributes.get(name);
+        if (attribute == null) {
+            if (strict) {
+                throw invalidPath("Unknown attribute in path '" + path + "'.");
+            }
+            return null;
+        }
+        if (filtered && !attribute.multiValued) {
+            throw invalidPath("Value filter on single-valued attribute '" + attribute.path + "'.");
+        }
+        SchemaAttribute subAttribute = null;
+        if (subName != null) {
+            if (attribute.subAttributes == null) {
+                throw invalidPath("Attribute '" + attribute.path + "' has no sub-attributes.");
+            }
+            subAttribute = attribute.subAttributes.get(subName);
+            if (subAttribute == null) {
+                if (strict) {
+                    throw invalidPath("Unknown sub-attribute in path '" + path + "'.");
+                }
+                return null;
+            }
+        }
+        return new PatchTarget(attribute, subAttribute, filtered);
+    }
+
+    private static List<SchemaAttribute> schemaScopes(ResourceSchema schema) {
+        List<SchemaAttribute> scopes = new ArrayList<>(schema.extensions.size() + 1);
+        scopes.addAll(schema.extensions);
+        scopes.add(schema.core);
+        return scopes;
+    }
+
+    // Index of the ']' closing the filter opened at 'open', skipping over quoted strings
+    private static int closingBracket(String path, int open) {
+        boolean quoted = false;
+        for (int i = open + 1; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '\\' && quoted) {
+                i++;
+            } else if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ']' && !quoted) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static PatchOp parseOp(JsonNode op) {
+        if (op != null && op.isTextual()) {
+            String name = op.textValue();
+            if ("add".equalsIgnoreCase(name)) {
+                return PatchOp.ADD;
+            }
+            if ("replace".equalsIgnoreCase(name)) {
+                return PatchOp.REPLACE;
+            }
+            if ("remove".equalsIgnoreCase(name)) {
+                return PatchOp.REMOVE;
+            }
+        }
+        throw invalidSyntax("Unsupported patch op " + op + "; expected add, remove or replace.");
+    }
+
+    private static JsonNode find(ObjectNode object, SchemaAttribute attribute) {
+        JsonNode value = object.get(attribute.name);
+        if (value != null) {
+            return value;
+        }
+        Iterator<Map.Entry<String, JsonNode>> fields = object.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (field.getKey().equalsIgnoreCase(attribute.name)) {
+                return field.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static boolean isPresent(JsonNode value) {
+        return value != null && !value.isNull() && !(value.isTextual() && value.textValue().isBlank());
+    }
+
+    private static boolean isDateTime(String text) {
+        try {
+            OffsetDateTime.parse(text);
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static String qualify(SchemaAttribute parent, String name) {
+        return parent.name.startsWith("urn:") ? name : parent.path + "." + name;
+    }
+
+    private ResourceSchema schema(String resourceType) {
+        ResourceSchema schema = resources.get(resourceType);
+        if (schema == null) {
+            throw new IllegalArgumentException("No compiled schema for resource type " + resourceType);
+        }
+        return schema;
+    }
+
+    private static ScimException invalidSyntax(String detail) {
+        return new ScimException(detail, HttpStatus.BAD_REQUEST, "invalidSyntax");
+    }
+
+    private static ScimException invalidValue(String detail) {
+        return new ScimException(detail, HttpStatus.BAD_REQUEST, "invalidValue");
+    }
+
+    private static ScimException invalidPath(String detail) {
+        return new ScimException(detail, HttpStatus.BAD_REQUEST, "invalidPath");
+    }
+
+    // --- Compilation ---
+
+    private static ResourceSchema compile(String name, Map<String, JsonNode> definitions, String coreUrn, String... extensionUrns) {
+        AttributeIndex coreAttributes = compileAttributes(definitions, coreUrn);
+        addCommonAttributes(coreAttributes);
+        SchemaAttribute core = container(coreUrn, coreAttributes);
+
+        List<SchemaAttribute> extensions = new ArrayList<>(extensionUrns.length);
+        for (String urn : extensionUrns) {
+            extensions.add(container(urn, compileAttributes(definitions, urn)));
+        }
+        return new ResourceSchema(name, core, List.copyOf(extensions));
+    }
+
+    private static AttributeIndex compileAttributes(Map<String, JsonNode> definitions, String urn) {
+        JsonNode definition = definitions.get(urn);
+        if (definition == null) {
+            throw new IllegalStateException("Schema " + urn + " is missing from " + SCHEMA_LOCATION);
+        }
+        AttributeIndex attributes = new AttributeIndex();
+        for (JsonNode attribute : definition.path("attributes")) {
+            attributes.add(SchemaAttribute.compile(attribute, null));
+        }
+        return attributes;
+    }
+
+    private static SchemaAttribute container(String urn, AttributeIndex attributes) {
+        return new SchemaAttribute(urn, urn, SchemaAttribute.Type.COMPLEX, false, false, false,
+                SchemaAttribute.Mutability.READ_WRITE, null, attributes);
+    }
+
+    // Common attributes (RFC 7643, Section 3.1) are not part of the published schema documents
+    private static void addCommonAttributes(AttributeIndex attributes) {
+        attributes.add(simple("schemas", SchemaAttribute.Type.REFERENCE, true, SchemaAttribute.Mutability.READ_WRITE));
+        attributes.add(simple("id", SchemaAttribute.Type.STRING, false, SchemaAttribute.Mutability.READ_ONLY));
+        attributes.add(simple("externalId", SchemaAttribute.Type.STRING, false, SchemaAttribute.Mutability.READ_WRITE));
+        AttributeIndex meta = new AttributeIndex();
+        meta.add(simple("meta.resourceType", "resourceType", SchemaAttribute.Type.STRING));
+        meta.add(simple("meta.created", "created", SchemaAttribute.Type.DATE_TIME));
+        meta.add(simple("meta.lastModified", "lastModified", SchemaAttribute.Type.DATE_TIME));
+        meta.add(simple("meta.location", "location", SchemaAttribute.Type.REFERENCE));
+        meta.add(simple("meta.version", "version", SchemaAttribute.Type.STRING));
+        attributes.add(new SchemaAttribute("meta", "meta", SchemaAttribute.Type.COMPLEX, false, false, false,
+                SchemaAttribute.Mutability.READ_ONLY, null, meta));
+    }
+
+    private static SchemaAttribute simple(String name, SchemaAttribute.Type type, boolean multiValued, SchemaAttribute.Mutability mutability) {
+        return new SchemaAttribute(name, name, type, multiValued, false, true, mutability, null, null);
+    }
+
+    private static SchemaAttribute simple(String path, String name, SchemaAttribute.Type type) {
+        return new SchemaAttribute(name, path, type, false, false, true, SchemaAttribute.Mutability.READ_ONLY, null, null);
+    }
+}
@@ -0,0 +1,605 @@
+package com.learnhai.scim.service;
+
+import com.learnhai.scim.audit.AuditLog;
+import com.learnhai.scim.audit.AuditRecord;
+import com.learnhai.scim.backend.IdentityBackend;
+import com.learnhai.scim.backend.ImportedResource;
+import com.learnhai.scim.exception.ScimException;
+import com.learnhai.scim.index.UserKeyIndex;
+import com.learnhai.scim.mapper.GroupMapper;
+import com.learnhai.scim.mapper.ModificationStamps;
+import com.learnhai.scim.mapper.UserMapper;
+import com.learnhai.scim.model.scim.ScimGroup;
+import com.learnhai.scim.model.scim.ScimUser;
+import com.learnhai.scim.tenant.TenantContext;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.keycloak.representations.idm.CredentialRepresentation;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.PartialImportRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Initial loads of users and groups through the store's {@link IdentityBackend#partialImport partial
+ * import} rather than one create (and re-read) per resource. Groups go first, whole trees per chunk,
+ * then users in chunks of {@code scim.bulk.chunk-size}, joining their groups by path in the same call.
+ * Group members given as {@code bulkId:} references to resources of the same load become subgroups
+ * or group paths on the users; members that already exist are linked after the import, one call each.
+ * <p>
+ * What happens to a resource that already exists is {@code scim.bulk.if-resource-exists}, or the
+ * {@link IfExists} a caller passes: {@code SKIP} (a 409 for that item), {@code USE_EXISTING} (200 with the
+ * existing id), {@code OVERWRITE} or {@code FAIL}, which fails its whole chunk.
+ * The ids come from the import results, so nothing is read back; outcomes carry no resource body.
+ */
+@Service
+@Slf4j
+public class BulkLoadService {
+
+    public static final String BULK_ID_PREFIX = "bulkId:";
+
+    /** One create of a load: exactly one of {@code user} and {@code group} is set. */
+    public record Item(String bulkId, ScimUser user, ScimGroup group) {
+    }
+
+    /** How an {@link Item} ended; {@code id} is set for 200 and 201, {@code detail} for failures. */
+    public record Outcome(String bulkId, String resourceType, String id, int status, String scimType, String detail) {
+    }
+
+    /** What a load does with a resource that already exists. */
+    public enum IfExists {
+        /** Left unchanged, and the item fails with 409 uniqueness. */
+        SKIP(PartialImportRepresentation.Policy.SKIP),
+        /** Left unchanged and reported with 200 and the existing id, for a caller that updates it itself. */
+        USE_EXISTING(PartialImportRepresentation.Policy.SKIP),
+        /** Replaced, losing its memberships and subgroups; reported with 200. */
+        OVERWRITE(PartialImportRepresentation.Policy.OVERWRITE),
+        /** Fails the whole chunk with 409. */
+        FAIL(PartialImportRepresentation.Policy.FAIL);
+
+        private final PartialImportRepresentation.Policy importPolicy;
+
+        IfExists(PartialImportRepresentation.Policy importPolicy) {
+            this.importPolicy = importPolicy;
+        }
+    }
+
+    private static final class Op {
+        final Item item;
+        final String resourceType;
+        UserRepresentation userRep;
+        GroupRepresentation groupRep;
+        Op parent; // groups: enclosing group of this load
+        final List<Op> children = new ArrayList<>();
+        final List<Op> groups = new ArrayList<>(); // users: groups of this load to join
+        final List<String> existingUsers = new ArrayList<>(); // groups: members that already exist
+        final List<String> existingGroups = new ArrayList<>();
+        String path; // groups: full path, null if it cannot be used to join (a name contains '/')
+        String id;
+        int status;
+        String scimType;
+        String detail;
+        long latencyMicros;
+        boolean finished; // outcome counted and timed
+
+        Op(Item item) {
+            this.item = item;
+            this.resourceType = item.user() != null ? "User" : "Group";
+        }
+
+        boolean done() {
+            return status != 0;
+        }
+
+        boolean succeeded() {
+            return status == 200 || status == 201;
+        }
+
+        void fail(HttpStatus status, String scimType, String detail) {
+            this.status = status.value();
+            this.scimType = scimType;
+            this.detail = detail;
+            this.finished = false;
+        }
+
+        void fail(ScimException e) {
+            fail(e.getStatus(), e.getScimType(), e.getMessage());
+        }
+    }
+
+    private final IdentityBackend identityBackend;
+    private final UserMapper userMapper;
+    private final GroupMapper groupMapper;
+    private final UserChangeIndex changeIndex;
+    private final UserKeyIndex keyIndex;
+    private final MembershipIndex membershipIndex;
+    private final GroupHierarchyCache groupHierarchy;
+    private final AuditLog auditLog;
+    private final int chunkSize;
+    private final IfExists ifExists;
+
+    @Autowired
+    public BulkLoadService(IdentityBackend identityBackend, UserMapper userMapper, GroupMapper groupMapper,
+                           UserChangeIndex changeIndex, UserKeyIndex keyIndex, MembershipIndex membershipIndex,
+                           GroupHierarchyCache groupHierarchy, AuditLog auditLog,
+                           @Value("${scim.bulk.chunk-size:500}") int chunkSize,
+                           @Value("${scim.bulk.if-resource-exists:SKIP}") IfExists ifExists) {
+        this.identityBackend = identityBackend;
+        this.userMapper = userMapper;
+        this.groupMapper = groupMapper;
+        this.changeIndex = changeIndex;
+        this.keyIndex = keyIndex;
+        this.membershipIndex = membershipIndex;
+        this.groupHierarchy = groupHierarchy;
+        this.auditLog = auditLog;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.ifExists = ifExists;
+    }
+
+    /**
+     * Creates {@code items}. Returns one outcome per item, in order, or null for items left
+     * unprocessed because {@code maxErrors} failures had been reached (null for no limit).
+     */
+    public List<Outcome> load(List<Item> items, Integer maxErrors) {
+        return load(items, maxErrors, AuditLog.currentActor(), null);
+    }
+
+    /**
+     * As {@link #load(List, Integer)}, for loads run off the request thread: audited as {@code actor},
+     * under {@code operationId} if not null.
+     */
+    public List<Outcome> load(List<Item> items, Integer maxErrors, String actor, String operationId) {
+        return load(items, maxErrors, actor, operationId, ifExists);
+    }
+
+    /** As {@link #load(List, Integer, String, String)}, with {@code ifExists} instead of {@code scim.bulk.if-resource-exists}. */
+    public List<Outcome> load(List<Item> items, Integer maxErrors, String actor, String operationId, IfExists ifExists) {
+        long started = System.nanoTime();
+        Instant now = ModificationStamps.now();
+        List<Op> ops = items.stream().map(Op::new).toList();
+        prepare(ops, now);
+        link(ops);
+
+        List<Op> roots = new ArrayList<>();
+        List<Op> users = new ArrayList<>();
+        for (Op op : ops) {
+            if (op.done()) {
+                continue;
+            }
+            if (op.item.group() != null && op.parent == null) {
+                roots.add(op);
+            } else if (op.item.user() != null) {
+                users.add(op);
+            }
+        }
+        for (Op op : ops) {
+            if (op.item.group() != null && !op.done() && !reachable(op)) {
+                op.fail(HttpStatus.BAD_REQUEST, "invalidValue", "Group " + op.item.bulkId() + " is part of a membership cycle.");
+            }
+        }
+        for (Op root : roots) {
+            assignPaths(root, "");
+        }
+
+        boolean overwritten = false;
+        boolean stopped = false;
+        int errors = finish(ops, started); // rejected before reaching the store
+        for (List<Op> chunk : groupChunks(roots)) {
+            if (limitReached(errors, maxErrors)) {
+                stopped = true;
+                break;
+            }
+            overwritten |= importGroups(chunk, ifExists);
+            errors += finish(tree(chunk), started);
+        }
+        for (int i = 0; i < users.size() && !stopped; i += chunkSize) {
+            if (limitReached(errors, maxErrors)) {
+                stopped = true;
+                break;
+            }
+            List<Op> chunk = users.subList(i, Math.min(i + chunkSize, users.size()));
+            overwritten |= importUsers(chunk, now, ifExists);
+            errors += finish(chunk, started);
+        }
+        if (!stopped) {
+            linkExisting(ops);
+            errors += finish(ops, started);
+        }
+
+        if (overwritten) {
+            // Overwritten resources lost their memberships and subgroups; let the caches reload
+            changeIndex.invalidate();
+            membershipIndex.invalidate();
+            groupHierarchy.invalidate();
+        }
+        List<Outcome> outcomes = new ArrayList<>(ops.size());
+        String tenant = TenantContext.tenantId();
+        for (Op op : ops) {
+            if (!op.done()) {
+                outcomes.add(null);
+                continue;
+            }
+            outcomes.add(new Outcome(op.item.bulkId(), op.resourceType, op.id, op.status, op.scimType, op.detail));
+            auditLog.record(new AuditRecord(System.currentTimeMillis(), tenant, actor, op.resourceType, op.id,
+                    AuditRecord.Operation.CREATE, op.status, op.latencyMicros, operationId));
+        }
+        log.debug("Bulk load of {} resources finished in {} ms with {} errors", ops.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), errors);
+        return outcomes;
+    }
+
+    // --- Preparation ---
+
+    private void prepare(List<Op> ops, Instant now) {
+        Map<String, Op> usernames = new HashMap<>();
+        Map<String, Op> emails = new HashMap<>();
+        Map<String, Op> groupNames = new HashMap<>();
+        for (Op op : ops) {
+            if (op.item.user() != null) {
+                ScimUser scimUser = op.item.user();
+                if (StringUtils.isBlank(scimUser.getUserName())) {
+                    op.fail(HttpStatus.BAD_REQUEST, "invalidValue", "User name is missing");
+                } else if (usernames.putIfAbsent(scimUser.getUserName().toLowerCase(Locale.ROOT), op) != null) {
+                    op.fail(HttpStatus.CONFLICT, "uniqueness", "User with username '" + scimUser.getUserName() + "' appears more than once.");
+                } else {
+                    op.userRep = userMapper.toKeycloakUser(scimUser, null);
+                    if (op.userRep.getEmail() != null && emails.putIfAbsent(op.userRep.getEmail().toLowerCase(Locale.ROOT), op) != null) {
+                        op.fail(HttpStatus.CONFLICT, "uniqueness", "User with email '" + op.userRep.getEmail() + "' appears more than once.");
+                        continue;
+                    }
+                    ModificationStamps.stamp(op.userRep, now);
+                    if (StringUtils.isNotBlank(scimUser.getPassword())) {
+                        CredentialRepresentation credential = new CredentialRepresentation();
+                        credential.setTemporary(false);
+                        credential.setType(CredentialRepresentation.PASSWORD);
+                        credential.setValue(scimUser.getPassword());
+                        op.userRep.setCredentials(List.of(credential));
+                    }
+                }
+            } else {
+                ScimGroup scimGroup = op.item.group();
+                if (StringUtils.isBlank(scimGroup.getDisplayName())) {
+                    op.fail(HttpStatus.BAD_REQUEST, "invalidValue", "Group name is missing");
+                } else if (groupNames.putIfAbsent(scimGroup.getDisplayName(), op) != null) {
+                    op.fail(HttpStatus.CONFLICT, "uniqueness", "Group with name '" + scimGroup.getDisplayName() + "' appears more than once.");
+                } else {
+                    op.groupRep = groupMapper.toKeycloakGroup(scimGroup, null);
+                    ModificationStamps.stamp(op.groupRep, now, true);
+                }
+            }
+        }
+    }
+
+    /** Resolves group members: {@code bulkId:} references within the load, plain ids outside it. */
+    private void link(List<Op> ops) {
+        Map<String, Op> byBulkId = new HashMap<>();
+        Map<String, Op> existingParents = new HashMap<>();
+        for (Op op : ops) {
+            if (op.item.bulkId() != null) {
+                byBulkId.put(op.item.bulkId(), op);
+            }
+        }
+        for (Op op : ops) {
+            if (op.done() || op.item.group() == null || op.item.group().getMembers() == null) {
+                continue;
+            }
+            for (ScimGroup.Member member : op.item.group().getMembers()) {
+                String value = member.getValue();
+                if (StringUtils.isBlank(value)) {
+                    continue;
+                }
+                if (!value.startsWith(BULK_ID_PREFIX)) {
+                    if (!"Group".equalsIgnoreCase(member.getType())) {
+                        op.existingUsers.add(value);
+                    } else if (existingParents.putIfAbsent(value, op) != null && existingParents.get(value) != op) {
+                        op.fail(HttpStatus.BAD_REQUEST, "invalidValue", "Group " + value + " can be a member of only one group.");
+                    } else {
+                        try {
+                            requireTopLevel(value);
+                            op.existingGroups.add(value);
+                        } catch (ScimException e) {
+                            op.fail(e);
+                        }
+                    }
+                    continue;
+                }
+                Op target = byBulkId.get(value.substring(BULK_ID_PREFIX.length()));
+                if (target == null) {
+                    op.fail(HttpStatus.BAD_REQUEST, "invalidValue", "Member " + value + " refers to no operation of this request.");
+                } else if (target.item.user() != null) {
+                    target.groups.add(op);
+                } else if (target.parent != null && target.parent != op || target == op) {
+                    op.fail(HttpStatus.BAD_REQUEST, "invalidValue", "Group " + value + " can be a member of only one group.");
+                } else if (target.parent == null) {
+                    target.parent = op;
+                    op.children.add(target);
+                }
+            }
+        }
+        // A group that failed takes its subgroups along, and leaves its users without it
+        for (Op op : ops) {
+            if (op.item.group() != null && !op.done() && failedAncestor(op) != null) {
+                op.fail(HttpStatus.FAILED_DEPENDENCY, null, "Enclosing group " + failedAncestor(op).item.bulkId() + " failed.");
+            }
+        }
+    }
+
+    private static Op failedAncestor(Op op) {
+        int depth = 0;
+        for (Op ancestor = op.parent; ancestor != null && ancestor != op && depth < 1000; ancestor = ancestor.parent, depth++) {
+            if (ancestor.done() && !ancestor.succeeded()) {
+                return ancestor;
+            }
+        }
+        return null;
+    }
+
+    // Groups whose parent chain never ends are in a cycle
+    private static boolean reachable(Op op) {
+        Op current = op;
+        for (int depth = 0; current != null; current = current.parent, depth++) {
+            if (depth > 1000 || current.parent == op) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void assignPaths(Op group, String parentPath) {
+        String name = group.groupRep.getName();
+        group.path = parentPath == null || name.contains("/") ? null : parentPath + "/" + name;
+        List<GroupRepresentation> subGroups = new ArrayList<>();
+        for (Op child : group.children) {
+            if (!child.done()) {
+                assignPaths(child, group.path);
+                subGroups.add(child.groupRep);
+            }
+        }
+        group.groupRep.setSubGroups(subGroups.isEmpty() ? null : subGroups);
+    }
+
+    private List<List<Op>> groupChunks(List<Op> roots) {
+        List<List<Op>> chunks = new ArrayList<>();
+        List<Op> chunk = new ArrayList<>();
+        int size = 0;
+        for (Op root : roots) {
+            int treeSize = tree(List.of(root)).size();
+            if (!chunk.isEmpty() && size + treeSize > chunkSize) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                size = 0;
+            }
+            chunk.add(root); // a tree is never split: its subgroups ride in its representation
+            size += treeSize;
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private static List<Op> tree(List<Op> roots) {
+        List<Op> all = new ArrayList<>();
+        for (Op root : roots) {
+            all.add(root);
+            all.addAll(tree(root.children));
+        }
+        return all;
+    }
+
+    // --- Import ---
+
+    /** Imports a chunk of group trees; returns whether anything was overwritten. */
+    private boolean importGroups(List<Op> roots, IfExists ifExists) {
+        PartialImportRepresentation batch = new PartialImportRepresentation();
+        batch.setIfResourceExists(ifExists.importPolicy.name());
+        batch.setGroups(roots.stream().map(root -> root.groupRep).toList());
+        List<ImportedResource> imported;
+        try {
+            imported = identityBackend.partialImport(batch);
+        } catch (ScimException e) {
+            tree(roots).stream().filter(op -> !op.done()).forEach(op -> op.fail(e));
+            return false;
+        }
+        Map<String, ImportedResource> byName = new HashMap<>();
+        imported.stream().filter(r -> r.type() == ImportedResource.Type.GROUP).forEach(r -> byName.put(r.name(), r));
+        boolean overwritten = false;
+        for (Op root : roots) {
+            ImportedResource result = byName.get(root.groupRep.getName());
+            if (result == null || result.id() == null) {
+                root.fail(HttpStatus.INTERNAL_SERVER_ERROR, null, "The import did not report group " + root.groupRep.getName());
+                continue;
+            }
+            if (result.action() == ImportedResource.Action.SKIPPED && ifExists != IfExists.USE_EXISTING) {
+                root.fail(HttpStatus.CONFLICT, "uniqueness", "Group with name '" + root.groupRep.getName() + "' already exists.");
+                tree(root.children).stream().filter(op -> !op.done())
+                        .forEach(op -> op.fail(HttpStatus.FAILED_DEPENDENCY, null, "Enclosing group " + root.item.bulkId() + " already exists."));
+                continue;
+            }
+            overwritten |= result.action() == ImportedResource.Action.OVERWRITTEN;
+            created(root, result.id(), null, result.action());
+            resolveSubGroups(root, result.action());
+        }
+        return overwritten;
+    }
+
+    // Only top-level groups come back with ids; subgroups are looked up under their imported parent
+    private void resolveSubGroups(Op group, ImportedResource.Action action) {
+        if (group.children.isEmpty()) {
+            return;
+        }
+        Map<String, String> ids = new HashMap<>();
+        for (GroupRepresentation subGroup : identityBackend.getSubGroups(group.id, 0, Integer.MAX_VALUE)) {
+            ids.put(subGroup.getName(), subGroup.getId());
+        }
+        for (Op child : group.children) {
+            if (child.done()) {
+                continue;
+            }
+            String id = ids.get(child.groupRep.getName());
+            if (id == null) {
+                // Its parent existed and was skipped, along with everything the load would have put under it
+                child.fail(HttpStatus.CONFLICT, "uniqueness", "Enclosing group " + group.groupRep.getName() + " already exists and was skipped.");
+                tree(child.children).stream().filter(op -> !op.done())
+                        .forEach(op -> op.fail(HttpStatus.FAILED_DEPENDENCY, null, "Enclosing group was skipped."));
+                continue;
+            }
+            created(child, id, group.id, action);
+            resolveSubGroups(child, action);
+        }
+    }
+
+    private boolean importUsers(List<Op> chunk, Instant now, IfExists ifExists) {
+        List<UserRepresentation> reps = new ArrayList<>(chunk.size());
+        for (Op user : chunk) {
+            List<String> paths = new ArrayList<>();
+            for (Op group : user.groups) {
+                if (group.done() && !group.succeeded()) {
+                    user.fail(HttpStatus.FAILED_DEPENDENCY, null, "Group " + group.item.bulkId() + " failed.");
+                    break;
+                }
+                if (group.path != null) {
+                    paths.add(group.path);
+                }
+            }
+            if (!user.done()) {
+                user.userRep.setGroups(paths.isEmpty() ? null : paths);
+                reps.add(user.userRep);
+            }
+        }
+        if (reps.isEmpty()) {
+            return false;
+        }
+        PartialImportRepresentation batch = new PartialImportRepresentation();
+        batch.setIfResourceExists(ifExists.importPolicy.name());
+        batch.setUsers(reps);
+        List<ImportedResource> imported;
+        try {
+            imported = identityBackend.partialImport(batch);
+        } catch (ScimException e) {
+            chunk.stream().filter(op -> !op.done()).forEach(op -> op.fail(e));
+            return false;
+        }
+        Map<String, ImportedResource> byName = new HashMap<>();
+        imported.stream().filter(r -> r.type() == ImportedResource.Type.USER)
+                .forEach(r -> byName.put(r.name().toLowerCase(Locale.ROOT), r));
+        boolean overwritten = false;
+        for (Op user : chunk) {
+            if (user.done()) {
+                continue;
+            }
+            ImportedResource result = byName.get(user.userRep.getUsername().toLowerCase(Locale.ROOT));
+            if (result == null || result.id() == null) {
+                user.fail(HttpStatus.INTERNAL_SERVER_ERROR, null, "The import did not report user " + user.userRep.getUsername());
+                continue;
+            }
+            if (result.action() == ImportedResource.Action.SKIPPED && ifExists != IfExists.USE_EXISTING) {
+                user.fail(HttpStatus.CONFLICT, "uniqueness", "User with username '" + user.userRep.getUsername() + "' already exists.");
+                continue;
+            }
+            overwritten |= result.action() == ImportedResource.Action.OVERWRITTEN;
+            user.id = result.id();
+            user.status = result.action() == ImportedResource.Action.ADDED ? 201 : 200;
+            if (result.action() != ImportedResource.Action.SKIPPED) {
+                changeIndex.modified(user.id, now);
+                keyIndex.indexed(user.id, user.userRep);
+                for (Op group : user.groups) {
+                    if (group.path != null) {
+                        membershipIndex.added(user.id, group.id);
+                    }
+                }
+            }
+        }
+        return overwritten;
+    }
+
+    private void created(Op group, String id, String parentId, ImportedResource.Action action) {
+        group.id = id;
+        group.status = action == ImportedResource.Action.ADDED ? 201 : 200;
+        if (action != ImportedResource.Action.SKIPPED) {
+            GroupRepresentation cached = group.groupRep;
+            cached.setId(id);
+            cached.setParentId(parentId);
+            cached.setPath(group.path);
+            cached.setSubGroups(null);
+            groupHierarchy.put(cached);
+        }
+    }
+
+    /**
+     * Memberships the import could not carry: members that existed before the load, groups whose path
+     * cannot be written, and users that already existed (they were skipped, so they join one call at a time).
+     */
+    private void linkExisting(List<Op> ops) {
+        for (Op op : ops) {
+            if (!op.succeeded()) {
+                continue;
+            }
+            try {
+                if (op.item.user() != null) {
+                    boolean skipped = op.status == 200;
+                    for (Op group : op.groups) {
+                        if (group.succeeded() && (skipped || group.path == null)) {
+                            identityBackend.addUserToGroup(op.id, group.id);
+                            membershipIndex.added(op.id, group.id);
+                        }
+                    }
+                    continue;
+                }
+                for (String userId : op.existingUsers) {
+                    identityBackend.addUserToGroup(userId, op.id);
+                    membershipIndex.added(userId, op.id);
+                }
+                for (String groupId : op.existingGroups) {
+                    requireTopLevel(groupId); // checked before the import too, but it may have moved since
+                    groupHierarchy.move(groupId, op.id, () -> identityBackend.moveGroup(groupId, op.id));
+                }
+            } catch (ScimException e) {
+                op.fail(e);
+            }
+        }
+    }
+
+    /** As {@code ScimGroupService.addSubGroup}: Keycloak groups have a single parent, so only a top-level group can join one. */
+    private void requireTopLevel(String groupId) {
+        if (groupHierarchy.get(groupId).isEmpty()) {
+            GroupRepresentation group = identityBackend.getGroupById(groupId)
+                    .orElseThrow(() -> new ScimException("Group member with ID " + groupId + " not found.", HttpStatus.BAD_REQUEST, "invalidValue"));
+            groupHierarchy.put(group);
+        }
+        String parentId = groupHierarchy.parentId(groupId);
+        if (parentId != null) {
+            throw new ScimException("Group " + groupId + " is already a member of group " + parentId
+                    + "; a group can be a member of only one group.", HttpStatus.BAD_REQUEST, "invalidValue");
+        }
+    }
+
+    private static boolean limitReached(int errors, Integer maxErrors) {
+        return maxErrors != null && errors >= maxErrors;
+    }
+
+    /** Times the ops of {@code ops} that have newly ended, and returns how many of those failed. */
+    private static int finish(List<Op> ops, long started) {
+        long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started);
+        int errors = 0;
+        for (Op op : ops) {
+            if (op.done() && !op.finished) {
+                op.finished = true;
+                op.latencyMicros = latencyMicros;
+                errors += op.succeeded() ? 0 : 1;
+            }
+        }
+        return errors;
+    }
+}
@@ -0,0 +1,319 @@
+package com.learnhai.scim.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnhai.scim.backend.IdentityBackend;
+import com.learnhai.scim.index.UserKeyIndex;
+import com.learnhai.scim.tenant.Tenant;
+import com.learnhai.scim.tenant.TenantContext;
+import com.learnhai.scim.tenant.TenantRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.idm.AdminEventRepresentation;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the bridge's caches coherent with changes made in Keycloak directly, from the realm's admin
+ * events: polled from the admin-events endpoint every {@code scim.change-feed.poll-interval-ms} and/or
+ * pushed by an event-listener webhook to {@code POST /scim/v2/KeycloakEvents}.
+ * <p>
+ * Each event becomes a targeted update: a user write marks the user changed in the
+ * {@link UserChangeIndex} and re-reads its keys into the {@link UserKeyIndex}, a user delete also
+ * drops their memberships and cached create results, a group write re-reads the group into the
+ * {@link GroupHierarchyCache}, and membership events update the {@link MembershipIndex}. Events are
+ * applied in store order, once each (by event id); events the bridge caused itself are harmless to
+ * apply again.
+ * <p>
+ * When the feed cannot be trusted to be complete (more than {@code max-events-per-poll} behind, or
+ * polls failing for longer than {@code max-lag-ms}), and optionally every
+ * {@code full-resync-interval-ms}, the tenant's caches are instead invalidated and reload in full.
+ * Poll lag is published as the {@code scim.changefeed.lag} gauge.
+ */
+@Service
+@Slf4j
+public class ChangeFeed {
+
+    private static final int PAGE_SIZE = 100;
+    private static final int RECENT_IDS = 10_000;
+    // Events are read by Keycloak's clock; overlap the start so a skewed clock cannot skip any
+    private static final long CLOCK_SKEW_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final IdentityBackend identityBackend;
+    private final TenantRegistry tenantRegistry;
+    private final GroupHierarchyCache groupHierarchy;
+    private final MembershipIndex membershipIndex;
+    private final UserChangeIndex changeIndex;
+    private final UserKeyIndex keyIndex;
+    private final IdempotencyService idempotencyService;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final boolean polling;
+    private final int maxEventsPerPoll;
+    private final long maxLagMs;
+    private final long fullResyncIntervalMs;
+    private final Map<String, Feed> feeds; // by tenant id
+
+    private static final class Feed { // guarded by itself
+        final String tenantId;
+        final TenantContext context;
+        long cursorMillis;                       // store time of the newest event polled
+        final Map<String, Boolean> recentIds = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > RECENT_IDS;
+            }
+        };
+        volatile long caughtUpAtMillis;          // start of the last complete poll
+        long resyncedAtMillis;
+        Counter applied;
+        Counter skipped;
+        Counter resyncs;
+
+        Feed(String tenantId, TenantContext context, long now) {
+            this.tenantId = tenantId;
+            this.context = context;
+            this.cursorMillis = now - CLOCK_SKEW_MS;
+            this.caughtUpAtMillis = now;
+            this.resyncedAtMillis = now;
+        }
+    }
+
+    @Autowired
+    public ChangeFeed(IdentityBackend identityBackend, TenantRegistry tenantRegistry,
+                      GroupHierarchyCache groupHierarchy, MembershipIndex membershipIndex,
+                      UserChangeIndex changeIndex, UserKeyIndex keyIndex, IdempotencyService idempotencyService,
+                      ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                      @Value("${scim.change-feed.enabled:false}") boolean enabled,
+                      @Value("${scim.change-feed.poll:true}") boolean polling,
+                      @Value("${scim.change-feed.max-events-per-poll:10000}") int maxEventsPerPoll,
+                      @Value("${scim.change-feed.max-lag-ms:300000}") long maxLagMs,
+                      @Value("${scim.change-feed.full-resync-interval-ms:0}") long fullResyncIntervalMs) {
+        this.identityBackend = identityBackend;
+        this.tenantRegistry = tenantRegistry;
+        this.groupHierarchy = groupHierarchy;
+        this.membershipIndex = membershipIndex;
+        this.changeIndex = changeIndex;
+        this.keyIndex = keyIndex;
+        this.idempotencyService = idempotencyService;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.polling = polling;
+        this.maxEventsPerPoll = maxEventsPerPoll;
+        this.maxLagMs = maxLagMs;
+        this.fullResyncIntervalMs = fullResyncIntervalMs;
+
+        // Caches load lazily, after this point, so only events from now on can make them stale
+        long now = System.currentTimeMillis();
+        Map<String, Feed> byTenant = new HashMap<>();
+        for (Tenant tenant : tenantRegistry.all()) {
+            // Caches of the unrouted default tenant are keyed by an unbound context
+            TenantContext context = tenantRegistry.isEnabled() ? new TenantContext(tenant.getId(), TenantContext.SCIM_PATH) : null;
+            Feed feed = new Feed(tenant.getId(), context, now);
+            if (enabled) {
+                feed.applied = meterRegistry.counter("scim.changefeed.events", "tenant", tenant.getId(), "outcome", "applied");
+                feed.skipped = meterRegistry.counter("scim.changefeed.events", "tenant", tenant.getId(), "outcome", "skipped");
+                feed.resyncs = meterRegistry.counter("scim.changefeed.resyncs", "tenant", tenant.getId());
+                if (polling) {
+                    Gauge.builder("scim.changefeed.lag", feed, f -> (System.currentTimeMillis() - f.caughtUpAtMillis) / 1000.0)
+                            .tag("tenant", tenant.getId())
+                            .baseUnit("seconds")
+                            .description("Time since the admin events of the tenant were last read completely")
+                            .register(meterRegistry);
+                }
+            }
+            byTenant.put(tenant.getId(), feed);
+        }
+        this.feeds = Map.copyOf(byTenant);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // --- Push ---
+
+    /** Applies events pushed for the tenant bound to the current thread. */
+    public void accept(List<AdminEventRepresentation> events) {
+        if (!enabled) {
+            return;
+        }
+        Feed feed = feeds.get(tenantRegistry.current().getId());
+        List<AdminEventRepresentation> ordered = new ArrayList<>(events);
+        ordered.sort(Comparator.comparingLong(AdminEventRepresentation::getTime));
+        synchronized (feed) {
+            TenantContext.callAs(feed.context, () -> {
+                ordered.forEach(event -> apply(feed, event));
+                return null;
+            });
+        }
+    }
+
+    // --- Poll ---
+
+    @Scheduled(fixedDelayString = "${scim.change-feed.poll-interval-ms:5000}")
+    public void poll() {
+        if (!enabled || !polling) {
+            return;
+        }
+        for (Feed feed : feeds.values()) {
+            synchronized (feed) {
+                TenantContext.callAs(feed.context, () -> {
+                    poll(feed);
+                    return null;
+                });
+            }
+        }
+    }
+
+    private void poll(Feed feed) {
+        long started = System.currentTimeMillis();
+        if (fullResyncIntervalMs > 0 && started - feed.resyncedAtMillis > fullResyncIntervalMs) {
+            resync(feed, "scheduled", started);
+            return;
+        }
+        long from = feed.cursorMillis;
+        try {
+            for (int first = 0, read = 0; ; first += PAGE_SIZE) {
+                List<AdminEventRepresentation> page = identityBackend.getAdminEvents(from, first, PAGE_SIZE);
+                for (AdminEventRepresentation event : page) {
+                    // Read from here again next time (inclusive, so events sharing this millisecond are not lost)
+                    feed.cursorMillis = Math.max(feed.cursorMillis, event.getTime());
+                    apply(feed, event);
+                }
+                read += page.size();
+                if (page.size() < PAGE_SIZE) {
+                    break;
+                }
+                if (read >= maxEventsPerPoll) {
+                    resync(feed, "more than " + maxEventsPerPoll + " events behind", started);
+                    return;
+                }
+            }
+            feed.caughtUpAtMillis = started;
+        } catch (RuntimeException e) {
+            log.warn("Failed to read admin events of tenant {}: {}", feed.tenantId, e.getMessage());
+            if (started - feed.caughtUpAtMillis > maxLagMs) {
+                resync(feed, "admin events unreadable for " + (started - feed.caughtUpAtMillis) + " ms", started);
+            }
+        }
+    }
+
+    /** Throws the tenant's caches away and restarts the feed from now. */
+    private void resync(Feed feed, String reason, long now) {
+        log.info("Full resync of the caches of tenant {}: {}.", feed.tenantId, reason);
+        groupHierarchy.invalidate();
+        membershipIndex.invalidate();
+        changeIndex.invalidate();
+        keyIndex.invalidate();
+        feed.cursorMillis = now - CLOCK_SKEW_MS;
+        feed.caughtUpAtMillis = now;
+        feed.resyncedAtMillis = now;
+        feed.resyncs.increment();
+    }
+
+    // --- Translation ---
+
+    private void apply(Feed feed, AdminEventRepresentation event) {
+        if (event.getId() != null && feed.recentIds.containsKey(event.getId())) {
+            return; // already applied, by an earlier poll or a push
+        }
+        String[] path = event.getResourcePath() != null ? event.getResourcePath().split("/") : new String[0];
+        String operation = event.getOperationType();
+        boolean handled = switch (String.valueOf(event.getResourceType())) {
+            case "USER" -> userChanged(path, operation, event.getTime());
+            case "GROUP" -> groupChanged(path, operation, event.getRepresentation());
+            case "GROUP_MEMBERSHIP" -> membershipChanged(path, operation);
+            default -> false; // roles, clients, realm settings: nothing the bridge caches
+        };
+        if (event.getId() != null) {
+            feed.recentIds.put(event.getId(), Boolean.TRUE);
+        }
+        (handled ? feed.applied : feed.skipped).increment();
+        log.debug("Admin event {} {} {} of tenant {}: {}.", operation, event.getResourceType(), event.getResourcePath(),
+                feed.tenantId, handled ? "applied" : "skipped");
+    }
+
+    // users/{id}, or a sub-resource such as users/{id}/reset-password
+    private boolean userChanged(String[] path, String operation, long time) {
+        if (path.length < 2 || !"users".equals(path[0])) {
+            return false;
+        }
+        String userId = path[1];
+        if ("DELETE".equals(operation) && path.length == 2) {
+            changeIndex.deleted(userId);
+            membershipIndex.userDeleted(userId);
+            idempotencyService.forget(userId);
+        } else {
+            // Keycloak keeps no modification time; the event's time stands in until the next rescan
+            changeIndex.modified(userId, Instant.ofEpochMilli(time));
+            if (path.length == 2) {
+                keyIndex.changed(userId); // deletes need no event: stale keys are dropped when looked up
+            }
+        }
+        return true;
+    }
+
+    // groups/{id}, or groups/{parentId}/children and groups for a create or move, with the group as representation
+    private boolean groupChanged(String[] path, String operation, String representation) {
+        if (path.length == 0 || !"groups".equals(path[0])) {
+            return false;
+        }
+        String groupId = path.length == 2 ? path[1] : representedId(representation);
+        if ("DELETE".equals(operation) && path.length == 2) {
+            groupHierarchy.removed(groupId);
+            membershipIndex.groupDeleted(groupId);
+            idempotencyService.forget(groupId);
+        } else if (groupId == null) {
+            groupHierarchy.invalidate(); // realm does not include representations: reload the tree
+        } else {
+            Optional<GroupRepresentation> group = identityBackend.getGroupById(groupId);
+            if (group.isPresent()) {
+                groupHierarchy.synced(group.get());
+            } else {
+                groupHierarchy.removed(groupId); // gone again by now; its delete event follows
+            }
+        }
+        return true;
+    }
+
+    // users/{userId}/groups/{groupId}
+    private boolean membershipChanged(String[] path, String operation) {
+        if (path.length != 4 || !"users".equals(path[0]) || !"groups".equals(path[2])) {
+            return false;
+        }
+        if ("CREATE".equals(operation)) {
+            membershipIndex.added(path[1], path[3]);
+        } else if ("DELETE".equals(operation)) {
+            membershipIndex.removed(path[1], path[3]);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private String representedId(String representation) {
+        if (representation == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readTree(representation).path("id").asText(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
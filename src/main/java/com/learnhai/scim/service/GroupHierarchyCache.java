@@ -0,0 +1,333 @@
+package com.learnhai.scim.service;
+
+import com.learnhai.scim.backend.IdentityBackend;
+import com.learnhai.scim.exception.ScimException;
+import com.learnhai.scim.tenant.TenantContext;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * In-memory copy of the group tree, one per tenant, so group listings, subgroup members and
+ * ancestor lookups need no Keycloak calls.
+ * <p>
+ * A tree is loaded on first use by walking it once (pages of top-level groups, then the subgroups
+ * of every group that has any). Group writes made through the bridge update it in place; a full
+ * reload after {@code scim.groups.hierarchy-refresh-interval-ms} picks up changes made in Keycloak
+ * directly; if that reload fails, the previous tree is kept and the reload retried. The load
+ * tolerates a corrupt store: a group reached twice is logged and skipped, so a cycle can never
+ * make the walk or later ancestor lookups loop.
+ * <p>
+ * Representations handed out are shared with the cache and must not be modified.
+ */
+@Service
+@Slf4j
+public class GroupHierarchyCache {
+
+    private static final int PAGE_SIZE = 100;
+    private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(30); // after a failed reload
+
+    private final IdentityBackend identityBackend;
+    private final long refreshIntervalNanos;
+    private final Map<String, Tree> trees = new ConcurrentHashMap<>(); // by tenant
+
+    private static final class Node {
+        volatile GroupRepresentation group;
+        volatile String parentId;
+        final Set<String> children = ConcurrentHashMap.newKeySet();
+
+        Node(GroupRepresentation group, String parentId) {
+            this.group = group;
+            this.parentId = parentId;
+        }
+    }
+
+    private static final class Tree {
+        final ReentrantLock lock = new ReentrantLock(); // guards loads and all writes
+        volatile Map<String, Node> nodes;               // null until the first load
+        volatile long loadedAtNanos;
+        volatile List<GroupRepresentation> sorted;      // all groups by name; null after a change
+    }
+
+    @Autowired
+    public GroupHierarchyCache(IdentityBackend identityBackend,
+                               @Value("${scim.groups.hierarchy-refresh-interval-ms:300000}") long refreshIntervalMs) {
+        this.identityBackend = identityBackend;
+        this.refreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(refreshIntervalMs);
+    }
+
+    // --- Reads ---
+
+    public Optional<GroupRepresentation> get(String groupId) {
+        Node node = groupId == null ? null : nodes().get(groupId);
+        return node == null ? Optional.empty() : Optional.of(node.group);
+    }
+
+    /** Parent of a cached group, or null for a top-level or unknown group. */
+    public String parentId(String groupId) {
+        Node node = groupId == null ? null : nodes().get(groupId);
+        return node == null ? null : node.parentId;
+    }
+
+    /** Direct subgroups, by name. */
+    public List<GroupRepresentation> children(String groupId) {
+        Map<String, Node> nodes = nodes();
+        Node node = groupId == null ? null : nodes.get(groupId);
+        if (node == null || node.children.isEmpty()) {
+            return List.of();
+        }
+        List<GroupRepresentation> children = new ArrayList<>(node.children.size());
+        for (String childId : node.children) {
+            Node child = nodes.get(childId);
+            if (child != null) {
+                children.add(child.group);
+            }
+        }
+        children.sort(Comparator.comparing(GroupRepresentation::getName, Comparator.nullsLast(Comparator.naturalOrder())));
+        return children;
+    }
+
+    /** Ids of the groups a group is transitively a member of, nearest first. */
+    public List<String> ancestors(String groupId) {
+        Map<String, Node> nodes = nodes();
+        List<String> ancestors = new ArrayList<>();
+        Node node = groupId == null ? null : nodes.get(groupId);
+        while (node != null && node.parentId != null) {
+            if (ancestors.contains(node.parentId) || node.parentId.equals(groupId)) {
+                log.warn("Cycle in cached group hierarchy at group {}; reloading.", node.parentId);
+                invalidate();
+                break;
+            }
+            ancestors.add(node.parentId);
+            node = nodes.get(node.parentId);
+        }
+        return ancestors;
+    }
+
+    /** Every group at any depth, by name. */
+    public List<GroupRepresentation> all() {
+        Tree tree = tree();
+        List<GroupRepresentation> sorted = tree.sorted;
+        if (sorted == null) {
+            List<GroupRepresentation> groups = new ArrayList<>(tree.nodes.size());
+            tree.nodes.values().forEach(node -> groups.add(node.group));
+            groups.sort(Comparator.comparing(GroupRepresentation::getName, Comparator.nullsLast(Comparator.naturalOrder())));
+            sorted = List.copyOf(groups);
+            tree.sorted = sorted;
+        }
+        return sorted;
+    }
+
+    // --- Writes made through the bridge ---
+
+    /** Adds or refreshes a group. A new group goes under {@code parentId} from its representation. */
+    public void put(GroupRepresentation group) {
+        update(tree -> {
+            Node node = tree.nodes.get(group.getId());
+            if (node != null) {
+                node.group = group;
+            } else {
+                tree.nodes.put(group.getId(), new Node(group, null));
+                link(tree, group.getId(), group.getParentId());
+            }
+        });
+    }
+
+    /**
+     * Adds or refreshes a group as just read from the store, moving it under the parent its
+     * representation names (top level if none), e.g. after a change made in Keycloak directly.
+     */
+    public void synced(GroupRepresentation group) {
+        group.setSubGroups(null);
+        update(tree -> {
+            Node node = tree.nodes.get(group.getId());
+            if (node != null) {
+                node.group = group;
+            } else {
+                tree.nodes.put(group.getId(), new Node(group, null));
+            }
+            link(tree, group.getId(), group.getParentId());
+        });
+    }
+
+    /**
+     * Moves a group under {@code parentId} (null for top level): runs {@code storeMove} and records the
+     * result. Moves are serialized per tenant, so two concurrent moves cannot together close a cycle.
+     * Fails with 400 if the parent is the group itself or one of its descendants.
+     */
+    public void move(String groupId, String parentId, Runnable storeMove) {
+        update(tree -> {
+            if (parentId != null && (groupId.equals(parentId) || ancestors(parentId).contains(groupId))) {
+                throw new ScimException("Group " + groupId + " cannot become a member of group " + parentId
+                        + ": that group is itself or one of its members, which would create a cycle.",
+                        HttpStatus.BAD_REQUEST, "invalidValue");
+            }
+            try {
+                storeMove.run();
+            } catch (RuntimeException e) {
+                invalidate(); // the store may or may not have applied it
+                throw e;
+            }
+            link(tree, groupId, parentId);
+        });
+    }
+
+    /** Drops a group and its subtree, as a Keycloak delete does. */
+    public void removed(String groupId) {
+        update(tree -> {
+            Node node = tree.nodes.get(groupId);
+            if (node == null) {
+                return;
+            }
+            link(tree, groupId, null);
+            Deque<String> pending = new ArrayDeque<>();
+            pending.add(groupId);
+            while (!pending.isEmpty()) {
+                Node removed = tree.nodes.remove(pending.poll());
+                if (removed != null) {
+                    pending.addAll(removed.children);
+                }
+            }
+        });
+    }
+
+    /** Forces a full reload on next use, e.g. after a write whose outcome is unknown. */
+    public void invalidate() {
+        Tree tree = trees.get(tenantKey());
+        if (tree != null) {
+            tree.loadedAtNanos = System.nanoTime() - refreshIntervalNanos - 1;
+        }
+    }
+
+    private void link(Tree tree, String groupId, String parentId) {
+        Node node = tree.nodes.get(groupId);
+        if (node == null) {
+            return;
+        }
+        Node previous = node.parentId == null ? null : tree.nodes.get(node.parentId);
+        if (previous != null) {
+            previous.children.remove(groupId);
+        }
+        Node parent = parentId == null ? null : tree.nodes.get(parentId);
+        node.parentId = parent != null ? parentId : null;
+        if (parent != null) {
+            parent.children.add(groupId);
+        }
+    }
+
+    private void update(Consumer<Tree> change) {
+        Tree tree = tree();
+        tree.lock.lock();
+        try {
+            change.accept(tree);
+            tree.sorted = null;
+        } finally {
+            tree.lock.unlock();
+        }
+    }
+
+    // --- Loading ---
+
+    private Map<String, Node> nodes() {
+        return tree().nodes;
+    }
+
+    private Tree tree() {
+        Tree tree = trees.computeIfAbsent(tenantKey(), k -> new Tree());
+        boolean stale = System.nanoTime() - tree.loadedAtNanos > refreshIntervalNanos;
+        if (tree.nodes == null) {
+            tree.lock.lock(); // nothing to serve yet: wait for whoever is loading
+        } else if (!stale || !tree.lock.tryLock()) {
+            return tree;      // fresh, or being reloaded by another thread: serve what we have
+        }
+        try {
+            if (tree.nodes == null || System.nanoTime() - tree.loadedAtNanos > refreshIntervalNanos) {
+                long started = System.nanoTime();
+                Map<String, Node> nodes;
+                try {
+                    nodes = load();
+                } catch (RuntimeException e) {
+                    if (tree.nodes == null) {
+                        throw e; // nothing to fall back on
+                    }
+                    log.warn("Failed to reload the group hierarchy; serving the previous tree and retrying in {} s: {}",
+                            TimeUnit.NANOSECONDS.toSeconds(RETRY_NANOS), e.getMessage());
+                    tree.loadedAtNanos = System.nanoTime() - refreshIntervalNanos + RETRY_NANOS;
+                    return tree;
+                }
+                tree.nodes = nodes;
+                tree.sorted = null;
+                tree.loadedAtNanos = System.nanoTime();
+                log.debug("Loaded group hierarchy: {} groups in {} ms.", nodes.size(),
+                        TimeUnit.NANOSECONDS.toMillis(tree.loadedAtNanos - started));
+            }
+        } finally {
+            tree.lock.unlock();
+        }
+        return tree;
+    }
+
+    private Map<String, Node> load() {
+        Map<String, Node> nodes = new ConcurrentHashMap<>();
+        Deque<GroupRepresentation> pending = new ArrayDeque<>();
+        Map<String, String> parents = new HashMap<>();
+        for (int first = 0; ; first += PAGE_SIZE) {
+            List<GroupRepresentation> page = identityBackend.getGroups(first, PAGE_SIZE, null);
+            pending.addAll(page);
+            if (page.size() < PAGE_SIZE) {
+                break;
+            }
+        }
+        while (!pending.isEmpty()) {
+            GroupRepresentation group = pending.poll();
+            String parentId = parents.get(group.getId());
+            if (nodes.containsKey(group.getId())) {
+                log.warn("Group {} reached twice while loading the group hierarchy (under {}); ignoring the second path.",
+                        group.getId(), parentId);
+                continue;
+            }
+            group.setSubGroups(null);
+            nodes.put(group.getId(), new Node(group, parentId));
+            if (parentId != null) {
+                nodes.get(parentId).children.add(group.getId());
+            }
+            Long subGroupCount = group.getSubGroupCount();
+            if (subGroupCount != null && subGroupCount == 0) {
+                continue; // known leaf, no need to ask
+            }
+            for (int first = 0; ; first += PAGE_SIZE) {
+                List<GroupRepresentation> page = identityBackend.getSubGroups(group.getId(), first, PAGE_SIZE);
+                for (GroupRepresentation child : page) {
+                    parents.putIfAbsent(child.getId(), group.getId());
+                    pending.add(child);
+                }
+                if (page.size() < PAGE_SIZE) {
+                    break;
+                }
+            }
+        }
+        return nodes;
+    }
+
+    private static String tenantKey() {
+        String tenant = TenantContext.tenantId();
+        return tenant != null ? tenant : "";
+    }
+}
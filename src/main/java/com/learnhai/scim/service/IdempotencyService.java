@@ -0,0 +1,233 @@
+package com.learnhai.scim.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.learnhai.scim.audit.AuditLog;
+import com.learnhai.scim.exception.ScimException;
+import com.learnhai.scim.model.scim.ScimResource;
+import com.learnhai.scim.service.async.OperationStatus;
+import com.learnhai.scim.tenant.TenantContext;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates retried create requests. IdPs retry POST on timeouts; with this in front of the create
+ * path a retry either joins the still running original call or gets its cached result, without
+ * touching Keycloak again. Failed calls are not cached, so a retry after an error runs normally.
+ * A key reused with a different request body is rejected rather than replayed, and results are
+ * dropped once their resource is deleted or their asynchronous operation fails. Each tenant has
+ * its own table of up to max-entries, so one tenant's bulk load cannot crowd out another tenant's
+ * entries.
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final Map<String, Map<String, Entry>> partitions = new ConcurrentHashMap<>(); // by tenant
+
+    /**
+     * A deduplication key and the fingerprint of the request body it was derived for.
+     *
+     * @param fromHeader whether the key is the client's Idempotency-Key rather than an externalId
+     */
+    public record Key(String value, String fingerprint, boolean fromHeader) {
+    }
+
+    private static final class Entry {
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+        final String fingerprint;
+        volatile long expiresAtNanos = Long.MAX_VALUE; // in-flight entries never expire
+
+        Entry(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAtNanos > 0;
+        }
+    }
+
+    @Autowired
+    public IdempotencyService(@Value("${scim.idempotency.enabled:true}") boolean enabled,
+                              @Value("${scim.idempotency.ttl-seconds:600}") long ttlSeconds,
+                              @Value("${scim.idempotency.max-entries:100000}") int maxEntries) {
+        this.enabled = enabled;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Derives the deduplication key for a create request: the Idempotency-Key header if the client sent
+     * one, otherwise the resource's externalId. Both are scoped to the calling client and resource type.
+     * Returns null when neither is available, in which case the request is not deduplicated.
+     *
+     * @param body the request body, fingerprinted so a reused key with a different body is detected
+     */
+    public Key keyFor(String resourceType, String idempotencyKey, String externalId, JsonNode body) {
+        if (!enabled) {
+            return null;
+        }
+        String source;
+        boolean fromHeader = StringUtils.isNotBlank(idempotencyKey);
+        if (fromHeader) {
+            source = "key\n" + idempotencyKey;
+        } else if (StringUtils.isNotBlank(externalId)) {
+            source = "externalId\n" + externalId;
+        } else {
+            return null;
+        }
+        return new Key(sha256(AuditLog.currentActor() + "\n" + resourceType + "\n" + source),
+                sha256(String.valueOf(body)), fromHeader);
+    }
+
+    /**
+     * Runs {@code action} unless a request with the same key is running or completed within the TTL,
+     * whose result is then returned. A key seen before with a different body fails with 422 for an
+     * Idempotency-Key and 409 for an externalId, which then belongs to another create.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Key key, Supplier<T> action) {
+        if (key == null) {
+            return action.get();
+        }
+        Map<String, Entry> entries = partition();
+        if (entries.size() >= maxEntries) {
+            evictExpired(entries, System.nanoTime());
+            if (entries.size() >= maxEntries) {
+                log.debug("Idempotency table full ({} entries); executing without deduplication.", maxEntries);
+                return action.get();
+            }
+        }
+
+        Entry mine = new Entry(key.fingerprint());
+        while (true) {
+            Entry existing = entries.putIfAbsent(key.value(), mine);
+            if (existing == null) {
+                break;
+            }
+            if (existing.isExpired(System.nanoTime())) {
+                entries.remove(key.value(), existing);
+                continue;
+            }
+            if (!existing.fingerprint.equals(key.fingerprint())) {
+                throw key.fromHeader()
+                        ? new ScimException("Idempotency-Key was already used with a different request body.", HttpStatus.UNPROCESSABLE_ENTITY, "invalidValue")
+                        : new ScimException("A different resource with this externalId was just created.", HttpStatus.CONFLICT, "uniqueness");
+            }
+            log.debug("Duplicate create request detected; returning result of the original request.");
+            return (T) await(existing);
+        }
+
+        try {
+            T value = action.get();
+            mine.expiresAtNanos = System.nanoTime() + ttlNanos;
+            mine.result.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            // Let the next retry run for real, but fail the ones that joined this attempt the same way.
+            entries.remove(key.value(), mine);
+            mine.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Drops the cached creates that produced resource {@code id}, or that were accepted as
+     * asynchronous operation {@code id}: after the resource was deleted, or the operation failed, a
+     * retry creates it again instead of replaying a resource or outcome that no longer holds.
+     */
+    public void forget(String id) {
+        Map<String, Entry> entries = partitions.get(tenantKey());
+        if (entries != null) {
+            entries.values().removeIf(entry -> entry.result.isDone() && !entry.result.isCompletedExceptionally()
+                    && produced(entry.result.join(), id));
+        }
+    }
+
+    /**
+     * Records the resource that asynchronous create {@code operationId} produced, so that deleting
+     * the resource later also drops the create's entry.
+     */
+    public void created(String operationId, String resourceId) {
+        Map<String, Entry> entries = partitions.get(tenantKey());
+        if (entries == null) {
+            return;
+        }
+        for (Entry entry : entries.values()) {
+            if (entry.result.isDone() && !entry.result.isCompletedExceptionally()
+                    && entry.result.join() instanceof OperationStatus status && operationId.equals(status.getId())) {
+                OperationStatus resolved = status.copy();
+                resolved.setResourceId(resourceId);
+                entry.result.obtrudeValue(resolved);
+            }
+        }
+    }
+
+    private static boolean produced(Object result, String id) {
+        if (result instanceof ScimResource resource) {
+            return id.equals(resource.getId());
+        }
+        return result instanceof OperationStatus status && (id.equals(status.getId()) || id.equals(status.getResourceId()));
+    }
+
+    private Object await(Entry entry) {
+        try {
+            return entry.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${scim.idempotency.sweep-interval-ms:60000}")
+    public void evictExpired() {
+        long now = System.nanoTime();
+        for (Map<String, Entry> entries : partitions.values()) {
+            evictExpired(entries, now);
+        }
+    }
+
+    private static void evictExpired(Map<String, Entry> entries, long now) {
+        entries.entrySet().removeIf(e -> e.getValue().isExpired(now));
+    }
+
+    private Map<String, Entry> partition() {
+        return partitions.computeIfAbsent(tenantKey(), t -> new ConcurrentHashMap<>());
+    }
+
+    private static String tenantKey() {
+        String tenant = TenantContext.tenantId();
+        return tenant != null ? tenant : "";
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.learnhai.scim.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.learnhai.scim.backend.IdentityBackend;
+import com.learnhai.scim.backend.ImportedResource;
 import com.learnhai.scim.exception.ScimException;
 import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.core.Response;
@@ -10,44 +13,56 @@ import org.keycloak.admin.client.resource.GroupsResource;
 import org.keycloak.admin.client.resource.RealmResource;
 import org.keycloak.admin.client.resource.UserResource;
 import org.keycloak.admin.client.resource.UsersResource;
+import org.keycloak.representations.idm.AdminEventRepresentation;
 import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.PartialImportRepresentation;
 import org.keycloak.representations.idm.UserRepresentation;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
-import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
-@Service
+/**
+ * {@link IdentityBackend} on the Keycloak admin REST API; the default {@code scim.backend}. One
+ * instance serves one realm and owns its admin client; {@link com.learnhai.scim.config.KeycloakConfig}
+ * creates one per tenant.
+ */
 @Slf4j
-public class KeycloakService {
+public class KeycloakService implements IdentityBackend, AutoCloseable {
+
+    private static final int USER_GROUPS_PAGE = 100;
 
     private final Keycloak keycloak;
-    private final String targetRealm;
+    private final RealmResource realmResource;
+    // Client proxies are stateless and thread-safe; build them once rather than on every call
+    private final UsersResource usersResource;
+    private final GroupsResource groupsResource;
 
-    @Autowired
-    public KeycloakService(Keycloak keycloak, @Value("${keycloak.target-realm}") String targetRealm) {
+    public KeycloakService(Keycloak keycloak, String targetRealm) {
         this.keycloak = keycloak;
-        this.targetRealm = targetRealm;
-    }
-
-    private RealmResource getRealmResource() {
-        return keycloak.realm(targetRealm);
+        this.realmResource = keycloak.realm(targetRealm);
+        this.usersResource = realmResource.users();
+        this.groupsResource = realmResource.groups();
     }
 
     private UsersResource getUsersResource() {
-        return getRealmResource().users();
+        return usersResource;
     }
 
     private GroupsResource getGroupsResource() {
-        return getRealmResource().groups();
+        return groupsResource;
+    }
+
+    @Override
+    public void close() {
+        keycloak.close();
     }
 
     // --- User Operations ---
+    @Override
     public String createUser(UserRepresentation userRep) {
         try (Response response = getUsersResource().create(userRep)) {
             if (response.getStatus() == HttpStatus.CREATED.value()) {
@@ -61,6 +76,7 @@ public class KeycloakService {
         }
     }
 
+    @Override
     public Optional<UserRepresentation> getUserById(String id) {
         try {
             UserResource userResource = getUsersResource().get(id);
@@ -73,6 +89,7 @@ public class KeycloakService {
         }
     }
 
+    @Override
     public Optional<UserRepresentation> getUserByUsername(String username) {
         try {
             List<UserRepresentation> users = getUsersResource().searchByUsername(username, true);
@@ -84,6 +101,7 @@ public class KeycloakService {
         }
     }
     
+    @Override
     public List<UserRepresentation> findUsersByEmail(String email) {
         try {
             return getUsersResource().searchByEmail(email, true);
@@ -93,7 +111,19 @@ public class KeycloakService {
         }
     }
 
+    @Override
+    public List<UserRepresentation> findUsersByAttribute(String name, String value) {
+        try {
+            // exact: whole attribute values, not substrings
+            return getUsersResource().searchByAttributes(name + ":" + value, true);
+        } catch (Exception e) {
+            log.error("Error searching users by attribute {} in Keycloak: {}", name, e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
 
+    @Override
     public void updateUser(String id, UserRepresentation userRep) {
         try {
             getUsersResource().get(id).update(userRep);
@@ -105,6 +135,7 @@ public class KeycloakService {
         }
     }
 
+    @Override
     public void deleteUser(String id) {
         try (Response response = getUsersResource().delete(id)) {
              if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
@@ -121,6 +152,7 @@ public class KeycloakService {
         }
     }
 
+    @Override
     public List<UserRepresentation> getUsers(Integer firstResult, Integer maxResults, String search) {
         try {
             // Keycloak's search is basic. It searches username, first/last name, email.
@@ -135,6 +167,7 @@ public class KeycloakService {
         }
     }
 
+    @Override
     public long countUsers(String search) {
         try {
             if (search != null && !search.isEmpty()) {
@@ -151,6 +184,7 @@ public class KeycloakService {
 
 
     // --- Group Operations ---
+    @Override
     public String createGroup(GroupRepresentation groupRep) {
         try (Response response = getGroupsResource().add(groupRep)) {
             if (response.getStatus() == HttpStatus.CREATED.value()) {
@@ -164,6 +198,7 @@ public class KeycloakService {
         }
     }
 
+    @Override
     public Optional<GroupRepresentation> getGroupById(String id) {
         try {
             GroupResource groupResource = getGroupsResource().group(id);
@@ -176,6 +211,7 @@ public class KeycloakService {
         }
     }
     
+    @Override
     public Optional<GroupRepresentation> getGroupByName(String name) {
         try {
             // Keycloak search by name is not direct; we list and filter.
@@ -189,6 +225,7 @@ public class KeycloakService {
     }
 
 
+    @Override
     public void updateGroup(String id, GroupRepresentation groupRep) {
         try {
             getGroupsResource().group(id).update(groupRep);
@@ -200,6 +237,7 @@ public class KeycloakService {
         }
     }
 
+    @Override
     public void deleteGroup(String id) {
         try {
             getGroupsResource().group(id).remove();
@@ -212,17 +250,20 @@ public class KeycloakService {
         }
     }
 
+    @Override
     public List<GroupRepresentation> getGroups(Integer firstResult, Integer maxResults, String filter) {
          try {
             // Keycloak's group search is limited. `filter` here is a simple name search.
             // For true SCIM filter, more complex logic is needed.
             return getGroupsResource().groups(filter, firstResult, maxResults, false); // briefRepresentation=false
         } catch (Exception e) {
+            // Not swallowed: an empty page here would be cached as the whole group tree
             log.error("Error listing groups from Keycloak (first: {}, max: {}, filter: {}): {}", firstResult, maxResults, filter, e.getMessage());
-            return Collections.emptyList();
+            throw new ScimException("Failed to list groups from Keycloak", HttpStatus.INTERNAL_SERVER_ERROR, e);
         }
     }
 
+    @Override
     public long countGroups(String filter) {
         try {
             // Pass true for getCount parameter
@@ -233,6 +274,44 @@ public class KeycloakService {
         }
     }
 
+    @Override
+    public List<GroupRepresentation> getSubGroups(String groupId, Integer firstResult, Integer maxResults) {
+        try {
+            return getGroupsResource().group(groupId).getSubGroups(firstResult, maxResults, false); // briefRepresentation=false
+        } catch (NotFoundException e) {
+            return Collections.emptyList();
+        } catch (Exception e) {
+            // Not swallowed: an empty page here would silently drop a subtree from the hierarchy cache
+            log.error("Error fetching subgroups of group {} from Keycloak: {}", groupId, e.getMessage());
+            throw new ScimException("Failed to get subgroups of group " + groupId + " from Keycloak", HttpStatus.INTERNAL_SERVER_ERROR, e);
+        }
+    }
+
+    @Override
+    public void moveGroup(String groupId, String parentId) {
+        try {
+            GroupRepresentation group = getGroupsResource().group(groupId).toRepresentation();
+            // Posting an existing group (with its id) as a child moves it; posting it to the top level moves it back.
+            try (Response response = parentId != null
+                    ? getGroupsResource().group(parentId).subGroup(group)
+                    : getGroupsResource().add(group)) {
+                if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+                    String errorDetails = response.readEntity(String.class);
+                    log.error("Failed to move group {} under {} in Keycloak. Status: {}, Details: {}", groupId, parentId, response.getStatus(), errorDetails);
+                    throw new ScimException("Failed to move group " + groupId + " in Keycloak: " + response.getStatus() + " - " + errorDetails, HttpStatus.valueOf(response.getStatus()));
+                }
+            }
+        } catch (NotFoundException e) {
+            throw new ScimException("Group " + groupId + " or parent group " + parentId + " not found for move.", HttpStatus.NOT_FOUND, e);
+        } catch (ScimException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error moving group {} under {} in Keycloak: {}", groupId, parentId, e.getMessage());
+            throw new ScimException("Failed to move group " + groupId + " in Keycloak", HttpStatus.INTERNAL_SERVER_ERROR, e);
+        }
+    }
+
+    @Override
     public void addUserToGroup(String userId, String groupId) {
         try {
             UserResource userResource = getUsersResource().get(userId);
@@ -245,6 +324,7 @@ public class KeycloakService {
         }
     }
 
+    @Override
     public void removeUserFromGroup(String userId, String groupId) {
         try {
             UserResource userResource = getUsersResource().get(userId);
@@ -259,6 +339,7 @@ public class KeycloakService {
         }
     }
 
+    @Override
     public List<UserRepresentation> getGroupMembers(String groupId, Integer firstResult, Integer maxResults) {
         try {
             GroupResource groupResource = getGroupsResource().group(groupId);
@@ -267,11 +348,13 @@ public class KeycloakService {
             log.warn("Group {} not found when trying to fetch members.", groupId);
             return Collections.emptyList();
         } catch (Exception e) {
+            // Not swallowed: an empty page here would leave members out of the membership index
             log.error("Error fetching members for group {} from Keycloak: {}", groupId, e.getMessage());
-            return Collections.emptyList();
+            throw new ScimException("Failed to get members of group " + groupId + " from Keycloak", HttpStatus.INTERNAL_SERVER_ERROR, e);
         }
     }
     
+    @Override
     public long countGroupMembers(String groupId) {
         try {
             GroupResource groupResource = getGroupsResource().group(groupId);
@@ -285,4 +368,65 @@ public class KeycloakService {
             return 0;
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean isGroupMember(String userId, String groupId) {
+        // The user's groups, not the group's members: users are in a handful of groups, groups can hold thousands
+        try {
+            UserResource userResource = getUsersResource().get(userId);
+            for (int first = 0; ; first += USER_GROUPS_PAGE) {
+                List<GroupRepresentation> page = userResource.groups(null, first, USER_GROUPS_PAGE, true);
+                for (GroupRepresentation group : page) {
+                    if (groupId.equals(group.getId())) {
+                        return true;
+                    }
+                }
+                if (page.size() < USER_GROUPS_PAGE) {
+                    return false;
+                }
+            }
+        } catch (NotFoundException e) {
+            return false;
+        } catch (Exception e) {
+            log.error("Error checking membership of user {} in group {}: {}", userId, groupId, e.getMessage());
+            throw new ScimException("Failed to check membership of user " + userId + " in group " + groupId, HttpStatus.INTERNAL_SERVER_ERROR, e);
+        }
+    }
+
+    // --- Change feed ---
+    @Override
+    public List<AdminEventRepresentation> getAdminEvents(long fromMillis, Integer firstResult, Integer maxResults) {
+        try {
+            return realmResource.getAdminEvents(null, null, null, null, null, null, null,
+                    fromMillis, Long.MAX_VALUE, firstResult, maxResults, "asc");
+        } catch (Exception e) {
+            // Not swallowed: an empty page would look like "nothing changed"
+            log.error("Error fetching admin events from Keycloak: {}", e.getMessage());
+            throw new ScimException("Failed to get admin events from Keycloak", HttpStatus.INTERNAL_SERVER_ERROR, e);
+        }
+    }
+
+    // --- Bulk load ---
+    @Override
+    public List<ImportedResource> partialImport(PartialImportRepresentation batch) {
+        try (Response response = realmResource.partialImport(batch)) {
+            if (response.getStatus() != HttpStatus.OK.value()) {
+                String errorDetails = response.readEntity(String.class);
+                log.error("Partial import into Keycloak failed. Status: {}, Details: {}", response.getStatus(), errorDetails);
+                HttpStatus status = HttpStatus.valueOf(response.getStatus());
+                throw new ScimException("Partial import into Keycloak failed: " + response.getStatus() + " - " + errorDetails, status,
+                        status == HttpStatus.CONFLICT ? "uniqueness" : null);
+            }
+            // The admin client has no type for the results: {added, skipped, overwritten, results: [...]}
+            List<ImportedResource> imported = new ArrayList<>();
+            for (JsonNode result : response.readEntity(JsonNode.class).path("results")) {
+                String type = result.path("resourceType").asText();
+                if (type.equals("USER") || type.equals("GROUP")) {
+                    imported.add(new ImportedResource(ImportedResource.Type.valueOf(type), result.path("resourceName").asText(),
+                            result.path("id").asText(null), ImportedResource.Action.valueOf(result.path("action").asText())));
+                }
+            }
+            return imported;
+        }
+    }
+}
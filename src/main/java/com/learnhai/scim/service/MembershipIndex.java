@@ -0,0 +1,298 @@
+package com.learnhai.scim.service;
+
+import com.learnhai.scim.backend.IdentityBackend;
+import com.learnhai.scim.backend.SortedIntSet;
+import com.learnhai.scim.tenant.TenantContext;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Reverse membership index (user to direct groups), one per tenant, so User resources can carry
+ * {@code groups} without a {@code /users/{id}/groups} call per user.
+ * <p>
+ * An index is built in the background by scanning the members of every group in the
+ * {@link GroupHierarchyCache}, and rebuilt after {@code scim.groups.membership-index.refresh-interval-ms}
+ * to pick up changes made in Keycloak directly. Membership changes made through the bridge are applied
+ * as they happen; those landing while a rebuild is scanning are journalled and replayed onto the new
+ * index before it replaces the old one. Until a tenant's first build completes, lookups come back empty
+ * and users are returned without {@code groups}.
+ * <p>
+ * Groups are interned to int slots and each user's groups are a {@link SortedIntSet} of slots, so a
+ * membership costs 4 bytes on top of one map entry per user.
+ */
+@Service
+@Slf4j
+public class MembershipIndex {
+
+    private static final int PAGE_SIZE = 500;
+    private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(30); // after a failed build
+
+    private final IdentityBackend identityBackend;
+    private final GroupHierarchyCache groupHierarchy;
+    private final boolean enabled;
+    private final long refreshIntervalNanos;
+    private final ExecutorService builder;
+    private final Map<String, TenantIndex> tenants = new ConcurrentHashMap<>(); // by tenant
+
+    /** The groups a user is in directly and through a subgroup, each by name. */
+    public record Memberships(List<GroupRepresentation> direct, List<GroupRepresentation> indirect) {
+    }
+
+    private static final class Index {
+        final Map<String, Integer> groupSlots = new HashMap<>();
+        final List<String> groupIds = new ArrayList<>();                 // by slot; null once deleted
+        final Map<String, SortedIntSet> groupsByUser = new HashMap<>();
+
+        void add(String userId, String groupId) {
+            Integer slot = groupSlots.get(groupId);
+            if (slot == null) {
+                slot = groupIds.size();
+                groupIds.add(groupId);
+                groupSlots.put(groupId, slot);
+            }
+            groupsByUser.computeIfAbsent(userId, k -> new SortedIntSet()).add(slot);
+        }
+
+        void remove(String userId, String groupId) {
+            Integer slot = groupSlots.get(groupId);
+            SortedIntSet groups = groupsByUser.get(userId);
+            if (slot != null && groups != null && groups.remove(slot) && groups.size() == 0) {
+                groupsByUser.remove(userId);
+            }
+        }
+
+        // Slots of a deleted group stay in user sets until the next rebuild; lookups skip them
+        void removeGroup(String groupId) {
+            Integer slot = groupSlots.remove(groupId);
+            if (slot != null) {
+                groupIds.set(slot, null);
+            }
+        }
+    }
+
+    private static final class TenantIndex { // guarded by itself
+        Index live;                    // null until the first build completes
+        List<Consumer<Index>> journal; // non-null while a build is running
+        long nextBuildAtNanos = System.nanoTime();
+    }
+
+    @Autowired
+    public MembershipIndex(IdentityBackend identityBackend, GroupHierarchyCache groupHierarchy,
+                           @Value("${scim.groups.membership-index.enabled:true}") boolean enabled,
+                           @Value("${scim.groups.membership-index.refresh-interval-ms:3600000}") long refreshIntervalMs) {
+        this.identityBackend = identityBackend;
+        this.groupHierarchy = groupHierarchy;
+        this.enabled = enabled;
+        this.refreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(refreshIntervalMs);
+        this.builder = enabled ? Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "scim-membership-index");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (builder != null) {
+            builder.shutdownNow();
+        }
+    }
+
+    // --- Reads ---
+
+    /**
+     * Memberships of each of {@code userIds}, or empty if the index is disabled or not built yet. Users
+     * without groups map to empty lists. Groups missing from the hierarchy cache are left out.
+     */
+    public Optional<Map<String, Memberships>> memberships(Collection<String> userIds) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        TenantIndex tenant = tenant();
+        Map<String, List<String>> directIds = new LinkedHashMap<>();
+        synchronized (tenant) {
+            Index index = tenant.live;
+            if (index == null) {
+                return Optional.empty();
+            }
+            for (String userId : userIds) {
+                SortedIntSet slots = index.groupsByUser.get(userId);
+                List<String> groupIds = new ArrayList<>(slots == null ? 0 : slots.size());
+                if (slots != null) {
+                    for (int slot : slots.slice(0, slots.size())) {
+                        String groupId = index.groupIds.get(slot);
+                        if (groupId != null) {
+                            groupIds.add(groupId);
+                        }
+                    }
+                }
+                directIds.put(userId, groupIds);
+            }
+        }
+        Map<String, Memberships> memberships = new LinkedHashMap<>();
+        directIds.forEach((userId, groupIds) -> memberships.put(userId, resolve(groupIds)));
+        return Optional.of(memberships);
+    }
+
+    /** Whether the user is a direct member of the group, or empty if the index is disabled or not built yet. */
+    public Optional<Boolean> isMember(String userId, String groupId) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        TenantIndex tenant = tenant();
+        synchronized (tenant) {
+            Index index = tenant.live;
+            if (index == null) {
+                return Optional.empty();
+            }
+            Integer slot = index.groupSlots.get(groupId);
+            SortedIntSet groups = index.groupsByUser.get(userId);
+            return Optional.of(slot != null && groups != null && groups.contains(slot));
+        }
+    }
+
+    private Memberships resolve(List<String> directIds) {
+        if (directIds.isEmpty()) {
+            return new Memberships(List.of(), List.of());
+        }
+        List<GroupRepresentation> direct = new ArrayList<>(directIds.size());
+        Set<String> indirectIds = new LinkedHashSet<>();
+        for (String groupId : directIds) {
+            groupHierarchy.get(groupId).ifPresent(group -> {
+                direct.add(group);
+                indirectIds.addAll(groupHierarchy.ancestors(groupId));
+            });
+        }
+        indirectIds.removeAll(directIds);
+        List<GroupRepresentation> indirect = new ArrayList<>(indirectIds.size());
+        for (String groupId : indirectIds) {
+            groupHierarchy.get(groupId).ifPresent(indirect::add);
+        }
+        Comparator<GroupRepresentation> byName = Comparator.comparing(GroupRepresentation::getName, Comparator.nullsLast(Comparator.naturalOrder()));
+        direct.sort(byName);
+        indirect.sort(byName);
+        return new Memberships(direct, indirect);
+    }
+
+    // --- Writes made through the bridge, after the store accepted them ---
+
+    public void added(String userId, String groupId) {
+        apply(index -> index.add(userId, groupId));
+    }
+
+    public void removed(String userId, String groupId) {
+        apply(index -> index.remove(userId, groupId));
+    }
+
+    public void userDeleted(String userId) {
+        apply(index -> index.groupsByUser.remove(userId));
+    }
+
+    public void groupDeleted(String groupId) {
+        apply(index -> index.removeGroup(groupId));
+    }
+
+    /** Rebuilds the index on next use, e.g. when changes made in Keycloak directly may have been missed. */
+    public void invalidate() {
+        TenantIndex tenant = enabled ? tenants.get(tenantKey()) : null;
+        if (tenant != null) {
+            synchronized (tenant) {
+                tenant.nextBuildAtNanos = System.nanoTime();
+            }
+        }
+    }
+
+    private void apply(Consumer<Index> change) {
+        TenantIndex tenant = enabled ? tenants.get(tenantKey()) : null;
+        if (tenant == null) {
+            return; // nothing built or being built yet; the first build will see the change
+        }
+        synchronized (tenant) {
+            if (tenant.live != null) {
+                change.accept(tenant.live);
+            }
+            if (tenant.journal != null) {
+                tenant.journal.add(change);
+            }
+        }
+    }
+
+    // --- Building ---
+
+    private TenantIndex tenant() {
+        TenantIndex tenant = tenants.computeIfAbsent(tenantKey(), k -> new TenantIndex());
+        synchronized (tenant) {
+            if (tenant.journal == null && System.nanoTime() - tenant.nextBuildAtNanos >= 0) {
+                tenant.journal = new ArrayList<>();
+                TenantContext context = TenantContext.current();
+                builder.execute(() -> TenantContext.callAs(context, () -> build(tenant)));
+            }
+        }
+        return tenant;
+    }
+
+    private Void build(TenantIndex tenant) {
+        long started = System.nanoTime();
+        Index index = new Index();
+        long memberships = 0;
+        try {
+            for (GroupRepresentation group : groupHierarchy.all()) {
+                for (int first = 0; ; first += PAGE_SIZE) {
+                    List<UserRepresentation> page = identityBackend.getGroupMembers(group.getId(), first, PAGE_SIZE);
+                    for (UserRepresentation user : page) {
+                        index.add(user.getId(), group.getId());
+                    }
+                    memberships += page.size();
+                    if (page.size() < PAGE_SIZE) {
+                        break;
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to build the membership index; retrying in {} s: {}",
+                    TimeUnit.NANOSECONDS.toSeconds(RETRY_NANOS), e.getMessage());
+            synchronized (tenant) {
+                tenant.journal = null;
+                tenant.nextBuildAtNanos = System.nanoTime() + RETRY_NANOS;
+            }
+            return null;
+        }
+        int users;
+        synchronized (tenant) {
+            tenant.journal.forEach(change -> change.accept(index));
+            tenant.live = index;
+            tenant.journal = null;
+            tenant.nextBuildAtNanos = System.nanoTime() + refreshIntervalNanos;
+            users = index.groupsByUser.size();
+        }
+        log.debug("Built membership index: {} memberships of {} users in {} ms.", memberships, users,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return null;
+    }
+
+    private static String tenantKey() {
+        String tenant = TenantContext.tenantId();
+        return tenant != null ? tenant : "";
+    }
+}
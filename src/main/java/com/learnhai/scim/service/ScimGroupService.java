@@ -1,17 +1,28 @@
 package com.learnhai.scim.service;
 
+import com.learnhai.scim.backend.IdentityBackend;
 import com.learnhai.scim.exception.ScimException;
+import com.learnhai.scim.filter.Filter;
+import com.learnhai.scim.filter.FilterParser;
+import com.learnhai.scim.filter.LastModifiedRange;
+import com.learnhai.scim.filter.MembershipProbe;
 import com.learnhai.scim.mapper.GroupMapper;
+import com.learnhai.scim.mapper.ModificationStamps;
+import com.learnhai.scim.mapper.RepresentationChanges;
+import com.learnhai.scim.model.scim.ListResponse;
 import com.learnhai.scim.model.scim.ScimGroup;
 import org.keycloak.representations.idm.GroupRepresentation;
 import org.keycloak.representations.idm.UserRepresentation;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.apache.commons.lang3.StringUtils;
 
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
@@ -25,69 +36,96 @@ import java.util.stream.Collectors;
 @Service
 public class ScimGroupService {
 
-    private final KeycloakService keycloakService;
+    private final IdentityBackend identityBackend;
     private final GroupMapper groupMapper;
+    private final GroupHierarchyCache groupHierarchy;
+    private final MembershipIndex membershipIndex;
+    private final WriteOutcomes writeOutcomes;
+    private final IdempotencyService idempotencyService;
+    private final int membersInlineMax;
+    private final int listMembersInlineMax; // per group on list pages, which hold up to 200 groups
 
     @Autowired
-    public ScimGroupService(KeycloakService keycloakService, GroupMapper groupMapper) {
-        this.keycloakService = keycloakService;
+    public ScimGroupService(IdentityBackend identityBackend, GroupMapper groupMapper, GroupHierarchyCache groupHierarchy,
+                            MembershipIndex membershipIndex, WriteOutcomes writeOutcomes, IdempotencyService idempotencyService,
+                            @Value("${scim.groups.members-inline-max:1000}") int membersInlineMax,
+                            @Value("${scim.groups.list-members-inline-max:10}") int listMembersInlineMax) {
+        this.identityBackend = identityBackend;
         this.groupMapper = groupMapper;
+        this.groupHierarchy = groupHierarchy;
+        this.membershipIndex = membershipIndex;
+        this.writeOutcomes = writeOutcomes;
+        this.idempotencyService = idempotencyService;
+        this.membersInlineMax = membersInlineMax;
+        this.listMembersInlineMax = listMembersInlineMax;
     }
 
     public ScimGroup createGroup(ScimGroup scimGroup) {
          // Check for conflicts by displayName (Keycloak group name)
         if (StringUtils.isNotBlank(scimGroup.getDisplayName())) {
-            keycloakService.getGroupByName(scimGroup.getDisplayName()).ifPresent(existing -> {
+            identityBackend.getGroupByName(scimGroup.getDisplayName()).ifPresent(existing -> {
                 throw new ScimException("Group with name '" + scimGroup.getDisplayName() + "' already exists.", HttpStatus.CONFLICT, "uniqueness");
             });
         }
 
         GroupRepresentation kcGroupToCreate = groupMapper.toKeycloakGroup(scimGroup, null);
-        String groupId = keycloakService.createGroup(kcGroupToCreate);
+        ModificationStamps.stamp(kcGroupToCreate, ModificationStamps.now(), true);
+        String groupId = identityBackend.createGroup(kcGroupToCreate);
+        kcGroupToCreate.setId(groupId);
+        groupHierarchy.put(kcGroupToCreate); // so Group members can be moved under it
 
         // Add members if provided
         if (scimGroup.getMembers() != null && !scimGroup.getMembers().isEmpty()) {
             for (ScimGroup.Member member : scimGroup.getMembers()) {
                 if ("User".equalsIgnoreCase(member.getType()) && StringUtils.isNotBlank(member.getValue())) {
                     // Ensure user exists before adding
-                    keycloakService.getUserById(member.getValue())
+                    identityBackend.getUserById(member.getValue())
                         .orElseThrow(() -> new ScimException("User member with ID " + member.getValue() + " not found.", HttpStatus.BAD_REQUEST, "invalidValue"));
-                    keycloakService.addUserToGroup(member.getValue(), groupId);
+                    identityBackend.addUserToGroup(member.getValue(), groupId);
+                    membershipIndex.added(member.getValue(), groupId);
+                } else if (isGroupMember(member.getType(), member.getValue())) {
+                    addSubGroup(groupId, member.getValue()); // Keycloak subgroup
                 }
-                // TODO: Handle member.type == "Group" (group nesting) if supported
             }
         }
 
-        GroupRepresentation createdKcGroup = keycloakService.getGroupById(groupId)
+        GroupRepresentation createdKcGroup = identityBackend.getGroupById(groupId)
                 .orElseThrow(() -> new ScimException("Failed to retrieve created group: " + groupId, HttpStatus.INTERNAL_SERVER_ERROR));
-        
-        List<UserRepresentation> members = keycloakService.getGroupMembers(groupId, 0, 200); // Default page for members
-        return groupMapper.toScimGroup(createdKcGroup, members);
+        groupHierarchy.put(createdKcGroup);
+        return toScimGroup(createdKcGroup, membersInlineMax);
     }
 
     public Optional<ScimGroup> getGroupById(String id) {
-        return keycloakService.getGroupById(id)
-                .map(kcGroup -> {
-                    List<UserRepresentation> members = keycloakService.getGroupMembers(id, 0, 200); // Adjust pagination as needed
-                    return groupMapper.toScimGroup(kcGroup, members);
-                });
+        return getGroupById(id, true);
+    }
+
+    /** @param includeMembers false when the client excluded members, which then costs no member lookup */
+    public Optional<ScimGroup> getGroupById(String id, boolean includeMembers) {
+        return identityBackend.getGroupById(id)
+                .map(kcGroup -> toScimGroup(kcGroup, includeMembers ? membersInlineMax : 0));
     }
 
     public ScimGroup replaceGroup(String id, ScimGroup scimGroup) {
-        GroupRepresentation existingKcGroup = keycloakService.getGroupById(id)
+        GroupRepresentation existingKcGroup = identityBackend.getGroupById(id)
                 .orElseThrow(() -> new ScimException("Group not found with id: " + id, HttpStatus.NOT_FOUND));
 
         // Check for displayName conflict if it's being changed
         if (StringUtils.isNotBlank(scimGroup.getDisplayName()) && !scimGroup.getDisplayName().equals(existingKcGroup.getName())) {
-            keycloakService.getGroupByName(scimGroup.getDisplayName()).ifPresent(conflictingGroup -> {
+            identityBackend.getGroupByName(scimGroup.getDisplayName()).ifPresent(conflictingGroup -> {
                  if (!conflictingGroup.getId().equals(id)) { // Ensure it's not the same group
                     throw new ScimException("Group name '" + scimGroup.getDisplayName() + "' is already taken.", HttpStatus.CONFLICT, "uniqueness");
                 }
             });
         }
 
-        GroupRepresentation kcGroupToUpdate = groupMapper.toKeycloakGroup(scimGroup, existingKcGroup);
-        keycloakService.updateGroup(id, kcGroupToUpdate);
+        // Keycloak needs the name and the full attribute map on every group update, so a write sends both
+        GroupRepresentation kcGroupToUpdate = groupMapper.toKeycloakGroup(scimGroup, RepresentationChanges.copy(existingKcGroup));
+        boolean groupModified = !RepresentationChanges.changed(existingKcGroup, kcGroupToUpdate).isEmpty();
+        if (groupModified) {
+            ModificationStamps.stamp(kcGroupToUpdate, ModificationStamps.now(), false);
+            identityBackend.updateGroup(id, kcGroupToUpdate);
+            groupHierarchy.put(kcGroupToUpdate); // renamed even if a member change below fails
+        }
 
         // Full replacement of members:
         // 1. Get current members from Keycloak.
@@ -96,7 +134,7 @@ public class ScimGroupService {
         // 4. Add members present in scimGroup but not in Keycloak.
         // This is a simplified version: remove all, then add all from request.
         // More efficient would be to diff.
-        List<UserRepresentation> currentMembers = keycloakService.getGroupMembers(id, 0, Integer.MAX_VALUE); // Get all members
+        List<UserRepresentation> currentMembers = identityBackend.getGroupMembers(id, 0, Integer.MAX_VALUE); // Get all members
         Set<String> currentMemberIds = currentMembers.stream().map(UserRepresentation::getId).collect(Collectors.toSet());
         
         Set<String> desiredMemberIds = new HashSet<>();
@@ -107,30 +145,67 @@ public class ScimGroupService {
                 .collect(Collectors.toSet());
         }
 
+        boolean membersModified = false;
         // Remove users no longer in the group
         for (String memberId : currentMemberIds) {
             if (!desiredMemberIds.contains(memberId)) {
-                keycloakService.removeUserFromGroup(memberId, id);
+                identityBackend.removeUserFromGroup(memberId, id);
+                membershipIndex.removed(memberId, id);
+                membersModified = true;
             }
         }
         // Add new users to the group
         for (String memberId : desiredMemberIds) {
             if (!currentMemberIds.contains(memberId)) {
-                 keycloakService.getUserById(memberId) // Ensure user exists
+                 identityBackend.getUserById(memberId) // Ensure user exists
                         .orElseThrow(() -> new ScimException("User member with ID " + memberId + " not found for group update.", HttpStatus.BAD_REQUEST, "invalidValue"));
-                keycloakService.addUserToGroup(memberId, id);
+                identityBackend.addUserToGroup(memberId, id);
+                membershipIndex.added(memberId, id);
+                membersModified = true;
             }
         }
 
-        GroupRepresentation updatedKcGroup = keycloakService.getGroupById(id)
+        // Same for Group members, which are Keycloak subgroups
+        Set<String> desiredSubGroupIds = new HashSet<>();
+        if (scimGroup.getMembers() != null) {
+            for (ScimGroup.Member member : scimGroup.getMembers()) {
+                if (isGroupMember(member.getType(), member.getValue())) {
+                    desiredSubGroupIds.add(member.getValue());
+                }
+            }
+        }
+        for (GroupRepresentation subGroup : groupHierarchy.children(id)) {
+            if (!desiredSubGroupIds.contains(subGroup.getId())) {
+                membersModified |= removeSubGroup(id, subGroup.getId());
+            }
+        }
+        for (String subGroupId : desiredSubGroupIds) {
+            membersModified |= addSubGroup(id, subGroupId);
+        }
+
+        if (!groupModified && !membersModified) {
+            // IdPs resend unchanged groups; the stored one is then the result, with no write and no re-read
+            writeOutcomes.suppressed("Group", "replace");
+            return toScimGroup(existingKcGroup, membersInlineMax);
+        }
+        if (!groupModified) {
+            // Keycloak keeps members apart from the group, so stamping them takes a group write of its
+            // own: one per request however many members changed, for meta.lastModified delta syncs
+            ModificationStamps.stamp(kcGroupToUpdate, ModificationStamps.now(), false);
+            identityBackend.updateGroup(id, kcGroupToUpdate);
+        }
+        writeOutcomes.written("Group", "replace");
+
+        GroupRepresentation updatedKcGroup = identityBackend.getGroupById(id)
                 .orElseThrow(() -> new ScimException("Failed to retrieve updated group: " + id, HttpStatus.INTERNAL_SERVER_ERROR));
-        List<UserRepresentation> finalMembers = keycloakService.getGroupMembers(id, 0, 200);
-        return groupMapper.toScimGroup(updatedKcGroup, finalMembers);
+        groupHierarchy.put(updatedKcGroup);
+        return toScimGroup(updatedKcGroup, membersInlineMax);
     }
 
     public ScimGroup patchGroup(String id, Map<String, Object> patchRequest) {
-        GroupRepresentation existingKcGroup = keycloakService.getGroupById(id)
+        GroupRepresentation existingKcGroup = identityBackend.getGroupById(id)
                 .orElseThrow(() -> new ScimException("Group not found with id: " + id, HttpStatus.NOT_FOUND));
+        GroupRepresentation kcGroupToPatch = RepresentationChanges.copy(existingKcGroup);
 
         // TODO: Implement SCIM Patch Operations for Groups (RFC 7644, Section 3.5.2)
         @SuppressWarnings("unchecked")
@@ -140,6 +215,7 @@ public class ScimGroupService {
         }
 
         boolean groupModified = false;
+        boolean membersModified = false;
         for (Map<String, Object> operation : operations) {
             String op = (String) operation.get("op");
             String path = (String) operation.get("path"); // e.g., "displayName", "members"
@@ -149,13 +225,13 @@ public class ScimGroupService {
                 if ("displayName".equalsIgnoreCase(path)) {
                     if (value instanceof String && StringUtils.isNotBlank((String) value)) {
                         String newDisplayName = (String) value;
-                        if(!newDisplayName.equals(existingKcGroup.getName())) {
-                            keycloakService.getGroupByName(newDisplayName).ifPresent(conflictingGroup -> {
+                        if(!newDisplayName.equals(kcGroupToPatch.getName())) {
+                            identityBackend.getGroupByName(newDisplayName).ifPresent(conflictingGroup -> {
                                 if (!conflictingGroup.getId().equals(id)) {
                                     throw new ScimException("Group name '" + newDisplayName + "' is already taken.", HttpStatus.CONFLICT, "uniqueness");
                                 }
                             });
-                            existingKcGroup.setName(newDisplayName);
+                            kcGroupToPatch.setName(newDisplayName);
                             groupModified = true;
                         }
                     } else {
@@ -172,10 +248,17 @@ public class ScimGroupService {
                             String memberValue = (String) memberMap.get("value");
                             String memberType = (String) memberMap.get("type"); // Should be "User" typically
                             if ("User".equalsIgnoreCase(memberType) && StringUtils.isNotBlank(memberValue)) {
-                                keycloakService.getUserById(memberValue) // Ensure user exists
+                                if (membershipIndex.isMember(memberValue, id).orElse(false)
+                                        && identityBackend.isGroupMember(memberValue, id)) {
+                                    continue; // already a member; the index can be stale, so the store confirms
+                                }
+                                identityBackend.getUserById(memberValue) // Ensure user exists
                                     .orElseThrow(() -> new ScimException("User member with ID " + memberValue + " not found for patch add.", HttpStatus.BAD_REQUEST, "invalidValue"));
-                                keycloakService.addUserToGroup(memberValue, id);
-                                // No need to set groupModified = true for members, Keycloak handles this
+                                identityBackend.addUserToGroup(memberValue, id);
+                                membershipIndex.added(memberValue, id);
+                                membersModified = true;
+                            } else if (isGroupMember(memberType, memberValue)) {
+                                membersModified |= addSubGroup(id, memberValue);
                             }
                         }
                     } else {
@@ -188,57 +271,238 @@ public class ScimGroupService {
                 if (path != null && path.toLowerCase().startsWith("members[value eq ")) {
                     String userIdToRemove = path.substring(path.toLowerCase().indexOf("\"") + 1, path.toLowerCase().lastIndexOf("\""));
                      if (StringUtils.isNotBlank(userIdToRemove)) {
-                        keycloakService.removeUserFromGroup(userIdToRemove, id);
+                        if (id.equals(groupHierarchy.parentId(userIdToRemove))) {
+                            membersModified |= removeSubGroup(id, userIdToRemove); // the member is a subgroup
+                        } else if (membershipIndex.isMember(userIdToRemove, id).orElse(true)
+                                || identityBackend.isGroupMember(userIdToRemove, id)) { // a remove is only skipped once the store agrees
+                            identityBackend.removeUserFromGroup(userIdToRemove, id);
+                            membershipIndex.removed(userIdToRemove, id);
+                            membersModified = true;
+                        }
                     }
                 }
                 // TODO: Handle more complex remove operations for members
             }
         }
 
-        if (groupModified) {
-            keycloakService.updateGroup(id, existingKcGroup);
+        // Adds and removes that the store confirms are already in place are skipped above
+        if (!groupModified && !membersModified) {
+            writeOutcomes.suppressed("Group", "patch");
+            return toScimGroup(existingKcGroup, membersInlineMax);
         }
+        // One write carries the stamp for the name change and every member change alike
+        ModificationStamps.stamp(kcGroupToPatch, ModificationStamps.now(), false);
+        identityBackend.updateGroup(id, kcGroupToPatch);
+        writeOutcomes.written("Group", "patch");
 
-        GroupRepresentation patchedKcGroup = keycloakService.getGroupById(id)
+        GroupRepresentation patchedKcGroup = identityBackend.getGroupById(id)
                 .orElseThrow(() -> new ScimException("Failed to retrieve patched group: " + id, HttpStatus.INTERNAL_SERVER_ERROR));
-        List<UserRepresentation> members = keycloakService.getGroupMembers(id, 0, 200);
-        return groupMapper.toScimGroup(patchedKcGroup, members);
+        groupHierarchy.put(patchedKcGroup);
+        return toScimGroup(patchedKcGroup, membersInlineMax);
     }
 
     public void deleteGroup(String id) {
-        keycloakService.getGroupById(id)
+        identityBackend.getGroupById(id)
             .orElseThrow(() -> new ScimException("Group not found with id: " + id, HttpStatus.NOT_FOUND));
-        keycloakService.deleteGroup(id);
+        List<String> deleted = new ArrayList<>();
+        collectSubtree(id, deleted);
+        identityBackend.deleteGroup(id);
+        groupHierarchy.removed(id); // Keycloak deletes the subgroups too
+        membershipIndex.groupDeleted(id);
+        deleted.forEach(idempotencyService::forget); // retried creates with the same externalId must create them again
+    }
+
+    private void collectSubtree(String groupId, List<String> ids) {
+        ids.add(groupId);
+        for (GroupRepresentation child : groupHierarchy.children(groupId)) {
+            collectSubtree(child.getId(), ids);
+        }
+    }
+
+    public ListResponse<ScimGroup> getGroups(int startIndex, int count, String filter) {
+        return getGroups(startIndex, count, filter, true);
     }
 
-    public Map<String, Object> getGroups(int startIndex, int count, String filter) {
+    public ListResponse<ScimGroup> getGroups(int startIndex, int count, String filter, boolean includeMembers) {
         int firstResult = Math.max(0, startIndex - 1);
-        String searchFilter = null;
 
-        // Simplified filter: "displayName eq value"
-        if (StringUtils.isNotBlank(filter) && filter.toLowerCase().startsWith("displayname eq ")) {
-            searchFilter = filter.substring("displayname eq ".length()).replace("\"", "").trim();
-        } else if (StringUtils.isNotBlank(filter)) {
-            // If filter is present but not 'displayName eq', Keycloak's group search might use it as a general search term
-            searchFilter = filter;
+        // Simplified filter: "displayName eq value", or a meta.lastModified range for delta syncs
+        Filter parsed = StringUtils.isNotBlank(filter) ? FilterParser.parse(filter) : null;
+        MembershipProbe probe = parsed != null ? MembershipProbe.of(parsed) : null;
+        if (probe != null) {
+            return probeMembership(startIndex, count, probe, includeMembers);
+        }
+        LastModifiedRange changedRange = parsed != null ? LastModifiedRange.of(parsed) : null;
+        String displayName = parsed != null ? parsed.equalityValue("displayName") : null;
+        if (parsed != null && displayName == null && changedRange == null) {
+            // Same policy as users: answering with a name search or every group would answer another question
+            throw new ScimException("Filter '" + filter + "' is not supported: use displayName eq, a meta.lastModified range, "
+                    + "or id eq ... and members[value eq ...].", HttpStatus.BAD_REQUEST, "invalidFilter");
         }
 
-
-        List<GroupRepresentation> kcGroups = keycloakService.getGroups(firstResult, count, searchFilter);
-        List<ScimGroup> scimGroups = new ArrayList<>();
+        // Served from the cached hierarchy: Keycloak only lists top-level groups, and subgroups are
+        // groups in their own right for SCIM clients.
+        List<GroupRepresentation> matching = new ArrayList<>();
+        for (GroupRepresentation kcGroup : groupHierarchy.all()) {
+            if (changedRange != null ? changedRange.contains(ModificationStamps.lastModified(kcGroup))
+                    : displayName == null || displayName.equalsIgnoreCase(kcGroup.getName())) {
+                matching.add(kcGroup);
+            }
+        }
+        List<GroupRepresentation> kcGroups = firstResult >= matching.size()
+                ? List.of() : matching.subList(firstResult, Math.min(matching.size(), firstResult + count));
+        List<ScimGroup> scimGroups = new ArrayList<>(kcGroups.size());
         for(GroupRepresentation kcGroup : kcGroups) {
-            List<UserRepresentation> members = keycloakService.getGroupMembers(kcGroup.getId(), 0, 10); // Fetch a few members for preview
-            scimGroups.add(groupMapper.toScimGroup(kcGroup, members));
+            scimGroups.add(toScimGroup(kcGroup, includeMembers ? listMembersInlineMax : 0));
         }
-        
-        long totalResults = keycloakService.countGroups(searchFilter);
-
-        Map<String, Object> response = new HashMap<>();
-        response.put("schemas", Collections.singletonList("urn:ietf:params:scim:api:messages:2.0:ListResponse"));
-        response.put("totalResults", totalResults);
-        response.put("startIndex", startIndex);
-        response.put("itemsPerPage", scimGroups.size());
-        response.put("Resources", scimGroups);
-        return response;
+
+        long totalResults = matching.size();
+
+        return new ListResponse<>(totalResults, startIndex, scimGroups);
+    }
+
+    /**
+     * {@code id eq "G" and members[value eq "U"]}: the group if the user is a direct member of it,
+     * else an empty list. Answered from the membership index, or with one targeted check in the store
+     * while the index is not built or the group is not cached yet, instead of listing groups and their members.
+     */
+    private ListResponse<ScimGroup> probeMembership(int startIndex, int count, MembershipProbe probe, boolean includeMembers) {
+        Optional<GroupRepresentation> kcGroup = groupHierarchy.get(probe.groupId());
+        boolean member;
+        if (kcGroup.isPresent()) {
+            member = membershipIndex.isMember(probe.memberId(), probe.groupId())
+                    .orElseGet(() -> identityBackend.isGroupMember(probe.memberId(), probe.groupId()));
+        } else {
+            // Possibly created in Keycloak since the hierarchy was loaded, so the membership index cannot know it either
+            kcGroup = identityBackend.getGroupById(probe.groupId());
+            kcGroup.ifPresent(groupHierarchy::put);
+            member = kcGroup.isPresent() && identityBackend.isGroupMember(probe.memberId(), probe.groupId());
+        }
+        List<ScimGroup> scimGroups = member && startIndex <= 1 && count > 0
+                ? List.of(toScimGroup(kcGroup.orElseThrow(), includeMembers ? listMembersInlineMax : 0))
+                : List.of();
+        return new ListResponse<>(member ? 1 : 0, startIndex, scimGroups);
+    }
+
+    /**
+     * A page of a group's members: its subgroups (type Group) first, then its users. Pages follow
+     * {@code cursor} when given, else start at the 1-based {@code startIndex}; the response carries
+     * a {@code nextCursor} while more members remain. The member count is taken on the first page and
+     * carried in the cursor, so later pages cost one member lookup each.
+     */
+    public ListResponse<ScimGroup.Member> getGroupMembers(String id, int startIndex, int count, String cursor) {
+        if (groupHierarchy.get(id).isEmpty() && identityBackend.getGroupById(id).isEmpty()) {
+            throw new ScimException("Group not found with id: " + id, HttpStatus.NOT_FOUND, "noTarget");
+        }
+        List<GroupRepresentation> subGroups = groupHierarchy.children(id);
+        int offset;
+        long totalResults;
+        if (cursor != null) {
+            long[] position = decodeCursor(cursor);
+            offset = (int) position[0];
+            totalResults = position[1];
+        } else {
+            offset = Math.max(0, startIndex - 1);
+            totalResults = subGroups.size() + identityBackend.countGroupMembers(id);
+        }
+
+        List<ScimGroup.Member> members = new ArrayList<>(count);
+        for (int i = offset; i < subGroups.size() && members.size() < count; i++) {
+            members.add(groupMapper.toScimMember(subGroups.get(i)));
+        }
+        boolean more = offset + count < subGroups.size();
+        if (!more && count > 0) {
+            // One extra user tells whether another page follows
+            int remaining = count - members.size();
+            List<UserRepresentation> users = identityBackend.getGroupMembers(id, Math.max(0, offset - subGroups.size()), remaining + 1);
+            more = users.size() > remaining;
+            for (int i = 0, n = Math.min(users.size(), remaining); i < n; i++) {
+                members.add(groupMapper.toScimMember(users.get(i)));
+            }
+        }
+
+        ListResponse<ScimGroup.Member> page = new ListResponse<>(Math.max(totalResults, offset + members.size()), offset + 1, members);
+        if (more) {
+            page.setNextCursor(encodeCursor(offset + members.size(), totalResults));
+        }
+        return page;
+    }
+
+    /**
+     * The group with its members inlined, unless it has more than {@code inlineMax}: then (as with
+     * {@code inlineMax} 0) members are left out rather than truncated, and clients page through them
+     * with {@link #getGroupMembers}.
+     */
+    private ScimGroup toScimGroup(GroupRepresentation kcGroup, int inlineMax) {
+        String id = kcGroup.getId();
+        List<GroupRepresentation> subGroups = inlineMax > 0 ? groupHierarchy.children(id) : List.of();
+        int userMax = inlineMax - subGroups.size();
+        List<UserRepresentation> members = inlineMax > 0 && userMax >= 0
+                ? identityBackend.getGroupMembers(id, 0, (int) Math.min(Integer.MAX_VALUE, userMax + 1L))
+                : List.of();
+        if (inlineMax <= 0 || userMax < 0 || members.size() > userMax) {
+            ScimGroup scimGroup = groupMapper.toScimGroup(kcGroup, List.of(), List.of());
+            scimGroup.setMembers(null);
+            return scimGroup;
+        }
+        return groupMapper.toScimGroup(kcGroup, members, subGroups);
+    }
+
+    // Opaque to clients: base64url of "<offset>.<totalResults>". Keycloak pages members by offset only.
+    private static String encodeCursor(int offset, long totalResults) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((offset + "." + totalResults).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static long[] decodeCursor(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII).split("\\.");
+            if (parts.length == 2) {
+                long offset = Long.parseLong(parts[0]);
+                long totalResults = Long.parseLong(parts[1]);
+                if (offset >= 0 && offset <= Integer.MAX_VALUE && totalResults >= 0) {
+                    return new long[] {offset, totalResults};
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // not base64 or not numbers
+        }
+        throw new ScimException("Invalid cursor '" + cursor + "'.", HttpStatus.BAD_REQUEST, "invalidCursor");
+    }
+
+    // --- Group members (Keycloak subgroups) ---
+
+    private static boolean isGroupMember(String type, String value) {
+        return "Group".equalsIgnoreCase(type) && StringUtils.isNotBlank(value);
+    }
+
+    /** Makes {@code memberId} a subgroup of {@code groupId}; a no-op if it already is. Returns whether it moved. */
+    private boolean addSubGroup(String groupId, String memberId) {
+        if (groupHierarchy.get(memberId).isEmpty()) {
+            // Possibly created in Keycloak since the hierarchy was loaded
+            GroupRepresentation member = identityBackend.getGroupById(memberId)
+                    .orElseThrow(() -> new ScimException("Group member with ID " + memberId + " not found.", HttpStatus.BAD_REQUEST, "invalidValue"));
+            groupHierarchy.put(member);
+        }
+        String currentParent = groupHierarchy.parentId(memberId);
+        if (groupId.equals(currentParent)) {
+            return false;
+        }
+        if (currentParent != null) {
+            // Keycloak groups have a single parent; moving it silently would drop the other membership
+            throw new ScimException("Group " + memberId + " is already a member of group " + currentParent
+                    + "; a group can be a member of only one group.", HttpStatus.BAD_REQUEST, "invalidValue");
+        }
+        groupHierarchy.move(memberId, groupId, () -> identityBackend.moveGroup(memberId, groupId));
+        return true;
+    }
+
+    /** Makes a subgroup of {@code groupId} top-level again; a no-op if it is not one. Returns whether it moved. */
+    private boolean removeSubGroup(String groupId, String memberId) {
+        if (!groupId.equals(groupHierarchy.parentId(memberId))) {
+            return false;
+        }
+        groupHierarchy.move(memberId, null, () -> identityBackend.moveGroup(memberId, null));
+        return true;
     }
 }
\ No newline at end of file
@@ -1,7 +1,15 @@
 package com.learnhai.scim.service;
 
+import com.learnhai.scim.backend.IdentityBackend;
 import com.learnhai.scim.exception.ScimException;
+import com.learnhai.scim.filter.Filter;
+import com.learnhai.scim.filter.FilterParser;
+import com.learnhai.scim.filter.LastModifiedRange;
+import com.learnhai.scim.index.UserKeyIndex;
+import com.learnhai.scim.mapper.ModificationStamps;
+import com.learnhai.scim.mapper.RepresentationChanges;
 import com.learnhai.scim.mapper.UserMapper;
+import com.learnhai.scim.model.scim.ListResponse;
 import com.learnhai.scim.model.scim.ScimUser;
 import org.keycloak.representations.idm.CredentialRepresentation;
 import org.keycloak.representations.idm.UserRepresentation;
@@ -11,6 +19,8 @@ import org.springframework.stereotype.Service;
 import org.apache.commons.lang3.StringUtils;
 
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -21,19 +31,31 @@ import java.util.stream.Collectors;
 @Service
 public class ScimUserService {
 
-    private final KeycloakService keycloakService;
+    private final IdentityBackend identityBackend;
     private final UserMapper userMapper;
+    private final MembershipIndex membershipIndex;
+    private final UserChangeIndex changeIndex;
+    private final UserKeyIndex keyIndex;
+    private final WriteOutcomes writeOutcomes;
+    private final IdempotencyService idempotencyService;
 
     @Autowired
-    public ScimUserService(KeycloakService keycloakService, UserMapper userMapper) {
-        this.keycloakService = keycloakService;
+    public ScimUserService(IdentityBackend identityBackend, UserMapper userMapper, MembershipIndex membershipIndex,
+                           UserChangeIndex changeIndex, UserKeyIndex keyIndex, WriteOutcomes writeOutcomes,
+                           IdempotencyService idempotencyService) {
+        this.identityBackend = identityBackend;
         this.userMapper = userMapper;
+        this.membershipIndex = membershipIndex;
+        this.changeIndex = changeIndex;
+        this.keyIndex = keyIndex;
+        this.writeOutcomes = writeOutcomes;
+        this.idempotencyService = idempotencyService;
     }
 
     public ScimUser createUser(ScimUser scimUser) {
         // Check for conflicts by username
         if (StringUtils.isNotBlank(scimUser.getUserName())) {
-            keycloakService.getUserByUsername(scimUser.getUserName()).ifPresent(existing -> {
+            keyIndex.findByUserName(scimUser.getUserName()).ifPresent(existing -> {
                 throw new ScimException("User with username '" + scimUser.getUserName() + "' already exists.", HttpStatus.CONFLICT, "uniqueness");
             });
         }
@@ -43,7 +65,7 @@ public class ScimUserService {
                 .filter(e -> StringUtils.isNotBlank(e.getValue()))
                 .findFirst() // Check primary or first email
                 .ifPresent(email -> {
-                    List<UserRepresentation> usersWithEmail = keycloakService.findUsersByEmail(email.getValue());
+                    List<UserRepresentation> usersWithEmail = identityBackend.findUsersByEmail(email.getValue());
                     if (!usersWithEmail.isEmpty()) {
                          throw new ScimException("User with email '" + email.getValue() + "' already exists.", HttpStatus.CONFLICT, "uniqueness");
                     }
@@ -52,6 +74,7 @@ public class ScimUserService {
 
 
         UserRepresentation kcUserToCreate = userMapper.toKeycloakUser(scimUser, null);
+        ModificationStamps.stamp(kcUserToCreate, ModificationStamps.now());
 
         // Handle password if provided
         if (StringUtils.isNotBlank(scimUser.getPassword())) {
@@ -62,24 +85,34 @@ public class ScimUserService {
             kcUserToCreate.setCredentials(Collections.singletonList(credential));
         }
 
-        String userId = keycloakService.createUser(kcUserToCreate);
-        UserRepresentation createdKcUser = keycloakService.getUserById(userId)
+        String userId = identityBackend.createUser(kcUserToCreate);
+        UserRepresentation createdKcUser = identityBackend.getUserById(userId)
                 .orElseThrow(() -> new ScimException("Failed to retrieve created user: " + userId, HttpStatus.INTERNAL_SERVER_ERROR));
+        changeIndex.modified(userId, ModificationStamps.lastModified(createdKcUser));
+        keyIndex.indexed(userId, createdKcUser);
         return userMapper.toScimUser(createdKcUser);
     }
 
     public Optional<ScimUser> getUserById(String id) {
-        return keycloakService.getUserById(id)
-                .map(userMapper::toScimUser);
+        return identityBackend.getUserById(id)
+                .map(kcUser -> withGroups(List.of(userMapper.toScimUser(kcUser))).get(0));
     }
 
     public ScimUser replaceUser(String id, ScimUser scimUser) {
-        UserRepresentation existingKcUser = keycloakService.getUserById(id)
+        UserRepresentation existingKcUser = identityBackend.getUserById(id)
                 .orElseThrow(() -> new ScimException("User not found with id: " + id, HttpStatus.NOT_FOUND));
 
+        // IdPs resend unchanged users; the stored one is then the result, with no write and no re-read
+        UserRepresentation kcUserToUpdate = userMapper.toKeycloakUser(scimUser, RepresentationChanges.copy(existingKcUser));
+        List<String> changed = RepresentationChanges.changed(existingKcUser, kcUserToUpdate);
+        if (changed.isEmpty()) {
+            writeOutcomes.suppressed("User", "replace");
+            return withGroups(List.of(userMapper.toScimUser(existingKcUser))).get(0);
+        }
+
         // Username uniqueness check if it's being changed
         if (StringUtils.isNotBlank(scimUser.getUserName()) && !scimUser.getUserName().equals(existingKcUser.getUsername())) {
-            keycloakService.getUserByUsername(scimUser.getUserName()).ifPresent(conflictingUser -> {
+            keyIndex.findByUserName(scimUser.getUserName()).ifPresent(conflictingUser -> {
                 if (!conflictingUser.getId().equals(id)) { // Ensure it's not the same user
                     throw new ScimException("Username '" + scimUser.getUserName() + "' is already taken by another user.", HttpStatus.CONFLICT, "uniqueness");
                 }
@@ -94,7 +127,7 @@ public class ScimUserService {
                 .findFirst()
                 .ifPresent(newPrimaryEmail -> {
                     if (!newPrimaryEmail.getValue().equalsIgnoreCase(existingKcUser.getEmail())) {
-                        List<UserRepresentation> usersWithEmail = keycloakService.findUsersByEmail(newPrimaryEmail.getValue());
+                        List<UserRepresentation> usersWithEmail = identityBackend.findUsersByEmail(newPrimaryEmail.getValue());
                         usersWithEmail.stream()
                             .filter(u -> !u.getId().equals(id)) // Check other users
                             .findFirst()
@@ -106,17 +139,23 @@ public class ScimUserService {
         }
 
 
-        UserRepresentation kcUserToUpdate = userMapper.toKeycloakUser(scimUser, existingKcUser);
-        keycloakService.updateUser(id, kcUserToUpdate);
+        UserRepresentation update = RepresentationChanges.update(kcUserToUpdate, changed);
+        Instant modifiedAt = ModificationStamps.now();
+        ModificationStamps.stamp(update, modifiedAt);
+        identityBackend.updateUser(id, update);
+        writeOutcomes.written("User", "replace");
+        changeIndex.modified(id, modifiedAt);
 
-        UserRepresentation updatedKcUser = keycloakService.getUserById(id)
+        UserRepresentation updatedKcUser = identityBackend.getUserById(id)
                 .orElseThrow(() -> new ScimException("Failed to retrieve updated user: " + id, HttpStatus.INTERNAL_SERVER_ERROR));
-        return userMapper.toScimUser(updatedKcUser);
+        keyIndex.indexed(id, updatedKcUser); // keys it no longer has go stale and are dropped when looked up
+        return withGroups(List.of(userMapper.toScimUser(updatedKcUser))).get(0);
     }
 
     public ScimUser patchUser(String id, Map<String, Object> patchRequest) {
-        UserRepresentation existingKcUser = keycloakService.getUserById(id)
+        UserRepresentation existingKcUser = identityBackend.getUserById(id)
                 .orElseThrow(() -> new ScimException("User not found with id: " + id, HttpStatus.NOT_FOUND));
+        UserRepresentation kcUserToPatch = RepresentationChanges.copy(existingKcUser);
 
         // TODO: Implement SCIM Patch Operations (RFC 7644, Section 3.5.2)
         // This is a complex part. You need to parse "Operations" array,
@@ -138,7 +177,7 @@ public class ScimUserService {
             if ("replace".equalsIgnoreCase(op)) {
                 if ("active".equalsIgnoreCase(path)) {
                     if (value instanceof Boolean) {
-                        existingKcUser.setEnabled((Boolean) value);
+                        kcUserToPatch.setEnabled((Boolean) value);
                         userModified = true;
                     } else {
                         throw new ScimException("Invalid value for 'active'. Boolean expected.", HttpStatus.BAD_REQUEST, "invalidValue");
@@ -146,13 +185,13 @@ public class ScimUserService {
                 } else if (path != null && (path.equalsIgnoreCase("userName"))){
                      if (value instanceof String && StringUtils.isNotBlank((String)value)) {
                         String newUsername = (String) value;
-                        if (!newUsername.equals(existingKcUser.getUsername())) {
-                             keycloakService.getUserByUsername(newUsername).ifPresent(conflictingUser -> {
+                        if (!newUsername.equals(kcUserToPatch.getUsername())) {
+                             keyIndex.findByUserName(newUsername).ifPresent(conflictingUser -> {
                                 if (!conflictingUser.getId().equals(id)) {
                                     throw new ScimException("Username '" + newUsername + "' is already taken.", HttpStatus.CONFLICT, "uniqueness");
                                 }
                             });
-                            existingKcUser.setUsername(newUsername);
+                            kcUserToPatch.setUsername(newUsername);
                             userModified = true;
                         }
                     } else {
@@ -163,8 +202,8 @@ public class ScimUserService {
                 // Example for primary email (simplified, assumes single email or one primary):
                 else if (path != null && (path.equalsIgnoreCase("emails[primary eq true].value") || path.equalsIgnoreCase("emails[type eq \"work\"].value"))) {
                     if (value instanceof String) {
-                        existingKcUser.setEmail((String) value);
-                        existingKcUser.setEmailVerified(true); // Assume verified on change
+                        kcUserToPatch.setEmail((String) value);
+                        kcUserToPatch.setEmailVerified(true); // Assume verified on change
                         userModified = true;
                     }
                 }
@@ -179,50 +218,135 @@ public class ScimUserService {
             }
         }
 
-        if (userModified) {
-            keycloakService.updateUser(id, existingKcUser);
+        // Operations may set what the user already has; only what differs is written
+        List<String> changed = userModified ? RepresentationChanges.changed(existingKcUser, kcUserToPatch) : List.of();
+        if (changed.isEmpty()) {
+            writeOutcomes.suppressed("User", "patch");
+            return withGroups(List.of(userMapper.toScimUser(existingKcUser))).get(0);
         }
+        UserRepresentation update = RepresentationChanges.update(kcUserToPatch, changed);
+        Instant modifiedAt = ModificationStamps.now();
+        ModificationStamps.stamp(update, modifiedAt);
+        identityBackend.updateUser(id, update);
+        writeOutcomes.written("User", "patch");
+        changeIndex.modified(id, modifiedAt);
 
-        UserRepresentation patchedKcUser = keycloakService.getUserById(id)
+        UserRepresentation patchedKcUser = identityBackend.getUserById(id)
                 .orElseThrow(() -> new ScimException("Failed to retrieve patched user: " + id, HttpStatus.INTERNAL_SERVER_ERROR));
-        return userMapper.toScimUser(patchedKcUser);
+        keyIndex.indexed(id, patchedKcUser);
+        return withGroups(List.of(userMapper.toScimUser(patchedKcUser))).get(0);
     }
 
     public void deleteUser(String id) {
-        keycloakService.getUserById(id)
+        UserRepresentation existingKcUser = identityBackend.getUserById(id)
             .orElseThrow(() -> new ScimException("User not found with id: " + id, HttpStatus.NOT_FOUND, "noTarget")); // Provide "noTarget"
-        keycloakService.deleteUser(id);
+        identityBackend.deleteUser(id);
+        membershipIndex.userDeleted(id);
+        changeIndex.deleted(id);
+        keyIndex.removed(existingKcUser);
+        idempotencyService.forget(id); // a retried create with the same externalId must create it again
     }
 
-    public Map<String, Object> getUsers(int startIndex, int count, String filter) {
+    public ListResponse<ScimUser> getUsers(int startIndex, int count, String filter) {
         // SCIM startIndex is 1-based, Keycloak is 0-based
         int firstResult = Math.max(0, startIndex - 1);
         String searchString = null;
 
-        // TODO: Implement robust SCIM filter parsing (RFC 7644, Section 3.4.2.2)
-        // This is a very simplified filter example for "userName eq value" or "email eq value"
+        // Keycloak's user search is a single term, so only equality on userName/email(s) narrows the query
         if (StringUtils.isNotBlank(filter)) {
-            if (filter.toLowerCase().startsWith("username eq ")) {
-                searchString = filter.substring("username eq ".length()).replace("\"", "").trim();
-            } else if (filter.toLowerCase().startsWith("email eq ")) {
-                 searchString = filter.substring("email eq ".length()).replace("\"", "").trim();
+            Filter parsed = FilterParser.parse(filter);
+            LastModifiedRange changedRange = LastModifiedRange.of(parsed);
+            if (changedRange != null) {
+                return getChangedUsers(startIndex, count, changedRange);
+            }
+            String externalId = parsed.equalityValue("externalId");
+            if (externalId != null && keyIndex.isEnabled()) {
+                return getUserByExternalId(startIndex, count, externalId);
+            }
+            searchString = parsed.equalityValue("userName");
+            if (searchString == null) {
+                searchString = parsed.equalityValue("email");
+            }
+            if (searchString == null && parsed instanceof Filter.Comparison comparison
+                    && comparison.operator() == Filter.Operator.EQ && comparison.value() != null
+                    && (comparison.path().is("emails") || comparison.path().is("emails", "value"))) {
+                searchString = comparison.value().toString();
+            }
+            if (searchString == null) {
+                // Listing every user instead would hand a delta sync, or a client looking for one user, the whole realm
+                throw new ScimException("Filter '" + filter + "' is not supported: use userName, email(s), "
+                        + (keyIndex.isEnabled() ? "externalId " : "") + "eq, or a meta.lastModified range.",
+                        HttpStatus.BAD_REQUEST, "invalidFilter");
             }
-            // Add more filter parsing here
         }
 
-        List<UserRepresentation> kcLusers = keycloakService.getUsers(firstResult, count, searchString);
-        List<ScimUser> scimUsers = kcLusers.stream()
-                .map(userMapper::toScimUser)
-                .collect(Collectors.toList());
+        List<UserRepresentation> kcLusers = identityBackend.getUsers(firstResult, count, searchString);
+        List<ScimUser> scimUsers = new ArrayList<>(kcLusers.size());
+        for (UserRepresentation kcUser : kcLusers) {
+            scimUsers.add(userMapper.toScimUser(kcUser));
+        }
+        withGroups(scimUsers); // from the membership index, one lookup for the whole page
 
-        long totalResults = keycloakService.countUsers(searchString); // Get total count matching filter
+        long totalResults = identityBackend.countUsers(searchString); // Get total count matching filter
 
-        Map<String, Object> response = new HashMap<>();
-        response.put("schemas", Collections.singletonList("urn:ietf:params:scim:api:messages:2.0:ListResponse"));
-        response.put("totalResults", totalResults);
-        response.put("startIndex", startIndex);
-        response.put("itemsPerPage", scimUsers.size());
-        response.put("Resources", scimUsers);
-        return response;
+        return new ListResponse<>(totalResults, startIndex, scimUsers);
+    }
+
+    // Sets User.groups from the membership index; left unset while the index is not available
+    private List<ScimUser> withGroups(List<ScimUser> scimUsers) {
+        if (scimUsers.isEmpty()) {
+            return scimUsers;
+        }
+        List<String> userIds = new ArrayList<>(scimUsers.size());
+        scimUsers.forEach(scimUser -> userIds.add(scimUser.getId()));
+        membershipIndex.memberships(userIds).ifPresent(memberships -> {
+            for (ScimUser scimUser : scimUsers) {
+                MembershipIndex.Memberships membership = memberships.get(scimUser.getId());
+                if (membership == null || membership.direct().isEmpty()) {
+                    continue;
+                }
+                List<ScimUser.Group> groups = new ArrayList<>(membership.direct().size() + membership.indirect().size());
+                membership.direct().forEach(group -> groups.add(userMapper.toScimUserGroup(group, "direct")));
+                membership.indirect().forEach(group -> groups.add(userMapper.toScimUserGroup(group, "indirect")));
+                scimUser.setGroups(groups);
+            }
+        });
+        return scimUsers;
+    }
+
+    // At most one user, from the key index: Keycloak cannot search by attribute value in one call
+    private ListResponse<ScimUser> getUserByExternalId(int startIndex, int count, String externalId) {
+        Optional<UserRepresentation> kcUser = keyIndex.findByExternalId(externalId);
+        List<ScimUser> scimUsers = new ArrayList<>(1);
+        if (kcUser.isPresent() && startIndex <= 1 && count > 0) {
+            scimUsers.add(userMapper.toScimUser(kcUser.get()));
+        }
+        withGroups(scimUsers);
+        return new ListResponse<>(kcUser.isPresent() ? 1 : 0, startIndex, scimUsers);
+    }
+
+    // Delta sync: users whose meta.lastModified is in range, oldest change first, from the change index.
+    // Users deleted in Keycloak directly are dropped from the index as they are met and the page is
+    // refilled behind them, so the page and totalResults agree.
+    private ListResponse<ScimUser> getChangedUsers(int startIndex, int count, LastModifiedRange range) {
+        int first = Math.max(0, startIndex - 1);
+        List<ScimUser> scimUsers = new ArrayList<>(Math.min(count, 1000));
+        UserChangeIndex.Page page;
+        boolean gone;
+        do {
+            page = changeIndex.changed(range, first + scimUsers.size(), count - scimUsers.size());
+            gone = false;
+            for (String userId : page.userIds()) {
+                Optional<UserRepresentation> kcUser = identityBackend.getUserById(userId);
+                if (kcUser.isPresent()) {
+                    scimUsers.add(userMapper.toScimUser(kcUser.get()));
+                } else {
+                    changeIndex.deleted(userId);
+                    gone = true;
+                }
+            }
+        } while (gone && scimUsers.size() < count);
+        withGroups(scimUsers);
+        return new ListResponse<>(page.totalResults(), startIndex, scimUsers);
     }
-}
\ No newline at end of file
+}
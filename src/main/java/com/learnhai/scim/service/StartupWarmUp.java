@@ -0,0 +1,197 @@
+package com.learnhai.scim.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnhai.scim.backend.IdentityBackend;
+import com.learnhai.scim.filter.FilterParser;
+import com.learnhai.scim.mapper.GroupMapper;
+import com.learnhai.scim.mapper.UserMapper;
+import com.learnhai.scim.model.scim.ListResponse;
+import com.learnhai.scim.model.scim.ScimGroup;
+import com.learnhai.scim.model.scim.ScimUser;
+import com.learnhai.scim.schema.ScimSchemaValidator;
+import com.learnhai.scim.tenant.Tenant;
+import com.learnhai.scim.tenant.TenantContext;
+import com.learnhai.scim.tenant.TenantRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Warm-up run before the readiness probe turns green, so the first requests after a deploy do not pay
+ * for it: per tenant, concurrent Keycloak calls fetch the admin token and open pooled connections;
+ * synthetic users and groups are run through the mappers, schema validation and JSON codecs until the
+ * JIT has compiled them; optionally, every group tree is loaded and the membership index build started.
+ * <p>
+ * Runs in the {@link ApplicationReadyEvent} listener, and Spring Boot only reports readiness
+ * ({@code /actuator/health/readiness}) once those listeners return. Steps are best effort: failures are
+ * logged, and after {@code scim.warm-up.timeout-ms} the bridge is declared ready regardless.
+ */
+@Component
+@Slf4j
+public class StartupWarmUp {
+
+    private final IdentityBackend identityBackend;
+    private final TenantRegistry tenantRegistry;
+    private final UserMapper userMapper;
+    private final GroupMapper groupMapper;
+    private final ScimSchemaValidator schemaValidator;
+    private final ObjectMapper objectMapper;
+    private final GroupHierarchyCache groupHierarchy;
+    private final MembershipIndex membershipIndex;
+    private final boolean enabled;
+    private final int connections;
+    private final int iterations;
+    private final boolean prefetchGroups;
+    private final long timeoutMs;
+
+    @Autowired
+    public StartupWarmUp(IdentityBackend identityBackend, TenantRegistry tenantRegistry,
+                         UserMapper userMapper, GroupMapper groupMapper, ScimSchemaValidator schemaValidator,
+                         ObjectMapper objectMapper, GroupHierarchyCache groupHierarchy, MembershipIndex membershipIndex,
+                         @Value("${scim.warm-up.enabled:true}") boolean enabled,
+                         @Value("${scim.warm-up.connections:4}") int connections,
+                         @Value("${scim.warm-up.iterations:5000}") int iterations,
+                         @Value("${scim.warm-up.prefetch-groups:false}") boolean prefetchGroups,
+                         @Value("${scim.warm-up.timeout-ms:30000}") long timeoutMs) {
+        this.identityBackend = identityBackend;
+        this.tenantRegistry = tenantRegistry;
+        this.userMapper = userMapper;
+        this.groupMapper = groupMapper;
+        this.schemaValidator = schemaValidator;
+        this.objectMapper = objectMapper;
+        this.groupHierarchy = groupHierarchy;
+        this.membershipIndex = membershipIndex;
+        this.enabled = enabled;
+        this.connections = connections;
+        this.iterations = iterations;
+        this.prefetchGroups = prefetchGroups;
+        this.timeoutMs = timeoutMs;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        long started = System.nanoTime();
+        ExecutorService executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "scim-warm-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<CompletableFuture<Void>> steps = new ArrayList<>();
+            for (Tenant tenant : tenantRegistry.all()) {
+                // Caches of the unrouted default tenant are keyed by an unbound context
+                TenantContext context = tenantRegistry.isEnabled() ? new TenantContext(tenant.getId(), TenantContext.SCIM_PATH) : null;
+                steps.add(step("Keycloak connections of tenant " + tenant.getId(), executor, context, () -> connect(executor, context)));
+                if (prefetchGroups) {
+                    steps.add(step("group prefetch of tenant " + tenant.getId(), executor, context, this::prefetchGroups));
+                }
+            }
+            steps.add(step("mapping and serialization", executor, null, this::exerciseCodecs));
+            CompletableFuture.allOf(steps.toArray(CompletableFuture[]::new)).get(timeoutMs, TimeUnit.MILLISECONDS);
+            log.info("Warm-up finished in {} ms.", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (TimeoutException e) {
+            log.warn("Warm-up still running after {} ms; accepting traffic anyway.", timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.warn("Warm-up failed; accepting traffic anyway.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static CompletableFuture<Void> step(String name, ExecutorService executor, TenantContext context, Runnable action) {
+        return CompletableFuture.runAsync(() -> {
+            long started = System.nanoTime();
+            try {
+                TenantContext.callAs(context, () -> {
+                    action.run();
+                    return null;
+                });
+                log.debug("Warm-up of {} took {} ms.", name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            } catch (RuntimeException e) {
+                log.warn("Warm-up of {} failed: {}", name, e.getMessage());
+            }
+        }, executor);
+    }
+
+    // The first call fetches the admin token; concurrent ones each open a pooled connection
+    private void connect(ExecutorService executor, TenantContext context) {
+        identityBackend.countUsers(null);
+        List<CompletableFuture<Long>> calls = new ArrayList<>();
+        for (int i = 1; i < connections; i++) {
+            calls.add(CompletableFuture.supplyAsync(() -> TenantContext.callAs(context, () -> identityBackend.countUsers(null)), executor));
+        }
+        calls.forEach(CompletableFuture::join);
+    }
+
+    private void prefetchGroups() {
+        groupHierarchy.all();
+        membershipIndex.memberships(List.of()); // starts the background build
+    }
+
+    private void exerciseCodecs() {
+        List<ScimUser> page = new ArrayList<>();
+        for (int i = 0; i < iterations; i++) {
+            UserRepresentation kcUser = syntheticUser(i);
+            ScimUser user = userMapper.toScimUser(kcUser);
+            JsonNode json = objectMapper.valueToTree(user);
+            ScimUser parsed = schemaValidator.readResource(ScimSchemaValidator.USER, json, ScimUser.class);
+            userMapper.toKeycloakUser(parsed, kcUser);
+            FilterParser.parse("userName eq \"" + kcUser.getUsername() + "\"");
+
+            GroupRepresentation kcGroup = new GroupRepresentation();
+            kcGroup.setId("warm-up-group-" + i);
+            kcGroup.setName("Warm-up group " + i);
+            ScimGroup group = groupMapper.toScimGroup(kcGroup, List.of(kcUser));
+            groupMapper.toKeycloakGroup(schemaValidator.readResource(ScimSchemaValidator.GROUP, objectMapper.valueToTree(group), ScimGroup.class), null);
+
+            page.add(user);
+            if (page.size() == 100) {
+                try {
+                    objectMapper.writeValueAsBytes(new ListResponse<>(iterations, 1, page));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                page = new ArrayList<>();
+            }
+        }
+    }
+
+    private static UserRepresentation syntheticUser(int i) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId("warm-up-" + i);
+        user.setUsername("warm-up-" + i + "@example.com");
+        user.setEmail("warm-up-" + i + "@example.com");
+        user.setFirstName("Warm");
+        user.setLastName("Up " + i);
+        user.setEnabled(true);
+        user.setCreatedTimestamp(1_700_000_000_000L + i);
+        user.setAttributes(new HashMap<>(Map.of(
+                "externalId", List.of("ext-" + i),
+                "displayName", List.of("Warm Up " + i),
+                "department", List.of("Engineering"),
+                "employeeNumber", List.of(Integer.toString(i)))));
+        return user;
+    }
+}
@@ -0,0 +1,230 @@
+package com.learnhai.scim.service;
+
+import com.learnhai.scim.backend.IdentityBackend;
+import com.learnhai.scim.filter.LastModifiedRange;
+import com.learnhai.scim.mapper.ModificationStamps;
+import com.learnhai.scim.tenant.TenantContext;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Users ordered by {@code meta.lastModified}, one timeline per tenant, so
+ * {@code filter=meta.lastModified gt "..."} finds what changed since a sync watermark without
+ * reading every user.
+ * <p>
+ * A timeline is a sorted snapshot from a full scan (parallel primitive and id arrays, binary-searched)
+ * plus an overlay of the writes made through the bridge since, which takes precedence over the
+ * snapshot. The first delta query of a tenant waits for the scan; later scans run every
+ * {@code scim.users.change-index.refresh-interval-ms} and fold the overlay in, which is also when
+ * users created in Keycloak directly or written by another bridge instance show up.
+ */
+@Service
+@Slf4j
+public class UserChangeIndex {
+
+    private static final int PAGE_SIZE = 100;
+    private static final long DELETED = Long.MIN_VALUE;
+
+    private static final Comparator<Stamp> ORDER = Comparator.comparingLong(Stamp::millis).thenComparing(Stamp::id);
+
+    private final IdentityBackend identityBackend;
+    private final long refreshIntervalNanos;
+    private final Map<String, Timeline> timelines = new ConcurrentHashMap<>(); // by tenant
+
+    /** One page of matching user ids, oldest change first, and how many match in all. */
+    public record Page(long totalResults, List<String> userIds) {
+    }
+
+    private record Stamp(long millis, String id, long recordedAtNanos) {
+    }
+
+    private record Snapshot(long[] millis, String[] ids) {
+    }
+
+    private static final class Timeline {
+        final ReentrantLock loadLock = new ReentrantLock();
+        volatile Snapshot snapshot;          // null until the first scan completes
+        volatile boolean loading;
+        volatile long loadedAtNanos;
+        // Guarded by this: writes since the snapshot, by id and in timeline order (deletes only by id)
+        final Map<String, Stamp> overlayById = new HashMap<>();
+        final TreeSet<Stamp> overlay = new TreeSet<>(ORDER);
+    }
+
+    @Autowired
+    public UserChangeIndex(IdentityBackend identityBackend,
+                           @Value("${scim.users.change-index.refresh-interval-ms:3600000}") long refreshIntervalMs) {
+        this.identityBackend = identityBackend;
+        this.refreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(refreshIntervalMs);
+    }
+
+    // --- Writes made through the bridge, after the store accepted them ---
+
+    public void modified(String userId, Instant lastModified) {
+        record(userId, lastModified == null ? 0 : lastModified.toEpochMilli());
+    }
+
+    public void deleted(String userId) {
+        record(userId, DELETED);
+    }
+
+    /** Rescans on the next query, e.g. when changes made in Keycloak directly may have been missed. */
+    public void invalidate() {
+        Timeline timeline = timelines.get(tenantKey());
+        if (timeline != null) {
+            timeline.loadedAtNanos = System.nanoTime() - refreshIntervalNanos - 1;
+        }
+    }
+
+    private void record(String userId, long millis) {
+        Timeline timeline = timelines.get(tenantKey());
+        if (timeline == null || (timeline.snapshot == null && !timeline.loading)) {
+            return; // never queried: the first scan will see this write
+        }
+        Stamp stamp = new Stamp(millis, userId, System.nanoTime());
+        synchronized (timeline) {
+            Stamp previous = timeline.overlayById.put(userId, stamp);
+            if (previous != null) {
+                timeline.overlay.remove(previous);
+            }
+            if (millis != DELETED) {
+                timeline.overlay.add(stamp);
+            }
+        }
+    }
+
+    // --- Queries ---
+
+    /** Users whose lastModified falls in {@code range}, skipping {@code first} and returning up to {@code max}. */
+    public Page changed(LastModifiedRange range, int first, int max) {
+        Timeline timeline = timeline();
+        Snapshot snapshot = timeline.snapshot;
+        long fromMillis = range.lower() == null ? Long.MIN_VALUE + 1 : range.lower().toEpochMilli();
+        long toMillis = range.upper() == null ? Long.MAX_VALUE : range.upper().toEpochMilli() + 1;
+        List<String> userIds = new ArrayList<>(Math.min(max, 1000));
+        long matched = 0;
+        synchronized (timeline) {
+            int i = lowerBound(snapshot.millis, fromMillis);
+            Iterator<Stamp> overlay = timeline.overlay.tailSet(new Stamp(fromMillis, "", 0), true).iterator();
+            Stamp next = overlay.hasNext() ? overlay.next() : null;
+            while (true) {
+                // Merge the snapshot and the overlay in timeline order
+                boolean fromSnapshot = i < snapshot.millis.length && (next == null || snapshot.millis[i] < next.millis()
+                        || (snapshot.millis[i] == next.millis() && snapshot.ids[i].compareTo(next.id()) < 0));
+                long millis;
+                String id;
+                if (fromSnapshot) {
+                    millis = snapshot.millis[i];
+                    id = snapshot.ids[i++];
+                    if (timeline.overlayById.containsKey(id)) {
+                        continue; // superseded by a later write
+                    }
+                } else if (next != null) {
+                    millis = next.millis();
+                    id = next.id();
+                    next = overlay.hasNext() ? overlay.next() : null;
+                } else {
+                    break;
+                }
+                if (millis > toMillis) {
+                    break;
+                }
+                if (range.contains(Instant.ofEpochMilli(millis))) {
+                    if (matched >= first && userIds.size() < max) {
+                        userIds.add(id);
+                    }
+                    matched++;
+                }
+            }
+        }
+        return new Page(matched, userIds);
+    }
+
+    private static int lowerBound(long[] millis, long from) {
+        int i = Arrays.binarySearch(millis, from);
+        if (i < 0) {
+            return -i - 1;
+        }
+        while (i > 0 && millis[i - 1] == from) {
+            i--;
+        }
+        return i;
+    }
+
+    // --- Loading ---
+
+    private Timeline timeline() {
+        Timeline timeline = timelines.computeIfAbsent(tenantKey(), k -> new Timeline());
+        boolean stale = System.nanoTime() - timeline.loadedAtNanos > refreshIntervalNanos;
+        if (timeline.snapshot == null) {
+            timeline.loadLock.lock(); // nothing to serve yet: wait for whoever is loading
+        } else if (!stale || !timeline.loadLock.tryLock()) {
+            return timeline;          // fresh, or being rescanned by another thread: serve what we have
+        }
+        try {
+            if (timeline.snapshot == null || System.nanoTime() - timeline.loadedAtNanos > refreshIntervalNanos) {
+                load(timeline);
+            }
+        } finally {
+            timeline.loadLock.unlock();
+        }
+        return timeline;
+    }
+
+    private void load(Timeline timeline) {
+        long started = System.nanoTime();
+        timeline.loading = true;
+        try {
+            List<Stamp> stamps = new ArrayList<>();
+            for (int first = 0; ; first += PAGE_SIZE) {
+                List<UserRepresentation> page = identityBackend.getUsers(first, PAGE_SIZE, null);
+                for (UserRepresentation user : page) {
+                    Instant lastModified = ModificationStamps.lastModified(user);
+                    stamps.add(new Stamp(lastModified == null ? 0 : lastModified.toEpochMilli(), user.getId(), 0));
+                }
+                if (page.size() < PAGE_SIZE) {
+                    break;
+                }
+            }
+            stamps.sort(ORDER);
+            long[] millis = new long[stamps.size()];
+            String[] ids = new String[stamps.size()];
+            for (int i = 0; i < ids.length; i++) {
+                millis[i] = stamps.get(i).millis();
+                ids[i] = stamps.get(i).id();
+            }
+            synchronized (timeline) {
+                timeline.snapshot = new Snapshot(millis, ids);
+                // Writes recorded before the scan started are in the snapshot now
+                timeline.overlayById.values().removeIf(stamp -> stamp.recordedAtNanos() - started < 0);
+                timeline.overlay.removeIf(stamp -> stamp.recordedAtNanos() - started < 0);
+            }
+            timeline.loadedAtNanos = System.nanoTime();
+            log.debug("Indexed lastModified of {} users in {} ms.", ids.length,
+                    TimeUnit.NANOSECONDS.toMillis(timeline.loadedAtNanos - started));
+        } finally {
+            timeline.loading = false;
+        }
+    }
+
+    private static String tenantKey() {
+        String tenant = TenantContext.tenantId();
+        return tenant != null ? tenant : "";
+    }
+}
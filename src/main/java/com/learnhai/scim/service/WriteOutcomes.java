@@ -0,0 +1,39 @@
+package com.learnhai.scim.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts user and group writes by whether they reached the store: {@code scim.writes} tagged with
+ * {@code resource}, {@code operation} and {@code outcome} ({@code written} or {@code suppressed},
+ * the latter for replaces and patches that would have changed nothing).
+ */
+@Component
+public class WriteOutcomes {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public WriteOutcomes(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void written(String resource, String operation) {
+        counter(resource, operation, "written").increment();
+    }
+
+    public void suppressed(String resource, String operation) {
+        counter(resource, operation, "suppressed").increment();
+    }
+
+    private Counter counter(String resource, String operation, String outcome) {
+        return counters.computeIfAbsent(resource + '/' + operation + '/' + outcome, key -> meterRegistry.counter("scim.writes",
+                "resource", resource, "operation", operation, "outcome", outcome));
+    }
+}
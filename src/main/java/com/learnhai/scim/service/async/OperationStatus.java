@@ -0,0 +1,53 @@
+package com.learnhai.scim.service.async;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Externally visible state of a queued provisioning operation, served by the Operations status endpoint.
+ */
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class OperationStatus {
+
+    public enum State { PENDING, RUNNING, SUCCEEDED, FAILED }
+
+    private String id;
+    private ProvisioningOperation.Type type;
+    private State state;
+    private String resourceId;
+    private String location;   // resource location once the operation succeeded (not for deletes)
+    private Integer status;    // HTTP status the synchronous call would have returned
+    private String scimType;
+    private String detail;
+    private int attempts;
+    private Instant submitted;
+    private Instant completed;
+
+    @JsonIgnore
+    public boolean isTerminal() {
+        return state == State.SUCCEEDED || state == State.FAILED;
+    }
+
+    // Workers mutate the live status object; callers outside the queue only ever see copies.
+    public synchronized OperationStatus copy() {
+        OperationStatus copy = new OperationStatus();
+        copy.setId(id);
+        copy.setType(type);
+        copy.setState(state);
+        copy.setResourceId(resourceId);
+        copy.setLocation(location);
+        copy.setStatus(status);
+        copy.setScimType(scimType);
+        copy.setDetail(detail);
+        copy.setAttempts(attempts);
+        copy.setSubmitted(submitted);
+        copy.setCompleted(completed);
+        return copy;
+    }
+}
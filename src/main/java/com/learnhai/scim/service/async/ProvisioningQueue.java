@@ -0,0 +1,512 @@
+package com.learnhai.scim.service.async;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnhai.scim.audit.AuditLog;
+import com.learnhai.scim.audit.AuditRecord;
+import com.learnhai.scim.exception.ScimException;
+import com.learnhai.scim.model.scim.ScimGroup;
+import com.learnhai.scim.model.scim.ScimUser;
+import com.learnhai.scim.service.IdempotencyService;
+import com.learnhai.scim.service.ScimGroupService;
+import com.learnhai.scim.service.ScimUserService;
+import com.learnhai.scim.tenant.TenantContext;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optional asynchronous write mode (scim.async.enabled).
+ * <p>
+ * Accepted writes are validated, made durable in the {@link WriteAheadLog} and acknowledged with
+ * 202 Accepted. A fixed set of single-threaded lanes then applies them through the regular SCIM
+ * services; operations on the same resource always hash to the same lane, so they are applied in
+ * the order they were accepted. A failed attempt is retried after a backoff without holding up its
+ * lane: the resource is parked meanwhile, and later operations on it wait behind the retry.
+ * Operations without a DONE record are replayed on startup; passwords are not logged, see
+ * {@link ProvisioningOperation#withoutPassword()}.
+ */
+@Service
+@Slf4j
+public class ProvisioningQueue {
+
+    private final boolean enabled;
+    private final Path walDir;
+    private final int workerCount;
+    private final int maxDepth;
+    private final long fsyncIntervalMillis;
+    private final int maxAttempts;
+    private final int statusRetention;
+    private final long compactThresholdBytes;
+    private final ObjectMapper objectMapper;
+    private final ScimUserService scimUserService;
+    private final ScimGroupService scimGroupService;
+    private final AuditLog auditLog;
+    private final IdempotencyService idempotencyService;
+
+    private final Map<String, OperationStatus> statuses = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<String> completedOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private WriteAheadLog wal;
+    private Lane[] lanes;
+    private ScheduledExecutorService retries;
+
+    /**
+     * A single-threaded worker plus the resources it has parked while an operation on them waits
+     * for a retry, each with the operations that arrived meanwhile. Only the lane thread touches
+     * {@code parked}.
+     */
+    private static final class Lane {
+        final ExecutorService executor;
+        final Map<String, Deque<Runnable>> parked = new HashMap<>();
+
+        Lane(ExecutorService executor) {
+            this.executor = executor;
+        }
+    }
+
+    @Autowired
+    public ProvisioningQueue(@Value("${scim.async.enabled:false}") boolean enabled,
+                             @Value("${scim.async.wal-dir:./data/wal}") String walDir,
+                             @Value("${scim.async.workers:8}") int workerCount,
+                             @Value("${scim.async.max-depth:10000}") int maxDepth,
+                             @Value("${scim.async.fsync-interval-ms:5}") long fsyncIntervalMillis,
+                             @Value("${scim.async.max-attempts:3}") int maxAttempts,
+                             @Value("${scim.async.status-retention:10000}") int statusRetention,
+                             @Value("${scim.async.compact-threshold-bytes:67108864}") long compactThresholdBytes,
+                             ObjectMapper objectMapper,
+                             ScimUserService scimUserService,
+                             ScimGroupService scimGroupService,
+                             AuditLog auditLog,
+                             IdempotencyService idempotencyService) {
+        this.enabled = enabled;
+        this.walDir = Path.of(walDir);
+        this.workerCount = workerCount;
+        this.maxDepth = maxDepth;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.maxAttempts = maxAttempts;
+        this.statusRetention = statusRetention;
+        this.compactThresholdBytes = compactThresholdBytes;
+        this.objectMapper = objectMapper;
+        this.scimUserService = scimUserService;
+        this.scimGroupService = scimGroupService;
+        this.auditLog = auditLog;
+        this.idempotencyService = idempotencyService;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        lanes = new Lane[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            String threadName = "scim-provisioning-" + i;
+            lanes[i] = new Lane(Executors.newSingleThreadExecutor(r -> new Thread(r, threadName)));
+        }
+        retries = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "scim-provisioning-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        wal = new WriteAheadLog(walDir, objectMapper, fsyncIntervalMillis);
+        replay(wal.open());
+    }
+
+    private void replay(List<WriteAheadLog.Record> records) throws IOException {
+        Map<String, ProvisioningOperation> unfinished = new LinkedHashMap<>();
+        for (WriteAheadLog.Record record : records) {
+            if (record.getKind() == WriteAheadLog.Kind.SUBMIT) {
+                unfinished.put(record.getOperation().getId(), record.getOperation());
+            } else if (record.getOutcome() != null) {
+                unfinished.remove(record.getOutcome().getId());
+                remember(record.getOutcome());
+            }
+        }
+
+        // Keep only what still has to run, so the log does not grow across restarts.
+        List<WriteAheadLog.Record> survivors = new ArrayList<>(unfinished.size());
+        for (ProvisioningOperation op : unfinished.values()) {
+            survivors.add(new WriteAheadLog.Record(WriteAheadLog.Kind.SUBMIT, op, null));
+        }
+        wal.rewrite(survivors);
+
+        if (!unfinished.isEmpty()) {
+            log.info("Replaying {} unfinished provisioning operations from the write-ahead log.", unfinished.size());
+        }
+        for (ProvisioningOperation op : unfinished.values()) {
+            if (op.isPasswordRemoved()) {
+                log.warn("Replaying provisioning operation {} ({}) without the password it was submitted with; passwords are not logged.",
+                        op.getId(), op.getType());
+            }
+            pending.incrementAndGet();
+            OperationStatus status = newStatus(op);
+            statuses.put(op.getId(), status);
+            dispatch(op, status);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Validates and durably enqueues a write. Returns once the operation is on disk.
+     *
+     * @param body the SCIM resource (create/replace), PatchOp body (patch) or null (delete)
+     */
+    public OperationStatus submit(ProvisioningOperation.Type type, String resourceId, Object body) {
+        if (!enabled) {
+            throw new IllegalStateException("Asynchronous provisioning is not enabled");
+        }
+        JsonNode payload = body == null ? null : objectMapper.valueToTree(body);
+        validate(type, resourceId, payload);
+
+        if (pending.incrementAndGet() > maxDepth) {
+            pending.decrementAndGet();
+            throw new ScimException("Provisioning queue is full (" + maxDepth + " pending operations). Retry later.",
+                    HttpStatus.SERVICE_UNAVAILABLE);
+        }
+
+        ProvisioningOperation op = new ProvisioningOperation();
+        op.setId(UUID.randomUUID().toString());
+        op.setType(type);
+        op.setResourceId(resourceId);
+        op.setPayload(payload);
+        op.setSubmitted(Instant.now());
+        op.setActor(AuditLog.currentActor());
+        TenantContext tenant = TenantContext.current();
+        if (tenant != null) {
+            op.setTenant(tenant.getTenantId());
+            op.setScimPath(tenant.getScimPath());
+        }
+
+        OperationStatus status = newStatus(op);
+        statuses.put(op.getId(), status);
+        try {
+            long seq = wal.append(new WriteAheadLog.Record(WriteAheadLog.Kind.SUBMIT, op.withoutPassword(), null));
+            wal.awaitDurable(seq);
+        } catch (IOException e) {
+            pending.decrementAndGet();
+            statuses.remove(op.getId());
+            log.error("Failed to persist provisioning operation {} ({}): {}", op.getId(), type, e.getMessage(), e);
+            throw new ScimException("Failed to persist provisioning operation", HttpStatus.INTERNAL_SERVER_ERROR, e);
+        }
+
+        dispatch(op, status);
+        return status.copy();
+    }
+
+    public Optional<OperationStatus> getStatus(String operationId) {
+        return Optional.ofNullable(statuses.get(operationId)).map(OperationStatus::copy);
+    }
+
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    private void validate(ProvisioningOperation.Type type, String resourceId, JsonNode payload) {
+        if (!type.isCreate() && (resourceId == null || resourceId.isBlank())) {
+            throw new ScimException("Resource id is required for " + type, HttpStatus.BAD_REQUEST, "invalidValue");
+        }
+        switch (type) {
+            case CREATE_USER, REPLACE_USER -> requireText(payload, "userName");
+            case CREATE_GROUP, REPLACE_GROUP -> requireText(payload, "displayName");
+            case PATCH_USER, PATCH_GROUP -> {
+                JsonNode operations = payload == null ? null : payload.get("Operations");
+                if (operations == null || !operations.isArray() || operations.isEmpty()) {
+                    throw new ScimException("Patch request must contain 'Operations'.", HttpStatus.BAD_REQUEST, "invalidSyntax");
+                }
+            }
+            default -> { }
+        }
+    }
+
+    private void requireText(JsonNode payload, String field) {
+        JsonNode value = payload == null ? null : payload.get(field);
+        if (value == null || !value.isTextual() || value.asText().isBlank()) {
+            throw new ScimException("Attribute '" + field + "' is required.", HttpStatus.BAD_REQUEST, "invalidValue");
+        }
+    }
+
+    private OperationStatus newStatus(ProvisioningOperation op) {
+        OperationStatus status = new OperationStatus();
+        status.setId(op.getId());
+        status.setType(op.getType());
+        status.setState(OperationStatus.State.PENDING);
+        status.setResourceId(op.getResourceId());
+        status.setSubmitted(op.getSubmitted());
+        return status;
+    }
+
+    private void dispatch(ProvisioningOperation op, OperationStatus status) {
+        Lane lane = lanes[Math.floorMod(op.orderingKey().hashCode(), lanes.length)];
+        lane.executor.execute(() -> {
+            Deque<Runnable> waiting = lane.parked.get(op.orderingKey());
+            if (waiting != null) {
+                waiting.add(() -> run(lane, op, status, 1)); // behind the retry of an earlier operation
+            } else {
+                run(lane, op, status, 1);
+            }
+        });
+    }
+
+    /** One attempt, on the lane thread; schedules the next one or completes the operation. */
+    private void run(Lane lane, ProvisioningOperation op, OperationStatus status, int attempt) {
+        synchronized (status) {
+            status.setState(OperationStatus.State.RUNNING);
+            status.setAttempts(attempt);
+        }
+        boolean retry = false;
+        try {
+            TenantContext.callAs(op.tenantContext(), () -> {
+                apply(op, status);
+                return null;
+            });
+        } catch (ScimException e) {
+            if (!e.getStatus().is5xxServerError() || attempt >= maxAttempts) {
+                fail(status, e.getStatus().value(), e.getScimType(), e.getMessage());
+            } else {
+                retry = true;
+                log.warn("Provisioning operation {} ({}) failed on attempt {}: {}", op.getId(), op.getType(), attempt, e.getMessage());
+            }
+        } catch (RuntimeException e) {
+            if (attempt >= maxAttempts) {
+                log.error("Provisioning operation {} ({}) failed: {}", op.getId(), op.getType(), e.getMessage(), e);
+                fail(status, HttpStatus.INTERNAL_SERVER_ERROR.value(), null, e.getMessage());
+            } else {
+                retry = true;
+                log.warn("Provisioning operation {} ({}) failed on attempt {}: {}", op.getId(), op.getType(), attempt, e.getMessage());
+            }
+        }
+        if (retry) {
+            lane.parked.computeIfAbsent(op.orderingKey(), key -> new ArrayDeque<>());
+            scheduleRetry(lane, op, status, attempt + 1);
+            return;
+        }
+        if (op.getType().isCreate()) {
+            settleIdempotency(op, status);
+        }
+        audit(op, status);
+        complete(status);
+        resume(lane, op.orderingKey());
+    }
+
+    /**
+     * A failed create is dropped from the idempotency table, so a retry of it runs again instead of
+     * replaying the failure; a successful one records its resource, so deleting that drops it too.
+     */
+    private void settleIdempotency(ProvisioningOperation op, OperationStatus status) {
+        OperationStatus.State state;
+        String resourceId;
+        synchronized (status) {
+            state = status.getState();
+            resourceId = status.getResourceId();
+        }
+        TenantContext.callAs(op.tenantContext(), () -> {
+            if (state == OperationStatus.State.FAILED) {
+                idempotencyService.forget(op.getId());
+            } else if (resourceId != null) {
+                idempotencyService.created(op.getId(), resourceId);
+            }
+            return null;
+        });
+    }
+
+    private void scheduleRetry(Lane lane, ProvisioningOperation op, OperationStatus status, int attempt) {
+        try {
+            retries.schedule(() -> {
+                try {
+                    lane.executor.execute(() -> run(lane, op, status, attempt));
+                } catch (RejectedExecutionException e) {
+                    log.debug("Provisioning operation {} not retried: shutting down; it is replayed on restart.", op.getId());
+                }
+            }, 500L * (attempt - 1), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("Provisioning operation {} not retried: shutting down; it is replayed on restart.", op.getId());
+        }
+    }
+
+    /**
+     * Runs, in order, the operations that waited on a resource while it was parked, until one of
+     * them is parked for a retry in turn; the rest then wait behind that one.
+     */
+    private void resume(Lane lane, String orderingKey) {
+        Deque<Runnable> waiting = lane.parked.remove(orderingKey);
+        while (waiting != null && !waiting.isEmpty()) {
+            waiting.poll().run();
+            Deque<Runnable> parkedAgain = lane.parked.get(orderingKey);
+            if (parkedAgain != null) {
+                parkedAgain.addAll(waiting);
+                return;
+            }
+        }
+    }
+
+    private void apply(ProvisioningOperation op, OperationStatus status) {
+        String id = op.getResourceId();
+        switch (op.getType()) {
+            case CREATE_USER -> succeed(status, scimUserService.createUser(toUser(op)), HttpStatus.CREATED);
+            case REPLACE_USER -> succeed(status, scimUserService.replaceUser(id, toUser(op)), HttpStatus.OK);
+            case PATCH_USER -> succeed(status, scimUserService.patchUser(id, toPatch(op)), HttpStatus.OK);
+            case DELETE_USER -> {
+                scimUserService.deleteUser(id);
+                succeed(status, null, HttpStatus.NO_CONTENT);
+            }
+            case CREATE_GROUP -> succeed(status, scimGroupService.createGroup(toGroup(op)), HttpStatus.CREATED);
+            case REPLACE_GROUP -> succeed(status, scimGroupService.replaceGroup(id, toGroup(op)), HttpStatus.OK);
+            case PATCH_GROUP -> succeed(status, scimGroupService.patchGroup(id, toPatch(op)), HttpStatus.OK);
+            case DELETE_GROUP -> {
+                scimGroupService.deleteGroup(id);
+                succeed(status, null, HttpStatus.NO_CONTENT);
+            }
+        }
+    }
+
+    private ScimUser toUser(ProvisioningOperation op) {
+        return objectMapper.convertValue(op.getPayload(), ScimUser.class);
+    }
+
+    private ScimGroup toGroup(ProvisioningOperation op) {
+        return objectMapper.convertValue(op.getPayload(), ScimGroup.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> toPatch(ProvisioningOperation op) {
+        return objectMapper.convertValue(op.getPayload(), Map.class);
+    }
+
+    private void succeed(OperationStatus status, Object resource, HttpStatus httpStatus) {
+        synchronized (status) {
+            status.setState(OperationStatus.State.SUCCEEDED);
+            status.setStatus(httpStatus.value());
+            if (resource instanceof ScimUser user) {
+                status.setResourceId(user.getId());
+                status.setLocation(user.getMeta().getLocation());
+            } else if (resource instanceof ScimGroup group) {
+                status.setResourceId(group.getId());
+                status.setLocation(group.getMeta().getLocation());
+            }
+        }
+    }
+
+    private void fail(OperationStatus status, int httpStatus, String scimType, String detail) {
+        synchronized (status) {
+            status.setState(OperationStatus.State.FAILED);
+            status.setStatus(httpStatus);
+            status.setScimType(scimType);
+            status.setDetail(detail);
+        }
+    }
+
+    private void audit(ProvisioningOperation op, OperationStatus status) {
+        String resourceId;
+        int httpStatus;
+        synchronized (status) {
+            resourceId = status.getResourceId() != null ? status.getResourceId() : op.getResourceId();
+            httpStatus = status.getStatus() != null ? status.getStatus() : HttpStatus.INTERNAL_SERVER_ERROR.value();
+        }
+        long latencyMicros = ChronoUnit.MICROS.between(op.getSubmitted(), Instant.now());
+        AuditRecord.Operation operation = switch (op.getType()) {
+            case CREATE_USER, CREATE_GROUP -> AuditRecord.Operation.CREATE;
+            case REPLACE_USER, REPLACE_GROUP -> AuditRecord.Operation.REPLACE;
+            case PATCH_USER, PATCH_GROUP -> AuditRecord.Operation.PATCH;
+            case DELETE_USER, DELETE_GROUP -> AuditRecord.Operation.DELETE;
+        };
+        auditLog.record(new AuditRecord(System.currentTimeMillis(), op.getTenant(), op.getActor(),
+                op.getType().isUserOperation() ? "User" : "Group", resourceId, operation, httpStatus, latencyMicros, op.getId()));
+    }
+
+    private void complete(OperationStatus status) {
+        OperationStatus outcome;
+        synchronized (status) {
+            status.setCompleted(Instant.now());
+            outcome = status.copy();
+        }
+        try {
+            // The DONE record does not need to wait for fsync: losing it only means a replay of an
+            // operation that already ran, which the services answer with a conflict or noTarget.
+            wal.append(new WriteAheadLog.Record(WriteAheadLog.Kind.DONE, null, outcome));
+        } catch (IOException e) {
+            log.error("Failed to record completion of provisioning operation {}: {}", status.getId(), e.getMessage());
+        }
+        remember(status);
+        if (pending.decrementAndGet() == 0) {
+            compactIfIdle();
+        }
+    }
+
+    private void remember(OperationStatus status) {
+        statuses.put(status.getId(), status);
+        completedOrder.add(status.getId());
+        while (completedOrder.size() > statusRetention) {
+            String evicted = completedOrder.poll();
+            if (evicted != null) {
+                statuses.remove(evicted);
+            }
+        }
+    }
+
+    private void compactIfIdle() {
+        try {
+            if (wal.size() > compactThresholdBytes && wal.compactIf(() -> pending.get() == 0)) {
+                log.debug("Compacted idle provisioning write-ahead log.");
+            }
+        } catch (IOException e) {
+            log.warn("Failed to compact provisioning write-ahead log: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!enabled) {
+            return;
+        }
+        retries.shutdownNow(); // operations waiting for a retry have no DONE record and are replayed
+        for (Lane lane : lanes) {
+            lane.executor.shutdown();
+        }
+        for (Lane lane : lanes) {
+            try {
+                if (!lane.executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    lane.executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                lane.executor.shutdownNow();
+            }
+        }
+        try {
+            wal.close();
+        } catch (IOException e) {
+            log.warn("Failed to close provisioning write-ahead log: {}", e.getMessage());
+        }
+    }
+}
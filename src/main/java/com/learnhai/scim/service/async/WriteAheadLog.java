@@ -0,0 +1,302 @@
+package com.learnhai.scim.service.async;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, file-based log of accepted provisioning operations.
+ * <p>
+ * Records are framed as {@code [int length][int crc32][json]}. Appends only write to the page cache;
+ * a single flusher thread fsyncs everything written so far and wakes all callers waiting on
+ * {@link #awaitDurable(long)}, so concurrent submitters share one fsync (group commit).
+ */
+@Slf4j
+public class WriteAheadLog implements Closeable {
+
+    private static final String FILE_NAME = "provisioning.wal";
+    private static final int HEADER_BYTES = 8;
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+    private final long fsyncIntervalMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition dirty = lock.newCondition();
+    private final Condition durableAdvanced = lock.newCondition();
+
+    private FileChannel channel;
+    private long writtenSeq;
+    private long durableSeq;
+    private IOException flushFailure;
+    private volatile boolean closed;
+    private Thread flusher;
+
+    public enum Kind { SUBMIT, DONE }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Record {
+        private Kind kind;
+        private ProvisioningOperation operation; // set for SUBMIT
+        private OperationStatus outcome;         // set for DONE
+    }
+
+    public WriteAheadLog(Path directory, ObjectMapper objectMapper, long fsyncIntervalMillis) {
+        this.file = directory.resolve(FILE_NAME);
+        this.objectMapper = objectMapper;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+    }
+
+    /**
+     * Opens the log for appending and returns every intact record already in it. A torn or corrupt
+     * tail (e.g. from a crash mid-append) is cut off.
+     */
+    public List<Record> open() throws IOException {
+        Files.createDirectories(file.getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        List<Record> records = new ArrayList<>();
+        long validEnd = readRecords(records);
+        if (validEnd < channel.size()) {
+            log.warn("Truncating write-ahead log {} at byte {} (size {}): trailing record is incomplete or corrupt.",
+                    file, validEnd, channel.size());
+            channel.truncate(validEnd);
+            channel.force(true);
+        }
+        channel.position(validEnd);
+
+        flusher = new Thread(this::flushLoop, "scim-wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        return records;
+    }
+
+    private long readRecords(List<Record> records) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        long position = 0;
+        long size = channel.size();
+        CRC32 crc = new CRC32();
+        while (position + HEADER_BYTES <= size) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length <= 0 || position + HEADER_BYTES + length > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(length);
+            channel.read(body, position + HEADER_BYTES);
+            crc.reset();
+            crc.update(body.array(), 0, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            try {
+                records.add(objectMapper.readValue(body.array(), Record.class));
+            } catch (IOException e) {
+                log.warn("Unreadable record at byte {} of write-ahead log {}: {}", position, file, e.getMessage());
+                break;
+            }
+            position += HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    /**
+     * Appends a record and returns its sequence number. The record is not durable until
+     * {@link #awaitDurable(long)} returns for that sequence.
+     */
+    public long append(Record record) throws IOException {
+        byte[] body = objectMapper.writeValueAsBytes(record);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + body.length);
+        buffer.putInt(body.length).putInt((int) crc.getValue()).put(body).flip();
+
+        lock.lock();
+        try {
+            ensureOpen();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            writtenSeq++;
+            dirty.signal();
+            return writtenSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void awaitDurable(long seq) throws IOException {
+        lock.lock();
+        try {
+            while (durableSeq < seq) {
+                if (flushFailure != null) {
+                    throw flushFailure;
+                }
+                ensureOpen();
+                durableAdvanced.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            long target;
+            lock.lock();
+            try {
+                while (!closed && writtenSeq == durableSeq) {
+                    dirty.awaitUninterruptibly();
+                }
+                if (closed) {
+                    return;
+                }
+                target = writtenSeq;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                log.error("fsync of write-ahead log {} failed: {}", file, e.getMessage(), e);
+                lock.lock();
+                try {
+                    flushFailure = e;
+                    durableAdvanced.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+
+            lock.lock();
+            try {
+                durableSeq = Math.max(durableSeq, target);
+                durableAdvanced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            // Give concurrent submitters a moment to pile up behind the next fsync.
+            if (fsyncIntervalMillis > 0) {
+                try {
+                    Thread.sleep(fsyncIntervalMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the log contents with the given records (used after replay to drop completed operations).
+     */
+    public void rewrite(List<Record> records) throws IOException {
+        Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32 crc = new CRC32();
+            for (Record record : records) {
+                byte[] body = objectMapper.writeValueAsBytes(record);
+                crc.reset();
+                crc.update(body);
+                ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + body.length);
+                buffer.putInt(body.length).putInt((int) crc.getValue()).put(body).flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            out.force(true);
+        }
+
+        lock.lock();
+        try {
+            ensureOpen();
+            channel.close();
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            durableSeq = writtenSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Truncates the log to zero length if {@code idle} still holds while appends are blocked.
+     */
+    public boolean compactIf(BooleanSupplier idle) throws IOException {
+        lock.lock();
+        try {
+            if (closed || !idle.getAsBoolean()) {
+                return false;
+            }
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+            durableSeq = writtenSeq;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed || channel == null) {
+            throw new IOException("Write-ahead log " + file + " is closed");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            dirty.signalAll();
+            durableAdvanced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (channel != null) {
+            channel.force(true);
+            channel.close();
+        }
+    }
+}
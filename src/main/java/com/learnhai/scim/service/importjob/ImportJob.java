@@ -0,0 +1,77 @@
+package com.learnhai.scim.service.importjob;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.learnhai.scim.tenant.TenantContext;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A file import and its progress, served by the ImportJobs status endpoint. This is also what is
+ * persisted next to the upload after every checkpoint, so a job can be resumed after a restart.
+ */
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ImportJob {
+
+    public enum State { PENDING, RUNNING, COMPLETED, FAILED }
+
+    public enum Format {
+        CSV("csv"), NDJSON("ndjson");
+
+        final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    /** A row that could not be applied; {@code row} is the CSV record or NDJSON line number. */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class RowError {
+        private long row;
+        private String userName;
+        private int status;
+        private String scimType;
+        private String detail;
+    }
+
+    private String id;
+    private State state;
+    private Format format;
+    private String tenant;   // null for the default tenant
+    private String scimPath; // route the tenant was addressed through, for resource locations
+    private String actor;    // calling client, for the audit log
+    private long uploadBytes;
+    private Instant submitted;
+    private Instant started;
+    private Instant completed;
+    private String detail;   // why the job failed, when it did
+
+    // Progress up to the last checkpoint: rows before it are applied and counted, in file order
+    private long rowsProcessed;
+    private long created;
+    private long updated;
+    private long failed;
+    private double rowsPerSecond; // over the current (or last) run
+    private List<RowError> errors = new ArrayList<>(); // the first scim.import.max-reported-errors
+
+    @JsonIgnore
+    public boolean isTerminal() {
+        return state == State.COMPLETED || state == State.FAILED;
+    }
+
+    /** The tenant binding the job was submitted under; null for the default tenant. */
+    public TenantContext tenantContext() {
+        return tenant != null ? new TenantContext(tenant, scimPath) : null;
+    }
+}
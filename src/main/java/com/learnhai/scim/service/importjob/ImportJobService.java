@@ -0,0 +1,501 @@
+package com.learnhai.scim.service.importjob;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnhai.scim.audit.AuditLog;
+import com.learnhai.scim.audit.AuditRecord;
+import com.learnhai.scim.exception.ScimException;
+import com.learnhai.scim.model.scim.ScimUser;
+import com.learnhai.scim.schema.ScimSchemaValidator;
+import com.learnhai.scim.service.BulkLoadService;
+import com.learnhai.scim.service.ScimUserService;
+import com.learnhai.scim.tenant.TenantContext;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Import jobs: CSV or NDJSON files of users, uploaded in one request and applied in the background.
+ * <p>
+ * The upload is streamed to {@code scim.import.dir} as it arrives, then read back a row at a time
+ * ({@link RowReader}) and applied in chunks of {@code scim.import.chunk-size} rows, at most
+ * {@code scim.import.parallelism} chunks at once. Each chunk goes through {@link BulkLoadService}
+ * (and so {@code UserMapper}); users that already exist are updated with {@code replaceUser}, so a
+ * job is an upsert by userName. Jobs run one at a time, in submission order.
+ * <p>
+ * Chunks finish in any order, but are committed in file order: a checkpoint is the number of rows
+ * before which everything is applied, and the job's counters and error list cover exactly those rows.
+ * The job is saved at every checkpoint, and jobs that were pending or running are resumed on startup
+ * from their last one; rows after it may be applied twice, which an upsert tolerates. A row that
+ * throws is recorded as a row error; the job completes only once the checkpoint reaches the last row.
+ */
+@Service
+@Slf4j
+public class ImportJobService {
+
+    private static final String JOB_FILE = "job.json";
+    private static final String ERRORS_FILE = "errors.ndjson";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int parallelism;
+    private final int chunkSize;
+    private final long maxUploadBytes;
+    private final int maxReportedErrors;
+    private final int retention;
+    private final ObjectMapper objectMapper;
+    private final ScimSchemaValidator schemaValidator;
+    private final BulkLoadService bulkLoadService;
+    private final ScimUserService scimUserService;
+    private final AuditLog auditLog;
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+    private ExecutorService runner;  // one job at a time
+    private ExecutorService workers; // chunks of the running job
+    private volatile boolean stopping;
+
+    @Autowired
+    public ImportJobService(@Value("${scim.import.enabled:true}") boolean enabled,
+                            @Value("${scim.import.dir:./data/import}") String directory,
+                            @Value("${scim.import.parallelism:4}") int parallelism,
+                            @Value("${scim.import.chunk-size:200}") int chunkSize,
+                            @Value("${scim.import.max-upload-bytes:1073741824}") long maxUploadBytes,
+                            @Value("${scim.import.max-reported-errors:100}") int maxReportedErrors,
+                            @Value("${scim.import.retention:100}") int retention,
+                            ObjectMapper objectMapper,
+                            ScimSchemaValidator schemaValidator,
+                            BulkLoadService bulkLoadService,
+                            ScimUserService scimUserService,
+                            AuditLog auditLog) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.parallelism = Math.max(1, parallelism);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxUploadBytes = maxUploadBytes;
+        this.maxReportedErrors = maxReportedErrors;
+        this.retention = retention;
+        this.objectMapper = objectMapper;
+        this.schemaValidator = schemaValidator;
+        this.bulkLoadService = bulkLoadService;
+        this.scimUserService = scimUserService;
+        this.auditLog = auditLog;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        runner = Executors.newSingleThreadExecutor(r -> new Thread(r, "scim-import-job"));
+        AtomicInteger workerNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(parallelism, r -> new Thread(r, "scim-import-" + workerNumber.getAndIncrement()));
+        Files.createDirectories(directory);
+
+        List<ImportJob> unfinished = new ArrayList<>();
+        for (Path dir : jobDirectories()) {
+            try {
+                ImportJob job = objectMapper.readValue(dir.resolve(JOB_FILE).toFile(), ImportJob.class);
+                jobs.put(job.getId(), job);
+                if (!job.isTerminal()) {
+                    unfinished.add(job);
+                }
+            } catch (IOException e) {
+                log.warn("Ignoring unreadable import job in {}: {}", dir, e.getMessage());
+            }
+        }
+        unfinished.sort(Comparator.comparing(ImportJob::getSubmitted));
+        if (!unfinished.isEmpty()) {
+            log.info("Resuming {} unfinished import jobs.", unfinished.size());
+        }
+        for (ImportJob job : unfinished) {
+            runner.execute(() -> run(job));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Stores the upload and queues the job. Returns once the whole upload is on disk. */
+    public ImportJob submit(InputStream upload, ImportJob.Format format) {
+        if (!enabled) {
+            throw new ScimException("Import jobs are not enabled", HttpStatus.NOT_IMPLEMENTED);
+        }
+        ImportJob job = new ImportJob();
+        job.setId(UUID.randomUUID().toString());
+        job.setState(ImportJob.State.PENDING);
+        job.setFormat(format);
+        job.setActor(AuditLog.currentActor());
+        job.setSubmitted(Instant.now());
+        TenantContext tenant = TenantContext.current();
+        if (tenant != null) {
+            job.setTenant(tenant.getTenantId());
+            job.setScimPath(tenant.getScimPath());
+        }
+
+        Path dir = directory.resolve(job.getId());
+        try {
+            Files.createDirectories(dir);
+            job.setUploadBytes(copy(upload, dir.resolve("upload." + format.extension)));
+            save(job);
+        } catch (IOException e) {
+            deleteQuietly(dir);
+            log.error("Failed to store import upload {}: {}", job.getId(), e.getMessage(), e);
+            throw new ScimException("Failed to store the import upload", HttpStatus.INTERNAL_SERVER_ERROR, e);
+        } catch (ScimException e) {
+            deleteQuietly(dir);
+            throw e;
+        }
+        jobs.put(job.getId(), job);
+        runner.execute(() -> run(job));
+        return snapshot(job);
+    }
+
+    /** The job, if it exists and belongs to the current tenant. */
+    public Optional<ImportJob> getJob(String id) {
+        ImportJob job = id == null ? null : jobs.get(id);
+        if (job == null || !Objects.equals(job.getTenant(), TenantContext.tenantId())) {
+            return Optional.empty();
+        }
+        return Optional.of(snapshot(job));
+    }
+
+    /** Copies every row error of the job recorded so far, as NDJSON. */
+    public void writeErrors(String id, OutputStream out) throws IOException {
+        Path errors = directory.resolve(id).resolve(ERRORS_FILE);
+        if (Files.exists(errors)) {
+            Files.copy(errors, out);
+        }
+    }
+
+    private long copy(InputStream upload, Path file) throws IOException {
+        long total = 0;
+        byte[] buffer = new byte[64 * 1024];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (int n; (n = upload.read(buffer)) >= 0; ) {
+                total += n;
+                if (total > maxUploadBytes) {
+                    throw new ScimException("Import upload exceeds " + maxUploadBytes + " bytes", HttpStatus.PAYLOAD_TOO_LARGE, "tooMany");
+                }
+                out.write(buffer, 0, n);
+            }
+        }
+        return total;
+    }
+
+    // --- Running ---
+
+    /** Results of one chunk, committed once every chunk before it is. */
+    private record ChunkResult(int rows, long created, long updated, List<ImportJob.RowError> errors) {
+    }
+
+    private void run(ImportJob job) {
+        if (stopping) {
+            return;
+        }
+        long runStartedNanos = System.nanoTime();
+        long rowsBefore;
+        synchronized (job) {
+            job.setState(ImportJob.State.RUNNING);
+            if (job.getStarted() == null) {
+                job.setStarted(Instant.now());
+            }
+            rowsBefore = job.getRowsProcessed();
+        }
+        Path upload = directory.resolve(job.getId()).resolve("upload." + job.getFormat().extension);
+        TreeMap<Long, ChunkResult> finished = new TreeMap<>();
+        Semaphore inFlight = new Semaphore(parallelism);
+        try (RowReader reader = RowReader.open(upload, job.getFormat(), objectMapper)) {
+            long position = rowsBefore;
+            for (long skipped = 0; skipped < position; skipped++) {
+                reader.next(); // applied before the restart
+            }
+            while (!stopping) {
+                List<RowReader.Row> rows = new ArrayList<>(chunkSize);
+                for (RowReader.Row row; rows.size() < chunkSize && (row = reader.next()) != null; ) {
+                    rows.add(row);
+                }
+                if (rows.isEmpty()) {
+                    break;
+                }
+                long chunkStart = position;
+                position += rows.size();
+                inFlight.acquire();
+                workers.execute(() -> {
+                    try {
+                        ChunkResult result;
+                        try {
+                            result = TenantContext.callAs(job.tenantContext(), () -> apply(job, rows));
+                        } catch (RuntimeException e) {
+                            // Committed as failed rows: a chunk that is never committed would stall the checkpoint
+                            log.error("Import job {} chunk at row {} failed: {}", job.getId(), chunkStart, e.getMessage(), e);
+                            result = failedChunk(rows, e);
+                        }
+                        commit(job, finished, chunkStart, result, rowsBefore, runStartedNanos);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            inFlight.acquire(parallelism); // the last chunks
+            if (!stopping) {
+                long committed;
+                synchronized (job) {
+                    committed = job.getRowsProcessed();
+                }
+                if (committed != position) {
+                    log.error("Import job {} failed: checkpoint at row {} of {}", job.getId(), committed, position);
+                    finish(job, ImportJob.State.FAILED, "Stopped after " + committed + " of " + position + " rows");
+                } else {
+                    finish(job, ImportJob.State.COMPLETED, null);
+                    Files.deleteIfExists(upload);
+                    log.info("Import job {} completed: {} rows, {} created, {} updated, {} failed", job.getId(),
+                            job.getRowsProcessed(), job.getCreated(), job.getUpdated(), job.getFailed());
+                }
+            }
+        } catch (IOException e) {
+            log.error("Import job {} failed: {}", job.getId(), e.getMessage());
+            finish(job, ImportJob.State.FAILED, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // shutting down; resumed on the next start
+        } catch (RuntimeException e) {
+            log.error("Import job {} failed: {}", job.getId(), e.getMessage(), e);
+            finish(job, ImportJob.State.FAILED, e.getMessage());
+        }
+        prune();
+    }
+
+    private ChunkResult apply(ImportJob job, List<RowReader.Row> rows) {
+        List<ImportJob.RowError> errors = new ArrayList<>();
+        List<BulkLoadService.Item> items = new ArrayList<>(rows.size());
+        List<RowReader.Row> itemRows = new ArrayList<>(rows.size());
+        for (RowReader.Row row : rows) {
+            if (row.error() != null) {
+                errors.add(new ImportJob.RowError(row.number(), null, 400, "invalidSyntax", row.error()));
+                continue;
+            }
+            try {
+                ScimUser user = schemaValidator.readResource(ScimSchemaValidator.USER, row.resource(), ScimUser.class);
+                items.add(new BulkLoadService.Item(String.valueOf(row.number()), user, null));
+                itemRows.add(row);
+            } catch (ScimException e) {
+                errors.add(new ImportJob.RowError(row.number(), row.resource().path("userName").asText(null),
+                        e.getStatus().value(), e.getScimType(), e.getMessage()));
+            } catch (RuntimeException e) {
+                errors.add(new ImportJob.RowError(row.number(), row.resource().path("userName").asText(null),
+                        HttpStatus.INTERNAL_SERVER_ERROR.value(), null, e.getMessage()));
+            }
+        }
+        long created = 0;
+        long updated = 0;
+        List<BulkLoadService.Outcome> outcomes;
+        try {
+            // Existing users come back with their ids and are replaced below, whatever scim.bulk.if-resource-exists says
+            outcomes = bulkLoadService.load(items, null, job.getActor(), job.getId(), BulkLoadService.IfExists.USE_EXISTING);
+        } catch (RuntimeException e) {
+            log.error("Import job {} chunk failed: {}", job.getId(), e.getMessage(), e);
+            for (int i = 0; i < items.size(); i++) {
+                errors.add(new ImportJob.RowError(itemRows.get(i).number(), items.get(i).user().getUserName(), 500, null, e.getMessage()));
+            }
+            return new ChunkResult(rows.size(), 0, 0, errors);
+        }
+        for (int i = 0; i < items.size(); i++) {
+            BulkLoadService.Item item = items.get(i);
+            long row = itemRows.get(i).number();
+            BulkLoadService.Outcome outcome = i < outcomes.size() ? outcomes.get(i) : null;
+            if (outcome == null) {
+                errors.add(new ImportJob.RowError(row, item.user().getUserName(), HttpStatus.INTERNAL_SERVER_ERROR.value(), null,
+                        "The bulk load reported no outcome for this row"));
+            } else if (outcome.status() == HttpStatus.CREATED.value()) {
+                created++;
+            } else if (outcome.status() == HttpStatus.OK.value()) {
+                // Already there: the row replaces it
+                long started = System.nanoTime();
+                int status = HttpStatus.OK.value();
+                try {
+                    scimUserService.replaceUser(outcome.id(), item.user());
+                    updated++;
+                } catch (ScimException e) {
+                    status = e.getStatus().value();
+                    errors.add(new ImportJob.RowError(row, item.user().getUserName(), status, e.getScimType(), e.getMessage()));
+                } catch (RuntimeException e) {
+                    status = HttpStatus.INTERNAL_SERVER_ERROR.value();
+                    errors.add(new ImportJob.RowError(row, item.user().getUserName(), status, null, e.getMessage()));
+                }
+                auditLog.record(new AuditRecord(System.currentTimeMillis(), job.getTenant(), job.getActor(), "User",
+                        outcome.id(), AuditRecord.Operation.REPLACE, status,
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started), job.getId()));
+            } else {
+                errors.add(new ImportJob.RowError(row, item.user().getUserName(), outcome.status(), outcome.scimType(), outcome.detail()));
+            }
+        }
+        errors.sort(Comparator.comparingLong(ImportJob.RowError::getRow));
+        return new ChunkResult(rows.size(), created, updated, errors);
+    }
+
+    private static ChunkResult failedChunk(List<RowReader.Row> rows, RuntimeException e) {
+        List<ImportJob.RowError> errors = new ArrayList<>(rows.size());
+        for (RowReader.Row row : rows) {
+            String userName = row.resource() != null ? row.resource().path("userName").asText(null) : null;
+            errors.add(new ImportJob.RowError(row.number(), userName, HttpStatus.INTERNAL_SERVER_ERROR.value(), null, e.getMessage()));
+        }
+        return new ChunkResult(rows.size(), 0, 0, errors);
+    }
+
+    private void commit(ImportJob job, TreeMap<Long, ChunkResult> finished, long chunkStart, ChunkResult result,
+                        long rowsBefore, long runStartedNanos) {
+        synchronized (job) {
+            finished.put(chunkStart, result);
+            boolean advanced = false;
+            while (!finished.isEmpty() && finished.firstKey() == job.getRowsProcessed()) {
+                ChunkResult next = finished.pollFirstEntry().getValue();
+                try {
+                    appendErrors(job, next.errors());
+                } catch (IOException e) {
+                    log.error("Failed to record row errors of import job {}: {}", job.getId(), e.getMessage());
+                }
+                job.setRowsProcessed(job.getRowsProcessed() + next.rows());
+                job.setCreated(job.getCreated() + next.created());
+                job.setUpdated(job.getUpdated() + next.updated());
+                job.setFailed(job.getFailed() + next.errors().size());
+                for (ImportJob.RowError error : next.errors()) {
+                    if (job.getErrors().size() < maxReportedErrors) {
+                        job.getErrors().add(error);
+                    }
+                }
+                advanced = true;
+            }
+            if (advanced) {
+                double seconds = (System.nanoTime() - runStartedNanos) / 1e9;
+                job.setRowsPerSecond(Math.round((job.getRowsProcessed() - rowsBefore) / Math.max(seconds, 1e-3) * 10) / 10.0);
+                saveQuietly(job);
+            }
+        }
+    }
+
+    private void appendErrors(ImportJob job, List<ImportJob.RowError> errors) throws IOException {
+        if (errors.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (ImportJob.RowError error : errors) {
+            lines.append(objectMapper.writeValueAsString(error)).append('\n');
+        }
+        Files.writeString(directory.resolve(job.getId()).resolve(ERRORS_FILE), lines, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void finish(ImportJob job, ImportJob.State state, String detail) {
+        synchronized (job) {
+            job.setState(state);
+            job.setDetail(detail);
+            job.setCompleted(Instant.now());
+            saveQuietly(job);
+        }
+    }
+
+    // --- Persistence ---
+
+    // Written whole and moved into place, so a crash leaves the previous checkpoint
+    private void save(ImportJob job) throws IOException {
+        Path dir = directory.resolve(job.getId());
+        Path temp = dir.resolve(JOB_FILE + ".tmp");
+        objectMapper.writeValue(temp.toFile(), job);
+        Files.move(temp, dir.resolve(JOB_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void saveQuietly(ImportJob job) {
+        try {
+            save(job);
+        } catch (IOException e) {
+            log.error("Failed to save import job {}: {}", job.getId(), e.getMessage());
+        }
+    }
+
+    private ImportJob snapshot(ImportJob job) {
+        synchronized (job) {
+            return objectMapper.convertValue(job, ImportJob.class);
+        }
+    }
+
+    private List<Path> jobDirectories() throws IOException {
+        try (Stream<Path> entries = Files.list(directory)) {
+            return entries.filter(dir -> Files.isRegularFile(dir.resolve(JOB_FILE))).toList();
+        }
+    }
+
+    // Keeps the newest finished jobs, up to scim.import.retention
+    private void prune() {
+        List<ImportJob> terminal = jobs.values().stream()
+                .filter(job -> {
+                    synchronized (job) {
+                        return job.isTerminal();
+                    }
+                })
+                .sorted(Comparator.comparing(ImportJob::getSubmitted).reversed())
+                .toList();
+        for (ImportJob job : terminal.subList(Math.min(retention, terminal.size()), terminal.size())) {
+            jobs.remove(job.getId());
+            deleteQuietly(directory.resolve(job.getId()));
+        }
+    }
+
+    private static void deleteQuietly(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to delete {}: {}", dir, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!enabled) {
+            return;
+        }
+        // Running jobs stop at the next chunk and keep their last checkpoint for the next start
+        stopping = true;
+        runner.shutdown();
+        workers.shutdown();
+        try {
+            if (!runner.awaitTermination(30, TimeUnit.SECONDS)) {
+                runner.shutdownNow();
+            }
+            workers.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            runner.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.learnhai.scim.service.importjob;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.learnhai.scim.model.scim.ScimUser;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads an import file one row at a time, as a SCIM User resource per row. Only the current row is
+ * held in memory.
+ * <p>
+ * NDJSON files hold one SCIM User per line. CSV files start with a header naming each column's SCIM
+ * attribute: {@code userName}, {@code name.givenName}, or an extension attribute by its full path
+ * ({@code urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:department}). {@code emails} and
+ * {@code phoneNumbers} (or {@code emails.value}) give the primary value. Empty cells are left out.
+ */
+abstract class RowReader implements Closeable {
+
+    /** One row: the resource, or why it could not be read. */
+    record Row(long number, ObjectNode resource, String error) {
+    }
+
+    private static final Set<String> PRIMARY_VALUED = Set.of("emails", "phoneNumbers");
+
+    final BufferedReader reader;
+    final ObjectMapper objectMapper;
+
+    private RowReader(Path file, ObjectMapper objectMapper) throws IOException {
+        this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        this.objectMapper = objectMapper;
+    }
+
+    static RowReader open(Path file, ImportJob.Format format, ObjectMapper objectMapper) throws IOException {
+        return format == ImportJob.Format.CSV ? new Csv(file, objectMapper) : new Ndjson(file, objectMapper);
+    }
+
+    /** The next row, or null at the end of the file. */
+    abstract Row next() throws IOException;
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private static final class Ndjson extends RowReader {
+
+        private long line;
+
+        Ndjson(Path file, ObjectMapper objectMapper) throws IOException {
+            super(file, objectMapper);
+        }
+
+        @Override
+        Row next() throws IOException {
+            String text;
+            do {
+                text = reader.readLine();
+                line++;
+            } while (text != null && text.isBlank());
+            if (text == null) {
+                return null;
+            }
+            try {
+                JsonNode node = objectMapper.readTree(text);
+                return node.isObject() ? new Row(line, (ObjectNode) node, null) : new Row(line, null, "Line is not a JSON object");
+            } catch (JsonProcessingException e) {
+                return new Row(line, null, "Line is not valid JSON: " + e.getOriginalMessage());
+            }
+        }
+    }
+
+    private static final class Csv extends RowReader {
+
+        private final List<String[]> columns = new ArrayList<>(); // header paths: [urn or null, attribute, sub-attribute or null]
+        private long record;
+
+        Csv(Path file, ObjectMapper objectMapper) throws IOException {
+            super(file, objectMapper);
+            List<String> header = readRecord();
+            if (header == null || header.isEmpty()) {
+                throw new IOException("CSV file has no header row");
+            }
+            if (!header.get(0).isEmpty() && header.get(0).charAt(0) == '\uFEFF') {
+                header.set(0, header.get(0).substring(1)); // byte order mark
+            }
+            for (String name : header) {
+                columns.add(column(name.trim()));
+            }
+        }
+
+        private static String[] column(String name) {
+            String urn = null;
+            String path = name;
+            if (name.regionMatches(true, 0, "urn:", 0, 4)) {
+                int colon = name.lastIndexOf(':');
+                urn = name.substring(0, colon);
+                path = name.substring(colon + 1);
+            }
+            int dot = path.indexOf('.');
+            return dot < 0 ? new String[]{urn, path, null} : new String[]{urn, path.substring(0, dot), path.substring(dot + 1)};
+        }
+
+        @Override
+        Row next() throws IOException {
+            List<String> cells = readRecord();
+            if (cells == null) {
+                return null;
+            }
+            long number = ++record;
+            if (cells.size() != columns.size()) {
+                return new Row(number, null, "Record has " + cells.size() + " fields; the header has " + columns.size());
+            }
+            ObjectNode resource = objectMapper.createObjectNode();
+            ArrayNode schemas = resource.putArray("schemas").add(ScimUser.SCHEMA_CORE_USER);
+            for (int i = 0; i < cells.size(); i++) {
+                String value = cells.get(i);
+                if (value.isEmpty()) {
+                    continue;
+                }
+                String[] column = columns.get(i);
+                ObjectNode parent = resource;
+                if (column[0] != null) {
+                    if (!resource.has(column[0])) {
+                        schemas.add(column[0]);
+                    }
+                    parent = resource.has(column[0]) ? (ObjectNode) resource.get(column[0]) : resource.putObject(column[0]);
+                }
+                if (PRIMARY_VALUED.contains(column[1]) && (column[2] == null || column[2].equals("value"))) {
+                    parent.putArray(column[1]).addObject().put("value", value).put("primary", true);
+                } else if (column[2] == null) {
+                    parent.put(column[1], value);
+                } else {
+                    ObjectNode complex = parent.get(column[1]) instanceof ObjectNode existing ? existing : parent.putObject(column[1]);
+                    complex.put(column[2], value);
+                }
+            }
+            return new Row(number, resource, null);
+        }
+
+        /** The fields of the next record (RFC 4180: quoted fields may hold commas, quotes and line breaks). */
+        private List<String> readRecord() throws IOException {
+            int c = reader.read();
+            while (c == '\r' || c == '\n') {
+                c = reader.read(); // blank lines
+            }
+            if (c < 0) {
+                return null;
+            }
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c < 0) {
+                        throw new IOException("CSV file ends inside a quoted field");
+                    }
+                    if (c == '"') {
+                        int next = reader.read();
+                        if (next == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            c = next;
+                            continue;
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.isEmpty()) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n' || c == '\r' || c < 0) {
+                    fields.add(field.toString());
+                    if (c == '\r') {
+                        reader.mark(1);
+                        if (reader.read() != '\n') {
+                            reader.reset();
+                        }
+                    }
+                    return fields;
+                } else {
+                    field.append((char) c);
+                }
+                c = reader.read();
+            }
+        }
+    }
+}
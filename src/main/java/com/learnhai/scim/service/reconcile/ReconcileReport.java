@@ -0,0 +1,62 @@
+package com.learnhai.scim.service.reconcile;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a reconcile: what differed between the snapshot and the store, and, unless it was a
+ * dry run, what applying it did. Counters cover every change; {@code changes} lists the first
+ * {@code scim.reconcile.max-reported-changes} of them.
+ */
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ReconcileReport {
+
+    public enum Action { CREATE_USER, UPDATE_USER, DEACTIVATE_USER, CREATE_GROUP, ADD_MEMBER, REMOVE_MEMBER }
+
+    /**
+     * One change. {@code name} is the userName or group name; for memberships it is the group and
+     * {@code member} the user. {@code attributes} are the Keycloak fields an update changes.
+     * {@code status} is set once applied: the HTTP status the write ended with.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Change {
+        private Action action;
+        private String id;
+        private String name;
+        private String member;
+        private List<String> attributes;
+        private Integer status;
+        private String scimType;
+        private String detail;
+    }
+
+    private boolean dryRun;
+    private long snapshotUsers;
+    private long snapshotGroups;
+    private long scannedUsers;
+    private long scannedGroups;
+
+    private long usersCreated;
+    private long usersUpdated;
+    private long usersDeactivated;
+    private long usersUnchanged;
+    private long groupsCreated;
+    private long membersAdded;
+    private long membersRemoved;
+    private long failed; // changes that were attempted and failed; always 0 for a dry run
+
+    private long scanMillis;
+    private long applyMillis;
+    private boolean truncated; // changes lists fewer than the counters count
+    private List<Change> changes = new ArrayList<>();
+}
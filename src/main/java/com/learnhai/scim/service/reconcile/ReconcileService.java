@@ -0,0 +1,629 @@
+package com.learnhai.scim.service.reconcile;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnhai.scim.audit.AuditLog;
+import com.learnhai.scim.audit.AuditRecord;
+import com.learnhai.scim.backend.IdentityBackend;
+import com.learnhai.scim.exception.ScimException;
+import com.learnhai.scim.index.UserKeyIndex;
+import com.learnhai.scim.mapper.ModificationStamps;
+import com.learnhai.scim.mapper.RepresentationChanges;
+import com.learnhai.scim.mapper.UserMapper;
+import com.learnhai.scim.model.scim.ScimGroup;
+import com.learnhai.scim.model.scim.ScimUser;
+import com.learnhai.scim.schema.ScimSchemaValidator;
+import com.learnhai.scim.service.BulkLoadService;
+import com.learnhai.scim.service.GroupHierarchyCache;
+import com.learnhai.scim.service.MembershipIndex;
+import com.learnhai.scim.service.UserChangeIndex;
+import com.learnhai.scim.tenant.TenantContext;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Reconciles the store with a full snapshot of users and groups from the identity provider, writing
+ * only what differs rather than replacing every user.
+ * <p>
+ * The snapshot is NDJSON, one SCIM User or Group per line (Groups by their schema). Users are matched
+ * by userName and groups by name. Group members are users, referenced by the externalId or userName
+ * of a snapshot user, or by the id of a user in the store; Group members and nesting are not
+ * reconciled. A snapshot with a line that is not a valid resource is rejected whole, as a partial
+ * snapshot would deactivate everyone left out of it.
+ * <p>
+ * The store's users are scanned in {@code scim.reconcile.partition-size} pages, fetched in parallel,
+ * and the members of the snapshot's groups likewise. The diff is then:
+ * <ul>
+ *   <li>snapshot users missing from the store are created, and missing groups with their members,
+ *       through {@link BulkLoadService};</li>
+ *   <li>users whose mapped representation differs are updated, with the same result a replace
+ *       would have had;</li>
+ *   <li>enabled users of the store that are not in the snapshot are deactivated (never deleted);
+ *       service accounts are left alone;</li>
+ *   <li>memberships of the snapshot's groups that already exist are added and removed one by one.</li>
+ * </ul>
+ * Updates, deactivations and membership changes are applied in parallel. A dry run stops after the
+ * diff and reports it. Groups that are not in the snapshot are left as they are. One reconcile runs
+ * at a time per tenant.
+ */
+@Service
+@Slf4j
+public class ReconcileService {
+
+    private static final String USER_BULK_ID = "user:";
+    private static final String GROUP_BULK_ID = "group:";
+
+    private final boolean enabled;
+    private final int parallelism;
+    private final int partitionSize;
+    private final int maxReportedChanges;
+    private final double maxDeactivationRatio;
+    private final ObjectMapper objectMapper;
+    private final ScimSchemaValidator schemaValidator;
+    private final IdentityBackend identityBackend;
+    private final UserMapper userMapper;
+    private final BulkLoadService bulkLoadService;
+    private final UserChangeIndex changeIndex;
+    private final UserKeyIndex keyIndex;
+    private final MembershipIndex membershipIndex;
+    private final GroupHierarchyCache groupHierarchy;
+    private final AuditLog auditLog;
+
+    private final Set<String> running = ConcurrentHashMap.newKeySet(); // tenants with a reconcile in progress
+    private ExecutorService executor;
+
+    /** The snapshot's users by lower-case userName, groups by name, and user keys by externalId. */
+    private record Snapshot(Map<String, ScimUser> users, Map<String, ScimGroup> groups, Map<String, String> externalIds) {
+    }
+
+    /** A planned user create. */
+    private record UserCreate(ReconcileReport.Change change, ScimUser user) {
+    }
+
+    /** A planned user write; {@code rep} is what gets sent. */
+    private record UserWrite(ReconcileReport.Change change, UserRepresentation rep) {
+    }
+
+    /** A planned group create, with the users it is created with and their membership changes. */
+    private record GroupCreate(ReconcileReport.Change change, ScimGroup group, List<String> memberKeys,
+                               List<ReconcileReport.Change> memberChanges) {
+    }
+
+    /** A planned membership change of a group that exists; {@code userKey} is set for users the reconcile creates. */
+    private record MemberWrite(ReconcileReport.Change change, String groupId, String userId, String userKey) {
+    }
+
+    @Autowired
+    public ReconcileService(@Value("${scim.reconcile.enabled:true}") boolean enabled,
+                            @Value("${scim.reconcile.parallelism:8}") int parallelism,
+                            @Value("${scim.reconcile.partition-size:1000}") int partitionSize,
+                            @Value("${scim.reconcile.max-reported-changes:10000}") int maxReportedChanges,
+                            @Value("${scim.reconcile.max-deactivation-ratio:0.5}") double maxDeactivationRatio,
+                            ObjectMapper objectMapper,
+                            ScimSchemaValidator schemaValidator,
+                            IdentityBackend identityBackend,
+                            UserMapper userMapper,
+                            BulkLoadService bulkLoadService,
+                            UserChangeIndex changeIndex,
+                            UserKeyIndex keyIndex,
+                            MembershipIndex membershipIndex,
+                            GroupHierarchyCache groupHierarchy,
+                            AuditLog auditLog) {
+        this.enabled = enabled;
+        this.parallelism = Math.max(1, parallelism);
+        this.partitionSize = Math.max(1, partitionSize);
+        this.maxReportedChanges = maxReportedChanges;
+        this.maxDeactivationRatio = maxDeactivationRatio;
+        this.objectMapper = objectMapper;
+        this.schemaValidator = schemaValidator;
+        this.identityBackend = identityBackend;
+        this.userMapper = userMapper;
+        this.bulkLoadService = bulkLoadService;
+        this.changeIndex = changeIndex;
+        this.keyIndex = keyIndex;
+        this.membershipIndex = membershipIndex;
+        this.groupHierarchy = groupHierarchy;
+        this.auditLog = auditLog;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(parallelism, r -> new Thread(r, "scim-reconcile-" + threadNumber.getAndIncrement()));
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads the snapshot, diffs it against the store and, unless {@code dryRun}, applies the diff.
+     */
+    public ReconcileReport reconcile(InputStream snapshotStream, boolean dryRun) {
+        if (!enabled) {
+            throw new ScimException("Reconcile is not enabled", HttpStatus.NOT_IMPLEMENTED);
+        }
+        String tenantKey = Objects.requireNonNullElse(TenantContext.tenantId(), "");
+        if (!running.add(tenantKey)) {
+            throw new ScimException("A reconcile is already running", HttpStatus.CONFLICT);
+        }
+        try {
+            return reconcile(readSnapshot(snapshotStream), dryRun);
+        } finally {
+            running.remove(tenantKey);
+        }
+    }
+
+    private ReconcileReport reconcile(Snapshot snapshot, boolean dryRun) {
+        long started = System.nanoTime();
+        TenantContext tenant = TenantContext.current();
+        ReconcileReport report = new ReconcileReport();
+        report.setDryRun(dryRun);
+        report.setSnapshotUsers(snapshot.users().size());
+        report.setSnapshotGroups(snapshot.groups().size());
+
+        // --- Scan ---
+        Map<String, UserRepresentation> stored = scanUsers(tenant);
+        Map<String, UserRepresentation> storedById = new HashMap<>(stored.size() * 2);
+        stored.values().forEach(user -> storedById.put(user.getId(), user));
+        List<GroupRepresentation> allGroups = groupHierarchy.all();
+        Map<String, GroupRepresentation> storedGroups = new HashMap<>(allGroups.size() * 2);
+        allGroups.forEach(group -> storedGroups.putIfAbsent(group.getName(), group));
+        report.setScannedUsers(stored.size());
+        report.setScannedGroups(allGroups.size());
+        Map<String, Map<String, String>> storedMembers = scanMembers(tenant, snapshot, storedGroups); // group id -> user id -> key
+
+        // --- Diff ---
+        List<ReconcileReport.Change> changes = new ArrayList<>();
+        List<UserCreate> creates = new ArrayList<>();
+        List<UserWrite> updates = new ArrayList<>();
+        for (Map.Entry<String, ScimUser> entry : snapshot.users().entrySet()) {
+            ScimUser user = entry.getValue();
+            UserRepresentation current = stored.get(entry.getKey());
+            if (current == null) {
+                ReconcileReport.Change change = change(ReconcileReport.Action.CREATE_USER, null, user.getUserName(), null, null);
+                changes.add(change);
+                creates.add(new UserCreate(change, user));
+                continue;
+            }
+            UserRepresentation desired = userMapper.toKeycloakUser(user, RepresentationChanges.copy(current));
+            List<String> changed = RepresentationChanges.changed(current, desired);
+            if (changed.isEmpty()) {
+                report.setUsersUnchanged(report.getUsersUnchanged() + 1);
+                continue;
+            }
+            ReconcileReport.Change change = change(ReconcileReport.Action.UPDATE_USER, current.getId(), current.getUsername(), null, changed);
+            changes.add(change);
+            updates.add(new UserWrite(change, RepresentationChanges.update(desired, changed)));
+        }
+        List<UserWrite> deactivations = new ArrayList<>();
+        long enabledUsers = 0;
+        for (Map.Entry<String, UserRepresentation> entry : stored.entrySet()) {
+            UserRepresentation current = entry.getValue();
+            if (!Boolean.TRUE.equals(current.isEnabled()) || current.getServiceAccountClientId() != null) {
+                continue;
+            }
+            enabledUsers++;
+            if (!snapshot.users().containsKey(entry.getKey())) {
+                UserRepresentation desired = RepresentationChanges.copy(current);
+                desired.setEnabled(false);
+                ReconcileReport.Change change = change(ReconcileReport.Action.DEACTIVATE_USER, current.getId(), current.getUsername(),
+                        null, List.of("enabled"));
+                changes.add(change);
+                deactivations.add(new UserWrite(change, RepresentationChanges.update(desired, List.of("enabled"))));
+            }
+        }
+        List<GroupCreate> groupCreates = new ArrayList<>();
+        List<MemberWrite> memberWrites = new ArrayList<>();
+        for (ScimGroup group : snapshot.groups().values()) {
+            Set<String> desired = members(group, snapshot, storedById);
+            GroupRepresentation current = storedGroups.get(group.getDisplayName());
+            if (current == null) {
+                ReconcileReport.Change create = change(ReconcileReport.Action.CREATE_GROUP, null, group.getDisplayName(), null, null);
+                changes.add(create);
+                List<ReconcileReport.Change> added = new ArrayList<>();
+                for (String key : desired) {
+                    ReconcileReport.Change change = change(ReconcileReport.Action.ADD_MEMBER, null, group.getDisplayName(),
+                            userName(key, snapshot, stored), null);
+                    changes.add(change);
+                    added.add(change);
+                }
+                groupCreates.add(new GroupCreate(create, group, new ArrayList<>(desired), added));
+                continue;
+            }
+            Map<String, String> currentMembers = storedMembers.getOrDefault(current.getId(), Map.of());
+            Set<String> currentKeys = new LinkedHashSet<>(currentMembers.values());
+            for (String key : desired) {
+                if (!currentKeys.contains(key)) {
+                    UserRepresentation user = stored.get(key);
+                    ReconcileReport.Change change = change(ReconcileReport.Action.ADD_MEMBER, current.getId(), current.getName(),
+                            userName(key, snapshot, stored), null);
+                    changes.add(change);
+                    memberWrites.add(new MemberWrite(change, current.getId(), user != null ? user.getId() : null, key));
+                }
+            }
+            for (Map.Entry<String, String> member : currentMembers.entrySet()) {
+                if (!desired.contains(member.getValue())) {
+                    ReconcileReport.Change change = change(ReconcileReport.Action.REMOVE_MEMBER, current.getId(), current.getName(),
+                            userName(member.getValue(), snapshot, stored), null);
+                    changes.add(change);
+                    memberWrites.add(new MemberWrite(change, current.getId(), member.getKey(), null));
+                }
+            }
+        }
+        count(report, changes);
+        report.setScanMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+
+        if (!dryRun) {
+            if (enabledUsers > 0 && deactivations.size() > maxDeactivationRatio * enabledUsers) {
+                throw new ScimException("The snapshot would deactivate " + deactivations.size() + " of " + enabledUsers
+                        + " enabled users, more than scim.reconcile.max-deactivation-ratio allows", HttpStatus.CONFLICT);
+            }
+            long applyStarted = System.nanoTime();
+            apply(tenant, stored, creates, groupCreates, updates, deactivations, memberWrites);
+            report.setApplyMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - applyStarted));
+            report.setFailed(changes.stream().filter(change -> change.getStatus() != null && change.getStatus() >= 400).count());
+        }
+        report.setTruncated(changes.size() > maxReportedChanges);
+        report.setChanges(changes.size() > maxReportedChanges ? new ArrayList<>(changes.subList(0, maxReportedChanges)) : changes);
+        log.info("Reconcile{} of {} users and {} groups: {} users created, {} updated, {} deactivated, {} unchanged; "
+                        + "{} groups created, {} members added, {} removed; {} failed, in {} ms",
+                dryRun ? " (dry run)" : "", report.getSnapshotUsers(), report.getSnapshotGroups(), report.getUsersCreated(),
+                report.getUsersUpdated(), report.getUsersDeactivated(), report.getUsersUnchanged(), report.getGroupsCreated(),
+                report.getMembersAdded(), report.getMembersRemoved(), report.getFailed(),
+                report.getScanMillis() + report.getApplyMillis());
+        return report;
+    }
+
+    // --- Snapshot ---
+
+    private Snapshot readSnapshot(InputStream stream) {
+        Map<String, ScimUser> users = new LinkedHashMap<>();
+        Map<String, ScimGroup> groups = new LinkedHashMap<>();
+        Map<String, String> externalIds = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            long line = 0;
+            for (String text; (text = reader.readLine()) != null; ) {
+                line++;
+                if (text.isBlank()) {
+                    continue;
+                }
+                JsonNode node;
+                try {
+                    node = objectMapper.readTree(text);
+                } catch (JsonProcessingException e) {
+                    throw new ScimException("Snapshot line " + line + " is not valid JSON: " + e.getOriginalMessage(),
+                            HttpStatus.BAD_REQUEST, "invalidSyntax");
+                }
+                if (!node.isObject()) {
+                    throw new ScimException("Snapshot line " + line + " is not a JSON object", HttpStatus.BAD_REQUEST, "invalidSyntax");
+                }
+                try {
+                    if (isGroup(node)) {
+                        ScimGroup group = schemaValidator.readResource(ScimSchemaValidator.GROUP, node, ScimGroup.class);
+                        if (StringUtils.isBlank(group.getDisplayName())) {
+                            throw new ScimException("Group name is missing", HttpStatus.BAD_REQUEST, "invalidValue");
+                        }
+                        if (groups.putIfAbsent(group.getDisplayName(), group) != null) {
+                            throw new ScimException("Group '" + group.getDisplayName() + "' appears more than once", HttpStatus.CONFLICT, "uniqueness");
+                        }
+                    } else {
+                        ScimUser user = schemaValidator.readResource(ScimSchemaValidator.USER, node, ScimUser.class);
+                        if (StringUtils.isBlank(user.getUserName())) {
+                            throw new ScimException("User name is missing", HttpStatus.BAD_REQUEST, "invalidValue");
+                        }
+                        String key = user.getUserName().toLowerCase(Locale.ROOT);
+                        if (users.putIfAbsent(key, user) != null) {
+                            throw new ScimException("User '" + user.getUserName() + "' appears more than once", HttpStatus.CONFLICT, "uniqueness");
+                        }
+                        if (StringUtils.isNotBlank(user.getExternalId())) {
+                            externalIds.putIfAbsent(user.getExternalId(), key);
+                        }
+                    }
+                } catch (ScimException e) {
+                    throw new ScimException("Snapshot line " + line + ": " + e.getMessage(), e.getStatus(), e.getScimType());
+                }
+            }
+        } catch (IOException e) {
+            throw new ScimException("Failed to read the snapshot", HttpStatus.BAD_REQUEST, "invalidSyntax", e);
+        }
+        return new Snapshot(users, groups, externalIds);
+    }
+
+    private static boolean isGroup(JsonNode node) {
+        for (JsonNode schema : node.path("schemas")) {
+            if (ScimGroup.SCHEMA_CORE_GROUP.equals(schema.asText())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** User keys of a group's members; fails the snapshot on a member it cannot place. */
+    private static Set<String> members(ScimGroup group, Snapshot snapshot, Map<String, UserRepresentation> storedById) {
+        Set<String> keys = new LinkedHashSet<>();
+        if (group.getMembers() == null) {
+            return keys;
+        }
+        for (ScimGroup.Member member : group.getMembers()) {
+            if ("Group".equalsIgnoreCase(member.getType()) || StringUtils.isBlank(member.getValue())) {
+                continue;
+            }
+            String value = member.getValue();
+            String key = snapshot.externalIds().get(value);
+            if (key == null && snapshot.users().containsKey(value.toLowerCase(Locale.ROOT))) {
+                key = value.toLowerCase(Locale.ROOT);
+            }
+            if (key == null && storedById.containsKey(value)) {
+                key = storedById.get(value).getUsername().toLowerCase(Locale.ROOT);
+            }
+            if (key == null) {
+                throw new ScimException("Member '" + value + "' of group '" + group.getDisplayName()
+                        + "' is neither a user of the snapshot nor of the store", HttpStatus.BAD_REQUEST, "invalidValue");
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    // --- Scan ---
+
+    /** Every user of the store by lower-case userName, fetched in parallel pages. */
+    private Map<String, UserRepresentation> scanUsers(TenantContext tenant) {
+        long total = identityBackend.countUsers(null);
+        int partitions = (int) ((total + partitionSize - 1) / partitionSize);
+        List<CompletableFuture<List<UserRepresentation>>> pages = new ArrayList<>(partitions);
+        for (int p = 0; p < partitions; p++) {
+            int first = p * partitionSize;
+            pages.add(CompletableFuture.supplyAsync(
+                    () -> TenantContext.callAs(tenant, () -> identityBackend.getUsers(first, partitionSize, null)), executor));
+        }
+        Map<String, UserRepresentation> users = new HashMap<>((int) Math.min(total * 2, Integer.MAX_VALUE));
+        for (int p = 0; p < partitions; p++) {
+            List<UserRepresentation> page = join(pages.get(p));
+            // A short page in the middle is a failed fetch: users missing from the scan would be recreated
+            if (p < partitions - 1 && page.size() < partitionSize) {
+                throw new ScimException("Scan of the store's users returned a short page at " + (p * partitionSize)
+                        + "; retry the reconcile", HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            page.forEach(user -> users.put(user.getUsername().toLowerCase(Locale.ROOT), user));
+        }
+        if (users.size() < total) {
+            throw new ScimException("Scan of the store's users found " + users.size() + " of " + total
+                    + " users; retry the reconcile", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        return users;
+    }
+
+    /** Current members of the snapshot's groups that exist: group id to member user id to user key. */
+    private Map<String, Map<String, String>> scanMembers(TenantContext tenant, Snapshot snapshot,
+                                                          Map<String, GroupRepresentation> storedGroups) {
+        Map<String, Map<String, String>> members = new ConcurrentHashMap<>();
+        List<GroupRepresentation> groups = snapshot.groups().keySet().stream()
+                .map(storedGroups::get)
+                .filter(Objects::nonNull)
+                .toList();
+        parallel(tenant, groups, group -> {
+            Map<String, String> byId = new HashMap<>();
+            for (UserRepresentation user : identityBackend.getGroupMembers(group.getId(), 0, Integer.MAX_VALUE)) {
+                byId.put(user.getId(), user.getUsername().toLowerCase(Locale.ROOT));
+            }
+            members.put(group.getId(), byId);
+        });
+        return members;
+    }
+
+    // --- Apply ---
+
+    private void apply(TenantContext tenant, Map<String, UserRepresentation> stored, List<UserCreate> creates,
+                       List<GroupCreate> groupCreates, List<UserWrite> updates, List<UserWrite> deactivations,
+                       List<MemberWrite> memberWrites) {
+        String operationId = UUID.randomUUID().toString();
+        String actor = AuditLog.currentActor();
+        String tenantId = TenantContext.tenantId();
+
+        // Creates go through the bulk load: partial imports, with new groups joined by new users by path
+        Map<String, String> createdIds = new HashMap<>(); // user key -> id
+        if (!creates.isEmpty() || !groupCreates.isEmpty()) {
+            List<BulkLoadService.Item> items = new ArrayList<>(creates.size() + groupCreates.size());
+            Map<String, UserCreate> createsByKey = new HashMap<>(creates.size() * 2);
+            for (UserCreate create : creates) {
+                String key = create.user().getUserName().toLowerCase(Locale.ROOT);
+                createsByKey.put(key, create);
+                items.add(new BulkLoadService.Item(USER_BULK_ID + key, create.user(), null));
+            }
+            for (GroupCreate create : groupCreates) {
+                List<ScimGroup.Member> members = new ArrayList<>(create.memberKeys().size());
+                for (String key : create.memberKeys()) {
+                    ScimGroup.Member member = new ScimGroup.Member();
+                    member.setType("User");
+                    member.setValue(createsByKey.containsKey(key) ? BulkLoadService.BULK_ID_PREFIX + USER_BULK_ID + key : stored.get(key).getId());
+                    members.add(member);
+                }
+                create.group().setMembers(members);
+                items.add(new BulkLoadService.Item(GROUP_BULK_ID + create.group().getDisplayName(), null, create.group()));
+            }
+            List<BulkLoadService.Outcome> outcomes = bulkLoadService.load(items, null, actor, operationId);
+            for (int i = 0; i < creates.size(); i++) {
+                UserCreate create = creates.get(i);
+                settle(create.change(), outcomes.get(i));
+                if (outcomes.get(i) != null && outcomes.get(i).id() != null) {
+                    createdIds.put(create.user().getUserName().toLowerCase(Locale.ROOT), outcomes.get(i).id());
+                }
+            }
+            for (int i = 0; i < groupCreates.size(); i++) {
+                GroupCreate create = groupCreates.get(i);
+                settle(create.change(), outcomes.get(creates.size() + i));
+                for (int m = 0; m < create.memberKeys().size(); m++) {
+                    ReconcileReport.Change member = create.memberChanges().get(m);
+                    UserCreate user = createsByKey.get(create.memberKeys().get(m));
+                    member.setId(create.change().getId());
+                    if (user != null && user.change().getStatus() >= 400) {
+                        // Not in the group, whatever the group's outcome
+                        member.setStatus(HttpStatus.FAILED_DEPENDENCY.value());
+                        member.setDetail("User " + member.getMember() + " was not created");
+                    } else {
+                        member.setStatus(create.change().getStatus());
+                        member.setScimType(create.change().getScimType());
+                        member.setDetail(create.change().getDetail());
+                    }
+                }
+            }
+        }
+
+        List<UserWrite> userWrites = new ArrayList<>(updates.size() + deactivations.size());
+        userWrites.addAll(updates);
+        userWrites.addAll(deactivations);
+        parallel(tenant, userWrites, write -> {
+            long started = System.nanoTime();
+            Instant now = ModificationStamps.now();
+            ReconcileReport.Change change = write.change();
+            try {
+                ModificationStamps.stamp(write.rep(), now);
+                identityBackend.updateUser(change.getId(), write.rep());
+                changeIndex.modified(change.getId(), now);
+                keyIndex.indexed(change.getId(), write.rep());
+                change.setStatus(HttpStatus.OK.value());
+            } catch (ScimException e) {
+                fail(change, e);
+            }
+            auditLog.record(new AuditRecord(System.currentTimeMillis(), tenantId, actor, "User", change.getId(),
+                    change.getAction() == ReconcileReport.Action.UPDATE_USER ? AuditRecord.Operation.REPLACE : AuditRecord.Operation.PATCH,
+                    change.getStatus(), TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started), operationId));
+        });
+
+        parallel(tenant, memberWrites, write -> {
+            long started = System.nanoTime();
+            ReconcileReport.Change change = write.change();
+            String userId = write.userId() != null ? write.userId() : createdIds.get(write.userKey());
+            try {
+                if (userId == null) {
+                    throw new ScimException("User " + change.getMember() + " was not created", HttpStatus.FAILED_DEPENDENCY);
+                }
+                if (change.getAction() == ReconcileReport.Action.ADD_MEMBER) {
+                    identityBackend.addUserToGroup(userId, write.groupId());
+                    membershipIndex.added(userId, write.groupId());
+                } else {
+                    identityBackend.removeUserFromGroup(userId, write.groupId());
+                    membershipIndex.removed(userId, write.groupId());
+                }
+                change.setStatus(HttpStatus.OK.value());
+            } catch (ScimException e) {
+                fail(change, e);
+            }
+            auditLog.record(new AuditRecord(System.currentTimeMillis(), tenantId, actor, "Group", write.groupId(),
+                    AuditRecord.Operation.PATCH, change.getStatus(), TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started), operationId));
+        });
+    }
+
+    private static void settle(ReconcileReport.Change change, BulkLoadService.Outcome outcome) {
+        if (outcome == null) {
+            change.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            change.setDetail("The bulk load did not report this resource");
+            return;
+        }
+        change.setId(outcome.id());
+        change.setStatus(outcome.status());
+        change.setScimType(outcome.scimType());
+        change.setDetail(outcome.detail());
+    }
+
+    private static void fail(ReconcileReport.Change change, ScimException e) {
+        change.setStatus(e.getStatus().value());
+        change.setScimType(e.getScimType());
+        change.setDetail(e.getMessage());
+    }
+
+    /** Runs {@code action} on every item on the reconcile pool, bound to {@code tenant}, and waits for all. */
+    private <T> void parallel(TenantContext tenant, List<T> items, Consumer<T> action) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(items.size());
+        for (T item : items) {
+            futures.add(CompletableFuture.runAsync(() -> TenantContext.callAs(tenant, () -> {
+                action.accept(item);
+                return null;
+            }), executor));
+        }
+        futures.forEach(ReconcileService::join);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // --- Diff ---
+
+    private static ReconcileReport.Change change(ReconcileReport.Action action, String id, String name, String member,
+                                                 List<String> attributes) {
+        ReconcileReport.Change change = new ReconcileReport.Change();
+        change.setAction(action);
+        change.setId(id);
+        change.setName(name);
+        change.setMember(member);
+        change.setAttributes(attributes);
+        return change;
+    }
+
+    private static void count(ReconcileReport report, List<ReconcileReport.Change> changes) {
+        for (ReconcileReport.Change change : changes) {
+            switch (change.getAction()) {
+                case CREATE_USER -> report.setUsersCreated(report.getUsersCreated() + 1);
+                case UPDATE_USER -> report.setUsersUpdated(report.getUsersUpdated() + 1);
+                case DEACTIVATE_USER -> report.setUsersDeactivated(report.getUsersDeactivated() + 1);
+                case CREATE_GROUP -> report.setGroupsCreated(report.getGroupsCreated() + 1);
+                case ADD_MEMBER -> report.setMembersAdded(report.getMembersAdded() + 1);
+                case REMOVE_MEMBER -> report.setMembersRemoved(report.getMembersRemoved() + 1);
+            }
+        }
+    }
+
+    private static String userName(String key, Snapshot snapshot, Map<String, UserRepresentation> stored) {
+        ScimUser user = snapshot.users().get(key);
+        return user != null ? user.getUserName() : stored.containsKey(key) ? stored.get(key).getUsername() : key;
+    }
+}
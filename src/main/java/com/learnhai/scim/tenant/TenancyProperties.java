@@ -0,0 +1,35 @@
+package com.learnhai.scim.tenant;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Multi-tenant routing (scim.tenancy.*). Each tenant maps to a Keycloak realm and gets its own
+ * backend, connection pool and request budget; see {@link TenantRegistry}.
+ */
+@Data
+@ConfigurationProperties(prefix = "scim.tenancy")
+public class TenancyProperties {
+
+    private boolean enabled;
+    // JWT claim naming the caller's tenant, required unless the path names the default tenant; blank to route by path only
+    private String claim = "tenant";
+    // Tenant for requests that name none; blank to reject them
+    private String defaultTenant = "default";
+    // Defaults for tenants that do not set their own
+    private int connectionPoolSize = 20;
+    private int maxConcurrentRequests = 64;
+    private long maxWaitMs = 250;
+    private Map<String, TenantProperties> tenants = new LinkedHashMap<>();
+
+    @Data
+    public static class TenantProperties {
+        // Keycloak realm; defaults to the tenant id
+        private String realm;
+        private Integer connectionPoolSize;
+        private Integer maxConcurrentRequests;
+    }
+}
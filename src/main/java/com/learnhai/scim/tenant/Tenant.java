@@ -0,0 +1,56 @@
+package com.learnhai.scim.tenant;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A configured tenant: the realm it lives in and its share of the bridge's resources.
+ */
+public final class Tenant {
+
+    private final String id;
+    private final String realm;
+    private final int connectionPoolSize;
+    private final int maxConcurrentRequests;
+    private final Semaphore permits; // null when requests are not limited
+
+    Tenant(String id, String realm, int connectionPoolSize, int maxConcurrentRequests) {
+        this.id = id;
+        this.realm = realm;
+        this.connectionPoolSize = connectionPoolSize;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.permits = maxConcurrentRequests > 0 ? new Semaphore(maxConcurrentRequests) : null;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getRealm() {
+        return realm;
+    }
+
+    /** Keycloak connections reserved for this tenant. */
+    public int getConnectionPoolSize() {
+        return connectionPoolSize;
+    }
+
+    /** Requests served concurrently for this tenant; 0 for no limit. */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * Takes one of the tenant's request slots, waiting up to {@code maxWaitMs}. Each successful call
+     * must be paired with {@link #exit()}.
+     */
+    boolean tryEnter(long maxWaitMs) throws InterruptedException {
+        return permits == null || permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS);
+    }
+
+    void exit() {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.learnhai.scim.tenant;
+
+import com.learnhai.scim.backend.IdentityBackend;
+
+/**
+ * Creates the identity backend serving one tenant. Each configured {@code scim.backend} contributes
+ * one; {@link TenantRoutingIdentityBackend} calls it once per tenant at startup. Backends that are
+ * {@link AutoCloseable} are closed on shutdown.
+ */
+@FunctionalInterface
+public interface TenantBackendFactory {
+
+    IdentityBackend create(Tenant tenant);
+}
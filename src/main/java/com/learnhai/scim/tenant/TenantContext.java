@@ -0,0 +1,67 @@
+package com.learnhai.scim.tenant;
+
+import java.util.function.Supplier;
+
+/**
+ * The tenant the current thread is working for, bound by {@link TenantResolutionFilter} for HTTP
+ * requests and by the provisioning workers for queued writes. Unbound means the default tenant.
+ */
+public final class TenantContext {
+
+    public static final String SCIM_PATH = "/scim/v2";
+
+    private static final ThreadLocal<TenantContext> CURRENT = new ThreadLocal<>();
+
+    private final String tenantId;
+    private final String scimPath;
+
+    public TenantContext(String tenantId, String scimPath) {
+        this.tenantId = tenantId;
+        this.scimPath = scimPath;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    /** SCIM root path the tenant was addressed through: /scim/v2, or /scim/v2/{tenant} when routed by path. */
+    public String getScimPath() {
+        return scimPath;
+    }
+
+    /** The bound context, or null on threads serving the default tenant. */
+    public static TenantContext current() {
+        return CURRENT.get();
+    }
+
+    /** The bound tenant id, or null for the default tenant. */
+    public static String tenantId() {
+        TenantContext context = CURRENT.get();
+        return context != null ? context.tenantId : null;
+    }
+
+    /** Prefix for resource locations, so they point back at the route the tenant was addressed through. */
+    public static String scimPath() {
+        TenantContext context = CURRENT.get();
+        return context != null ? context.scimPath : SCIM_PATH;
+    }
+
+    /** Runs {@code action} bound to {@code context} (null for the default tenant), restoring the previous binding. */
+    public static <T> T callAs(TenantContext context, Supplier<T> action) {
+        TenantContext previous = CURRENT.get();
+        set(context);
+        try {
+            return action.get();
+        } finally {
+            set(previous);
+        }
+    }
+
+    static void set(TenantContext context) {
+        if (context == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(context);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.learnhai.scim.tenant;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The tenants this bridge serves, built once from {@link TenancyProperties}.
+ * <p>
+ * With tenancy disabled there is a single tenant on {@code keycloak.target-realm} without a request
+ * limit, which is how the bridge has always behaved. With it enabled, every configured tenant is
+ * registered, plus the default tenant on {@code keycloak.target-realm} if it is not configured.
+ */
+@Component
+@Slf4j
+public class TenantRegistry {
+
+    // Second path segments that are SCIM endpoints, so never tenant ids
+    static final Set<String> RESERVED_IDS = Set.of(
+            "Users", "Groups", "Me", "Bulk", ".search", "Operations",
+            "ServiceProviderConfig", "ResourceTypes", "Schemas", "KeycloakEvents", "ImportJobs", "Reconcile");
+
+    private final TenancyProperties properties;
+    private final Map<String, Tenant> tenants;
+    private final Tenant defaultTenant;
+
+    @Autowired
+    public TenantRegistry(TenancyProperties properties,
+                          @Value("${keycloak.target-realm:myrealm}") String targetRealm) {
+        this.properties = properties;
+        String defaultId = properties.isEnabled()
+                ? StringUtils.trimToNull(properties.getDefaultTenant())
+                : StringUtils.defaultIfBlank(properties.getDefaultTenant(), "default");
+        Map<String, Tenant> byId = new LinkedHashMap<>();
+        if (!properties.isEnabled()) {
+            byId.put(defaultId, new Tenant(defaultId, targetRealm, properties.getConnectionPoolSize(), 0));
+        } else {
+            properties.getTenants().forEach((id, tenant) -> byId.put(id, build(id, tenant)));
+            if (defaultId != null && !byId.containsKey(defaultId)) {
+                TenancyProperties.TenantProperties tenant = new TenancyProperties.TenantProperties();
+                tenant.setRealm(targetRealm);
+                byId.put(defaultId, build(defaultId, tenant));
+            }
+            if (byId.isEmpty()) {
+                throw new IllegalStateException("scim.tenancy.enabled is set but no tenants are configured");
+            }
+            log.info("Multi-tenant routing enabled for tenants {} (default: {}).", byId.keySet(),
+                    defaultId != null ? defaultId : "none");
+        }
+        this.tenants = Collections.unmodifiableMap(byId);
+        this.defaultTenant = defaultId != null ? tenants.get(defaultId) : null;
+    }
+
+    private Tenant build(String id, TenancyProperties.TenantProperties tenant) {
+        if (RESERVED_IDS.contains(id) || !id.matches("[A-Za-z0-9][A-Za-z0-9_.-]*")) {
+            throw new IllegalStateException("Invalid tenant id '" + id + "': must be a plain path segment and not a SCIM endpoint name");
+        }
+        return new Tenant(id,
+                StringUtils.defaultIfBlank(tenant.getRealm(), id),
+                tenant.getConnectionPoolSize() != null ? tenant.getConnectionPoolSize() : properties.getConnectionPoolSize(),
+                tenant.getMaxConcurrentRequests() != null ? tenant.getMaxConcurrentRequests() : properties.getMaxConcurrentRequests());
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    public Collection<Tenant> all() {
+        return tenants.values();
+    }
+
+    public Optional<Tenant> find(String id) {
+        return id == null ? Optional.empty() : Optional.ofNullable(tenants.get(id));
+    }
+
+    /** The tenant requests without a path segment or claim go to; empty if they must name one. */
+    public Optional<Tenant> defaultTenant() {
+        return Optional.ofNullable(defaultTenant);
+    }
+
+    /** The tenant bound to the current thread, falling back to the default tenant. */
+    public Tenant current() {
+        String id = TenantContext.tenantId();
+        Tenant tenant = id != null ? tenants.get(id) : defaultTenant;
+        if (tenant == null) {
+            throw new IllegalStateException("No tenant bound to the current thread");
+        }
+        return tenant;
+    }
+
+    String claim() {
+        return properties.getClaim();
+    }
+
+    long maxWaitMs() {
+        return properties.getMaxWaitMs();
+    }
+}
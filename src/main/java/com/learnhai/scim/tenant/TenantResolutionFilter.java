@@ -0,0 +1,152 @@
+package com.learnhai.scim.tenant;
+
+import com.learnhai.scim.exception.ScimException;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+
+import java.io.IOException;
+
+/**
+ * Works out which tenant a SCIM request is for and binds it to the request thread.
+ * <p>
+ * The tenant comes from the path ({@code /scim/v2/{tenant}/Users/...}), from the token's tenant claim,
+ * or else is the default tenant; a path tenant that disagrees with the token's claim is refused. When a
+ * claim is configured, a token without it is refused too, unless the path names the default tenant. The
+ * request then takes one of the tenant's {@code max-concurrent-requests} slots, so a tenant running a
+ * bulk sync queues behind its own budget instead of occupying every servlet thread.
+ * <p>
+ * Runs after Spring Security (default filter order), so the token is already authenticated.
+ */
+@Component
+@Slf4j
+public class TenantResolutionFilter extends OncePerRequestFilter {
+
+    private final TenantRegistry tenantRegistry;
+    private final HandlerExceptionResolver exceptionResolver;
+
+    @Autowired
+    public TenantResolutionFilter(TenantRegistry tenantRegistry,
+                                  @Qualifier("handlerExceptionResolver") HandlerExceptionResolver exceptionResolver) {
+        this.tenantRegistry = tenantRegistry;
+        this.exceptionResolver = exceptionResolver;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !scimPath(request).startsWith(TenantContext.SCIM_PATH + "/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String segment = tenantSegment(scimPath(request));
+        Tenant fromPath = null;
+        if (segment != null) {
+            fromPath = tenantRegistry.isEnabled() ? tenantRegistry.find(segment).orElse(null) : null;
+            if (fromPath == null) {
+                reject(request, response, new ScimException("Unknown tenant '" + segment + "'", HttpStatus.NOT_FOUND, "noTarget"));
+                return;
+            }
+        }
+        if (!tenantRegistry.isEnabled()) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        Tenant fromClaim = null;
+        if (StringUtils.isNotBlank(tenantRegistry.claim())) {
+            String claimed = claimedTenant();
+            if (claimed == null) {
+                // A token without the claim is only good for the default tenant, and only when the path says so
+                Tenant defaultTenant = tenantRegistry.defaultTenant().orElse(null);
+                if (fromPath == null || fromPath != defaultTenant) {
+                    reject(request, response, new ScimException("Access token has no '" + tenantRegistry.claim() + "' claim"
+                            + (fromPath != null ? " and is not valid for tenant '" + fromPath.getId() + "'" : ""), HttpStatus.FORBIDDEN));
+                    return;
+                }
+            } else {
+                fromClaim = tenantRegistry.find(claimed).orElse(null);
+                if (fromClaim == null) {
+                    reject(request, response, new ScimException("Tenant '" + claimed + "' of the access token is not served here", HttpStatus.FORBIDDEN));
+                    return;
+                }
+            }
+        }
+        if (fromPath != null && fromClaim != null && fromPath != fromClaim) {
+            reject(request, response, new ScimException("Access token is not valid for tenant '" + fromPath.getId() + "'", HttpStatus.FORBIDDEN));
+            return;
+        }
+        Tenant tenant = fromPath != null ? fromPath : fromClaim != null ? fromClaim : tenantRegistry.defaultTenant().orElse(null);
+        if (tenant == null) {
+            reject(request, response, new ScimException("Request names no tenant, in its path or access token", HttpStatus.NOT_FOUND, "noTarget"));
+            return;
+        }
+
+        boolean entered;
+        try {
+            entered = tenant.tryEnter(tenantRegistry.maxWaitMs());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            entered = false;
+        }
+        if (!entered) {
+            log.warn("Tenant {} is at its limit of {} concurrent requests; rejecting {} {}",
+                    tenant.getId(), tenant.getMaxConcurrentRequests(), request.getMethod(), request.getRequestURI());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            reject(request, response, new ScimException("Too many concurrent requests for tenant '" + tenant.getId() + "'. Retry later.",
+                    HttpStatus.SERVICE_UNAVAILABLE));
+            return;
+        }
+        String scimPath = fromPath != null ? TenantContext.SCIM_PATH + "/" + tenant.getId() : TenantContext.SCIM_PATH;
+        TenantContext.set(new TenantContext(tenant.getId(), scimPath));
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            TenantContext.set(null);
+            tenant.exit();
+        }
+    }
+
+    // Renders the error through GlobalExceptionHandler, as if a controller had thrown it
+    private void reject(HttpServletRequest request, HttpServletResponse response, ScimException e) {
+        exceptionResolver.resolveException(request, response, null, e);
+    }
+
+    private static String scimPath(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    /** The segment after /scim/v2/ when it is not an endpoint name and something follows it. */
+    static String tenantSegment(String path) {
+        String rest = path.substring(TenantContext.SCIM_PATH.length() + 1);
+        int slash = rest.indexOf('/');
+        if (slash <= 0) {
+            return null;
+        }
+        String segment = rest.substring(0, slash);
+        return TenantRegistry.RESERVED_IDS.contains(segment) ? null : segment;
+    }
+
+    private String claimedTenant() {
+        String claim = tenantRegistry.claim();
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication instanceof JwtAuthenticationToken jwtAuth) {
+            return StringUtils.trimToNull(jwtAuth.getToken().getClaimAsString(claim));
+        }
+        return null;
+    }
+}
@@ -0,0 +1,183 @@
+package com.learnhai.scim.tenant;
+
+import com.learnhai.scim.backend.IdentityBackend;
+import com.learnhai.scim.backend.ImportedResource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.idm.AdminEventRepresentation;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.PartialImportRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The {@link IdentityBackend} the SCIM services see: sends each call to the backend of the tenant
+ * bound to the current thread. Every tenant has its own backend instance, created at startup, so
+ * realm resource proxies, connection pools and any cached state are never shared between tenants.
+ */
+@Component
+@Slf4j
+public class TenantRoutingIdentityBackend implements IdentityBackend {
+
+    private final TenantRegistry tenantRegistry;
+    private final Map<String, IdentityBackend> backends;
+
+    @Autowired
+    public TenantRoutingIdentityBackend(TenantRegistry tenantRegistry, TenantBackendFactory backendFactory) {
+        this.tenantRegistry = tenantRegistry;
+        Map<String, IdentityBackend> byTenant = new HashMap<>();
+        for (Tenant tenant : tenantRegistry.all()) {
+            byTenant.put(tenant.getId(), backendFactory.create(tenant));
+        }
+        this.backends = Map.copyOf(byTenant);
+    }
+
+    /** The backend serving the current tenant. */
+    public IdentityBackend backend() {
+        return backends.get(tenantRegistry.current().getId());
+    }
+
+    @PreDestroy
+    public void close() {
+        backends.forEach((tenant, backend) -> {
+            if (backend instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    log.warn("Failed to close identity backend of tenant {}: {}", tenant, e.getMessage());
+                }
+            }
+        });
+    }
+
+    @Override
+    public String createUser(UserRepresentation userRep) {
+        return backend().createUser(userRep);
+    }
+
+    @Override
+    public Optional<UserRepresentation> getUserById(String id) {
+        return backend().getUserById(id);
+    }
+
+    @Override
+    public Optional<UserRepresentation> getUserByUsername(String username) {
+        return backend().getUserByUsername(username);
+    }
+
+    @Override
+    public List<UserRepresentation> findUsersByEmail(String email) {
+        return backend().findUsersByEmail(email);
+    }
+
+    @Override
+    public List<UserRepresentation> findUsersByAttribute(String name, String value) {
+        return backend().findUsersByAttribute(name, value);
+    }
+
+    @Override
+    public void updateUser(String id, UserRepresentation userRep) {
+        backend().updateUser(id, userRep);
+    }
+
+    @Override
+    public void deleteUser(String id) {
+        backend().deleteUser(id);
+    }
+
+    @Override
+    public List<UserRepresentation> getUsers(Integer firstResult, Integer maxResults, String search) {
+        return backend().getUsers(firstResult, maxResults, search);
+    }
+
+    @Override
+    public long countUsers(String search) {
+        return backend().countUsers(search);
+    }
+
+    @Override
+    public String createGroup(GroupRepresentation groupRep) {
+        return backend().createGroup(groupRep);
+    }
+
+    @Override
+    public Optional<GroupRepresentation> getGroupById(String id) {
+        return backend().getGroupById(id);
+    }
+
+    @Override
+    public Optional<GroupRepresentation> getGroupByName(String name) {
+        return backend().getGroupByName(name);
+    }
+
+    @Override
+    public void updateGroup(String id, GroupRepresentation groupRep) {
+        backend().updateGroup(id, groupRep);
+    }
+
+    @Override
+    public void deleteGroup(String id) {
+        backend().deleteGroup(id);
+    }
+
+    @Override
+    public List<GroupRepresentation> getGroups(Integer firstResult, Integer maxResults, String filter) {
+        return backend().getGroups(firstResult, maxResults, filter);
+    }
+
+    @Override
+    public long countGroups(String filter) {
+        return backend().countGroups(filter);
+    }
+
+    @Override
+    public List<GroupRepresentation> getSubGroups(String groupId, Integer firstResult, Integer maxResults) {
+        return backend().getSubGroups(groupId, firstResult, maxResults);
+    }
+
+    @Override
+    public void moveGroup(String groupId, String parentId) {
+        backend().moveGroup(groupId, parentId);
+    }
+
+    @Override
+    public void addUserToGroup(String userId, String groupId) {
+        backend().addUserToGroup(userId, groupId);
+    }
+
+    @Override
+    public void removeUserFromGroup(String userId, String groupId) {
+        backend().removeUserFromGroup(userId, groupId);
+    }
+
+    @Override
+    public List<UserRepresentation> getGroupMembers(String groupId, Integer firstResult, Integer maxResults) {
+        return backend().getGroupMembers(groupId, firstResult, maxResults);
+    }
+
+    @Override
+    public long countGroupMembers(String groupId) {
+        return backend().countGroupMembers(groupId);
+    }
+
+    @Override
+    public boolean isGroupMember(String userId, String groupId) {
+        return backend().isGroupMember(userId, groupId);
+    }
+
+    @Override
+    public List<AdminEventRepresentation> getAdminEvents(long fromMillis, Integer firstResult, Integer maxResults) {
+        return backend().getAdminEvents(fromMillis, firstResult, maxResults);
+    }
+
+    @Override
+    public List<ImportedResource> partialImport(PartialImportRepresentation batch) {
+        return backend().partialImport(batch);
+    }
+}
@@ -0,0 +1,49 @@
+package com.learnhai.scim.timing;
+
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.client.ClientRequestContext;
+import jakarta.ws.rs.client.ClientRequestFilter;
+import jakarta.ws.rs.client.ClientResponseContext;
+import jakarta.ws.rs.client.ClientResponseFilter;
+import jakarta.ws.rs.ext.ReaderInterceptor;
+import jakarta.ws.rs.ext.ReaderInterceptorContext;
+
+import java.io.IOException;
+
+/**
+ * Registered on the Keycloak admin client: charges every HTTP round trip, token requests included, to
+ * the {@link RequestTimings} of the calling thread. Time runs from sending the request to its
+ * response headers, plus reading and decoding the response body.
+ * <p>
+ * Runs after the admin client's bearer token filter, so a token fetched on the way out is a call of
+ * its own rather than part of the call that needed it.
+ */
+@Priority(Priorities.USER + 100)
+public class KeycloakCallTimer implements ClientRequestFilter, ClientResponseFilter, ReaderInterceptor {
+
+    private static final String STARTED = KeycloakCallTimer.class.getName() + ".started";
+
+    @Override
+    public void filter(ClientRequestContext request) {
+        RequestTimings.keycloakCall();
+        request.setProperty(STARTED, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ClientRequestContext request, ClientResponseContext response) {
+        if (request.getProperty(STARTED) instanceof Long started) {
+            RequestTimings.keycloakTime(System.nanoTime() - started);
+        }
+    }
+
+    @Override
+    public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException {
+        long started = System.nanoTime();
+        try {
+            return context.proceed();
+        } finally {
+            RequestTimings.keycloakTime(System.nanoTime() - started);
+        }
+    }
+}
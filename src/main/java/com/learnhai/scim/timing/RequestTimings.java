@@ -0,0 +1,64 @@
+package com.learnhai.scim.timing;
+
+/**
+ * What one SCIM request has spent so far: outbound Keycloak calls (count and cumulative time) and
+ * time in the SCIM/Keycloak mappers. Bound to the request thread by {@link ServerTimingFilter};
+ * recording on an unbound thread (background builds, provisioning workers) is a no-op.
+ */
+public final class RequestTimings {
+
+    private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+
+    private int keycloakCalls;
+    private long keycloakNanos;
+    private long mappingNanos;
+
+    RequestTimings() {
+    }
+
+    static RequestTimings bind() {
+        RequestTimings timings = new RequestTimings();
+        CURRENT.set(timings);
+        return timings;
+    }
+
+    static void unbind() {
+        CURRENT.remove();
+    }
+
+    /** An outbound Keycloak request was sent. */
+    static void keycloakCall() {
+        RequestTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.keycloakCalls++;
+        }
+    }
+
+    /** Time spent waiting on Keycloak or reading its response. */
+    static void keycloakTime(long nanos) {
+        RequestTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.keycloakNanos += nanos;
+        }
+    }
+
+    /** Adds the time since {@code startedNanos} ({@link System#nanoTime()}) to the mapping time. */
+    public static void mapping(long startedNanos) {
+        RequestTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.mappingNanos += System.nanoTime() - startedNanos;
+        }
+    }
+
+    int keycloakCalls() {
+        return keycloakCalls;
+    }
+
+    long keycloakNanos() {
+        return keycloakNanos;
+    }
+
+    long mappingNanos() {
+        return mappingNanos;
+    }
+}
@@ -0,0 +1,209 @@
+package com.learnhai.scim.timing;
+
+import com.learnhai.scim.tenant.TenantContext;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accounts for what each SCIM request costs: outbound Keycloak calls and their cumulative time, time
+ * in the mappers, and serialization (from the first body write to the end of the request). Reported
+ * three ways:
+ * <ul>
+ *   <li>a {@code Server-Timing} header ({@code keycloak;dur=..;desc="N calls", mapping;dur=..,
+ *   total;dur=..}), added just before the response is committed. Serialization starts after that,
+ *   so it is only in the metrics and logs.</li>
+ *   <li>{@code scim.request.keycloak.calls}, {@code scim.request.keycloak.time},
+ *   {@code scim.request.mapping.time} and {@code scim.request.serialization.time} histograms, tagged
+ *   by SCIM operation (e.g. {@code Users.list}, {@code Groups.patch}).</li>
+ *   <li>a warning for requests making more than {@code scim.timing.keycloak-call-budget} Keycloak calls.</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    private static final Set<String> ENDPOINTS = Set.of(
+            "Users", "Groups", "Me", "Bulk", ".search", "Operations",
+            "ServiceProviderConfig", "ResourceTypes", "Schemas", "KeycloakEvents", "ImportJobs", "Reconcile");
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final boolean header;
+    private final int keycloakCallBudget;
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>(); // by operation
+
+    private record Meters(DistributionSummary keycloakCalls, Timer keycloakTime, Timer mappingTime, Timer serializationTime) {
+    }
+
+    @Autowired
+    public ServerTimingFilter(MeterRegistry meterRegistry,
+                              @Value("${scim.timing.enabled:true}") boolean enabled,
+                              @Value("${scim.timing.server-timing-header:true}") boolean header,
+                              @Value("${scim.timing.keycloak-call-budget:20}") int keycloakCallBudget) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.header = header;
+        this.keycloakCallBudget = keycloakCallBudget;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !scimPath(request).startsWith(TenantContext.SCIM_PATH + "/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long started = System.nanoTime();
+        RequestTimings timings = RequestTimings.bind();
+        TimedResponse timed = new TimedResponse(response, timings, started);
+        try {
+            chain.doFilter(request, timed);
+        } finally {
+            RequestTimings.unbind();
+            long ended = System.nanoTime();
+            long serializationNanos = timed.committedAtNanos == 0 ? 0 : ended - timed.committedAtNanos;
+            timed.beforeCommit(); // responses without a body
+            String operation = operation(request.getMethod(), scimPath(request));
+            Meters m = meters.computeIfAbsent(operation, this::meters);
+            m.keycloakCalls().record(timings.keycloakCalls());
+            m.keycloakTime().record(timings.keycloakNanos(), TimeUnit.NANOSECONDS);
+            m.mappingTime().record(timings.mappingNanos(), TimeUnit.NANOSECONDS);
+            m.serializationTime().record(serializationNanos, TimeUnit.NANOSECONDS);
+            if (keycloakCallBudget > 0 && timings.keycloakCalls() > keycloakCallBudget) {
+                log.warn("{} {} ({}) made {} Keycloak calls, over the budget of {}: keycloak {} ms, mapping {} ms, serialization {} ms, total {} ms",
+                        request.getMethod(), request.getRequestURI(), operation, timings.keycloakCalls(), keycloakCallBudget,
+                        millis(timings.keycloakNanos()), millis(timings.mappingNanos()), millis(serializationNanos), millis(ended - started));
+            }
+        }
+    }
+
+    private Meters meters(String operation) {
+        return new Meters(
+                DistributionSummary.builder("scim.request.keycloak.calls").tag("operation", operation)
+                        .baseUnit("calls").publishPercentileHistogram().maximumExpectedValue(1000.0).register(meterRegistry),
+                Timer.builder("scim.request.keycloak.time").tag("operation", operation).publishPercentileHistogram().register(meterRegistry),
+                Timer.builder("scim.request.mapping.time").tag("operation", operation).publishPercentileHistogram().register(meterRegistry),
+                Timer.builder("scim.request.serialization.time").tag("operation", operation).publishPercentileHistogram().register(meterRegistry));
+    }
+
+    /** Resource and verb, e.g. Users.get or Groups.members; the tenant segment of routed paths is skipped. */
+    static String operation(String method, String path) {
+        String[] segments = path.substring(Math.min(path.length(), TenantContext.SCIM_PATH.length() + 1)).split("/");
+        int i = segments.length > 1 && !ENDPOINTS.contains(segments[0]) ? 1 : 0;
+        String resource = segments[i];
+        if (!ENDPOINTS.contains(resource)) {
+            return "other"; // unknown paths must not grow the tag space
+        }
+        int rest = segments.length - i - 1;
+        if (!resource.equals("Users") && !resource.equals("Groups")) {
+            return resource.equals(".search") ? "search" : resource;
+        }
+        if (rest == 0) {
+            return resource + ("POST".equals(method) ? ".create" : ".list");
+        }
+        if (rest == 1 && segments[i + 1].equals(".search")) {
+            return resource + ".search";
+        }
+        if (rest == 2 && segments[i + 2].equals("members")) {
+            return resource + ".members";
+        }
+        return resource + switch (method) {
+            case "PUT" -> ".replace";
+            case "PATCH" -> ".patch";
+            case "DELETE" -> ".delete";
+            default -> ".get";
+        };
+    }
+
+    private static String scimPath(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1e6);
+    }
+
+    /** Adds the Server-Timing header when the body is first written, or at the end for responses without one. */
+    private final class TimedResponse extends HttpServletResponseWrapper {
+
+        private final RequestTimings timings;
+        private final long startedNanos;
+        long committedAtNanos;
+
+        TimedResponse(HttpServletResponse response, RequestTimings timings, long startedNanos) {
+            super(response);
+            this.timings = timings;
+            this.startedNanos = startedNanos;
+        }
+
+        void beforeCommit() {
+            if (committedAtNanos != 0) {
+                return;
+            }
+            committedAtNanos = System.nanoTime();
+            if (header && !isCommitted()) {
+                setHeader("Server-Timing", String.format(Locale.ROOT,
+                        "keycloak;dur=%.1f;desc=\"%d calls\", mapping;dur=%.1f, total;dur=%.1f",
+                        timings.keycloakNanos() / 1e6, timings.keycloakCalls(), timings.mappingNanos() / 1e6,
+                        (committedAtNanos - startedNanos) / 1e6));
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            beforeCommit();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            beforeCommit();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            beforeCommit();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            beforeCommit();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            beforeCommit();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            beforeCommit();
+            super.sendRedirect(location);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.learnhai.scim.audit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditRingTest {
+
+    @Test
+    void refusesRecordsWhenFullUntilTheConsumerCatchesUp() {
+        AuditRing ring = new AuditRing(4);
+        for (int i = 0; i < 4; i++) {
+            assertThat(ring.offer(record("u-" + i))).isTrue();
+        }
+        assertThat(ring.offer(record("u-4"))).isFalse();
+
+        assertThat(ring.poll().resourceId()).isEqualTo("u-0");
+        assertThat(ring.offer(record("u-4"))).isTrue();
+        assertThat(ring.offer(record("u-5"))).isFalse();
+    }
+
+    @Test
+    void pollsInClaimOrderAndReportsEmpty() {
+        AuditRing ring = new AuditRing(8);
+        assertThat(ring.poll()).isNull();
+        assertThat(ring.isEmpty()).isTrue();
+
+        ring.offer(record("a"));
+        ring.offer(record("b"));
+
+        assertThat(ring.isEmpty()).isFalse();
+        assertThat(ring.poll().resourceId()).isEqualTo("a");
+        assertThat(ring.poll().resourceId()).isEqualTo("b");
+        assertThat(ring.poll()).isNull();
+        assertThat(ring.isEmpty()).isTrue();
+    }
+
+    @Test
+    void everyAcceptedRecordFromConcurrentProducersIsConsumedOnce() throws Exception {
+        AuditRing ring = new AuditRing(1024);
+        int producers = 8;
+        int perProducer = 5_000;
+        ExecutorService pool = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<java.util.concurrent.Future<Integer>> accepted = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            accepted.add(pool.submit(() -> {
+                start.await();
+                int count = 0;
+                for (int i = 0; i < perProducer; i++) {
+                    while (!ring.offer(record(producer + "-" + i))) {
+                        Thread.onSpinWait();
+                    }
+                    count++;
+                }
+                return count;
+            }));
+        }
+        start.countDown();
+
+        List<String> consumed = new ArrayList<>();
+        while (consumed.size() < producers * perProducer) {
+            AuditRecord record = ring.poll();
+            if (record != null) {
+                consumed.add(record.resourceId());
+            }
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(consumed).doesNotHaveDuplicates().hasSize(producers * perProducer);
+        assertThat(ring.poll()).isNull();
+    }
+
+    static AuditRecord record(String resourceId) {
+        return new AuditRecord(System.currentTimeMillis(), null, "client", "User", resourceId,
+                AuditRecord.Operation.CREATE, 201, 1500, null);
+    }
+}
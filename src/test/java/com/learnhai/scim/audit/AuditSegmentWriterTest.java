@@ -0,0 +1,109 @@
+package com.learnhai.scim.audit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static com.learnhai.scim.audit.AuditRingTest.record;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AuditSegmentWriterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordsRoundTripThroughASegment() throws IOException {
+        AuditRing ring = new AuditRing(64);
+        AuditSegmentWriter writer = new AuditSegmentWriter(dir, ring, 1 << 20, 4, 10);
+        writer.open();
+        AuditRecord full = new AuditRecord(1_700_000_000_000L, "acme", "client", "Group", "g-1",
+                AuditRecord.Operation.PATCH, 200, 42, "op-1");
+        ring.offer(full);
+        ring.offer(new AuditRecord(1_700_000_000_001L, null, "client", "User", null,
+                AuditRecord.Operation.CREATE, 409, 7, null));
+        writer.close();
+
+        List<AuditRecord> read = readAll();
+        assertThat(read).hasSize(2);
+        assertThat(read.get(0)).isEqualTo(full);
+        assertThat(read.get(1).tenant()).isNull();
+        assertThat(read.get(1).resourceId()).isNull();
+        assertThat(read.get(1).status()).isEqualTo(409);
+    }
+
+    @Test
+    void reopeningStartsANewSegmentAndKeepsTheOldOnes() throws IOException {
+        AuditRing ring = new AuditRing(64);
+        AuditSegmentWriter first = new AuditSegmentWriter(dir, ring, 1 << 20, 4, 10);
+        first.open();
+        ring.offer(record("u-1"));
+        first.close();
+        AuditSegmentWriter second = new AuditSegmentWriter(dir, ring, 1 << 20, 4, 10);
+        second.open();
+        ring.offer(record("u-2"));
+        second.close();
+
+        assertThat(AuditSegmentWriter.segments(dir)).hasSize(2);
+        assertThat(readAll()).extracting(AuditRecord::resourceId).containsExactly("u-1", "u-2");
+    }
+
+    @Test
+    void rotatesFullSegmentsAndKeepsOnlyTheNewest() throws IOException {
+        AuditRing ring = new AuditRing(64);
+        // The smallest segment has room for one record only
+        AuditSegmentWriter writer = new AuditSegmentWriter(dir, ring, 0, 3, 10);
+        writer.open();
+        for (int i = 0; i < 10; i++) {
+            ring.offer(record("u-" + i));
+        }
+        writer.close();
+
+        assertThat(AuditSegmentWriter.segments(dir)).hasSize(3);
+        assertThat(readAll()).extracting(AuditRecord::resourceId).containsExactly("u-7", "u-8", "u-9");
+    }
+
+    @Test
+    void readingStopsAtATornRecord() throws IOException {
+        Path segment = dir.resolve("audit-0000000000000000001.seg");
+        ByteBuffer buffer = ByteBuffer.allocate(AuditCodec.MAGIC.length + 3 * AuditCodec.MAX_RECORD_BYTES);
+        buffer.put(AuditCodec.MAGIC);
+        CRC32 crc = new CRC32();
+        AuditCodec.write(buffer, record("u-1"), crc);
+        int second = buffer.position();
+        AuditCodec.write(buffer, record("u-2"), crc);
+        AuditCodec.write(buffer, record("u-3"), crc);
+        buffer.put(second + AuditCodec.FRAME_BYTES + 3, (byte) 0x7f); // corrupt the second record's payload
+        Files.write(segment, buffer.array());
+
+        List<AuditRecord> read = new ArrayList<>();
+        AuditCodec.read(segment, read::add);
+
+        assertThat(read).extracting(AuditRecord::resourceId).containsExactly("u-1");
+    }
+
+    @Test
+    void rejectsFilesThatAreNotSegments() throws IOException {
+        Path other = Files.write(dir.resolve("audit-0000000000000000001.seg"),
+                ByteBuffer.allocate(64).order(ByteOrder.BIG_ENDIAN).putLong(42).array());
+
+        assertThatThrownBy(() -> AuditCodec.read(other, r -> { })).isInstanceOf(IOException.class);
+    }
+
+    private List<AuditRecord> readAll() throws IOException {
+        List<AuditRecord> records = new ArrayList<>();
+        for (Path segment : AuditSegmentWriter.segments(dir)) {
+            AuditCodec.read(segment, records::add);
+        }
+        return records;
+    }
+}
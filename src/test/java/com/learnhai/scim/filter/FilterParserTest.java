@@ -0,0 +1,114 @@
+package com.learnhai.scim.filter;
+
+import com.learnhai.scim.exception.ScimException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.http.HttpStatus;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FilterParserTest {
+
+    @Test
+    void equalityComparison() {
+        Filter filter = FilterParser.parse("userName eq \"bjensen\"");
+
+        assertThat(filter).isEqualTo(new Filter.Comparison(new AttributePath(null, "userName", null), Filter.Operator.EQ, "bjensen"));
+        assertThat(filter.equalityValue("USERNAME")).isEqualTo("bjensen");
+        assertThat(filter.equalityValue("externalId")).isNull();
+    }
+
+    @Test
+    void operatorsAndKeywordsAreCaseInsensitive() {
+        Filter filter = FilterParser.parse("title Pr AND userType EQ \"Employee\"");
+
+        assertThat(filter).isInstanceOfSatisfying(Filter.And.class, and -> {
+            assertThat(and.left()).isInstanceOf(Filter.Present.class);
+            assertThat(((Filter.Comparison) and.right()).operator()).isEqualTo(Filter.Operator.EQ);
+        });
+    }
+
+    @Test
+    void andBindsTighterThanOr() {
+        Filter filter = FilterParser.parse("a eq 1 or b eq 2 and c eq 3");
+
+        assertThat(filter).isInstanceOfSatisfying(Filter.Or.class, or -> {
+            assertThat(or.left()).isInstanceOf(Filter.Comparison.class);
+            assertThat(or.right()).isInstanceOf(Filter.And.class);
+        });
+    }
+
+    @Test
+    void groupingAndNot() {
+        Filter filter = FilterParser.parse("(a eq 1 or b eq 2) and not (c pr)");
+
+        assertThat(filter).isInstanceOfSatisfying(Filter.And.class, and -> {
+            assertThat(and.left()).isInstanceOf(Filter.Or.class);
+            assertThat(and.right()).isInstanceOfSatisfying(Filter.Not.class,
+                    not -> assertThat(not.filter()).isInstanceOf(Filter.Present.class));
+        });
+    }
+
+    @Test
+    void valuePathFilter() {
+        Filter filter = FilterParser.parse("emails[type eq \"work\" and value co \"@example.com\"]");
+
+        assertThat(filter).isInstanceOfSatisfying(Filter.ValuePath.class, valuePath -> {
+            assertThat(valuePath.path().is("emails")).isTrue();
+            assertThat(valuePath.filter()).isInstanceOf(Filter.And.class);
+        });
+    }
+
+    @Test
+    void subAttributeAndSchemaUrn() {
+        Filter.Comparison name = (Filter.Comparison) FilterParser.parse("name.familyName sw \"J\"");
+        assertThat(name.path().is("name", "familyName")).isTrue();
+        assertThat(name.operator()).isEqualTo(Filter.Operator.SW);
+
+        Filter.Comparison extension = (Filter.Comparison) FilterParser.parse(
+                "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:employeeNumber eq \"701984\"");
+        assertThat(extension.path().schemaUrn()).isEqualTo("urn:ietf:params:scim:schemas:extension:enterprise:2.0:User");
+        assertThat(extension.path().is("employeeNumber")).isTrue();
+    }
+
+    @Test
+    void literalValues() {
+        assertThat(((Filter.Comparison) FilterParser.parse("active eq true")).value()).isEqualTo(Boolean.TRUE);
+        assertThat(((Filter.Comparison) FilterParser.parse("active eq false")).value()).isEqualTo(Boolean.FALSE);
+        assertThat(((Filter.Comparison) FilterParser.parse("nickName eq null")).value()).isNull();
+        assertThat(((Filter.Comparison) FilterParser.parse("age gt 2.5")).value()).isEqualTo(new BigDecimal("2.5"));
+        assertThat(((Filter.Comparison) FilterParser.parse("userName eq \"a\\\"b\\\\c\\u0041\"")).value()).isEqualTo("a\"b\\cA");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "userName",
+            "userName eq",
+            "userName eq \"unterminated",
+            "userName xx \"a\"",
+            "userName eq bare",
+            "(userName eq \"a\"",
+            "userName eq \"a\" extra",
+            "emails[type eq \"work\"",
+            "name.familyName[value eq \"x\"]",
+            "userName eq \"\\q\""})
+    void syntaxErrorsAreInvalidFilter(String filter) {
+        assertThatThrownBy(() -> FilterParser.parse(filter)).isInstanceOfSatisfying(ScimException.class, e -> {
+            assertThat(e.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST);
+            assertThat(e.getScimType()).isEqualTo("invalidFilter");
+        });
+    }
+
+    @Test
+    void attributePath() {
+        AttributePath path = FilterParser.parsePath("name.givenName");
+
+        assertThat(path.is("NAME", "givenname")).isTrue();
+        assertThat(path.toString()).isEqualTo("name.givenName");
+    }
+}
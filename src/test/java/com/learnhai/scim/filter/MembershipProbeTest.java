@@ -0,0 +1,34 @@
+package com.learnhai.scim.filter;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MembershipProbeTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "id eq \"g-1\" and members[value eq \"u-1\"]",
+            "members[value eq \"u-1\"] and id eq \"g-1\"",
+            "id eq \"g-1\" and members.value eq \"u-1\"",
+            "members.value eq \"u-1\" and id eq \"g-1\"",
+            "ID EQ \"g-1\" AND MEMBERS[VALUE EQ \"u-1\"]"})
+    void recognisesTheProbeInEitherOrder(String filter) {
+        assertThat(MembershipProbe.of(FilterParser.parse(filter))).isEqualTo(new MembershipProbe("g-1", "u-1"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "id eq \"g-1\"",
+            "members[value eq \"u-1\"]",
+            "id eq \"g-1\" or members[value eq \"u-1\"]",
+            "id eq \"g-1\" and displayName eq \"Admins\"",
+            "id eq \"g-1\" and members[value co \"u\"]",
+            "id eq \"g-1\" and members[display eq \"u-1\"]",
+            "id eq \"g-1\" and members.value eq null",
+            "displayName eq \"g-1\" and members[value eq \"u-1\"]"})
+    void ignoresOtherFilters(String filter) {
+        assertThat(MembershipProbe.of(FilterParser.parse(filter))).isNull();
+    }
+}
@@ -0,0 +1,136 @@
+package com.learnhai.scim.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MappedKeyTableTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void putsGetsAndRemoves() throws IOException {
+        try (MappedKeyTable table = MappedKeyTable.create(dir.resolve("t.idx"), 10)) {
+            assertThat(table.put(digest("a"), "user-1")).isTrue();
+            assertThat(table.put(digest("b"), "user-2")).isTrue();
+            assertThat(table.put(digest("a"), "user-3")).isTrue(); // replaces
+
+            assertThat(table.get(digest("a"))).isEqualTo("user-3");
+            assertThat(table.get(digest("b"))).isEqualTo("user-2");
+            assertThat(table.get(digest("c"))).isNull();
+            assertThat(table.size()).isEqualTo(2);
+
+            assertThat(table.remove(digest("a"), "user-1")).isFalse(); // no longer its value
+            assertThat(table.remove(digest("a"), "user-3")).isTrue();
+            assertThat(table.get(digest("a"))).isNull();
+            assertThat(table.size()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void refusesValuesTooLongForASlot() throws IOException {
+        try (MappedKeyTable table = MappedKeyTable.create(dir.resolve("t.idx"), 10)) {
+            assertThat(table.put(digest("a"), "x".repeat(MappedKeyTable.MAX_VALUE_BYTES + 1))).isFalse();
+            assertThat(table.get(digest("a"))).isNull();
+        }
+    }
+
+    @Test
+    void growsPastItsInitialCapacity() throws IOException {
+        Path file = dir.resolve("t.idx");
+        try (MappedKeyTable table = MappedKeyTable.create(file, 0)) {
+            long initialLength = Files.size(file);
+            for (int i = 0; i < 5_000; i++) {
+                table.put(digest("key-" + i), "user-" + i);
+            }
+            for (int i = 0; i < 5_000; i += 2) {
+                table.remove(digest("key-" + i), null);
+            }
+            for (int i = 5_000; i < 8_000; i++) {
+                table.put(digest("key-" + i), "user-" + i);
+            }
+
+            assertThat(Files.size(file)).isGreaterThan(initialLength);
+            assertThat(table.size()).isEqualTo(2_500 + 3_000);
+            for (int i = 0; i < 8_000; i++) {
+                assertThat(table.get(digest("key-" + i))).isEqualTo(i < 5_000 && i % 2 == 0 ? null : "user-" + i);
+            }
+        }
+    }
+
+    @Test
+    void reopensACompleteTable() throws IOException {
+        Path file = dir.resolve("t.idx");
+        try (MappedKeyTable table = MappedKeyTable.create(file, 0)) {
+            table.complete();
+            for (int i = 0; i < 2_000; i++) { // rehashes after completion
+                table.put(digest("key-" + i), "user-" + i);
+            }
+            table.remove(digest("key-7"), null);
+        }
+
+        try (MappedKeyTable table = MappedKeyTable.open(file)) {
+            assertThat(table.size()).isEqualTo(1_999);
+            assertThat(table.get(digest("key-0"))).isEqualTo("user-0");
+            assertThat(table.get(digest("key-1999"))).isEqualTo("user-1999");
+            assertThat(table.get(digest("key-7"))).isNull();
+        }
+    }
+
+    @Test
+    void movedTableReopensAtItsNewPlace() throws IOException {
+        Path building = dir.resolve("t.idx.building");
+        Path file = dir.resolve("t.idx");
+        try (MappedKeyTable table = MappedKeyTable.create(building, 10)) {
+            table.put(digest("a"), "user-1");
+            table.complete();
+            table.moveTo(file);
+            table.put(digest("b"), "user-2");
+        }
+
+        assertThat(building).doesNotExist();
+        try (MappedKeyTable table = MappedKeyTable.open(file)) {
+            assertThat(table.get(digest("a"))).isEqualTo("user-1");
+            assertThat(table.get(digest("b"))).isEqualTo("user-2");
+        }
+    }
+
+    @Test
+    void refusesAnIncompleteTable() throws IOException {
+        Path file = dir.resolve("t.idx");
+        try (MappedKeyTable table = MappedKeyTable.create(file, 10)) {
+            table.put(digest("a"), "user-1");
+        }
+
+        assertThatThrownBy(() -> MappedKeyTable.open(file)).isInstanceOf(IOException.class).hasMessageContaining("Incomplete");
+    }
+
+    @Test
+    void refusesACorruptOrTruncatedTable() throws IOException {
+        Path file = dir.resolve("t.idx");
+        try (MappedKeyTable table = MappedKeyTable.create(file, 10)) {
+            table.complete();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), 0);
+        }
+        assertThatThrownBy(() -> MappedKeyTable.open(file)).isInstanceOf(IOException.class).hasMessageContaining("Corrupt");
+
+        Path truncated = Files.write(dir.resolve("short.idx"), new byte[MappedKeyTable.HEADER_BYTES - 1]);
+        assertThatThrownBy(() -> MappedKeyTable.open(truncated)).isInstanceOf(IOException.class).hasMessageContaining("Truncated");
+    }
+
+    private static byte[] digest(String key) {
+        return MappedKeyTable.digest(key);
+    }
+}
@@ -0,0 +1,144 @@
+package com.learnhai.scim.index;
+
+import com.learnhai.scim.backend.InMemoryIdentityBackend;
+import com.learnhai.scim.mapper.UserMappingPlan;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+class UserKeyIndexTest {
+
+    @TempDir
+    Path dir;
+
+    private final UserMappingPlan mappingPlan = new UserMappingPlan(UserMappingPlan.defaultRules());
+    private UserKeyIndex index;
+
+    @AfterEach
+    void close() {
+        if (index != null) {
+            index.close();
+        }
+    }
+
+    @Test
+    void findsUsersCreatedOutsideTheBridgeAfterTheBuild() throws Exception {
+        InMemoryIdentityBackend backend = new InMemoryIdentityBackend();
+        index = built(backend);
+
+        backend.createUser(user("bjensen", "ext-1")); // not through the index, and no change feed
+
+        assertThat(index.findByUserName("BJensen")).map(UserRepresentation::getUsername).hasValue("bjensen");
+        assertThat(index.findByExternalId("ext-1")).map(UserRepresentation::getUsername).hasValue("bjensen");
+        assertThat(index.findByExternalId("ext-2")).isEmpty();
+    }
+
+    @Test
+    void dropsStaleHits() throws Exception {
+        InMemoryIdentityBackend backend = new InMemoryIdentityBackend();
+        String id = backend.createUser(user("bjensen", "ext-1"));
+        index = built(backend);
+
+        UserRepresentation renamed = new UserRepresentation();
+        renamed.setUsername("barbara");
+        renamed.setAttributes(Map.of("externalId", List.of("ext-9")));
+        backend.updateUser(id, renamed);
+
+        assertThat(index.findByUserName("bjensen")).isEmpty();
+        assertThat(index.findByExternalId("ext-1")).isEmpty();
+        assertThat(index.findByExternalId("ext-9")).map(UserRepresentation::getId).hasValue(id);
+    }
+
+    @Test
+    void answersFromTheStoreWhileTheFirstBuildRuns() {
+        CountDownLatch release = new CountDownLatch(1);
+        InMemoryIdentityBackend backend = new InMemoryIdentityBackend() {
+            @Override
+            public long countUsers(String search) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.countUsers(search);
+            }
+        };
+        backend.createUser(user("bjensen", "ext-1"));
+        index = new UserKeyIndex(backend, mappingPlan, true, dir.toString(), 3_600_000);
+        try {
+            assertThat(index.findByExternalId("ext-1")).map(UserRepresentation::getUsername).hasValue("bjensen");
+            assertThat(index.findByUserName("bjensen")).isPresent();
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void buildToleratesARealmSmallerThanItsCount() throws Exception {
+        InMemoryIdentityBackend backend = new InMemoryIdentityBackend() {
+            @Override
+            public long countUsers(String search) {
+                return super.countUsers(search) + 10; // users deleted while the scan runs
+            }
+        };
+        backend.createUser(user("bjensen", "ext-1"));
+
+        index = built(backend);
+
+        assertThat(indexFile()).exists();
+    }
+
+    @Test
+    void reopensItsFileWithoutRescanning() throws Exception {
+        InMemoryIdentityBackend seeded = new InMemoryIdentityBackend();
+        String id = seeded.createUser(user("bjensen", "ext-1"));
+        index = built(seeded);
+        index.close();
+
+        InMemoryIdentityBackend backend = spy(seeded);
+        index = new UserKeyIndex(backend, mappingPlan, true, dir.toString(), 3_600_000);
+
+        assertThat(index.findByExternalId("ext-1")).map(UserRepresentation::getId).hasValue(id);
+        verify(backend).getUserById(id);
+        verify(backend, never()).findUsersByAttribute(anyString(), anyString());
+        verify(backend, never()).getUsers(any(), any(), any());
+    }
+
+    private UserKeyIndex built(InMemoryIdentityBackend backend) throws InterruptedException {
+        UserKeyIndex built = new UserKeyIndex(backend, mappingPlan, true, dir.toString(), 3_600_000);
+        built.findByUserName("nobody"); // opens the tenant's table, which starts the build
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!Files.exists(indexFile()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(indexFile()).exists();
+        return built;
+    }
+
+    private Path indexFile() {
+        return dir.resolve("_default").resolve("users.idx");
+    }
+
+    private static UserRepresentation user(String userName, String externalId) {
+        UserRepresentation user = new UserRepresentation();
+        user.setUsername(userName);
+        user.setEnabled(true);
+        user.setAttributes(Map.of("externalId", List.of(externalId)));
+        return user;
+    }
+}
@@ -0,0 +1,29 @@
+package com.learnhai.scim.limit;
+
+import com.learnhai.scim.limit.ConcurrencyLimitFilter.Bulkhead;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrencyLimitFilterTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "GET, /scim/v2/Users/u-1, READ",
+            "GET, /scim/v2/Users, LIST",
+            "GET, /scim/v2/acme/Groups, LIST",
+            "GET, /scim/v2/Groups/g-1/members, LIST",
+            "GET, /scim/v2/ImportJobs/j-1, READ",
+            "GET, /scim/v2/ImportJobs/j-1/errors, LIST",
+            "POST, /scim/v2/Users/.search, LIST",
+            "POST, /scim/v2/Users, WRITE",
+            "PATCH, /scim/v2/Users/u-1, WRITE",
+            "DELETE, /scim/v2/acme/Users/u-1, WRITE",
+            "POST, /scim/v2/Bulk, LIST",
+            "POST, /scim/v2/acme/ImportJobs, LIST",
+            "POST, /scim/v2/Reconcile, LIST"})
+    void classifiesRequests(String method, String path, Bulkhead bulkhead) {
+        assertThat(ConcurrencyLimitFilter.classify(method, path)).isEqualTo(bulkhead);
+    }
+}
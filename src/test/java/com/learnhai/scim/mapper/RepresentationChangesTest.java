@@ -0,0 +1,145 @@
+package com.learnhai.scim.mapper;
+
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RepresentationChangesTest {
+
+    @Test
+    void aCopyChangesNothing() {
+        UserRepresentation user = user();
+
+        assertThat(RepresentationChanges.changed(user, RepresentationChanges.copy(user))).isEmpty();
+    }
+
+    @Test
+    void aCopyDoesNotShareAttributeLists() {
+        UserRepresentation user = user();
+        UserRepresentation copy = RepresentationChanges.copy(user);
+
+        copy.getAttributes().get("department").add("Sales");
+
+        assertThat(user.getAttributes().get("department")).containsExactly("Engineering");
+        assertThat(RepresentationChanges.changed(user, copy)).containsExactly("attributes.department");
+    }
+
+    @Test
+    void userNamesAndEmailsIgnoreCase() {
+        UserRepresentation user = user();
+        UserRepresentation desired = RepresentationChanges.copy(user);
+        desired.setUsername("Alice");
+        desired.setEmail("ALICE@example.com");
+
+        assertThat(RepresentationChanges.changed(user, desired)).isEmpty();
+    }
+
+    @Test
+    void namesAreCaseSensitive() {
+        UserRepresentation user = user();
+        UserRepresentation desired = RepresentationChanges.copy(user);
+        desired.setFirstName("ALICE");
+        desired.setEnabled(false);
+
+        assertThat(RepresentationChanges.changed(user, desired)).containsExactly("firstName", "enabled");
+    }
+
+    @Test
+    void theLastModifiedStampIsNotAChange() {
+        UserRepresentation user = user();
+        UserRepresentation desired = RepresentationChanges.copy(user);
+        ModificationStamps.stamp(desired, Instant.parse("2024-05-01T00:00:00Z"));
+
+        assertThat(RepresentationChanges.changed(user, desired)).isEmpty();
+    }
+
+    @Test
+    void addedAndRemovedAttributesAreChanges() {
+        UserRepresentation user = user();
+        UserRepresentation desired = RepresentationChanges.copy(user);
+        desired.getAttributes().remove("department");
+        desired.getAttributes().put("externalId", List.of("ext-1"));
+
+        assertThat(RepresentationChanges.changed(user, desired))
+                .containsExactlyInAnyOrder("attributes.department", "attributes.externalId");
+    }
+
+    @Test
+    void missingAndEmptyAttributeMapsAreTheSame() {
+        UserRepresentation user = user();
+        user.setAttributes(null);
+        UserRepresentation desired = RepresentationChanges.copy(user);
+        desired.setAttributes(new HashMap<>());
+
+        assertThat(RepresentationChanges.changed(user, desired)).isEmpty();
+    }
+
+    @Test
+    void anUpdateSendsTheProfileAndOnlyChangedFlags() {
+        UserRepresentation desired = RepresentationChanges.copy(user());
+        desired.setEnabled(false);
+
+        UserRepresentation update = RepresentationChanges.update(desired, List.of("enabled"));
+
+        assertThat(update.getUsername()).isEqualTo("alice");
+        assertThat(update.getEmail()).isEqualTo("alice@example.com");
+        assertThat(update.getFirstName()).isEqualTo("Alice");
+        assertThat(update.getLastName()).isEqualTo("Liddell");
+        assertThat(update.getAttributes()).containsOnlyKeys("department");
+        assertThat(update.isEnabled()).isFalse();
+        assertThat(update.isEmailVerified()).isNull();
+        assertThat(update.getId()).isNull();
+    }
+
+    @Test
+    void anUpdateAlwaysSendsAnAttributeMap() {
+        UserRepresentation desired = RepresentationChanges.copy(user());
+        desired.setAttributes(null);
+
+        assertThat(RepresentationChanges.update(desired, List.of()).getAttributes()).isEmpty();
+    }
+
+    @Test
+    void groupsCompareNamesAndAttributes() {
+        GroupRepresentation group = new GroupRepresentation();
+        group.setId("g-1");
+        group.setName("Admins");
+        group.setAttributes(attributes("externalId", "ext-g1"));
+        GroupRepresentation desired = RepresentationChanges.copy(group);
+        ModificationStamps.stamp(desired, Instant.parse("2024-05-01T00:00:00Z"), false);
+
+        assertThat(RepresentationChanges.changed(group, desired)).isEmpty();
+
+        desired.setName("admins");
+        desired.getAttributes().put("externalId", List.of("ext-g2"));
+
+        assertThat(RepresentationChanges.changed(group, desired)).containsExactly("name", "attributes.externalId");
+    }
+
+    private static UserRepresentation user() {
+        UserRepresentation user = new UserRepresentation();
+        user.setId("u-1");
+        user.setUsername("alice");
+        user.setEmail("alice@example.com");
+        user.setEmailVerified(true);
+        user.setFirstName("Alice");
+        user.setLastName("Liddell");
+        user.setEnabled(true);
+        user.setAttributes(attributes("department", "Engineering"));
+        return user;
+    }
+
+    private static Map<String, List<String>> attributes(String name, String value) {
+        Map<String, List<String>> attributes = new HashMap<>();
+        attributes.put(name, new ArrayList<>(List.of(value)));
+        return attributes;
+    }
+}
@@ -0,0 +1,150 @@
+package com.learnhai.scim.service;
+
+import com.learnhai.scim.audit.AuditLog;
+import com.learnhai.scim.backend.InMemoryIdentityBackend;
+import com.learnhai.scim.index.UserKeyIndex;
+import com.learnhai.scim.mapper.GroupMapper;
+import com.learnhai.scim.mapper.UserMapper;
+import com.learnhai.scim.mapper.UserMappingPlan;
+import com.learnhai.scim.model.scim.ScimGroup;
+import com.learnhai.scim.model.scim.ScimUser;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class BulkLoadServiceTest {
+
+    private final InMemoryIdentityBackend backend = new InMemoryIdentityBackend();
+    private final GroupHierarchyCache groupHierarchy = new GroupHierarchyCache(backend, Long.MAX_VALUE);
+
+    @Test
+    void skipReportsAnExistingUserAsAConflict() {
+        String existing = backend.createUser(user("bjensen"));
+
+        BulkLoadService.Outcome outcome = service(BulkLoadService.IfExists.SKIP)
+                .load(List.of(new BulkLoadService.Item("1", scimUser("bjensen"), null)), null).get(0);
+
+        assertThat(outcome.status()).isEqualTo(409);
+        assertThat(outcome.scimType()).isEqualTo("uniqueness");
+        assertThat(outcome.id()).isNull();
+        assertThat(backend.getUserById(existing)).isPresent();
+    }
+
+    @Test
+    void useExistingReportsAnExistingUserWithItsId() {
+        String existing = backend.createUser(user("bjensen"));
+
+        BulkLoadService.Outcome outcome = service(BulkLoadService.IfExists.SKIP)
+                .load(List.of(new BulkLoadService.Item("1", scimUser("bjensen"), null)), null, "test", null,
+                        BulkLoadService.IfExists.USE_EXISTING).get(0);
+
+        assertThat(outcome.status()).isEqualTo(200);
+        assertThat(outcome.id()).isEqualTo(existing);
+    }
+
+    @Test
+    void skipReportsAnExistingGroupAndFailsItsSubgroups() {
+        backend.createGroup(group("Engineering"));
+        ScimGroup parent = scimGroup("Engineering", member("Group", "bulkId:sub"));
+
+        List<BulkLoadService.Outcome> outcomes = service(BulkLoadService.IfExists.SKIP).load(List.of(
+                new BulkLoadService.Item("parent", null, parent),
+                new BulkLoadService.Item("sub", null, scimGroup("Platform"))), null);
+
+        assertThat(outcomes.get(0).status()).isEqualTo(409);
+        assertThat(outcomes.get(1).status()).isEqualTo(424);
+        assertThat(backend.getGroupByName("Platform")).isEmpty();
+    }
+
+    @Test
+    void newUsersAreCreated() {
+        BulkLoadService.Outcome outcome = service(BulkLoadService.IfExists.SKIP)
+                .load(List.of(new BulkLoadService.Item("1", scimUser("bjensen"), null)), null).get(0);
+
+        assertThat(outcome.status()).isEqualTo(201);
+        assertThat(backend.getUserById(outcome.id())).isPresent();
+    }
+
+    @Test
+    void anExistingSubgroupCannotJoinASecondParent() {
+        String owner = backend.createGroup(group("Owner"));
+        String child = backend.createGroup(group("Child"));
+        backend.moveGroup(child, owner);
+
+        BulkLoadService.Outcome outcome = service(BulkLoadService.IfExists.SKIP)
+                .load(List.of(new BulkLoadService.Item("g", null, scimGroup("Other", member("Group", child)))), null).get(0);
+
+        assertThat(outcome.status()).isEqualTo(400);
+        assertThat(outcome.scimType()).isEqualTo("invalidValue");
+        assertThat(backend.getGroupById(child).orElseThrow().getParentId()).isEqualTo(owner);
+        assertThat(backend.getGroupByName("Other")).isEmpty();
+    }
+
+    @Test
+    void anExistingTopLevelGroupJoinsTheNewGroup() {
+        String child = backend.createGroup(group("Child"));
+
+        BulkLoadService.Outcome outcome = service(BulkLoadService.IfExists.SKIP)
+                .load(List.of(new BulkLoadService.Item("g", null, scimGroup("Parent", member("Group", child)))), null).get(0);
+
+        assertThat(outcome.status()).isEqualTo(201);
+        assertThat(backend.getGroupById(child).orElseThrow().getParentId()).isEqualTo(outcome.id());
+    }
+
+    @Test
+    void anExistingGroupNamedByTwoNewGroupsJoinsOnlyTheFirst() {
+        String child = backend.createGroup(group("Child"));
+
+        List<BulkLoadService.Outcome> outcomes = service(BulkLoadService.IfExists.SKIP).load(List.of(
+                new BulkLoadService.Item("a", null, scimGroup("A", member("Group", child))),
+                new BulkLoadService.Item("b", null, scimGroup("B", member("Group", child)))), null);
+
+        assertThat(outcomes.get(0).status()).isEqualTo(201);
+        assertThat(outcomes.get(1).status()).isEqualTo(400);
+        assertThat(backend.getGroupById(child).orElseThrow().getParentId()).isEqualTo(outcomes.get(0).id());
+    }
+
+    private BulkLoadService service(BulkLoadService.IfExists ifExists) {
+        return new BulkLoadService(backend, new UserMapper("", new UserMappingPlan(UserMappingPlan.defaultRules())),
+                new GroupMapper(""), mock(UserChangeIndex.class), mock(UserKeyIndex.class), mock(MembershipIndex.class),
+                groupHierarchy, mock(AuditLog.class), 100, ifExists);
+    }
+
+    private static ScimUser scimUser(String userName) {
+        ScimUser user = new ScimUser();
+        user.setUserName(userName);
+        return user;
+    }
+
+    private static UserRepresentation user(String userName) {
+        UserRepresentation user = new UserRepresentation();
+        user.setUsername(userName);
+        user.setEnabled(true);
+        return user;
+    }
+
+    private static ScimGroup scimGroup(String name, ScimGroup.Member... members) {
+        ScimGroup group = new ScimGroup();
+        group.setDisplayName(name);
+        group.setMembers(members.length == 0 ? null : List.of(members));
+        return group;
+    }
+
+    private static ScimGroup.Member member(String type, String value) {
+        ScimGroup.Member member = new ScimGroup.Member();
+        member.setType(type);
+        member.setValue(value);
+        return member;
+    }
+
+    private static GroupRepresentation group(String name) {
+        GroupRepresentation group = new GroupRepresentation();
+        group.setName(name);
+        return group;
+    }
+}
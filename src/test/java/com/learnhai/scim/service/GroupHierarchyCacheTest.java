@@ -0,0 +1,68 @@
+package com.learnhai.scim.service;
+
+import com.learnhai.scim.backend.IdentityBackend;
+import com.learnhai.scim.exception.ScimException;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.springframework.http.HttpStatus;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GroupHierarchyCacheTest {
+
+    private final IdentityBackend backend = mock(IdentityBackend.class);
+
+    @Test
+    void keepsThePreviousTreeWhenAReloadFails() {
+        GroupHierarchyCache cache = new GroupHierarchyCache(backend, 0); // every read is stale
+        when(backend.getGroups(anyInt(), anyInt(), any())).thenReturn(List.of(group("g-1", "Admins")));
+        assertThat(cache.all()).extracting(GroupRepresentation::getId).containsExactly("g-1");
+
+        when(backend.getGroups(anyInt(), anyInt(), any()))
+                .thenThrow(new ScimException("Failed to list groups from Keycloak", HttpStatus.INTERNAL_SERVER_ERROR));
+
+        assertThat(cache.all()).extracting(GroupRepresentation::getId).containsExactly("g-1");
+        assertThat(cache.get("g-1")).isPresent();
+    }
+
+    @Test
+    void waitsBeforeRetryingAFailedReload() {
+        GroupHierarchyCache cache = new GroupHierarchyCache(backend, 0);
+        when(backend.getGroups(anyInt(), anyInt(), any())).thenReturn(List.of(group("g-1", "Admins")));
+        cache.all();
+        when(backend.getGroups(anyInt(), anyInt(), any()))
+                .thenThrow(new ScimException("Failed to list groups from Keycloak", HttpStatus.INTERNAL_SERVER_ERROR));
+
+        cache.all();
+        cache.all();
+        cache.get("g-1");
+
+        verify(backend, times(2)).getGroups(anyInt(), anyInt(), any());
+    }
+
+    @Test
+    void aFailedFirstLoadFailsTheRead() {
+        GroupHierarchyCache cache = new GroupHierarchyCache(backend, 300000);
+        when(backend.getGroups(anyInt(), anyInt(), any()))
+                .thenThrow(new ScimException("Failed to list groups from Keycloak", HttpStatus.INTERNAL_SERVER_ERROR));
+
+        assertThatThrownBy(cache::all).isInstanceOf(ScimException.class);
+    }
+
+    private static GroupRepresentation group(String id, String name) {
+        GroupRepresentation group = new GroupRepresentation();
+        group.setId(id);
+        group.setName(name);
+        group.setSubGroupCount(0L);
+        return group;
+    }
+}
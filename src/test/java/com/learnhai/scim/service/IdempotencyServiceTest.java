@@ -0,0 +1,123 @@
+package com.learnhai.scim.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnhai.scim.exception.ScimException;
+import com.learnhai.scim.model.scim.ScimUser;
+import com.learnhai.scim.service.async.OperationStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotencyServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final IdempotencyService service = new IdempotencyService(true, 600, 1000);
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @Test
+    void retryWithSameBodyReplaysTheResult() throws Exception {
+        JsonNode body = body("jdoe");
+
+        ScimUser first = service.execute(service.keyFor("User", null, "ext-1", body), () -> create("u-1"));
+        ScimUser second = service.execute(service.keyFor("User", null, "ext-1", body("jdoe")), () -> create("u-2"));
+
+        assertThat(second).isSameAs(first);
+        assertThat(runs).hasValue(1);
+    }
+
+    @Test
+    void reusedHeaderKeyWithDifferentBodyIsRejected() throws Exception {
+        service.execute(service.keyFor("User", "key-1", null, body("jdoe")), () -> create("u-1"));
+
+        IdempotencyService.Key reused = service.keyFor("User", "key-1", null, body("asmith"));
+        assertThatThrownBy(() -> service.execute(reused, () -> create("u-2")))
+                .isInstanceOfSatisfying(ScimException.class, e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY));
+        assertThat(runs).hasValue(1);
+    }
+
+    @Test
+    void reusedExternalIdWithDifferentBodyConflicts() throws Exception {
+        service.execute(service.keyFor("User", null, "ext-1", body("jdoe")), () -> create("u-1"));
+
+        IdempotencyService.Key reused = service.keyFor("User", null, "ext-1", body("asmith"));
+        assertThatThrownBy(() -> service.execute(reused, () -> create("u-2")))
+                .isInstanceOfSatisfying(ScimException.class, e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.CONFLICT));
+    }
+
+    @Test
+    void deletedResourceIsCreatedAgain() throws Exception {
+        JsonNode body = body("jdoe");
+        service.execute(service.keyFor("User", null, "ext-1", body), () -> create("u-1"));
+
+        service.forget("u-1");
+        ScimUser again = service.execute(service.keyFor("User", null, "ext-1", body), () -> create("u-2"));
+
+        assertThat(again.getId()).isEqualTo("u-2");
+        assertThat(runs).hasValue(2);
+    }
+
+    @Test
+    void failedCallIsNotCached() throws Exception {
+        IdempotencyService.Key key = service.keyFor("User", "key-1", null, body("jdoe"));
+        assertThatThrownBy(() -> service.execute(key, () -> {
+            runs.incrementAndGet();
+            throw new ScimException("Keycloak unavailable", HttpStatus.SERVICE_UNAVAILABLE);
+        })).isInstanceOf(ScimException.class);
+
+        assertThat(service.execute(key, () -> create("u-1")).getId()).isEqualTo("u-1");
+        assertThat(runs).hasValue(2);
+    }
+
+    @Test
+    void failedAsyncOperationRunsAgain() throws Exception {
+        IdempotencyService.Key key = service.keyFor("User", "key-1", null, body("jdoe"));
+        service.execute(key, () -> accepted("op-1"));
+
+        service.forget("op-1");
+
+        assertThat(service.execute(key, () -> accepted("op-2")).getId()).isEqualTo("op-2");
+    }
+
+    @Test
+    void asyncCreateIsForgottenWithItsResource() throws Exception {
+        IdempotencyService.Key key = service.keyFor("User", "key-1", null, body("jdoe"));
+        service.execute(key, () -> accepted("op-1"));
+        service.created("op-1", "u-1");
+
+        OperationStatus replayed = service.execute(key, () -> accepted("op-2"));
+        assertThat(replayed.getId()).isEqualTo("op-1");
+        assertThat(replayed.getResourceId()).isEqualTo("u-1");
+
+        service.forget("u-1");
+        assertThat(service.execute(key, () -> accepted("op-3")).getId()).isEqualTo("op-3");
+    }
+
+    @Test
+    void requestsWithoutKeyAreNotDeduplicated() throws Exception {
+        assertThat(service.keyFor("User", null, null, body("jdoe"))).isNull();
+        assertThat(new IdempotencyService(false, 600, 1000).keyFor("User", "key-1", "ext-1", body("jdoe"))).isNull();
+    }
+
+    private JsonNode body(String userName) throws Exception {
+        return objectMapper.readTree("{\"userName\":\"" + userName + "\",\"externalId\":\"ext-1\"}");
+    }
+
+    private ScimUser create(String id) {
+        runs.incrementAndGet();
+        ScimUser user = new ScimUser();
+        user.setId(id);
+        return user;
+    }
+
+    private static OperationStatus accepted(String operationId) {
+        OperationStatus status = new OperationStatus();
+        status.setId(operationId);
+        status.setState(OperationStatus.State.PENDING);
+        return status;
+    }
+}
@@ -0,0 +1,80 @@
+package com.learnhai.scim.service;
+
+import com.learnhai.scim.backend.IdentityBackend;
+import com.learnhai.scim.exception.ScimException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.http.HttpStatus;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MembershipIndexTest {
+
+    private final IdentityBackend backend = mock(IdentityBackend.class);
+    private final GroupHierarchyCache groupHierarchy = mock(GroupHierarchyCache.class);
+    private final MembershipIndex index = new MembershipIndex(backend, groupHierarchy, true, 3600000);
+
+    @AfterEach
+    void stop() {
+        index.stop();
+    }
+
+    @Test
+    void answersFromACompletedBuild() throws InterruptedException {
+        when(groupHierarchy.all()).thenReturn(List.of(group()));
+        when(backend.getGroupMembers(eq("g-1"), anyInt(), anyInt())).thenReturn(List.of(user()));
+
+        assertThat(awaitBuilt("u-1")).contains(true);
+        assertThat(index.isMember("u-2", "g-1")).contains(false);
+    }
+
+    @Test
+    void aFailedMemberScanLeavesTheIndexUnbuiltUntilTheRetry() throws InterruptedException {
+        when(groupHierarchy.all()).thenReturn(List.of(group()));
+        when(backend.getGroupMembers(eq("g-1"), anyInt(), anyInt()))
+                .thenThrow(new ScimException("Failed to get members of group g-1 from Keycloak", HttpStatus.INTERNAL_SERVER_ERROR));
+
+        assertThat(index.isMember("u-1", "g-1")).isEmpty();
+        verify(backend, timeout(5000)).getGroupMembers(eq("g-1"), anyInt(), anyInt());
+        Thread.sleep(100);
+
+        assertThat(index.isMember("u-1", "g-1")).isEmpty(); // unknown, not "not a member"
+        verify(backend, times(1)).getGroupMembers(eq("g-1"), anyInt(), anyInt()); // retried later, not per read
+    }
+
+    private Optional<Boolean> awaitBuilt(String userId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        Optional<Boolean> member = index.isMember(userId, "g-1");
+        while (member.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            member = index.isMember(userId, "g-1");
+        }
+        return member;
+    }
+
+    private static GroupRepresentation group() {
+        GroupRepresentation group = new GroupRepresentation();
+        group.setId("g-1");
+        group.setName("Admins");
+        return group;
+    }
+
+    private static UserRepresentation user() {
+        UserRepresentation user = new UserRepresentation();
+        user.setId("u-1");
+        user.setUsername("alice");
+        return user;
+    }
+}
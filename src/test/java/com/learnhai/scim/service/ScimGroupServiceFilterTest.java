@@ -0,0 +1,102 @@
+package com.learnhai.scim.service;
+
+import com.learnhai.scim.backend.IdentityBackend;
+import com.learnhai.scim.exception.ScimException;
+import com.learnhai.scim.mapper.GroupMapper;
+import com.learnhai.scim.mapper.ModificationStamps;
+import com.learnhai.scim.model.scim.ScimGroup;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.http.HttpStatus;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ScimGroupServiceFilterTest {
+
+    private final IdentityBackend backend = mock(IdentityBackend.class);
+    private final GroupHierarchyCache groupHierarchy = mock(GroupHierarchyCache.class);
+    private final ScimGroupService service = new ScimGroupService(backend, new GroupMapper(""), groupHierarchy,
+            mock(MembershipIndex.class), mock(WriteOutcomes.class), mock(IdempotencyService.class), 100, 10);
+
+    @BeforeEach
+    void groups() {
+        when(groupHierarchy.all()).thenReturn(List.of(
+                group("g-1", "Admins", "2024-05-01T00:00:00Z"),
+                group("g-2", "Administrators", "2024-06-01T00:00:00Z")));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "Admins",                          // not a filter; once a raw name search
+            "displayName co \"Admin\"",
+            "displayName eq \"Admins\" or displayName eq \"Ops\"",
+            "externalId eq \"ext-1\"",
+            "displayName eq"})
+    void unsupportedAndMalformedFiltersAreRejected(String filter) {
+        assertThatThrownBy(() -> service.getGroups(1, 10, filter)).isInstanceOfSatisfying(ScimException.class, e -> {
+            assertThat(e.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST);
+            assertThat(e.getScimType()).isEqualTo("invalidFilter");
+        });
+        verify(groupHierarchy, never()).all();
+    }
+
+    @Test
+    void displayNameEqualityIgnoresCase() {
+        assertThat(service.getGroups(1, 10, "displayName eq \"admins\"", false).getResources())
+                .extracting(ScimGroup::getId).containsExactly("g-1");
+    }
+
+    @Test
+    void lastModifiedRangesSelectChangedGroups() {
+        assertThat(service.getGroups(1, 10, "meta.lastModified gt \"2024-05-15T00:00:00Z\"", false).getResources())
+                .extracting(ScimGroup::getId).containsExactly("g-2");
+    }
+
+    @Test
+    void noFilterListsEveryGroup() {
+        assertThat(service.getGroups(1, 10, null, false).getTotalResults()).isEqualTo(2);
+    }
+
+    @Test
+    void listPagesInlineMembersUpToTheirOwnLimit() {
+        when(backend.getGroupMembers(anyString(), anyInt(), anyInt())).thenReturn(List.of(user("u-1"), user("u-2")));
+
+        assertThat(service.getGroups(1, 10, "displayName eq \"Admins\"").getResources().get(0).getMembers()).hasSize(2);
+        verify(backend).getGroupMembers("g-1", 0, 11);
+
+        ScimGroupService memberless = new ScimGroupService(backend, new GroupMapper(""), groupHierarchy,
+                mock(MembershipIndex.class), mock(WriteOutcomes.class), mock(IdempotencyService.class), 100, 0);
+        assertThat(memberless.getGroups(1, 10, null).getResources()).allSatisfy(group -> assertThat(group.getMembers()).isNull());
+        verify(backend, times(1)).getGroupMembers(anyString(), anyInt(), anyInt()); // only the first listing's
+    }
+
+    private static UserRepresentation user(String id) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId(id);
+        user.setUsername(id);
+        return user;
+    }
+
+    private static GroupRepresentation group(String id, String name, String lastModified) {
+        GroupRepresentation group = new GroupRepresentation();
+        group.setId(id);
+        group.setName(name);
+        ModificationStamps.stamp(group, Instant.parse(lastModified), false);
+        return group;
+    }
+}
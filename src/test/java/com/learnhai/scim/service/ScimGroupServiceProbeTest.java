@@ -0,0 +1,72 @@
+package com.learnhai.scim.service;
+
+import com.learnhai.scim.backend.IdentityBackend;
+import com.learnhai.scim.mapper.GroupMapper;
+import com.learnhai.scim.model.scim.ListResponse;
+import com.learnhai.scim.model.scim.ScimGroup;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.GroupRepresentation;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ScimGroupServiceProbeTest {
+
+    private static final String PROBE = "id eq \"g-1\" and members[value eq \"u-1\"]";
+
+    private final IdentityBackend backend = mock(IdentityBackend.class);
+    private final GroupHierarchyCache groupHierarchy = mock(GroupHierarchyCache.class);
+    private final MembershipIndex membershipIndex = mock(MembershipIndex.class);
+    private final ScimGroupService service = new ScimGroupService(backend, new GroupMapper(""), groupHierarchy,
+            membershipIndex, mock(WriteOutcomes.class), mock(IdempotencyService.class), 100, 10);
+
+    @Test
+    void answersFromTheMembershipIndexForACachedGroup() {
+        when(groupHierarchy.get("g-1")).thenReturn(Optional.of(group()));
+        when(membershipIndex.isMember("u-1", "g-1")).thenReturn(Optional.of(true));
+
+        ListResponse<ScimGroup> response = service.getGroups(1, 10, PROBE, false);
+
+        assertThat(response.getTotalResults()).isEqualTo(1);
+        assertThat(response.getResources()).extracting(ScimGroup::getId).containsExactly("g-1");
+        verify(backend, never()).isGroupMember(any(), any());
+    }
+
+    @Test
+    void checksTheStoreForAGroupTheCacheDoesNotKnow() {
+        when(groupHierarchy.get("g-1")).thenReturn(Optional.empty());
+        when(backend.getGroupById("g-1")).thenReturn(Optional.of(group()));
+        when(backend.isGroupMember("u-1", "g-1")).thenReturn(true);
+
+        ListResponse<ScimGroup> response = service.getGroups(1, 10, PROBE, false);
+
+        assertThat(response.getTotalResults()).isEqualTo(1);
+        assertThat(response.getResources()).extracting(ScimGroup::getId).containsExactly("g-1");
+        verify(groupHierarchy).put(any(GroupRepresentation.class));
+        verify(membershipIndex, never()).isMember(any(), any());
+    }
+
+    @Test
+    void aGroupThatDoesNotExistHasNoMembers() {
+        when(groupHierarchy.get("g-1")).thenReturn(Optional.empty());
+        when(backend.getGroupById("g-1")).thenReturn(Optional.empty());
+
+        ListResponse<ScimGroup> response = service.getGroups(1, 10, PROBE, false);
+
+        assertThat(response.getTotalResults()).isZero();
+        verify(backend, never()).isGroupMember(any(), any());
+    }
+
+    private static GroupRepresentation group() {
+        GroupRepresentation group = new GroupRepresentation();
+        group.setId("g-1");
+        group.setName("Admins");
+        return group;
+    }
+}
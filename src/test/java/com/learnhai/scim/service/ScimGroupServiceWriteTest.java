@@ -0,0 +1,161 @@
+package com.learnhai.scim.service;
+
+import com.learnhai.scim.backend.IdentityBackend;
+import com.learnhai.scim.mapper.GroupMapper;
+import com.learnhai.scim.mapper.ModificationStamps;
+import com.learnhai.scim.model.scim.ScimGroup;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ScimGroupServiceWriteTest {
+
+    private final IdentityBackend backend = mock(IdentityBackend.class);
+    private final GroupHierarchyCache groupHierarchy = mock(GroupHierarchyCache.class);
+    private final MembershipIndex membershipIndex = mock(MembershipIndex.class);
+    private final WriteOutcomes writeOutcomes = mock(WriteOutcomes.class);
+    private final ScimGroupService service = new ScimGroupService(backend, new GroupMapper(""), groupHierarchy,
+            membershipIndex, writeOutcomes, mock(IdempotencyService.class), 100, 10);
+
+    @BeforeEach
+    void storedGroup() {
+        when(backend.getGroupById("g-1")).thenReturn(Optional.of(group("Admins")));
+        when(backend.getGroupMembers(eq("g-1"), anyInt(), anyInt())).thenReturn(List.of());
+        when(backend.getUserById("u-1")).thenReturn(Optional.of(user("u-1")));
+        when(membershipIndex.isMember("u-1", "g-1")).thenReturn(Optional.of(false));
+    }
+
+    @Test
+    void aReplaceThatOnlyChangesMembersStampsTheGroupOnce() {
+        when(backend.getUserById("u-2")).thenReturn(Optional.of(user("u-2")));
+
+        service.replaceGroup("g-1", scimGroup("Admins", "u-1", "u-2"));
+
+        verify(backend).addUserToGroup("u-1", "g-1");
+        verify(backend).addUserToGroup("u-2", "g-1");
+        verify(backend).updateGroup(eq("g-1"), argThat(ScimGroupServiceWriteTest::stamped));
+        verify(writeOutcomes).written("Group", "replace");
+    }
+
+    @Test
+    void aReplaceThatRenamesWritesTheGroupOnce() {
+        service.replaceGroup("g-1", scimGroup("Operators", "u-1"));
+
+        verify(backend).updateGroup(eq("g-1"), any(GroupRepresentation.class));
+        verify(backend).addUserToGroup("u-1", "g-1");
+    }
+
+    @Test
+    void anUnchangedReplaceWritesNothing() {
+        service.replaceGroup("g-1", scimGroup("Admins"));
+
+        verify(backend, never()).updateGroup(any(), any());
+        verify(writeOutcomes).suppressed("Group", "replace");
+    }
+
+    @Test
+    void aPatchThatOnlyChangesMembersStampsTheGroup() {
+        service.patchGroup("g-1", addMember("u-1"));
+
+        verify(backend).addUserToGroup("u-1", "g-1");
+        verify(backend).updateGroup(eq("g-1"), argThat(ScimGroupServiceWriteTest::stamped));
+        verify(writeOutcomes).written("Group", "patch");
+    }
+
+    @Test
+    void aPatchAddIsSkippedOnlyWhenTheStoreConfirmsTheMembership() {
+        when(membershipIndex.isMember("u-1", "g-1")).thenReturn(Optional.of(true)); // stale: not in the store
+
+        service.patchGroup("g-1", addMember("u-1"));
+
+        verify(backend).addUserToGroup("u-1", "g-1");
+
+        when(backend.isGroupMember("u-1", "g-1")).thenReturn(true);
+
+        service.patchGroup("g-1", addMember("u-1"));
+
+        verify(backend).addUserToGroup("u-1", "g-1"); // still just the first one
+        verify(writeOutcomes).suppressed("Group", "patch");
+    }
+
+    @Test
+    void aPatchRemoveIsNotDroppedOnAStaleIndex() {
+        when(backend.isGroupMember("u-1", "g-1")).thenReturn(true); // the index has not seen this membership
+
+        service.patchGroup("g-1", removeMember("u-1"));
+
+        verify(backend).removeUserFromGroup("u-1", "g-1");
+        verify(writeOutcomes).written("Group", "patch");
+    }
+
+    @Test
+    void aPatchRemoveOfANonMemberIsSkipped() {
+        service.patchGroup("g-1", removeMember("u-1"));
+
+        verify(backend).isGroupMember("u-1", "g-1");
+        verify(backend, never()).removeUserFromGroup(any(), any());
+        verify(writeOutcomes).suppressed("Group", "patch");
+    }
+
+    @Test
+    void aPatchThatRenamesWritesTheGroup() {
+        service.patchGroup("g-1", Map.of("Operations", List.of(Map.of("op", "replace", "path", "displayName",
+                "value", "Operators"))));
+
+        verify(backend).updateGroup(eq("g-1"), any(GroupRepresentation.class));
+    }
+
+    private static Map<String, Object> addMember(String userId) {
+        return Map.of("Operations", List.of(Map.of("op", "add", "path", "members",
+                "value", List.of(Map.of("type", "User", "value", userId)))));
+    }
+
+    private static Map<String, Object> removeMember(String userId) {
+        return Map.of("Operations", List.of(Map.of("op", "remove", "path", "members[value eq \"" + userId + "\"]")));
+    }
+
+    private static boolean stamped(GroupRepresentation group) {
+        return ModificationStamps.lastModified(group) != null;
+    }
+
+    private static ScimGroup scimGroup(String displayName, String... userIds) {
+        ScimGroup scimGroup = new ScimGroup();
+        scimGroup.setDisplayName(displayName);
+        scimGroup.setMembers(Arrays.stream(userIds).map(userId -> {
+            ScimGroup.Member member = new ScimGroup.Member();
+            member.setType("User");
+            member.setValue(userId);
+            return member;
+        }).toList());
+        return scimGroup;
+    }
+
+    private static GroupRepresentation group(String name) {
+        GroupRepresentation group = new GroupRepresentation();
+        group.setId("g-1");
+        group.setName(name);
+        return group;
+    }
+
+    private static UserRepresentation user(String id) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId(id);
+        user.setUsername(id);
+        return user;
+    }
+}
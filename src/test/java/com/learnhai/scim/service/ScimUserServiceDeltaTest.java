@@ -0,0 +1,67 @@
+package com.learnhai.scim.service;
+
+import com.learnhai.scim.backend.InMemoryIdentityBackend;
+import com.learnhai.scim.index.UserKeyIndex;
+import com.learnhai.scim.mapper.ModificationStamps;
+import com.learnhai.scim.mapper.UserMapper;
+import com.learnhai.scim.model.scim.ListResponse;
+import com.learnhai.scim.model.scim.ScimUser;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ScimUserServiceDeltaTest {
+
+    private static final String SINCE_MAY = "meta.lastModified gt \"2024-05-01T00:00:00Z\"";
+
+    private final InMemoryIdentityBackend backend = new InMemoryIdentityBackend();
+    private final UserMapper userMapper = mock(UserMapper.class);
+    private final MembershipIndex membershipIndex = mock(MembershipIndex.class);
+    private final ScimUserService service = new ScimUserService(backend, userMapper, membershipIndex,
+            new UserChangeIndex(backend, 3_600_000), mock(UserKeyIndex.class), mock(WriteOutcomes.class),
+            mock(IdempotencyService.class));
+
+    @Test
+    void usersDeletedInTheStoreAreDroppedAndThePageRefilled() {
+        when(userMapper.toScimUser(any())).thenAnswer(invocation -> {
+            ScimUser scimUser = new ScimUser();
+            scimUser.setId(invocation.<UserRepresentation>getArgument(0).getId());
+            return scimUser;
+        });
+        when(membershipIndex.memberships(anyList())).thenReturn(Optional.empty());
+        List<String> ids = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            // Stamped after the creation time, which would otherwise win as lastModified
+            ids.add(backend.createUser(user("user" + i, "2099-05-0" + (i + 1) + "T00:00:00Z")));
+        }
+        assertThat(service.getUsers(1, 10, SINCE_MAY).getTotalResults()).isEqualTo(5);
+
+        backend.deleteUser(ids.get(0)); // in Keycloak directly: the change index does not hear of it
+        backend.deleteUser(ids.get(2));
+
+        ListResponse<ScimUser> page = service.getUsers(1, 2, SINCE_MAY);
+
+        assertThat(page.getResources()).extracting(ScimUser::getId).containsExactly(ids.get(1), ids.get(3));
+        assertThat(page.getTotalResults()).isEqualTo(3);
+        assertThat(service.getUsers(3, 2, SINCE_MAY).getResources()).extracting(ScimUser::getId)
+                .containsExactly(ids.get(4));
+    }
+
+    private static UserRepresentation user(String userName, String lastModified) {
+        UserRepresentation user = new UserRepresentation();
+        user.setUsername(userName);
+        user.setEnabled(true);
+        ModificationStamps.stamp(user, Instant.parse(lastModified));
+        return user;
+    }
+}
@@ -0,0 +1,78 @@
+package com.learnhai.scim.service;
+
+import com.learnhai.scim.backend.IdentityBackend;
+import com.learnhai.scim.exception.ScimException;
+import com.learnhai.scim.index.UserKeyIndex;
+import com.learnhai.scim.mapper.UserMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.http.HttpStatus;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class ScimUserServiceFilterTest {
+
+    private final IdentityBackend backend = mock(IdentityBackend.class);
+    private final UserKeyIndex keyIndex = mock(UserKeyIndex.class);
+    private final MembershipIndex membershipIndex = mock(MembershipIndex.class);
+    private final ScimUserService service = new ScimUserService(backend, mock(UserMapper.class), membershipIndex,
+            mock(UserChangeIndex.class), keyIndex, mock(WriteOutcomes.class), mock(IdempotencyService.class));
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "name.familyName eq \"Jensen\"",
+            "userName co \"jen\"",
+            "userName eq \"a\" or userName eq \"b\"",
+            "active eq true",
+            "externalId eq \"ext-1\"", // key index disabled
+            "userName eq",
+            "userName eq \"unterminated"})
+    void unsupportedAndMalformedFiltersAreRejectedInsteadOfListingEveryone(String filter) {
+        assertThatThrownBy(() -> service.getUsers(1, 10, filter)).isInstanceOfSatisfying(ScimException.class, e -> {
+            assertThat(e.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST);
+            assertThat(e.getScimType()).isEqualTo("invalidFilter");
+        });
+        verifyNoInteractions(backend);
+    }
+
+    @Test
+    void userNameEqualitySearchesTheStore() {
+        when(backend.getUsers(anyInt(), anyInt(), any())).thenReturn(List.of());
+        when(membershipIndex.memberships(anyList())).thenReturn(Optional.empty());
+
+        assertThat(service.getUsers(1, 10, "userName eq \"bjensen\"").getTotalResults()).isZero();
+
+        verify(backend).getUsers(0, 10, "bjensen");
+        verify(backend).countUsers("bjensen");
+    }
+
+    @Test
+    void emailsValueEqualitySearchesTheStore() {
+        when(backend.getUsers(anyInt(), anyInt(), any())).thenReturn(List.of());
+
+        service.getUsers(1, 10, "emails.value eq \"bjensen@example.com\"");
+
+        verify(backend).getUsers(0, 10, "bjensen@example.com");
+    }
+
+    @Test
+    void noFilterListsUsers() {
+        when(backend.getUsers(anyInt(), anyInt(), any())).thenReturn(List.of());
+
+        service.getUsers(1, 10, null);
+
+        verify(backend).getUsers(0, 10, null);
+    }
+}
@@ -0,0 +1,63 @@
+package com.learnhai.scim.service.async;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProvisioningOperationTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void passwordIsRemovedFromResourcePayloadOnly() throws Exception {
+        ProvisioningOperation op = operation(ProvisioningOperation.Type.CREATE_USER,
+                "{\"userName\":\"jdoe\",\"password\":\"s3cret\"}");
+
+        ProvisioningOperation logged = op.withoutPassword();
+
+        assertThat(logged.isPasswordRemoved()).isTrue();
+        assertThat(logged.getPayload().has("password")).isFalse();
+        assertThat(logged.getPayload().get("userName").asText()).isEqualTo("jdoe");
+        assertThat(op.getPayload().get("password").asText()).isEqualTo("s3cret"); // still applied from memory
+        assertThat(objectMapper.writeValueAsString(logged)).doesNotContain("s3cret");
+    }
+
+    @Test
+    void passwordIsRemovedFromPatchOperations() throws Exception {
+        ProvisioningOperation op = operation(ProvisioningOperation.Type.PATCH_USER, """
+                {"Operations":[
+                  {"op":"replace","path":"password","value":"s3cret"},
+                  {"op":"replace","value":{"password":"0ther","active":true}},
+                  {"op":"replace","path":"active","value":false}]}""");
+
+        ProvisioningOperation logged = op.withoutPassword();
+
+        assertThat(logged.isPasswordRemoved()).isTrue();
+        JsonNode operations = logged.getPayload().get("Operations");
+        assertThat(operations).hasSize(3);
+        assertThat(operations.get(0).has("value")).isFalse();
+        assertThat(operations.get(1).get("value").has("password")).isFalse();
+        assertThat(operations.get(1).get("value").get("active").asBoolean()).isTrue();
+        assertThat(operations.get(2).get("value").asBoolean()).isFalse();
+        assertThat(objectMapper.writeValueAsString(logged)).doesNotContain("s3cret").doesNotContain("0ther");
+    }
+
+    @Test
+    void operationWithoutPasswordIsLoggedAsIs() throws Exception {
+        ProvisioningOperation op = operation(ProvisioningOperation.Type.REPLACE_USER, "{\"userName\":\"jdoe\"}");
+
+        assertThat(op.withoutPassword()).isSameAs(op);
+        assertThat(objectMapper.writeValueAsString(op)).doesNotContain("passwordRemoved");
+    }
+
+    private ProvisioningOperation operation(ProvisioningOperation.Type type, String payload) throws Exception {
+        ProvisioningOperation op = new ProvisioningOperation();
+        op.setId("op-1");
+        op.setType(type);
+        op.setResourceId(type.isCreate() ? null : "u-1");
+        op.setPayload(objectMapper.readTree(payload));
+        return op;
+    }
+}
@@ -0,0 +1,129 @@
+package com.learnhai.scim.service.async;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnhai.scim.audit.AuditLog;
+import com.learnhai.scim.exception.ScimException;
+import com.learnhai.scim.model.scim.ScimUser;
+import com.learnhai.scim.service.IdempotencyService;
+import com.learnhai.scim.service.ScimGroupService;
+import com.learnhai.scim.service.ScimUserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ProvisioningQueueTest {
+
+    private static final Map<String, Object> PATCH = Map.of("Operations", List.of(Map.of("op", "replace", "path", "active", "value", true)));
+
+    private final ScimUserService userService = mock(ScimUserService.class);
+    private final List<String> applied = new CopyOnWriteArrayList<>();
+    private ProvisioningQueue queue;
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void stop() {
+        if (queue != null) {
+            queue.stop();
+        }
+    }
+
+    @Test
+    void retryBackoffDoesNotHoldUpOtherResourcesOnTheLane() throws Exception {
+        AtomicInteger flaky = new AtomicInteger();
+        when(userService.patchUser(eq("u-1"), anyMap())).thenAnswer(invocation -> {
+            if (flaky.incrementAndGet() < 3) {
+                throw new ScimException("Keycloak unavailable", HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            return applied("u-1");
+        });
+        when(userService.patchUser(eq("u-2"), anyMap())).thenAnswer(invocation -> applied("u-2"));
+        start(1); // a single lane, so both resources share it
+
+        OperationStatus first = queue.submit(ProvisioningOperation.Type.PATCH_USER, "u-1", PATCH);
+        OperationStatus second = queue.submit(ProvisioningOperation.Type.PATCH_USER, "u-2", PATCH);
+
+        await(second.getId(), 400); // well inside the first backoff of u-1
+        assertThat(queue.getStatus(first.getId()).orElseThrow().isTerminal()).isFalse();
+        OperationStatus done = await(first.getId(), 5000);
+        assertThat(done.getState()).isEqualTo(OperationStatus.State.SUCCEEDED);
+        assertThat(done.getAttempts()).isEqualTo(3);
+        assertThat(applied).containsExactly("u-2", "u-1");
+    }
+
+    @Test
+    void laterOperationsOnAParkedResourceWaitForItsRetry() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        when(userService.patchUser(eq("u-1"), anyMap())).thenAnswer(invocation -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new ScimException("Keycloak unavailable", HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            return applied("u-1#" + calls.get());
+        });
+        start(1);
+
+        OperationStatus first = queue.submit(ProvisioningOperation.Type.PATCH_USER, "u-1", PATCH);
+        OperationStatus second = queue.submit(ProvisioningOperation.Type.PATCH_USER, "u-1", PATCH);
+        OperationStatus third = queue.submit(ProvisioningOperation.Type.PATCH_USER, "u-1", PATCH);
+
+        await(third.getId(), 5000);
+        assertThat(queue.getStatus(first.getId()).orElseThrow().getAttempts()).isEqualTo(2);
+        assertThat(queue.getStatus(second.getId()).orElseThrow().getState()).isEqualTo(OperationStatus.State.SUCCEEDED);
+        assertThat(applied).containsExactly("u-1#2", "u-1#3", "u-1#4");
+    }
+
+    @Test
+    void permanentFailureIsNotRetried() throws Exception {
+        when(userService.patchUser(eq("u-1"), anyMap()))
+                .thenThrow(new ScimException("User not found", HttpStatus.NOT_FOUND, "noTarget"));
+        start(2);
+
+        OperationStatus status = await(queue.submit(ProvisioningOperation.Type.PATCH_USER, "u-1", PATCH).getId(), 2000);
+
+        assertThat(status.getState()).isEqualTo(OperationStatus.State.FAILED);
+        assertThat(status.getStatus()).isEqualTo(404);
+        assertThat(status.getAttempts()).isEqualTo(1);
+    }
+
+    private void start(int workers) throws Exception {
+        queue = new ProvisioningQueue(true, dir.toString(), workers, 100, 0, 3, 100, Long.MAX_VALUE,
+                new ObjectMapper().findAndRegisterModules(), userService, mock(ScimGroupService.class), mock(AuditLog.class),
+                new IdempotencyService(true, 600, 1000));
+        queue.start();
+    }
+
+    private ScimUser applied(String label) {
+        applied.add(label);
+        ScimUser user = new ScimUser();
+        user.setId(label);
+        user.setMeta(new ScimUser.Meta());
+        return user;
+    }
+
+    private OperationStatus await(String operationId, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (System.nanoTime() < deadline) {
+            OperationStatus status = queue.getStatus(operationId).orElseThrow();
+            if (status.isTerminal()) {
+                return status;
+            }
+            Thread.sleep(5);
+        }
+        throw new AssertionError("Operation " + operationId + " did not complete within " + timeoutMillis + " ms");
+    }
+}
@@ -0,0 +1,155 @@
+package com.learnhai.scim.service.async;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WriteAheadLogTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reopenReturnsAppendedRecordsInOrder() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(dir, objectMapper, 0)) {
+            assertThat(wal.open()).isEmpty();
+            wal.append(submit("op-1"));
+            wal.awaitDurable(wal.append(done("op-1")));
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(dir, objectMapper, 0)) {
+            List<WriteAheadLog.Record> records = wal.open();
+            assertThat(records).extracting(WriteAheadLog.Record::getKind)
+                    .containsExactly(WriteAheadLog.Kind.SUBMIT, WriteAheadLog.Kind.DONE);
+            assertThat(records.get(0).getOperation().getId()).isEqualTo("op-1");
+            assertThat(records.get(0).getOperation().getPayload().get("userName").asText()).isEqualTo("jdoe");
+            assertThat(records.get(1).getOutcome().getState()).isEqualTo(OperationStatus.State.SUCCEEDED);
+        }
+    }
+
+    @Test
+    void tornTailIsCutOffAndAppendsContinueAfterIt() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(dir, objectMapper, 0)) {
+            wal.open();
+            wal.awaitDurable(wal.append(submit("op-1")));
+        }
+        Path file = dir.resolve("provisioning.wal");
+        long intact = Files.size(file);
+        // A crash mid-append: the header promises more bytes than made it to disk
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(18).putInt(500).putInt(42).put(new byte[10]).flip());
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(dir, objectMapper, 0)) {
+            assertThat(wal.open()).extracting(record -> record.getOperation().getId()).containsExactly("op-1");
+            assertThat(Files.size(file)).isEqualTo(intact);
+            wal.awaitDurable(wal.append(submit("op-2")));
+        }
+        try (WriteAheadLog wal = new WriteAheadLog(dir, objectMapper, 0)) {
+            assertThat(wal.open()).extracting(record -> record.getOperation().getId()).containsExactly("op-1", "op-2");
+        }
+    }
+
+    @Test
+    void recordWithBadChecksumEndsTheLog() throws IOException {
+        long firstEnd;
+        try (WriteAheadLog wal = new WriteAheadLog(dir, objectMapper, 0)) {
+            wal.open();
+            wal.awaitDurable(wal.append(submit("op-1")));
+            firstEnd = wal.size();
+            wal.awaitDurable(wal.append(submit("op-2")));
+        }
+        Path file = dir.resolve("provisioning.wal");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            long at = Files.size(file) - 2; // inside the second record's JSON body
+            channel.read(last, at);
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) (last.get(0) ^ 0x20)}), at);
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(dir, objectMapper, 0)) {
+            assertThat(wal.open()).extracting(record -> record.getOperation().getId()).containsExactly("op-1");
+            assertThat(Files.size(file)).isEqualTo(firstEnd);
+        }
+    }
+
+    @Test
+    void concurrentAppendsAllBecomeDurable() throws Exception {
+        int threads = 16;
+        int perThread = 50;
+        try (WriteAheadLog wal = new WriteAheadLog(dir, objectMapper, 2)) {
+            wal.open();
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    int thread = t;
+                    futures.add(pool.submit(() -> {
+                        for (int i = 0; i < perThread; i++) {
+                            wal.awaitDurable(wal.append(submit("op-" + thread + "-" + i)));
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(dir, objectMapper, 0)) {
+            assertThat(wal.open()).hasSize(threads * perThread);
+        }
+    }
+
+    @Test
+    void rewriteKeepsOnlyTheGivenRecords() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(dir, objectMapper, 0)) {
+            wal.open();
+            wal.append(submit("op-1"));
+            wal.append(done("op-1"));
+            wal.awaitDurable(wal.append(submit("op-2")));
+            wal.rewrite(List.of(submit("op-2")));
+            wal.awaitDurable(wal.append(submit("op-3")));
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(dir, objectMapper, 0)) {
+            assertThat(wal.open()).extracting(record -> record.getOperation().getId()).containsExactly("op-2", "op-3");
+        }
+    }
+
+    private WriteAheadLog.Record submit(String id) {
+        ProvisioningOperation op = new ProvisioningOperation();
+        op.setId(id);
+        op.setType(ProvisioningOperation.Type.CREATE_USER);
+        op.setPayload(objectMapper.createObjectNode().put("userName", "jdoe"));
+        op.setSubmitted(Instant.parse("2024-01-01T00:00:00Z"));
+        return new WriteAheadLog.Record(WriteAheadLog.Kind.SUBMIT, op, null);
+    }
+
+    private static WriteAheadLog.Record done(String id) {
+        OperationStatus status = new OperationStatus();
+        status.setId(id);
+        status.setState(OperationStatus.State.SUCCEEDED);
+        return new WriteAheadLog.Record(WriteAheadLog.Kind.DONE, null, status);
+    }
+}
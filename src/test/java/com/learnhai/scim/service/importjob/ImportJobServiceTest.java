@@ -0,0 +1,178 @@
+package com.learnhai.scim.service.importjob;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnhai.scim.audit.AuditLog;
+import com.learnhai.scim.model.scim.ScimUser;
+import com.learnhai.scim.schema.ScimSchemaValidator;
+import com.learnhai.scim.service.BulkLoadService;
+import com.learnhai.scim.service.ScimUserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ImportJobServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+    private final BulkLoadService bulkLoadService = mock(BulkLoadService.class);
+    private final ScimUserService userService = mock(ScimUserService.class);
+    private final Set<String> loadedRows = ConcurrentHashMap.newKeySet();
+    private final Set<String> existing = ConcurrentHashMap.newKeySet();
+    private final Set<String> unreported = ConcurrentHashMap.newKeySet();
+    private ImportJobService service;
+
+    @BeforeEach
+    void mockBulkLoads() {
+        when(bulkLoadService.load(anyList(), isNull(), any(), any(), any())).thenAnswer(invocation -> {
+            List<BulkLoadService.Item> items = invocation.getArgument(0);
+            List<BulkLoadService.Outcome> outcomes = new ArrayList<>();
+            for (BulkLoadService.Item item : items) {
+                loadedRows.add(item.bulkId());
+                outcomes.add(unreported.contains(item.bulkId()) ? null : new BulkLoadService.Outcome(item.bulkId(), "User",
+                        "id-" + item.user().getUserName(), existing.contains(item.bulkId()) ? 200 : 201, null, null));
+            }
+            return outcomes;
+        });
+    }
+
+    @AfterEach
+    void stop() {
+        if (service != null) {
+            service.stop();
+        }
+    }
+
+    @Test
+    void completesAfterCommittingEveryRow() throws Exception {
+        start();
+
+        ImportJob job = await(service.submit(upload(5), ImportJob.Format.NDJSON).getId());
+
+        assertThat(job.getState()).isEqualTo(ImportJob.State.COMPLETED);
+        assertThat(job.getRowsProcessed()).isEqualTo(5);
+        assertThat(job.getCreated()).isEqualTo(5);
+        assertThat(job.getFailed()).isZero();
+        assertThat(saved(job.getId()).getState()).isEqualTo(ImportJob.State.COMPLETED);
+        assertThat(loadedRows).containsExactlyInAnyOrder("1", "2", "3", "4", "5");
+    }
+
+    @Test
+    void existingUsersAreReplacedWhateverTheBulkPolicy() throws Exception {
+        existing.add("2");
+        start();
+
+        ImportJob job = await(service.submit(upload(3), ImportJob.Format.NDJSON).getId());
+
+        assertThat(job.getCreated()).isEqualTo(2);
+        assertThat(job.getUpdated()).isEqualTo(1);
+        verify(userService).replaceUser(eq("id-user2"), any(ScimUser.class));
+        verify(bulkLoadService, org.mockito.Mockito.atLeastOnce())
+                .load(anyList(), isNull(), any(), any(), eq(BulkLoadService.IfExists.USE_EXISTING));
+    }
+
+    @Test
+    void aRowThatFailsUnexpectedlyIsARowErrorAndTheJobStillCompletes() throws Exception {
+        unreported.add("3");
+        start();
+
+        ImportJob job = await(service.submit(upload(5), ImportJob.Format.NDJSON).getId());
+
+        assertThat(job.getState()).isEqualTo(ImportJob.State.COMPLETED);
+        assertThat(job.getRowsProcessed()).isEqualTo(5);
+        assertThat(job.getCreated()).isEqualTo(4);
+        assertThat(job.getFailed()).isEqualTo(1);
+        assertThat(job.getErrors()).singleElement().satisfies(error -> {
+            assertThat(error.getRow()).isEqualTo(3);
+            assertThat(error.getStatus()).isEqualTo(500);
+        });
+    }
+
+    @Test
+    void aChunkThatThrowsIsCommittedAsFailedRows() throws Exception {
+        when(bulkLoadService.load(anyList(), isNull(), any(), any(), any())).thenThrow(new IllegalStateException("store down"));
+        start();
+
+        ImportJob job = await(service.submit(upload(4), ImportJob.Format.NDJSON).getId());
+
+        assertThat(job.getState()).isEqualTo(ImportJob.State.COMPLETED);
+        assertThat(job.getRowsProcessed()).isEqualTo(4);
+        assertThat(job.getFailed()).isEqualTo(4);
+    }
+
+    @Test
+    void resumesFromTheLastCheckpointOnStartup() throws Exception {
+        ImportJob job = new ImportJob();
+        job.setId("resumed");
+        job.setState(ImportJob.State.RUNNING);
+        job.setFormat(ImportJob.Format.NDJSON);
+        job.setActor("client");
+        job.setSubmitted(Instant.now());
+        job.setStarted(Instant.now());
+        job.setRowsProcessed(2);
+        job.setCreated(2);
+        Path jobDir = Files.createDirectories(dir.resolve(job.getId()));
+        Files.write(jobDir.resolve("upload.ndjson"), upload(5).readAllBytes());
+        mapper.writeValue(jobDir.resolve("job.json").toFile(), job);
+
+        start();
+        ImportJob resumed = await(job.getId());
+
+        assertThat(loadedRows).containsExactlyInAnyOrder("3", "4", "5");
+        assertThat(resumed.getState()).isEqualTo(ImportJob.State.COMPLETED);
+        assertThat(resumed.getRowsProcessed()).isEqualTo(5);
+        assertThat(resumed.getCreated()).isEqualTo(5);
+    }
+
+    private void start() throws Exception {
+        service = new ImportJobService(true, dir.toString(), 2, 2, 1 << 20, 100, 100, mapper,
+                new ScimSchemaValidator(mapper, true, false, false), bulkLoadService, userService, mock(AuditLog.class));
+        service.start();
+    }
+
+    private ImportJob await(String id) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            ImportJob job = service.getJob(id).orElseThrow();
+            if (job.isTerminal()) {
+                return job;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Import job " + id + " did not finish");
+    }
+
+    private ImportJob saved(String id) throws Exception {
+        return mapper.readValue(dir.resolve(id).resolve("job.json").toFile(), ImportJob.class);
+    }
+
+    private static ByteArrayInputStream upload(int rows) {
+        String lines = IntStream.rangeClosed(1, rows)
+                .mapToObj(i -> "{\"schemas\":[\"" + ScimUser.SCHEMA_CORE_USER + "\"],\"userName\":\"user" + i + "\"}")
+                .collect(Collectors.joining("\n"));
+        return new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,115 @@
+package com.learnhai.scim.tenant;
+
+import com.learnhai.scim.exception.ScimException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class TenantResolutionFilterTest {
+
+    private final HandlerExceptionResolver resolver = mock(HandlerExceptionResolver.class);
+    private final TenantResolutionFilter filter = new TenantResolutionFilter(registry(), resolver);
+
+    @AfterEach
+    void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void tokenWithoutClaimIsRefusedForANamedTenant() throws Exception {
+        authenticate(null);
+
+        assertRejected("/scim/v2/acme/Users", HttpStatus.FORBIDDEN);
+    }
+
+    @Test
+    void tokenWithoutClaimIsRefusedWhenThePathNamesNoTenant() throws Exception {
+        authenticate(null);
+
+        assertRejected("/scim/v2/Users", HttpStatus.FORBIDDEN);
+    }
+
+    @Test
+    void tokenWithoutClaimReachesTheDefaultTenantWhenThePathNamesIt() throws Exception {
+        authenticate(null);
+
+        assertThat(resolve("/scim/v2/default/Users")).isEqualTo("default");
+    }
+
+    @Test
+    void claimSelectsTheTenant() throws Exception {
+        authenticate("acme");
+
+        assertThat(resolve("/scim/v2/Users")).isEqualTo("acme");
+        assertThat(resolve("/scim/v2/acme/Users")).isEqualTo("acme");
+    }
+
+    @Test
+    void claimForAnotherTenantIsRefused() throws Exception {
+        authenticate("acme");
+
+        assertRejected("/scim/v2/default/Users", HttpStatus.FORBIDDEN);
+    }
+
+    @Test
+    void unknownClaimedTenantIsRefused() throws Exception {
+        authenticate("globex");
+
+        assertRejected("/scim/v2/Users", HttpStatus.FORBIDDEN);
+    }
+
+    private String resolve(String path) throws Exception {
+        AtomicReference<String> tenant = new AtomicReference<>();
+        MockFilterChain chain = new MockFilterChain() {
+            @Override
+            public void doFilter(jakarta.servlet.ServletRequest request, jakarta.servlet.ServletResponse response) {
+                tenant.set(TenantContext.tenantId());
+            }
+        };
+        filter.doFilter(new MockHttpServletRequest("GET", path), new MockHttpServletResponse(), chain);
+        verify(resolver, never()).resolveException(any(), any(), any(), any());
+        return tenant.get();
+    }
+
+    private void assertRejected(String path, HttpStatus status) throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(new MockHttpServletRequest("GET", path), new MockHttpServletResponse(), chain);
+
+        ArgumentCaptor<Exception> error = ArgumentCaptor.forClass(Exception.class);
+        verify(resolver).resolveException(any(), any(), isNull(), error.capture());
+        assertThat(error.getValue()).isInstanceOfSatisfying(ScimException.class, e -> assertThat(e.getStatus()).isEqualTo(status));
+        assertThat(chain.getRequest()).isNull();
+    }
+
+    private static void authenticate(String tenant) {
+        Jwt.Builder jwt = Jwt.withTokenValue("token").header("alg", "none").subject("client");
+        if (tenant != null) {
+            jwt.claim("tenant", tenant);
+        }
+        SecurityContextHolder.getContext().setAuthentication(new JwtAuthenticationToken(jwt.build()));
+    }
+
+    private static TenantRegistry registry() {
+        TenancyProperties properties = new TenancyProperties();
+        properties.setEnabled(true);
+        properties.getTenants().put("acme", new TenancyProperties.TenantProperties());
+        return new TenantRegistry(properties, "myrealm");
+    }
+}